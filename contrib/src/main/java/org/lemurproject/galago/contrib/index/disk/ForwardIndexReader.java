@@ -59,6 +59,17 @@ public class ForwardIndexReader extends KeyValueReader {
   }
 
 
+  //- Term frequencies only: the position lists of the terms are left empty
+  public DocTermsInfo getForwardDocTermFrequencies (long document) throws IOException {
+    byte[] valueBytes = reader.getValueBytes (Utility.fromLong(document));
+
+    if ((valueBytes == null) || (valueBytes.length == 0)) {
+      return null;
+    }
+    return ForwardIndexSerializer.fromBytes (valueBytes, false);
+  }
+
+
   @Override
   public KeyIterator getIterator () throws IOException {
     return new KeyIterator(reader);
@@ -1,28 +1,49 @@
 package org.lemurproject.galago.contrib.index.disk;
 
 import org.lemurproject.galago.contrib.parse.DocTermsInfo;
+import org.lemurproject.galago.contrib.parse.DocTermsInfo.PositionInfo;
+import org.lemurproject.galago.contrib.parse.DocTermsInfo.TermInfo;
+import org.lemurproject.galago.utility.ByteUtil;
 import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.compression.VByte;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 
 /**
- * This class stores DocTermsInfo objects as a complete serialized byte array
- * by implementation of Serializable.  No fancy additions, skips, lengths, etc. needed.
+ * This class stores DocTermsInfo objects as a compact, versioned byte array.
  *
  * The object includes:
  *    PositionInfo class for annotation begin/end positions and offsets.
  *    TermInfo class for entity level information (term, frequencies, positions)
  *    DocTermsInfo class  containing terms listed for entire document.
  *
- * Since the annotations object structure is stable, this class is not an extension of 
+ * Layout (version 1), all numbers VByte encoded:
+ *    MAGIC, version
+ *    docid + 1, unique term count, term count, max term freq
+ *    number of terms, then for each term (in sorted order):
+ *       length of the prefix shared with the previous term (UTF-8 bytes),
+ *       length of the suffix, suffix bytes, term freq
+ *    then for each term (same order), a positions block:
+ *       block length, number of positions,
+ *       begin positions and begin offsets, as zig-zag deltas
+ *
+ * Term frequencies can be read without the positions, and the positions of
+ * one term can be read by skipping the other blocks.
+ *
+ * Forward indexes written before version 1 store a gzipped Java serialization
+ * of the object, those are still read by fromBytes.
+ *
+ * Since the annotations object structure is stable, this class is not an extension of
  * some parent abstract class (such as with DocumentSerializer and WebDocumentSerializer.
  * This may need refactoring at some point in the future.
  *
@@ -30,92 +51,233 @@ import java.util.zip.GZIPOutputStream;
  */
 public class ForwardIndexSerializer implements Serializable {
 
+  //- gzip streams (the old format) start with 0x1f 0x8b
+  public static final int MAGIC = 0x7f;
+  public static final int VERSION = 1;
+
 
   public ForwardIndexSerializer (Parameters opts) {
     //super(opts);
   }
 
 
-  //@Override
   /**
-   * Comvert DocTermsInfo object to a compressed array of bytes
+   * Convert DocTermsInfo object to an array of bytes (current version)
    * @throws IOException
    */
-/*
   public static byte[] toBytes (DocTermsInfo docTermsInfo) throws IOException {
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream ();
-         ObjectOutputStream oos = new ObjectOutputStream (baos)) {
-       oos.writeObject (docTermsInfo);
-       oos.flush ();
-       boas.flush ();
-       oos.close ();
-       boas.close ();
-       return baos.toByteArray ();
+
+    //- Terms are sorted, so each term shares a prefix with the previous one
+    String[] terms = docTermsInfo.termsInfoHM.keySet ().toArray (new String[0]);
+    Arrays.sort (terms);
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream ();
+    DataOutputStream output = new DataOutputStream (baos);
+    output.writeByte (MAGIC);
+    VByte.compressInt (output, VERSION);
+
+    VByte.compressLong (output, docTermsInfo.docid + 1L);
+    VByte.compressInt (output, docTermsInfo.docUniqueTermCount);
+    VByte.compressInt (output, docTermsInfo.docTermCount);
+    VByte.compressInt (output, docTermsInfo.docMaxTermFreq);
+
+    //- Term dictionary and term frequencies
+    VByte.compressInt (output, terms.length);
+    byte[] previous = new byte[0];
+    for (String term : terms) {
+      TermInfo ti = docTermsInfo.termsInfoHM.get (term);
+      byte[] current = ByteUtil.fromString (term);
+      int shared = 0;
+      int limit = Math.min (previous.length, current.length);
+      while (shared < limit && previous[shared] == current[shared]) {
+        shared++;
+      }
+      VByte.compressInt (output, shared);
+      VByte.compressInt (output, current.length - shared);
+      output.write (current, shared, current.length - shared);
+      VByte.compressInt (output, ti.termFreq);
+      previous = current;
     }
+
+    //- Positions, one skippable block per term
+    ByteArrayOutputStream block = new ByteArrayOutputStream ();
+    DataOutputStream blockOutput = new DataOutputStream (block);
+    for (String term : terms) {
+      TermInfo ti = docTermsInfo.termsInfoHM.get (term);
+      block.reset ();
+      VByte.compressInt (blockOutput, ti.positionInfoList.size ());
+      int lastPos = 0;
+      int lastOffs = 0;
+      for (PositionInfo pi : ti.positionInfoList) {
+        VByte.compressInt (blockOutput, zigZag (pi.begPos - lastPos));
+        VByte.compressInt (blockOutput, zigZag (pi.begOffs - lastOffs));
+        lastPos = pi.begPos;
+        lastOffs = pi.begOffs;
+      }
+      blockOutput.flush ();
+      VByte.compressInt (output, block.size ());
+      block.writeTo (output);
+    }
+
+    output.close ();
+    return baos.toByteArray ();
+
   }  //- end method toBytes
-*/
 
-  public static byte[] toBytes (DocTermsInfo docTermsInfo) throws IOException {
+
+  /**
+   * Convert a byte array into a DocTermsInfo object
+   * @throws IOException
+   */
+  public static DocTermsInfo fromBytes (byte[] data) throws IOException {
+    return fromBytes (data, true);
+  }
+
+
+  /**
+   * Convert a byte array into a DocTermsInfo object.  Without positions, the
+   * position lists of the terms are left empty (term frequencies are read).
+   */
+  public static DocTermsInfo fromBytes (byte[] data, boolean positions) throws IOException {
+
+    if (getVersion (data) == 0) {
+      return fromLegacyBytes (data);
+    }
 
     try {
-      //- First Serialize the DocTermsInfo object
-      ByteArrayOutputStream baos = new ByteArrayOutputStream ();
-      ObjectOutputStream oos = new ObjectOutputStream (baos);
-      oos.writeObject (docTermsInfo);
-      oos.flush ();
-      byte[] serializedBytes = baos.toByteArray ();
-
-      //- Then gzip compress the serialized object bytes      
-      baos = new ByteArrayOutputStream (serializedBytes.length);
-      GZIPOutputStream gzos = new GZIPOutputStream (baos);
-      gzos.write (serializedBytes);
-      gzos.finish ();
-      gzos.close ();
-
-      //- Convert the compressed serialized bytes to a Byte array
-      baos.flush ();
-      byte[] gzipedSerializedBytes = baos.toByteArray ();
-      baos.close ();
-
-      //- Return the compressed object serialation
-      return gzipedSerializedBytes;
+      DataInputStream input = openVersioned (data);
+      DocTermsInfo docTermsInfo = new DocTermsInfo (VByte.uncompressLong (input) - 1L);
+      docTermsInfo.docUniqueTermCount = VByte.uncompressInt (input);
+      docTermsInfo.docTermCount = VByte.uncompressInt (input);
+      docTermsInfo.docMaxTermFreq = VByte.uncompressInt (input);
+
+      TermInfo[] termInfos = readTerms (input);
+      for (TermInfo ti : termInfos) {
+        docTermsInfo.termsInfoHM.put (ti.term, ti);
+      }
+
+      if (positions) {
+        for (TermInfo ti : termInfos) {
+          VByte.uncompressInt (input);  //- block length
+          readPositions (input, ti.positionInfoList);
+        }
+      }
+
+      return docTermsInfo;
     }
-    catch (Exception ex) {
-      System.out.println ("Failure writing DocTermsInfo object to ObjectOutputStream." +
-                          ex.toString());
+    catch (IOException ex) {
+      System.out.println ("Failure reading DocTermsInfo object.\n" + ex.toString());
       return null;
     }
-
-  }  //- end method toBytes
+  }  //- end method fromBytes
 
 
-  //Override
   /**
-   * Convert a compressed byte array into a DocTermsInfo object
-   * @throws IOException
+   * Read the positions of one term, skipping the other terms.
+   * @return the positions, or null if the term is not in the document.
    */
-/*
-  public static DocTermsInfo fromBytes(byte[] data) throws IOException {
+  public static ArrayList<PositionInfo> getTermPositions (byte[] data, String term) throws IOException {
 
-    try (ByteArrayInputStream bais = new ByteArrayInputStream (data);
-         ObjectInputStream ois = new ObjectInputStream (bais)) {
-      bais.flush ();
-      oos.flush ();
-      bais.close ();
-      oos.close ();
+    if (getVersion (data) == 0) {
+      DocTermsInfo docTermsInfo = fromLegacyBytes (data);
+      return (docTermsInfo == null) ? null : docTermsInfo.getDocTermPositions (term);
+    }
+
+    DataInputStream input = openVersioned (data);
+    VByte.uncompressLong (input);
+    VByte.uncompressInt (input);
+    VByte.uncompressInt (input);
+    VByte.uncompressInt (input);
 
-      return (DocTermsInfo)ois.readObject ();
+    TermInfo[] termInfos = readTerms (input);
+    int index = -1;
+    for (int i = 0; i < termInfos.length && index < 0; i++) {
+      if (termInfos[i].term.equals (term)) {
+        index = i;
+      }
     }
-    catch (Exception ex) {
-      System.out.println ("Failure reading DocTermsInfo object from ObjectInputStream." +
-                          ex.toString());
+    if (index < 0) {
       return null;
     }
+
+    for (int i = 0; i < index; i++) {
+      input.skipBytes (VByte.uncompressInt (input));
+    }
+    VByte.uncompressInt (input);
+    ArrayList<PositionInfo> positionInfoList = new ArrayList<>();
+    readPositions (input, positionInfoList);
+    return positionInfoList;
+
+  }  //- end method getTermPositions
+
+
+  /**
+   * @return the version of the serialized object, 0 for the old (java serialization) format.
+   */
+  public static int getVersion (byte[] data) throws IOException {
+    if (data.length < 2 || (data[0] & 0xff) != MAGIC) {
+      return 0;
+    }
+    DataInputStream input = new DataInputStream (new ByteArrayInputStream (data));
+    input.readUnsignedByte ();
+    return VByte.uncompressInt (input);
   }
-*/
 
 
-  public static DocTermsInfo fromBytes(byte[] data) throws IOException {
+  private static DataInputStream openVersioned (byte[] data) throws IOException {
+    DataInputStream input = new DataInputStream (new ByteArrayInputStream (data));
+    input.readUnsignedByte ();
+    int version = VByte.uncompressInt (input);
+    if (version > VERSION) {
+      throw new IOException ("Unsupported forward index version: " + version);
+    }
+    return input;
+  }
+
+
+  private static TermInfo[] readTerms (DataInputStream input) throws IOException {
+    TermInfo[] termInfos = new TermInfo[VByte.uncompressInt (input)];
+    byte[] previous = new byte[0];
+    for (int i = 0; i < termInfos.length; i++) {
+      int shared = VByte.uncompressInt (input);
+      int suffix = VByte.uncompressInt (input);
+      byte[] current = Arrays.copyOf (previous, shared + suffix);
+      input.readFully (current, shared, suffix);
+      termInfos[i] = new TermInfo (ByteUtil.toString (current));
+      termInfos[i].termFreq = VByte.uncompressInt (input);
+      previous = current;
+    }
+    return termInfos;
+  }
+
+
+  private static void readPositions (DataInputStream input, ArrayList<PositionInfo> positionInfoList) throws IOException {
+    int count = VByte.uncompressInt (input);
+    positionInfoList.ensureCapacity (count);
+    int lastPos = 0;
+    int lastOffs = 0;
+    for (int i = 0; i < count; i++) {
+      lastPos += unZigZag (VByte.uncompressInt (input));
+      lastOffs += unZigZag (VByte.uncompressInt (input));
+      positionInfoList.add (new PositionInfo (lastPos, lastOffs));
+    }
+  }
+
+
+  private static int zigZag (int i) {
+    return (i << 1) ^ (i >> 31);
+  }
+
+
+  private static int unZigZag (int i) {
+    return (i >>> 1) ^ -(i & 1);
+  }
+
+
+  /**
+   * Convert a compressed (gzipped java serialization) byte array into a DocTermsInfo object
+   */
+  private static DocTermsInfo fromLegacyBytes (byte[] data) throws IOException {
 
     try {
       GZIPInputStream gzis = new GZIPInputStream (new ByteArrayInputStream (data));
@@ -131,6 +293,6 @@ public class ForwardIndexSerializer implements Serializable {
                           ex.toString());
       return null;
     }
-  }  //- end method fromBytes
+  }  //- end method fromLegacyBytes
 
 }  //- end class ForwardIndexSerializer
@@ -0,0 +1,60 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.contrib.retrieval.prf;
+
+import org.lemurproject.galago.contrib.index.disk.ForwardIndexReader;
+import org.lemurproject.galago.contrib.parse.DocTermsInfo;
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.prf.CorpusTermSource;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackTermSource;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackTermVector;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the term vectors of feedback documents from the forward index part
+ * (see build-fwindex), instead of tokenizing the corpus.
+ *
+ * Use with --rmTermSource=org.lemurproject.galago.contrib.retrieval.prf.ForwardIndexTermSource
+ * The part is "rmForwardIndex" (default: fwindex). Documents that are not in
+ * the forward index, or retrievals without one, fall back to the corpus.
+ */
+public class ForwardIndexTermSource implements FeedbackTermSource {
+
+  private final ForwardIndexReader reader;
+  private final CorpusTermSource corpus;
+
+  public ForwardIndexTermSource(Retrieval retrieval) throws IOException {
+    this.corpus = new CorpusTermSource(retrieval);
+    String part = retrieval.getGlobalParameters().get("rmForwardIndex", "fwindex");
+    ForwardIndexReader fwindex = null;
+    if (retrieval instanceof LocalRetrieval) {
+      IndexPartReader partReader = ((LocalRetrieval) retrieval).getIndex().getIndexPart(part);
+      if (partReader instanceof ForwardIndexReader) {
+        fwindex = (ForwardIndexReader) partReader;
+      }
+    }
+    this.reader = fwindex;
+  }
+
+  @Override
+  public FeedbackTermVector getTermVector(ScoredDocument document, String group) throws IOException {
+    // groups are separate retrievals, with their own forward indexes
+    if (reader == null || group != null) {
+      return corpus.getTermVector(document, group);
+    }
+    DocTermsInfo info = reader.getForwardDocTermFrequencies(document.document);
+    if (info == null) {
+      return corpus.getTermVector(document, group);
+    }
+    Map<String, Integer> counts = new HashMap<>();
+    for (DocTermsInfo.TermInfo termInfo : info.termsInfoHM.values()) {
+      counts.put(termInfo.term, termInfo.termFreq);
+    }
+    return new FeedbackTermVector(info.getTermCount(), counts);
+  }
+}
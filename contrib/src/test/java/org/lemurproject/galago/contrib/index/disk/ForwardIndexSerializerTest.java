@@ -0,0 +1,111 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.contrib.index.disk;
+
+import org.junit.Test;
+import org.lemurproject.galago.contrib.parse.DocTermsInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips DocTermsInfo objects through the binary layout, and reads the
+ * old (java serialization) layout.
+ */
+public class ForwardIndexSerializerTest {
+
+  private static DocTermsInfo makeDocTermsInfo() {
+    DocTermsInfo dti = new DocTermsInfo(42L);
+    String[] terms = new String[]{"apple", "apply", "\u00fcber", "a", "zebra"};
+    int position = 0;
+    for (String term : terms) {
+      DocTermsInfo.TermInfo ti = new DocTermsInfo.TermInfo(term);
+      // positions are not in increasing order
+      for (int i = 0; i < 3; i++) {
+        ti.positionInfoList.add(new DocTermsInfo.PositionInfo(position * 7 % 11, position * 13 % 50));
+        position++;
+      }
+      ti.termFreq = ti.positionInfoList.size();
+      dti.termsInfoHM.put(term, ti);
+    }
+    dti.docUniqueTermCount = terms.length;
+    dti.docTermCount = position;
+    dti.docMaxTermFreq = 3;
+    return dti;
+  }
+
+  private static void assertSame(DocTermsInfo expected, DocTermsInfo actual, boolean positions) {
+    assertEquals(expected.docid, actual.docid);
+    assertEquals(expected.docUniqueTermCount, actual.docUniqueTermCount);
+    assertEquals(expected.docTermCount, actual.docTermCount);
+    assertEquals(expected.docMaxTermFreq, actual.docMaxTermFreq);
+    assertEquals(expected.termsInfoHM.keySet(), actual.termsInfoHM.keySet());
+    for (String term : expected.termsInfoHM.keySet()) {
+      DocTermsInfo.TermInfo ti = expected.termsInfoHM.get(term);
+      DocTermsInfo.TermInfo actualTi = actual.termsInfoHM.get(term);
+      assertEquals(ti.term, actualTi.term);
+      assertEquals(ti.termFreq, actualTi.termFreq);
+      if (positions) {
+        assertPositions(ti.positionInfoList, actualTi.positionInfoList);
+      } else {
+        assertTrue(actualTi.positionInfoList.isEmpty());
+      }
+    }
+  }
+
+  private static void assertPositions(ArrayList<DocTermsInfo.PositionInfo> expected, ArrayList<DocTermsInfo.PositionInfo> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).begPos, actual.get(i).begPos);
+      assertEquals(expected.get(i).begOffs, actual.get(i).begOffs);
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    DocTermsInfo dti = makeDocTermsInfo();
+    byte[] data = ForwardIndexSerializer.toBytes(dti);
+    assertEquals(ForwardIndexSerializer.VERSION, ForwardIndexSerializer.getVersion(data));
+
+    assertSame(dti, ForwardIndexSerializer.fromBytes(data), true);
+    assertSame(dti, ForwardIndexSerializer.fromBytes(data, false), false);
+
+    for (String term : dti.termsInfoHM.keySet()) {
+      assertPositions(dti.getDocTermPositions(term), ForwardIndexSerializer.getTermPositions(data, term));
+    }
+    assertNull(ForwardIndexSerializer.getTermPositions(data, "missing"));
+  }
+
+  @Test
+  public void testEmptyDocument() throws Exception {
+    DocTermsInfo dti = new DocTermsInfo();
+    byte[] data = ForwardIndexSerializer.toBytes(dti);
+    assertSame(dti, ForwardIndexSerializer.fromBytes(data), true);
+  }
+
+  @Test
+  public void testLegacyFormat() throws Exception {
+    DocTermsInfo dti = makeDocTermsInfo();
+
+    // forward indexes used to store gzipped java serialization
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(baos));
+    oos.writeObject(dti);
+    oos.close();
+    byte[] legacy = baos.toByteArray();
+
+    assertEquals(0, ForwardIndexSerializer.getVersion(legacy));
+    assertSame(dti, ForwardIndexSerializer.fromBytes(legacy), true);
+    assertPositions(dti.getDocTermPositions("apply"), ForwardIndexSerializer.getTermPositions(legacy, "apply"));
+
+    // and the binary layout is smaller
+    assertTrue(ForwardIndexSerializer.toBytes(dti).length < legacy.length);
+  }
+}
@@ -23,10 +23,18 @@ public class BTreeFactory {
   }
 
   public static GalagoBTreeReader getBTreeReader(File f) throws IOException {
+    return getBTreeReader(f, false);
+  }
+
+  /**
+   * If mapped is true, single file BTrees are memory mapped. Otherwise they are
+   * only mapped if their manifest requests it ("mmap").
+   */
+  public static GalagoBTreeReader getBTreeReader(File f, boolean mapped) throws IOException {
     if (SplitBTreeReader.isBTree(f)) {
       return new SplitBTreeReader(f);
     } else if (DiskBTreeReader.isBTree(f)) {
-      return new DiskBTreeReader(f);
+      return new DiskBTreeReader(f.toString(), mapped);
     } else {
       return null;
     }
@@ -16,6 +16,7 @@ public abstract class BTreeValueIterator implements BaseIterator {
   public static final int HAS_SKIPS = 0x01;
   public static final int HAS_MAXTF = 0x02;
   public static final int HAS_INLINING = 0x04;
+  public static final int HAS_BLOCKMAX = 0x08;
   protected byte[] key;
 
   public BTreeValueIterator(byte[] key) {
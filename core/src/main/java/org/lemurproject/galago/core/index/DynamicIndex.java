@@ -11,5 +11,10 @@ import org.lemurproject.galago.tupleflow.Processor;
  * @author sjh
  */
 public interface DynamicIndex extends Processor<Document> {
-  
+
+  /**
+   * Changes whenever the contents of the index change (documents are added,
+   * shards are flushed or merged). Used to invalidate cached results.
+   */
+  public long getVersion();
 }
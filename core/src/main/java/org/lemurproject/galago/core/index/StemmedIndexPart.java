@@ -0,0 +1,15 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index;
+
+import org.lemurproject.galago.core.parse.stem.Stemmer;
+
+/**
+ * An index part whose keys are stemmed: query terms are stemmed by the
+ * stemmer of the part.
+ */
+public interface StemmedIndexPart {
+
+  public Stemmer getStemmer();
+}
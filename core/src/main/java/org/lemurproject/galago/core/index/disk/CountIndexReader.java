@@ -3,6 +3,7 @@ package org.lemurproject.galago.core.index.disk;
 
 import org.lemurproject.galago.utility.btree.BTreeIterator;
 import org.lemurproject.galago.utility.btree.BTreeReader;
+import org.lemurproject.galago.core.index.StemmedIndexPart;
 import org.lemurproject.galago.core.index.KeyListReader;
 import org.lemurproject.galago.core.index.stats.AggregateIndexPart;
 import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
@@ -27,7 +28,7 @@ import java.util.Map;
  *
  * @author sjh
  */
-public class CountIndexReader extends KeyListReader implements AggregateIndexPart {
+public class CountIndexReader extends KeyListReader implements AggregateIndexPart, StemmedIndexPart {
 
   public final String operation;
   Stemmer stemmer;
@@ -44,6 +45,11 @@ public class CountIndexReader extends KeyListReader implements AggregateIndexPar
     stemmer = Stemmer.create(reader.getManifest());
   }
 
+  @Override
+  public Stemmer getStemmer() {
+    return stemmer;
+  }
+
   @Override
   public KeyIterator getIterator() throws IOException {
     return new KeyIterator(reader);
@@ -9,6 +9,7 @@ import org.lemurproject.galago.core.index.stats.AggregateIndexPart;
 import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.parse.stem.Stemmer;
 import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
 import org.lemurproject.galago.core.retrieval.iterator.DataIterator;
 import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
@@ -52,6 +53,9 @@ public class DiskIndex implements Index, Closeable {
   protected Map<String, IndexPartReader> parts = new HashMap<>();
   protected HashMap<String, String> defaultIndexOperators = new HashMap<>();
   protected HashSet<String> knownIndexOperators = new HashSet<>();
+  // "mmap": true maps every part, a list of part names maps only those parts
+  // "residentLengths": true loads document lengths into memory, a list of fields loads those fields
+  protected Parameters options = Parameters.create();
 
   // useful to assemble an index from odd pieces
   public DiskIndex(Collection<String> indexParts) throws IOException {
@@ -63,10 +67,16 @@ public class DiskIndex implements Index, Closeable {
       initializeComponent(part.getName(), component);
     }
 
+    initializeStemDictionaries();
     initializeIndexOperators();
   }
 
   public DiskIndex(String indexPath) throws IOException {
+    this(indexPath, Parameters.create());
+  }
+
+  public DiskIndex(String indexPath, Parameters options) throws IOException {
+    this.options = options;
     // Make sure it's a valid location    
     location = new File(indexPath);
     if (!location.isDirectory()) {
@@ -77,6 +87,7 @@ public class DiskIndex implements Index, Closeable {
     openDiskParts("", location);
 
 
+    initializeStemDictionaries();
     initializeIndexOperators();
   }
 
@@ -105,7 +116,7 @@ public class DiskIndex implements Index, Closeable {
       if (part.isDirectory()) {
         openDiskParts(partName, part);
       } else {
-        IndexComponentReader component = openIndexComponent(part.getAbsolutePath());
+        IndexComponentReader component = openIndexComponent(part.getAbsolutePath(), isMapped(partName));
         if (component != null) {
           initializeComponent(partName, component);
         }
@@ -113,6 +124,35 @@ public class DiskIndex implements Index, Closeable {
     }
   }
 
+  /**
+   * Returns true if the options request this part to be memory mapped.
+   */
+  private boolean isMapped(String partName) {
+    if (options.isBoolean("mmap")) {
+      return options.getBoolean("mmap");
+    }
+    if (options.isList("mmap")) {
+      return options.getAsList("mmap", String.class).contains(partName);
+    }
+    return false;
+  }
+
+  private void loadResidentLengths(DiskLengthsReader reader) throws IOException {
+    List<String> fields = new ArrayList<>();
+    if (options.isBoolean("residentLengths")) {
+      if (options.getBoolean("residentLengths")) {
+        fields.add("document");
+      }
+    } else if (options.isList("residentLengths")) {
+      fields.addAll(options.getAsList("residentLengths", String.class));
+    }
+    for (String field : fields) {
+      if (!reader.loadResident(field)) {
+        logger.log(Level.WARNING, "DiskIndex: lengths part has no field {0} to load.", field);
+      }
+    }
+  }
+
   private void initializeComponent(String name, IndexComponentReader component) {
     if (IndexPartReader.class.isAssignableFrom(component.getClass())) {
       parts.put(name, (IndexPartReader) component);
@@ -179,7 +219,33 @@ public class DiskIndex implements Index, Closeable {
     return (name != null);
   }
 
-  private void initializeIndexOperators() {
+  /**
+   * Stemmed parts look their terms up in the stem dictionary built with the
+   * same stemmer, if any (see StemDictionaryWriter).
+   */
+  private void initializeStemDictionaries() {
+    Map<String, StemDictionaryReader> dictionaries = new HashMap<>();
+    for (IndexPartReader part : parts.values()) {
+      if (part instanceof StemDictionaryReader) {
+        StemDictionaryReader dictionary = (StemDictionaryReader) part;
+        dictionaries.put(dictionary.getStemmerClass(), dictionary);
+      }
+    }
+    if (dictionaries.isEmpty()) {
+      return;
+    }
+    for (IndexPartReader part : parts.values()) {
+      if (part instanceof StemmedIndexPart) {
+        Stemmer stemmer = ((StemmedIndexPart) part).getStemmer();
+        StemDictionaryReader dictionary = dictionaries.get(stemmer.getClass().getName());
+        if (dictionary != null) {
+          stemmer.setDictionary(dictionary);
+        }
+      }
+    }
+  }
+
+  private void initializeIndexOperators() throws IOException {
     for (Entry<String, IndexPartReader> entry : parts.entrySet()) {
       String partName = entry.getKey();
       IndexPartReader part = entry.getValue();
@@ -224,6 +290,7 @@ public class DiskIndex implements Index, Closeable {
     // Initialize these now b/c they're so common
     if (parts.containsKey("lengths")) {
       lengthsReader = (DiskLengthsReader) parts.get("lengths");
+      loadResidentLengths((DiskLengthsReader) lengthsReader);
     } else {
       logger.log(Level.WARNING, "DiskIndex({0}) Index does not contain a lengths part.", location.getAbsolutePath());
     }
@@ -431,7 +498,11 @@ public class DiskIndex implements Index, Closeable {
 
   /* static functions for opening index component readers */
   public static IndexComponentReader openIndexComponent(String path) throws IOException {
-    BTreeReader reader = BTreeFactory.getBTreeReader(path);
+    return openIndexComponent(path, false);
+  }
+
+  public static IndexComponentReader openIndexComponent(String path, boolean mapped) throws IOException {
+    BTreeReader reader = BTreeFactory.getBTreeReader(new File(path), mapped);
 
     // if it's not an index: return null
     if (reader == null) {
@@ -130,6 +130,17 @@ final public class DiskLengthSource extends BTreeValueSource implements LengthSo
     }
   }
 
+  /**
+   * Reads the lengths of all documents, in order, into the array. This moves
+   * the underlying stream; reset must be called before iterating again.
+   */
+  void readAllLengths(int[] lengths) throws IOException {
+    this.streamBuffer.seek(lengthsDataOffset);
+    for (int i = 0; i < lengths.length; i++) {
+      lengths[i] = this.streamBuffer.readInt();
+    }
+  }
+
   @Override
   public boolean hasAllCandidates() {
     return true;
@@ -15,6 +15,7 @@ import org.lemurproject.galago.utility.ByteUtil;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Reads documents lengths from a document lengths file. KeyValueIterator
@@ -31,16 +32,18 @@ import java.util.Map;
  *
  * finally: - list of lengths (one per document)
  *
+ * Lengths lists can be loaded into memory (see loadResident); DiskIndex does
+ * this for the fields listed in the "residentLengths" parameter.
+ *
  * @author irmarc
  * @author sjh
  */
 public class DiskLengthsReader extends KeyListReader implements LengthsReader {
 
-  // this is a special memory map for document lengths
-  // it is used in the special documentLengths iterator
   private byte[] doc;
-//  private MappedByteBuffer documentLengths;
-//  private MemoryMapLengthsIterator documentLengthsIterator;
+  // lengths lists that have been loaded into memory, by field
+  private final Map<String, ResidentLengths> resident = new ConcurrentHashMap<>();
+  private volatile ResidentLengths residentDocument = null;
 
   public DiskLengthsReader(String filename) throws IOException {
     super(filename);
@@ -55,13 +58,41 @@ public class DiskLengthsReader extends KeyListReader implements LengthsReader {
   public void init() throws IOException {
     if (!reader.getManifest().get("emptyIndexFile", false)) {
       doc = ByteUtil.fromString("document");
-//      documentLengths = reader.getValueMemoryMap(doc);
-//      documentLengthsIterator = new MemoryMapLengthsIterator(doc, documentLengths);
     }
   }
 
+  /**
+   * Loads the lengths list for this field into memory. Afterwards, lengths of
+   * the field are served from memory by getLength and all lengths iterators.
+   *
+   * @return false if there is no such field.
+   */
+  public boolean loadResident(String field) throws IOException {
+    if (resident.containsKey(field)) {
+      return true;
+    }
+    BTreeIterator i = reader.getIterator(ByteUtil.fromString(field));
+    if (i == null) {
+      return false;
+    }
+    ResidentLengths lengths = ResidentLengths.load(new DiskLengthSource(i));
+    resident.put(field, lengths);
+    if (field.equals("document")) {
+      residentDocument = lengths;
+    }
+    return true;
+  }
+
+  public boolean isResident(String field) {
+    return resident.containsKey(field);
+  }
+
   @Override
   public int getLength(long document) throws IOException {
+    ResidentLengths lengths = residentDocument;
+    if (lengths != null) {
+      return lengths.length(document);
+    }
     LengthsIterator i = getLengthsIterator();
     i.syncTo(document);
     // will return either the currect length or a zero if no match.
@@ -75,6 +106,10 @@ public class DiskLengthsReader extends KeyListReader implements LengthsReader {
 
   @Override
   public LengthsIterator getLengthsIterator() throws IOException {
+    ResidentLengths lengths = residentDocument;
+    if (lengths != null) {
+      return new DiskLengthsIterator(new ResidentLengthSource(lengths));
+    }
     return new DiskLengthsIterator(getLengthsSource());
   }
 
@@ -95,6 +130,10 @@ public class DiskLengthsReader extends KeyListReader implements LengthsReader {
     // operator -> lengths
     if (node.getOperator().equals("lengths")) {
       String key = node.getNodeParameters().get("default", "document");
+      ResidentLengths lengths = resident.get(key);
+      if (lengths != null) {
+        return new DiskLengthsIterator(new ResidentLengthSource(lengths));
+      }
       byte[] keyBytes = ByteUtil.fromString(key);
       BTreeIterator i = reader.getIterator(keyBytes);
       if(i == null) {
@@ -0,0 +1,170 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.btree.format.BTreeFactory;
+import org.lemurproject.galago.core.index.StemmedIndexPart;
+import org.lemurproject.galago.core.index.KeyValueReader;
+import org.lemurproject.galago.core.parse.stem.Stemmer;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.btree.BTreeIterator;
+import org.lemurproject.galago.utility.btree.BTreeReader;
+import org.lemurproject.galago.utility.buffer.VByteInput;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Reads the impact-ordered lists written by ImpactIndexWriter.
+ *
+ * The lists are not in document order, so they are not available as query
+ * iterators; they are read segment by segment with getImpactList.
+ */
+public class ImpactIndexReader extends KeyValueReader implements StemmedIndexPart {
+
+  Stemmer stemmer;
+
+  public ImpactIndexReader(String fileName) throws Exception {
+    this(BTreeFactory.getBTreeReader(fileName));
+  }
+
+  public ImpactIndexReader(BTreeReader r) throws Exception {
+    super(r);
+    stemmer = Stemmer.create(r.getManifest());
+  }
+
+  /**
+   * Returns the list of the (stemmed as required) term, or null if the term
+   * does not exist.
+   */
+  public ImpactList getImpactList(String term) throws IOException {
+    return getImpactList(ByteUtil.fromString(stemmer.stemAsRequired(term)));
+  }
+
+  public ImpactList getImpactList(byte[] term) throws IOException {
+    BTreeIterator iterator = reader.getIterator(term);
+    if (iterator != null) {
+      return new ImpactList(iterator);
+    }
+    return null;
+  }
+
+  @Override
+  public Stemmer getStemmer() {
+    return stemmer;
+  }
+
+  @Override
+  public Map<String, NodeType> getNodeTypes() {
+    return Collections.EMPTY_MAP;
+  }
+
+  @Override
+  public KeyIterator getIterator() throws IOException {
+    return new KeyIterator(reader);
+  }
+
+  @Override
+  public BaseIterator getIterator(Node node) throws IOException {
+    throw new UnsupportedOperationException(
+            "Index doesn't support operator: " + node.getOperator());
+  }
+
+  /**
+   * Reads the segments of one list, in decreasing impact order.
+   */
+  public static class ImpactList {
+
+    public final long documentCount;
+    public final long collectionFrequency;
+    public final long segmentCount;
+    private final DataInput stream;
+    private long segmentsRead = 0;
+    private int impact;
+    private int segmentLength;
+    private int segmentRead;
+    private long document;
+
+    public ImpactList(BTreeIterator iterator) throws IOException {
+      stream = new VByteInput(iterator.getValueStream());
+      documentCount = stream.readLong();
+      collectionFrequency = stream.readLong();
+      segmentCount = stream.readLong();
+    }
+
+    /**
+     * Moves to the next segment, skipping any unread documents of the current
+     * one.
+     *
+     * @return false if there are no more segments.
+     */
+    public boolean nextSegment() throws IOException {
+      while (segmentRead < segmentLength) {
+        nextDocument();
+      }
+      if (segmentsRead == segmentCount) {
+        impact = 0;
+        segmentLength = 0;
+        return false;
+      }
+      impact = stream.readInt();
+      segmentLength = stream.readInt();
+      segmentRead = 0;
+      document = 0;
+      segmentsRead++;
+      return true;
+    }
+
+    public int impact() {
+      return impact;
+    }
+
+    /**
+     * @return the number of unread documents in the current segment.
+     */
+    public int remaining() {
+      return segmentLength - segmentRead;
+    }
+
+    public long nextDocument() throws IOException {
+      document += stream.readLong();
+      segmentRead++;
+      return document;
+    }
+  }
+
+  public static class KeyIterator extends KeyValueReader.KeyValueIterator {
+
+    public KeyIterator(BTreeReader reader) throws IOException {
+      super(reader);
+    }
+
+    @Override
+    public String getValueString() throws IOException {
+      ImpactList list = new ImpactList(iterator);
+      StringBuilder sb = new StringBuilder();
+      sb.append(ByteUtil.toString(getKey())).append(",");
+      while (list.nextSegment()) {
+        sb.append(" ").append(list.impact()).append(":");
+        while (list.remaining() > 0) {
+          sb.append(" ").append(list.nextDocument());
+        }
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public String getKeyString() {
+      return ByteUtil.toString(getKey());
+    }
+
+    @Override
+    public BaseIterator getValueIterator() throws IOException {
+      throw new UnsupportedOperationException("Impact lists are not in document order.");
+    }
+  }
+}
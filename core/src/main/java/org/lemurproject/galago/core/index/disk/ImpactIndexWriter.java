@@ -0,0 +1,163 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.btree.format.TupleflowBTreeWriter;
+import org.lemurproject.galago.core.btree.format.TupleflowDiskBTreeWriter;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+import org.lemurproject.galago.tupleflow.buffer.DiskSpillCompressedByteBuffer;
+import org.lemurproject.galago.tupleflow.execution.ErrorStore;
+import org.lemurproject.galago.tupleflow.execution.Verification;
+import org.lemurproject.galago.utility.CmpUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.btree.IndexElement;
+import org.lemurproject.galago.utility.buffer.CompressedByteBuffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an impact-ordered index. Each posting of a term is stored with a
+ * quantized score (impact), computed when the part is built, and the postings
+ * of a term are grouped into segments of equal impact, in decreasing impact
+ * order. Score-at-a-time processing reads the best segments of all query
+ * terms first (see ScoreAtATimeDocumentModel).
+ *
+ * Structure: mapping( term -> [documentCount, collectionFrequency,
+ * segmentCount] (segment)* ), where a segment is [impact, documentCount,
+ * (document d-gap)*] (all vbyte).
+ *
+ * The manifest records how impacts were computed ('scorer' and its
+ * parameters); an impact q stands for the score impactMinimum + q *
+ * impactScale.
+ */
+public class ImpactIndexWriter {
+
+  Parameters actualParams;
+  TupleflowBTreeWriter writer;
+  ImpactList list;
+  // statistics //
+  byte[] lastWord;
+  long vocabCount = 0;
+  long highestDocumentCount = 0;
+
+  public ImpactIndexWriter(TupleFlowParameters parameters) throws IOException {
+    actualParams = parameters.getJSON();
+    actualParams.set("writerClass", getClass().getName());
+    actualParams.set("readerClass", ImpactIndexReader.class.getName());
+
+    writer = new TupleflowDiskBTreeWriter(parameters);
+  }
+
+  /**
+   * Starts the list of a term.
+   */
+  public void processWord(byte[] wordBytes, long collectionFrequency) throws IOException {
+    closeList();
+
+    assert lastWord == null || CmpUtil.compare(lastWord, wordBytes) < 0 : "Words must be written in order.";
+    list = new ImpactList(wordBytes, collectionFrequency);
+    lastWord = wordBytes;
+    vocabCount++;
+  }
+
+  /**
+   * Starts a segment of the current list. Segments must be written in
+   * decreasing impact order.
+   */
+  public void processSegment(int impact, int documentCount) {
+    list.addSegment(impact, documentCount);
+  }
+
+  /**
+   * Adds a document to the current segment, in increasing document order.
+   */
+  public void processDocument(long document) {
+    list.addDocument(document);
+  }
+
+  private void closeList() throws IOException {
+    if (list != null) {
+      highestDocumentCount = Math.max(highestDocumentCount, list.documentCount);
+      list.close();
+      writer.add(list);
+      list = null;
+    }
+  }
+
+  public void close() throws IOException {
+    closeList();
+
+    Parameters manifest = writer.getManifest();
+    manifest.set("statistics/vocabCount", vocabCount);
+    manifest.set("statistics/highestDocumentCount", highestDocumentCount);
+
+    writer.close();
+  }
+
+  public static void verify(TupleFlowParameters parameters, ErrorStore store) {
+    if (!parameters.getJSON().isString("filename")) {
+      store.addError("ImpactIndexWriter requires a 'filename' parameter.");
+      return;
+    }
+    String index = parameters.getJSON().getString("filename");
+    Verification.requireWriteableFile(index, store);
+  }
+
+  public static class ImpactList implements IndexElement {
+
+    public final byte[] word;
+    private final long collectionFrequency;
+    private long documentCount = 0;
+    private long segmentCount = 0;
+    private int lastImpact = Integer.MAX_VALUE;
+    private long lastDocument;
+    private final CompressedByteBuffer header;
+    private final DiskSpillCompressedByteBuffer segments;
+
+    public ImpactList(byte[] word, long collectionFrequency) {
+      this.word = word;
+      this.collectionFrequency = collectionFrequency;
+      header = new CompressedByteBuffer();
+      segments = new DiskSpillCompressedByteBuffer();
+    }
+
+    public void addSegment(int impact, int count) {
+      assert impact < lastImpact : "Segments must be written in decreasing impact order.";
+      segments.add(impact);
+      segments.add(count);
+      lastImpact = impact;
+      lastDocument = 0;
+      segmentCount++;
+    }
+
+    public void addDocument(long document) {
+      segments.add(document - lastDocument);
+      lastDocument = document;
+      documentCount++;
+    }
+
+    public void close() {
+      header.add(documentCount);
+      header.add(collectionFrequency);
+      header.add(segmentCount);
+    }
+
+    @Override
+    public long dataLength() {
+      return header.length() + segments.length();
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+      header.write(output);
+      header.clear();
+      segments.write(output);
+      segments.clear();
+    }
+
+    @Override
+    public byte[] key() {
+      return word;
+    }
+  }
+}
@@ -0,0 +1,311 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.index.source.BTreeValueSource;
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
+import org.lemurproject.galago.core.index.source.ExtentSource;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.util.ExtentArray;
+import org.lemurproject.galago.utility.btree.BTreeIterator;
+import org.lemurproject.galago.utility.buffer.DataStream;
+import org.lemurproject.galago.utility.buffer.PForDelta;
+import org.lemurproject.galago.utility.buffer.VByteInput;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads the lists written by PackedPositionIndexWriter.
+ *
+ * The skips are loaded when the list is opened, so syncTo jumps directly to
+ * the block that may contain the target, and only that block is decoded.
+ * Positions are only decoded when extents are requested.
+ */
+final public class PackedPositionIndexExtentSource extends BTreeValueSource implements ExtentSource, BlockMaxSource {
+
+  public long documentCount;
+  public long totalPositionCount;
+  public long maximumPositionCount;
+  private int blockSize;
+  private int blockCount;
+  // skips
+  private long[] blockLastDocument;
+  private long[] postingsOffset;
+  private long[] positionsOffset;
+  private int[] blockMaximum;
+  private long postingsStart;
+  private long postingsLength;
+  private long positionsStart;
+  private long positionsLength;
+  private DataStream postingsStream;
+  private DataStream positionsStream;
+  // the current block
+  private int block;
+  private int blockDocumentCount;
+  private long[] documents;
+  private int[] counts;
+  private int[] positionStarts;
+  private int[] positions;
+  private boolean positionsLoaded;
+  private int[] decoded;
+  private byte[] encoded;
+  private byte[] positionBytes;
+  // the current document
+  private int index;
+  private long currentDocument;
+  private boolean extentsLoaded;
+  private boolean done;
+  // final here to prevent reallocation of this during scoring
+  final private ExtentArray extentArray;
+
+  public PackedPositionIndexExtentSource(BTreeIterator iter) throws IOException {
+    super(iter);
+    extentArray = new ExtentArray();
+    initialize();
+    reset();
+  }
+
+  public PackedPositionIndexExtentSource(BTreeIterator iter, String dispKey) throws IOException {
+    super(iter, dispKey);
+    extentArray = new ExtentArray();
+    initialize();
+    reset();
+  }
+
+  private void initialize() throws IOException {
+    // 8 vbyte longs
+    final DataStream headerStream = btreeIter.getSubValueStream(0, Math.min(80, btreeIter.getValueLength()));
+    final DataInput header = new VByteInput(headerStream);
+    blockSize = header.readInt();
+    documentCount = header.readLong();
+    totalPositionCount = header.readLong();
+    maximumPositionCount = header.readLong();
+    blockCount = header.readInt();
+    final long skipsLength = header.readLong();
+    final long postingsLength = header.readLong();
+    final long positionsLength = header.readLong();
+
+    final long skipsStart = headerStream.getPosition();
+    final long postingsStart = skipsStart + skipsLength;
+    final long positionsStart = postingsStart + postingsLength;
+    assert positionsStart + positionsLength == btreeIter.getValueLength();
+
+    blockLastDocument = new long[blockCount];
+    postingsOffset = new long[blockCount + 1];
+    positionsOffset = new long[blockCount + 1];
+    blockMaximum = new int[blockCount];
+    final DataInput skips = new VByteInput(btreeIter.getSubValueStream(skipsStart, skipsLength));
+    long lastDocument = 0;
+    for (int b = 0; b < blockCount; b++) {
+      lastDocument += skips.readLong();
+      blockLastDocument[b] = lastDocument;
+      postingsOffset[b + 1] = postingsOffset[b] + skips.readLong();
+      positionsOffset[b + 1] = positionsOffset[b] + skips.readLong();
+      blockMaximum[b] = skips.readInt();
+    }
+
+    this.postingsStart = postingsStart;
+    this.postingsLength = postingsLength;
+    this.positionsStart = positionsStart;
+    this.positionsLength = positionsLength;
+
+    documents = new long[blockSize];
+    counts = new int[blockSize];
+    positionStarts = new int[blockSize + 1];
+    positions = new int[blockSize];
+    decoded = new int[blockSize];
+    encoded = new byte[PForDelta.maxEncodedLength(blockSize)];
+    positionBytes = new byte[encoded.length];
+  }
+
+  @Override
+  public void reset() throws IOException {
+    // streams only seek forwards
+    postingsStream = btreeIter.getSubValueStream(postingsStart, postingsLength);
+    positionsStream = btreeIter.getSubValueStream(positionsStart, positionsLength);
+    extentArray.reset();
+    done = false;
+    block = -1;
+    if (blockCount == 0) {
+      finish();
+    } else {
+      loadBlock(0);
+    }
+  }
+
+  private void finish() {
+    done = true;
+    currentDocument = Long.MAX_VALUE;
+    extentArray.reset();
+    extentsLoaded = true;
+  }
+
+  /**
+   * Decodes the documents and counts of a block.
+   */
+  private void loadBlock(int b) throws IOException {
+    block = b;
+    blockDocumentCount = (b + 1 < blockCount) ? blockSize : (int) (documentCount - ((long) blockSize * b));
+
+    int length = (int) (postingsOffset[b + 1] - postingsOffset[b]);
+    postingsStream.seek(postingsOffset[b]);
+    postingsStream.readFully(encoded, 0, length);
+
+    int p = PForDelta.decode(encoded, 0, decoded, 0, blockDocumentCount);
+    long document = (b == 0) ? 0 : blockLastDocument[b - 1];
+    for (int i = 0; i < blockDocumentCount; i++) {
+      document += decoded[i];
+      documents[i] = document;
+    }
+    PForDelta.decode(encoded, p, counts, 0, blockDocumentCount);
+    positionStarts[0] = 0;
+    for (int i = 0; i < blockDocumentCount; i++) {
+      counts[i] += 1;
+      positionStarts[i + 1] = positionStarts[i] + counts[i];
+    }
+
+    positionsLoaded = false;
+    index = 0;
+    currentDocument = documents[0];
+    extentsLoaded = false;
+  }
+
+  /**
+   * Decodes all positions of the current block.
+   */
+  private void loadPositions() throws IOException {
+    int total = positionStarts[blockDocumentCount];
+    if (positions.length < total) {
+      positions = new int[Math.max(total, positions.length * 2)];
+    }
+
+    int length = (int) (positionsOffset[block + 1] - positionsOffset[block]);
+    if (positionBytes.length < length) {
+      positionBytes = new byte[Math.max(length, positionBytes.length * 2)];
+    }
+    positionsStream.seek(positionsOffset[block]);
+    positionsStream.readFully(positionBytes, 0, length);
+
+    int p = 0;
+    for (int start = 0; start < total; start += blockSize) {
+      p = PForDelta.decode(positionBytes, p, positions, start, Math.min(blockSize, total - start));
+    }
+    positionsLoaded = true;
+  }
+
+  @Override
+  public boolean isDone() {
+    return done;
+  }
+
+  @Override
+  public boolean hasAllCandidates() {
+    return false;
+  }
+
+  @Override
+  public long totalEntries() {
+    return documentCount;
+  }
+
+  @Override
+  public long currentCandidate() {
+    return currentDocument;
+  }
+
+  @Override
+  public void movePast(long id) throws IOException {
+    syncTo(id + 1);
+  }
+
+  @Override
+  public void syncTo(long document) throws IOException {
+    if (done || document <= currentDocument) {
+      return;
+    }
+
+    if (document > blockLastDocument[block]) {
+      if (document > blockLastDocument[blockCount - 1]) {
+        finish();
+        return;
+      }
+      int next = Arrays.binarySearch(blockLastDocument, block + 1, blockCount, document);
+      loadBlock((next >= 0) ? next : -(next + 1));
+    }
+
+    // linear within the block
+    while (documents[index] < document) {
+      index++;
+    }
+    currentDocument = documents[index];
+    extentsLoaded = false;
+  }
+
+  @Override
+  public ExtentArray extents(long id) {
+    if (!done && id == currentDocument) {
+      if (!extentsLoaded) {
+        try {
+          if (!positionsLoaded) {
+            loadPositions();
+          }
+        } catch (IOException ioe) {
+          throw new RuntimeException(ioe);
+        }
+        extentArray.reset();
+        extentArray.setDocument(currentDocument);
+        int position = 0;
+        for (int i = positionStarts[index]; i < positionStarts[index + 1]; i++) {
+          position += positions[i];
+          extentArray.add(position);
+        }
+        extentsLoaded = true;
+      }
+      return extentArray;
+    }
+    return ExtentArray.EMPTY;
+  }
+
+  @Override
+  public int count(long id) {
+    if (!done && id == currentDocument) {
+      return counts[index];
+    }
+    return 0;
+  }
+
+  @Override
+  public boolean hasBlockMaxima() {
+    return true;
+  }
+
+  @Override
+  public long blockLastCandidate(long id) throws IOException {
+    int b = findBlock(id);
+    return (b + 1 >= blockCount) ? Long.MAX_VALUE : blockLastDocument[b];
+  }
+
+  @Override
+  public int blockMaximumCount(long id) throws IOException {
+    if (blockCount == 0) {
+      return 0;
+    }
+    return blockMaximum[Math.min(findBlock(id), blockCount - 1)];
+  }
+
+  private int findBlock(long id) {
+    int b = Arrays.binarySearch(blockLastDocument, 0, blockCount, id);
+    return (b >= 0) ? b : -(b + 1);
+  }
+
+  @Override
+  public NodeStatistics getStatistics() {
+    NodeStatistics ns = new NodeStatistics();
+    ns.node = this.key();
+    ns.maximumCount = this.maximumPositionCount;
+    ns.nodeFrequency = this.totalPositionCount;
+    ns.nodeDocumentCount = this.documentCount;
+    return ns;
+  }
+}
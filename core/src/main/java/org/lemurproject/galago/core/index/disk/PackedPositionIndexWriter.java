@@ -0,0 +1,287 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.btree.format.TupleflowBTreeWriter;
+import org.lemurproject.galago.core.btree.format.TupleflowDiskBTreeWriter;
+import org.lemurproject.galago.core.index.mem.MemoryPositionalIndex;
+import org.lemurproject.galago.core.index.merge.PackedPositionIndexMerger;
+import org.lemurproject.galago.core.types.NumberWordPosition;
+import org.lemurproject.galago.tupleflow.InputClass;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+import org.lemurproject.galago.tupleflow.buffer.DiskSpillCompressedByteBuffer;
+import org.lemurproject.galago.tupleflow.execution.ErrorStore;
+import org.lemurproject.galago.tupleflow.execution.Verification;
+import org.lemurproject.galago.utility.CmpUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.btree.IndexElement;
+import org.lemurproject.galago.utility.buffer.CompressedByteBuffer;
+import org.lemurproject.galago.utility.buffer.PForDelta;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes a positions index where postings are stored in fixed size blocks of
+ * bit-packed integers (see PForDelta), instead of one vbyte per integer.
+ *
+ * Each inverted list is:
+ *
+ * header: [blockSize, documentCount, totalPositionCount, maximumPositionCount,
+ * blockCount, skips length, postings length, positions length] (vbyte)
+ *
+ * skips: one entry per block [d-gap of the last document, postings bytes,
+ * positions bytes, maximum count] (vbyte)
+ *
+ * postings: per block, the packed document gaps, then the packed counts - 1.
+ *
+ * positions: per block, the position gaps of all its documents (restarting at
+ * each document), packed in chunks of blockSize values.
+ *
+ * The skips are the block maxima (Block-Max WAND), and allow a reader to jump
+ * to any block. Counts can be read without decoding any positions.
+ */
+@InputClass(className = "org.lemurproject.galago.core.types.NumberWordPosition", order = {"+word", "+document", "+position"})
+public class PackedPositionIndexWriter implements
+        NumberWordPosition.WordDocumentPositionOrder.ShreddedProcessor {
+
+  public static final int DEFAULT_BLOCK_SIZE = 128;
+  // writer variables //
+  Parameters actualParams;
+  TupleflowBTreeWriter writer;
+  PackedPositionsList invertedList;
+  int blockSize;
+  // statistics //
+  byte[] lastWord;
+  long vocabCount = 0;
+  long collectionLength = 0;
+  long highestFrequency = 0;
+  long highestDocumentCount = 0;
+  // scratch space for encoding a block
+  int[] values;
+  byte[] encoded;
+
+  public PackedPositionIndexWriter(TupleFlowParameters parameters) throws IOException {
+    actualParams = parameters.getJSON();
+    actualParams.set("writerClass", getClass().getName());
+    actualParams.set("readerClass", PackedPositionIndexReader.class.getName());
+    actualParams.set("mergerClass", PackedPositionIndexMerger.class.getName());
+    actualParams.set("memoryClass", MemoryPositionalIndex.class.getName());
+    actualParams.set("defaultOperator", "counts");
+
+    blockSize = (int) actualParams.get("postingsBlockSize", DEFAULT_BLOCK_SIZE);
+    actualParams.set("postingsBlockSize", blockSize);
+    values = new int[blockSize];
+    encoded = new byte[PForDelta.maxEncodedLength(blockSize)];
+
+    writer = new TupleflowDiskBTreeWriter(parameters);
+  }
+
+  private void closeList() throws IOException {
+    if (invertedList != null) {
+      highestDocumentCount = Math.max(highestDocumentCount, invertedList.documentCount);
+      highestFrequency = Math.max(highestFrequency, invertedList.totalPositionCount);
+      collectionLength += invertedList.totalPositionCount;
+      invertedList.close();
+      writer.add(invertedList);
+
+      invertedList = null;
+    }
+  }
+
+  @Override
+  public void processWord(byte[] wordBytes) throws IOException {
+    closeList();
+
+    invertedList = new PackedPositionsList(wordBytes);
+    assert lastWord == null || !CmpUtil.equals(lastWord, wordBytes) : "Duplicate word";
+    lastWord = wordBytes;
+    vocabCount++;
+  }
+
+  @Override
+  public void processDocument(long document) throws IOException {
+    invertedList.addDocument(document);
+  }
+
+  @Override
+  public void processPosition(int position) throws IOException {
+    invertedList.addPosition(position);
+  }
+
+  @Override
+  public void processTuple() {
+    // does nothing - this means we ignore duplicate postings.
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeList();
+
+    Parameters manifest = writer.getManifest();
+    manifest.set("statistics/collectionLength", collectionLength);
+    manifest.set("statistics/vocabCount", vocabCount);
+    manifest.set("statistics/highestDocumentCount", highestDocumentCount);
+    manifest.set("statistics/highestFrequency", highestFrequency);
+
+    writer.close();
+  }
+
+  public static void verify(TupleFlowParameters parameters, ErrorStore store) {
+    if (!parameters.getJSON().isString("filename")) {
+      store.addError("PackedPositionIndexWriter requires a 'filename' parameter.");
+      return;
+    }
+    if (parameters.getJSON().get("postingsBlockSize", DEFAULT_BLOCK_SIZE) < 1) {
+      store.addError("PackedPositionIndexWriter requires a positive 'postingsBlockSize'.");
+    }
+
+    String index = parameters.getJSON().getString("filename");
+    Verification.requireWriteableFile(index, store);
+  }
+
+  /**
+   * A posting list with positions, buffered one block at a time.
+   */
+  public class PackedPositionsList implements IndexElement {
+
+    public final byte[] word;
+    private long documentCount = 0;
+    private long totalPositionCount = 0;
+    private long maximumPositionCount = 0;
+    private long blockCount = 0;
+    // the current block
+    private final long[] blockDocuments;
+    private final int[] blockCounts;
+    private int[] blockPositions;
+    private int blockDocumentCount = 0;
+    private int blockPositionCount = 0;
+    private long previousBlockLastDocument = 0;
+    private int lastPosition;
+    // completed blocks
+    private final CompressedByteBuffer header;
+    private final DiskSpillCompressedByteBuffer skips;
+    private final DiskSpillCompressedByteBuffer postings;
+    private final DiskSpillCompressedByteBuffer positions;
+
+    public PackedPositionsList(byte[] word) {
+      this.word = word;
+      blockDocuments = new long[blockSize];
+      blockCounts = new int[blockSize];
+      blockPositions = new int[blockSize];
+      header = new CompressedByteBuffer();
+      skips = new DiskSpillCompressedByteBuffer();
+      postings = new DiskSpillCompressedByteBuffer();
+      positions = new DiskSpillCompressedByteBuffer();
+    }
+
+    public void addDocument(long document) throws IOException {
+      if (blockDocumentCount == blockSize) {
+        flushBlock();
+      }
+      blockDocuments[blockDocumentCount] = document;
+      blockCounts[blockDocumentCount] = 0;
+      blockDocumentCount++;
+      documentCount++;
+      lastPosition = 0;
+    }
+
+    public void addPosition(int position) {
+      if (blockPositionCount == blockPositions.length) {
+        blockPositions = Arrays.copyOf(blockPositions, blockPositions.length * 2);
+      }
+      blockPositions[blockPositionCount++] = position - lastPosition;
+      lastPosition = position;
+      blockCounts[blockDocumentCount - 1]++;
+      totalPositionCount++;
+    }
+
+    private void flushBlock() throws IOException {
+      if (blockDocumentCount == 0) {
+        return;
+      }
+
+      // document gaps
+      long previous = previousBlockLastDocument;
+      for (int i = 0; i < blockDocumentCount; i++) {
+        long gap = blockDocuments[i] - previous;
+        if (gap > Integer.MAX_VALUE) {
+          throw new IOException("Document gap " + gap + " is too large for a packed posting list.");
+        }
+        values[i] = (int) gap;
+        previous = blockDocuments[i];
+      }
+      int length = PForDelta.encode(values, 0, blockDocumentCount, encoded, 0);
+      postings.add(encoded, 0, length);
+      long postingsLength = length;
+
+      // counts
+      int blockMaximum = 0;
+      for (int i = 0; i < blockDocumentCount; i++) {
+        values[i] = blockCounts[i] - 1;
+        blockMaximum = Math.max(blockMaximum, blockCounts[i]);
+      }
+      length = PForDelta.encode(values, 0, blockDocumentCount, encoded, 0);
+      postings.add(encoded, 0, length);
+      postingsLength += length;
+
+      // positions
+      long positionsLength = 0;
+      for (int start = 0; start < blockPositionCount; start += blockSize) {
+        length = PForDelta.encode(blockPositions, start, Math.min(blockSize, blockPositionCount - start), encoded, 0);
+        positions.add(encoded, 0, length);
+        positionsLength += length;
+      }
+
+      long lastDocument = blockDocuments[blockDocumentCount - 1];
+      skips.add(lastDocument - previousBlockLastDocument);
+      skips.add(postingsLength);
+      skips.add(positionsLength);
+      skips.add(blockMaximum);
+
+      maximumPositionCount = Math.max(maximumPositionCount, blockMaximum);
+      previousBlockLastDocument = lastDocument;
+      blockCount++;
+      blockDocumentCount = 0;
+      blockPositionCount = 0;
+    }
+
+    public void close() throws IOException {
+      flushBlock();
+
+      header.add(blockSize);
+      header.add(documentCount);
+      header.add(totalPositionCount);
+      header.add(maximumPositionCount);
+      header.add(blockCount);
+      header.add(skips.length());
+      header.add(postings.length());
+      header.add(positions.length());
+    }
+
+    @Override
+    public long dataLength() {
+      return header.length() + skips.length() + postings.length() + positions.length();
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+      header.write(output);
+      header.clear();
+
+      skips.write(output);
+      skips.clear();
+
+      postings.write(output);
+      postings.clear();
+
+      positions.write(output);
+      positions.clear();
+    }
+
+    @Override
+    public byte[] key() {
+      return word;
+    }
+  }
+}
@@ -2,6 +2,7 @@
 package org.lemurproject.galago.core.index.disk;
 
 import org.lemurproject.galago.core.index.source.BTreeValueSource;
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
 import org.lemurproject.galago.core.index.source.CountSource;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
 import org.lemurproject.galago.utility.btree.BTreeIterator;
@@ -20,7 +21,7 @@ import java.io.IOException;
  * @author jfoley
  * @see PositionIndexReader
  */
-final public class PositionIndexCountSource extends BTreeValueSource implements CountSource {
+final public class PositionIndexCountSource extends BTreeValueSource implements CountSource, BlockMaxSource {
 
   public long documentCount;
   public long collectionCount;
@@ -45,6 +46,13 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
   long lastSkipPosition;
   long documentsByteFloor;
   long countsByteFloor;
+  // to support block-max bounds (loaded lazily)
+  boolean hasBlockMax;
+  long skipsStart;
+  long skipsByteLength;
+  long blockMaxStart;
+  long blockMaxByteLength;
+  SkipBlockMaxima blockMaxima;
 
   public PositionIndexCountSource(BTreeIterator iter) throws IOException {
     super(iter);
@@ -79,6 +87,7 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
     final boolean hasInlining = (options & HAS_INLINING) > 0;
     final boolean hasSkips = (options & HAS_SKIPS) > 0;
     final boolean hasMaxTF = (options & HAS_MAXTF) > 0;
+    hasBlockMax = hasSkips && (options & HAS_BLOCKMAX) > 0;
 
     // Don't need to keep this value as positions are ignored.
     if ((options & HAS_INLINING) == HAS_INLINING) {
@@ -106,6 +115,10 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
       skipsByteLength = stream.readLong(); // 9 bytes
       skipPositionsByteLength = stream.readLong(); // 9 bytes
     }
+    blockMaxByteLength = 0;
+    if (hasBlockMax) {
+      blockMaxByteLength = stream.readLong(); // 9 bytes
+    }
 
     // done with header (read at most (6 * 9) + (7 * 5) = 107 bytes)
 
@@ -123,7 +136,10 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
       long skipsStart = positionsStart + positionsByteLength;
       long skipPositionsStart = skipsStart + skipsByteLength;
       long skipPositionsEnd = skipPositionsStart + skipPositionsByteLength;
-      assert skipPositionsEnd == btreeIter.getValueLength();
+      this.skipsStart = skipsStart;
+      this.skipsByteLength = skipsByteLength;
+      this.blockMaxStart = skipPositionsEnd;
+      assert skipPositionsEnd + blockMaxByteLength == btreeIter.getValueLength();
       skips = new VByteInput(btreeIter.getSubValueStream(skipsStart, skipsByteLength));
       skipPositionsStream = btreeIter.getSubValueStream(skipPositionsStart, skipPositionsByteLength);
       skipPositions = new VByteInput(skipPositionsStream);
@@ -267,6 +283,35 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
     return 0;
   }
 
+  @Override
+  public boolean hasBlockMaxima() {
+    return hasBlockMax;
+  }
+
+  @Override
+  public long blockLastCandidate(long id) throws IOException {
+    if (!hasBlockMax) {
+      return Long.MAX_VALUE;
+    }
+    return getBlockMaxima().blockLastDocument(id);
+  }
+
+  @Override
+  public int blockMaximumCount(long id) throws IOException {
+    if (!hasBlockMax) {
+      return (int) maximumPositionCount;
+    }
+    return getBlockMaxima().blockMaximumCount(id);
+  }
+
+  private SkipBlockMaxima getBlockMaxima() throws IOException {
+    if (blockMaxima == null) {
+      blockMaxima = SkipBlockMaxima.read(btreeIter.getSubValueStream(skipsStart, skipsByteLength),
+              btreeIter.getSubValueStream(blockMaxStart, blockMaxByteLength), numSkips);
+    }
+    return blockMaxima;
+  }
+
   @Override
   public NodeStatistics getStatistics() {
     NodeStatistics ns = new NodeStatistics();
@@ -3,6 +3,7 @@ package org.lemurproject.galago.core.index.disk;
 
 import org.lemurproject.galago.utility.btree.BTreeIterator;
 import org.lemurproject.galago.core.index.source.BTreeValueSource;
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
 import org.lemurproject.galago.core.index.source.ExtentSource;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
 import org.lemurproject.galago.core.util.ExtentArray;
@@ -17,7 +18,7 @@ import java.io.IOException;
  *
  * @author trevor, irmarc, sjh, jfoley
  */
-final public class PositionIndexExtentSource extends BTreeValueSource implements ExtentSource {
+final public class PositionIndexExtentSource extends BTreeValueSource implements ExtentSource, BlockMaxSource {
 
     public long documentCount;
     public long totalPositionCount;
@@ -55,6 +56,14 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
     // to support skipping
     private SkipState skip;
 
+    // to support block-max bounds (loaded lazily)
+    private boolean hasBlockMax;
+    private long skipsStart;
+    private long skipsByteLength;
+    private long blockMaxStart;
+    private long blockMaxByteLength;
+    private SkipBlockMaxima blockMaxima;
+
     // Supports lazy-loading of extents
     private boolean extentsLoaded;
     private int inlineMinimum;
@@ -99,6 +108,7 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
         final boolean hasInlining = (options & HAS_INLINING) > 0;
         final boolean hasSkips = (options & HAS_SKIPS) > 0;
         final boolean hasMaxTF = (options & HAS_MAXTF) > 0;
+        hasBlockMax = hasSkips && (options & HAS_BLOCKMAX) > 0;
 
         inlineMinimum = (hasInlining) ? stream.readInt() : Integer.MAX_VALUE; // 5 bytes
         documentCount = stream.readLong();// 9 bytes
@@ -117,6 +127,7 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
         final long positionsByteLength = stream.readLong();// 9 bytes
         final long skipsByteLength = hasSkips ? stream.readLong() : 0; // 9 bytes
         final long skipPositionsByteLength = hasSkips ? stream.readLong() : 0; // 9 bytes
+        blockMaxByteLength = hasBlockMax ? stream.readLong() : 0; // 9 bytes
 
         long documentStart = valueStream.getPosition();
         long countsStart = documentStart + documentByteLength;
@@ -132,7 +143,10 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
             long skipsStart = positionsStart + positionsByteLength;
             long skipPositionsStart = skipsStart + skipsByteLength;
             long skipPositionsEnd = skipPositionsStart + skipPositionsByteLength;
-            assert skipPositionsEnd == btreeIter.getValueLength();
+            this.skipsStart = skipsStart;
+            this.skipsByteLength = skipsByteLength;
+            this.blockMaxStart = skipPositionsEnd;
+            assert skipPositionsEnd + blockMaxByteLength == btreeIter.getValueLength();
             skip.data = new VByteInput(btreeIter.getSubValueStream(skipsStart, skipsByteLength));
             skip.positionsStream = btreeIter.getSubValueStream(skipPositionsStart, skipPositionsByteLength);
             skip.positions = new VByteInput(skip.positionsStream);
@@ -337,6 +351,35 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
         return 0;
     }
 
+    @Override
+    public boolean hasBlockMaxima() {
+        return hasBlockMax;
+    }
+
+    @Override
+    public long blockLastCandidate(long id) throws IOException {
+        if (!hasBlockMax) {
+            return Long.MAX_VALUE;
+        }
+        return getBlockMaxima().blockLastDocument(id);
+    }
+
+    @Override
+    public int blockMaximumCount(long id) throws IOException {
+        if (!hasBlockMax) {
+            return (int) maximumPositionCount;
+        }
+        return getBlockMaxima().blockMaximumCount(id);
+    }
+
+    private SkipBlockMaxima getBlockMaxima() throws IOException {
+        if (blockMaxima == null) {
+            blockMaxima = SkipBlockMaxima.read(btreeIter.getSubValueStream(skipsStart, skipsByteLength),
+                    btreeIter.getSubValueStream(blockMaxStart, blockMaxByteLength), skip.total);
+        }
+        return blockMaxima;
+    }
+
     @Override
     public NodeStatistics getStatistics() {
         NodeStatistics ns = new NodeStatistics();
@@ -3,6 +3,7 @@ package org.lemurproject.galago.core.index.disk;
 
 import org.lemurproject.galago.utility.btree.BTreeIterator;
 import org.lemurproject.galago.utility.btree.BTreeReader;
+import org.lemurproject.galago.core.index.StemmedIndexPart;
 import org.lemurproject.galago.core.index.KeyListReader;
 import org.lemurproject.galago.core.index.stats.AggregateIndexPart;
 import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
@@ -27,7 +28,7 @@ import java.util.Map;
  *
  * @author trevor, sjh, irmarc
  */
-public class PositionIndexReader extends KeyListReader implements AggregateIndexPart {
+public class PositionIndexReader extends KeyListReader implements AggregateIndexPart, StemmedIndexPart {
 
   Stemmer stemmer;
 
@@ -41,6 +42,11 @@ public class PositionIndexReader extends KeyListReader implements AggregateIndex
     stemmer = Stemmer.create(reader.getManifest());
   }
 
+  @Override
+  public Stemmer getStemmer() {
+    return stemmer;
+  }
+
   @Override
   public KeyIterator getIterator() throws IOException {
     return new KeyIterator(reader);
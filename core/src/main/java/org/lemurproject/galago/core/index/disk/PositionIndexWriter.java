@@ -43,6 +43,12 @@ import java.io.OutputStream;
  * fast, and we don't need to read them all in order to recover the original
  * values.
  *
+ * Block maxima: if skipping is on and 'blockMax' is true, the maximum count of
+ * each skip block (the documents between two skip entries) is stored after the
+ * skip data. The final block (after the last skip entry) is also recorded, so
+ * there are numSkips + 1 values. This allows block-local score bounds
+ * (Block-Max WAND).
+ *
  * @author trevor, irmarc, sjh
  */
 @InputClass(className = "org.lemurproject.galago.core.types.NumberWordPosition", order = {"+word", "+document", "+position"})
@@ -64,6 +70,7 @@ public class PositionIndexWriter implements
   int options = 0;
   int skipDistance;
   int skipResetDistance;
+  boolean blockMax;
 
   /**
    * Creates a new create of the PositionIndexWriter.
@@ -82,7 +89,9 @@ public class PositionIndexWriter implements
     boolean skip = parameters.getJSON().get("skipping", true);
     skipDistance = (int) parameters.getJSON().get("skipDistance", 500);
     skipResetDistance = (int) parameters.getJSON().get("skipResetDistance", 20);
+    blockMax = skip && parameters.getJSON().get("blockMax", true);
     options |= (skip ? BTreeValueIterator.HAS_SKIPS : 0x0);
+    options |= (blockMax ? BTreeValueIterator.HAS_BLOCKMAX : 0x0);
     options |= BTreeValueIterator.HAS_MAXTF;
     options |= BTreeValueIterator.HAS_INLINING;
   }
@@ -176,6 +185,9 @@ public class PositionIndexWriter implements
     private long docsSinceLastSkip;
     private DiskSpillCompressedByteBuffer skips;
     private DiskSpillCompressedByteBuffer skipPositions;
+    // to support block-max bounds
+    private long blockMaximumPositionCount;
+    private DiskSpillCompressedByteBuffer blockMaxima;
 
     public PositionsList(byte[] word) {
       documents = new DiskSpillCompressedByteBuffer();
@@ -190,6 +202,12 @@ public class PositionIndexWriter implements
       } else {
         skips = null;
       }
+
+      if (skips != null && (options & BTreeValueIterator.HAS_BLOCKMAX) == BTreeValueIterator.HAS_BLOCKMAX) {
+        blockMaxima = new DiskSpillCompressedByteBuffer();
+      } else {
+        blockMaxima = null;
+      }
       
       this.word = word;
       this.lastDocument = 0;
@@ -206,6 +224,7 @@ public class PositionIndexWriter implements
         this.lastPositionSkip = 0;
         this.numSkips = 0;
       }
+      this.blockMaximumPositionCount = 0;
     }
 
     private void finishDocument() {
@@ -218,6 +237,7 @@ public class PositionIndexWriter implements
         }
         positions.add(positionBlock);
         maximumPositionCount = Math.max(maximumPositionCount, lastPositionCount);
+        blockMaximumPositionCount = Math.max(blockMaximumPositionCount, lastPositionCount);
       }
     }
     
@@ -230,12 +250,22 @@ public class PositionIndexWriter implements
     public void close() throws IOException {
       finishDocument();
 
+      // options are decided per list; the writer-wide value must not be modified here
+      int listOptions = options;
       if (skips != null && skips.length() == 0) {
         // not adding skip information b/c its empty
-        options &= (0xffff - BTreeValueIterator.HAS_SKIPS);
-        header.add(options);
+        listOptions &= (0xffff - BTreeValueIterator.HAS_SKIPS - BTreeValueIterator.HAS_BLOCKMAX);
+        header.add(listOptions);
       } else {
-        header.add(options);
+        header.add(listOptions);
+      }
+
+      boolean hasBlockMaxima = (listOptions & BTreeValueIterator.HAS_BLOCKMAX) == BTreeValueIterator.HAS_BLOCKMAX;
+      if (hasBlockMaxima) {
+        // the final block is not terminated by a skip entry
+        blockMaxima.add(blockMaximumPositionCount);
+      } else if (blockMaxima != null) {
+        blockMaxima.clear();
       }
 
       // Start with the inline length
@@ -257,6 +287,9 @@ public class PositionIndexWriter implements
         header.add(skips.length());
         header.add(skipPositions.length());
       }
+      if (hasBlockMaxima) {
+        header.add(blockMaxima.length());
+      }
     }
 
     /**
@@ -276,6 +309,9 @@ public class PositionIndexWriter implements
         listLength += skips.length();
         listLength += skipPositions.length();
       }
+      if (blockMaxima != null) {
+        listLength += blockMaxima.length();
+      }
 
       return listLength;
     }
@@ -305,6 +341,11 @@ public class PositionIndexWriter implements
         skipPositions.write(output);
         skipPositions.clear();
       }
+
+      if (blockMaxima != null && blockMaxima.length() > 0) {
+        blockMaxima.write(output);
+        blockMaxima.clear();
+      }
     }
 
     /**
@@ -381,6 +422,10 @@ public class PositionIndexWriter implements
           skipPositions.add(counts.length() - lastCountSkip);
           skipPositions.add((positions.length() - lastPositionSkip));
         }
+        if (blockMaxima != null) {
+          blockMaxima.add(blockMaximumPositionCount);
+          blockMaximumPositionCount = 0;
+        }
         numSkips++;
       }
     }
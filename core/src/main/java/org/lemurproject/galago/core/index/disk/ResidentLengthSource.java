@@ -0,0 +1,97 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.index.source.LengthSource;
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+
+/**
+ * A LengthSource over ResidentLengths. Only the cursor is per-source; the
+ * lengths themselves are shared, so these are cheap to create.
+ *
+ * Iteration semantics are the same as DiskLengthSource.
+ */
+final public class ResidentLengthSource implements LengthSource {
+
+  private final ResidentLengths lengths;
+  private final long firstDocument;
+  private final long lastDocument;
+  private long currDocument;
+  private boolean done;
+
+  public ResidentLengthSource(ResidentLengths lengths) {
+    this.lengths = lengths;
+    this.firstDocument = lengths.firstDocument();
+    this.lastDocument = lengths.lastDocument();
+    reset();
+  }
+
+  @Override
+  public void reset() {
+    this.currDocument = firstDocument;
+    this.done = (currDocument > lastDocument);
+  }
+
+  @Override
+  public boolean isDone() {
+    return done;
+  }
+
+  @Override
+  public boolean hasAllCandidates() {
+    return true;
+  }
+
+  @Override
+  public long totalEntries() {
+    return lengths.totalEntries();
+  }
+
+  @Override
+  public String key() {
+    return lengths.key();
+  }
+
+  @Override
+  public long currentCandidate() {
+    return currDocument;
+  }
+
+  @Override
+  public boolean hasMatch(long id) {
+    return !isDone() && currDocument == id;
+  }
+
+  @Override
+  public void movePast(long identifier) {
+    syncTo(identifier + 1);
+  }
+
+  @Override
+  public void syncTo(long identifier) {
+    // it's possible that the first document has zero length, and we may wish to sync to it.
+    if (identifier < firstDocument) {
+      return;
+    }
+    // we can't move past the last document
+    if (identifier > lastDocument) {
+      done = true;
+      identifier = lastDocument;
+    }
+    if (currDocument < identifier) {
+      currDocument = identifier;
+    }
+  }
+
+  @Override
+  public int length(long document) {
+    if (document == currDocument) {
+      return lengths.length(document);
+    }
+    return 0;
+  }
+
+  @Override
+  public FieldStatistics getStatistics() {
+    return lengths.getStatistics();
+  }
+}
@@ -0,0 +1,75 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+
+import java.io.IOException;
+
+/**
+ * A lengths list ('document' or a field) loaded entirely into memory.
+ *
+ * Instances are read-only, and are shared between all ResidentLengthSources
+ * of a DiskLengthsReader.
+ */
+public final class ResidentLengths {
+
+  private final String key;
+  private final FieldStatistics statistics;
+  private final long firstDocument;
+  private final long lastDocument;
+  private final int[] lengths;
+
+  private ResidentLengths(String key, FieldStatistics statistics, int[] lengths) {
+    this.key = key;
+    this.statistics = statistics;
+    this.firstDocument = statistics.firstDocId;
+    this.lastDocument = statistics.lastDocId;
+    this.lengths = lengths;
+  }
+
+  /**
+   * Reads every length in the source. The source is left at the end of the
+   * list.
+   */
+  public static ResidentLengths load(DiskLengthSource source) throws IOException {
+    long count = Math.max(0, source.lastDocument - source.firstDocument + 1);
+    if (count > Integer.MAX_VALUE) {
+      throw new IOException("Lengths list " + source.key() + " has too many documents (" + count + ") to be resident.");
+    }
+
+    int[] lengths = new int[(int) count];
+    source.readAllLengths(lengths);
+    return new ResidentLengths(source.key(), source.getStatistics(), lengths);
+  }
+
+  public String key() {
+    return key;
+  }
+
+  public long totalEntries() {
+    return statistics.documentCount;
+  }
+
+  public long firstDocument() {
+    return firstDocument;
+  }
+
+  public long lastDocument() {
+    return lastDocument;
+  }
+
+  /**
+   * Returns the length of this document, or zero if it is not in the list.
+   */
+  public int length(long document) {
+    if (document < firstDocument || document > lastDocument) {
+      return 0;
+    }
+    return lengths[(int) (document - firstDocument)];
+  }
+
+  public FieldStatistics getStatistics() {
+    // callers may modify the statistics object
+    return statistics.clone();
+  }
+}
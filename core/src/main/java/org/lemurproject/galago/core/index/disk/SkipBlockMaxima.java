@@ -0,0 +1,81 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.utility.buffer.DataStream;
+import org.lemurproject.galago.utility.buffer.VByteInput;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The per-skip-block maximum counts of a posting list (see PositionIndexWriter).
+ *
+ * Block i covers all documents after the last document of block i-1, up to and
+ * including the last document of block i. The final block is open ended.
+ *
+ * Lookups are expected to be (mostly) monotonic, so a cursor is kept, with a
+ * binary search fallback for backwards lookups.
+ */
+final class SkipBlockMaxima {
+
+  private final long[] lastDocuments;
+  private final int[] maximumCounts;
+  private int cursor;
+
+  private SkipBlockMaxima(long[] lastDocuments, int[] maximumCounts) {
+    this.lastDocuments = lastDocuments;
+    this.maximumCounts = maximumCounts;
+    this.cursor = 0;
+  }
+
+  /**
+   * Reads the tier 1 skip data (d-gapped document, d-gapped tier 2 offset) and
+   * the block maxima (numSkips + 1 values).
+   */
+  static SkipBlockMaxima read(DataStream skipStream, DataStream blockMaxStream, long numSkips) throws IOException {
+    VByteInput skips = new VByteInput(skipStream);
+    VByteInput maxima = new VByteInput(blockMaxStream);
+
+    int blocks = (int) numSkips + 1;
+    long[] lastDocuments = new long[blocks];
+    int[] maximumCounts = new int[blocks];
+
+    long document = 0;
+    for (int i = 0; i < numSkips; i++) {
+      document += skips.readLong();
+      skips.readLong(); // tier 2 offset is not needed
+      lastDocuments[i] = document;
+    }
+    lastDocuments[blocks - 1] = Long.MAX_VALUE;
+
+    for (int i = 0; i < blocks; i++) {
+      maximumCounts[i] = maxima.readInt();
+    }
+    return new SkipBlockMaxima(lastDocuments, maximumCounts);
+  }
+
+  /**
+   * Returns the last document of the block that would contain this document.
+   */
+  long blockLastDocument(long document) {
+    return lastDocuments[find(document)];
+  }
+
+  /**
+   * Returns the maximum count of the block that would contain this document.
+   */
+  int blockMaximumCount(long document) {
+    return maximumCounts[find(document)];
+  }
+
+  private int find(long document) {
+    if (cursor > 0 && lastDocuments[cursor - 1] >= document) {
+      int idx = Arrays.binarySearch(lastDocuments, 0, cursor, document);
+      cursor = (idx >= 0) ? idx : -(idx + 1);
+    }
+    while (lastDocuments[cursor] < document) {
+      cursor++;
+    }
+    return cursor;
+  }
+}
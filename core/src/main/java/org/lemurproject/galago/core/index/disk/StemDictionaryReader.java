@@ -0,0 +1,97 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.btree.format.BTreeFactory;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.KeyToListIterator;
+import org.lemurproject.galago.core.index.KeyValueReader;
+import org.lemurproject.galago.core.parse.stem.StemDictionary;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.btree.BTreeReader;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads a stem dictionary part (term -> stem, see StemDictionaryWriter).
+ *
+ * The dictionary is consulted by the stemmers of the index parts stemmed by
+ * the same stemmer class, so that query-time stemming is a lookup.
+ */
+public class StemDictionaryReader extends KeyValueReader implements StemDictionary {
+
+  private static final Logger logger = Logger.getLogger("StemDictionaryReader");
+
+  public StemDictionaryReader(String fileName) throws IOException {
+    super(BTreeFactory.getBTreeReader(fileName));
+  }
+
+  public StemDictionaryReader(BTreeReader r) {
+    super(r);
+  }
+
+  /**
+   * The class of the stemmer that produced the stems.
+   */
+  public String getStemmerClass() {
+    return getManifest().get("stemmer", "");
+  }
+
+  @Override
+  public String getStem(String term) {
+    try {
+      byte[] stem = reader.getValueBytes(ByteUtil.fromString(term));
+      return (stem == null) ? null : ByteUtil.toString(stem);
+    } catch (IOException e) {
+      // the stemmer falls back to stemming the term
+      logger.log(Level.WARNING, "Failed to read the stem of " + term, e);
+      return null;
+    }
+  }
+
+  @Override
+  public Map<String, NodeType> getNodeTypes() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public KeyIterator getIterator() throws IOException {
+    return new TermIterator(reader);
+  }
+
+  @Override
+  public BaseIterator getIterator(Node node) throws IOException {
+    throw new UnsupportedOperationException(
+            "Index doesn't support operator: " + node.getOperator());
+  }
+
+  public static class TermIterator extends KeyValueReader.KeyValueIterator {
+
+    public TermIterator(BTreeReader reader) throws IOException {
+      super(reader);
+    }
+
+    @Override
+    public String getKeyString() {
+      return ByteUtil.toString(getKey());
+    }
+
+    @Override
+    public String getValueString() throws IOException {
+      return ByteUtil.toString(getValueBytes());
+    }
+
+    @Override
+    public KeyToListIterator getValueIterator() throws IOException {
+      throw new UnsupportedOperationException("A stem dictionary has no value iterators.");
+    }
+  }
+}
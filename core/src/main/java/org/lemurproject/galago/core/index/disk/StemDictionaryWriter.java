@@ -0,0 +1,71 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.btree.format.TupleflowDiskBTreeWriter;
+import org.lemurproject.galago.core.index.merge.StemDictionaryMerger;
+import org.lemurproject.galago.core.types.KeyValuePair;
+import org.lemurproject.galago.tupleflow.InputClass;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+import org.lemurproject.galago.tupleflow.execution.ErrorStore;
+import org.lemurproject.galago.tupleflow.execution.Verified;
+import org.lemurproject.galago.utility.btree.GenericElement;
+
+import java.io.IOException;
+
+/**
+ * Writes a stem dictionary part: a B-tree of term -> stem, for each term seen
+ * while parsing the collection. The 'stemmer' parameter names the stemmer
+ * class; index parts stemmed by that class look terms up in the dictionary
+ * (see DiskIndex).
+ */
+@Verified
+@InputClass(className = "org.lemurproject.galago.core.types.KeyValuePair", order = {"+key", "+value"})
+public class StemDictionaryWriter implements KeyValuePair.KeyValueOrder.ShreddedProcessor {
+
+  private TupleflowDiskBTreeWriter writer;
+  private byte[] term = null;
+  private boolean written = false;
+
+  public StemDictionaryWriter(TupleFlowParameters parameters) throws IOException {
+    writer = new TupleflowDiskBTreeWriter(parameters);
+    writer.getManifest().set("readerClass", StemDictionaryReader.class.getName());
+    writer.getManifest().set("writerClass", getClass().getName());
+    writer.getManifest().set("mergerClass", StemDictionaryMerger.class.getName());
+  }
+
+  @Override
+  public void processKey(byte[] key) throws IOException {
+    term = key;
+    written = false;
+  }
+
+  @Override
+  public void processValue(byte[] value) throws IOException {
+    // a term has one stem
+    if (!written) {
+      writer.add(new GenericElement(term, value));
+      written = true;
+    }
+  }
+
+  @Override
+  public void processTuple() throws IOException {
+    // pass - repeated values are discarded
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+
+  public static void verify(TupleFlowParameters parameters, ErrorStore store) {
+    if (!parameters.getJSON().isString("filename")) {
+      store.addError("StemDictionaryWriter requires a 'filename' parameter.");
+    }
+    if (!parameters.getJSON().isString("stemmer")) {
+      store.addError("StemDictionaryWriter requires a 'stemmer' parameter.");
+    }
+  }
+}
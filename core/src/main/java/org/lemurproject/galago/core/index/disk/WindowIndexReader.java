@@ -7,6 +7,7 @@ import java.util.Map;
 
 import org.lemurproject.galago.utility.btree.BTreeIterator;
 import org.lemurproject.galago.utility.btree.BTreeReader;
+import org.lemurproject.galago.core.index.StemmedIndexPart;
 import org.lemurproject.galago.core.index.KeyListReader;
 import org.lemurproject.galago.core.index.stats.AggregateIndexPart;
 import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
@@ -27,7 +28,7 @@ import org.lemurproject.galago.utility.Parameters;
  *
  * @author sjh, irmarc,
  */
-public class WindowIndexReader extends KeyListReader implements AggregateIndexPart {
+public class WindowIndexReader extends KeyListReader implements AggregateIndexPart, StemmedIndexPart {
 
   Stemmer stemmer;
 
@@ -41,6 +42,11 @@ public class WindowIndexReader extends KeyListReader implements AggregateIndexPa
     stemmer = Stemmer.create(reader.getManifest());
   }
 
+  @Override
+  public Stemmer getStemmer() {
+    return stemmer;
+  }
+
   @Override
   public KeyIterator getIterator() throws IOException {
     return new KeyIterator(reader);
@@ -72,6 +72,8 @@ public class GeometricIndex implements DynamicIndex, Index {
   private final GeometricPartitions geometricParts;
   private int indexBlockCount;
   public long globalDocumentCount;
+  // incremented for every change to the contents of the index
+  private volatile long version = 0;
   // checkpoint data
   private CheckPointHandler checkpointer;
   private String lastAddedDocumentIdentifier = "";
@@ -114,10 +116,16 @@ public class GeometricIndex implements DynamicIndex, Index {
     return shardDirectory;
   }  
   
+  @Override
+  public long getVersion() {
+    return version;
+  }
+
   @Override
   public void process(Document doc) throws IOException {
     currentMemoryIndex.process(doc);
     globalDocumentCount++; // now one higher than the document just processed
+    version++;
 
     lastAddedDocumentIdentifier = doc.name;
     lastAddedDocumentNumber = globalDocumentCount;
@@ -323,6 +331,7 @@ public class GeometricIndex implements DynamicIndex, Index {
    * 
    */
   private void updateIndex() throws IOException {
+    version++;
     // maintain the document store (corpus) - if there is one
     if (currentMemoryIndex.containsPart("corpus")) {
       // get all corpora + shove into document store
@@ -83,16 +83,7 @@ public class MemoryCountIndex implements MemoryIndexPart, AggregateIndexPart {
 
     // if  we have not already cached this data
     if (!postings.containsKey(key)) {
-      PostingList postingList = new PostingList(key);
-      ScoringContext sc = new ScoringContext();
-      CountIterator mi = (CountIterator) iterator;
-      while (!mi.isDone()) {
-        long document = mi.currentCandidate();
-        sc.document = document;
-        int count = mi.count(sc);
-        postingList.add(document, count);
-        mi.movePast(document);
-      }
+      PostingList postingList = buildPostingList(key, (CountIterator) iterator);
 
       // specifically wait until we have finished building the posting list to add it
       //  - we do not want to search partial data.
@@ -105,6 +96,22 @@ public class MemoryCountIndex implements MemoryIndexPart, AggregateIndexPart {
     vocabCount = postings.size();
   }
 
+  /**
+   * Reads all counts from the iterator into a new posting list.
+   */
+  public static PostingList buildPostingList(byte[] key, CountIterator iterator) throws IOException {
+    PostingList postingList = new PostingList(key);
+    ScoringContext sc = new ScoringContext();
+    while (!iterator.isDone()) {
+      long document = iterator.currentCandidate();
+      sc.document = document;
+      int count = iterator.count(sc);
+      postingList.add(document, count);
+      iterator.movePast(document);
+    }
+    return postingList;
+  }
+
   @Override
   public void removeIteratorData(byte[] key) throws IOException {
     postings.remove(key);
@@ -284,6 +291,13 @@ public class MemoryCountIndex implements MemoryIndexPart, AggregateIndexPart {
       return lastDocument;
     }
 
+    /**
+     * Approximate size of the encoded data in bytes.
+     */
+    public long byteLength() {
+      return key.length + documents_cbb.length() + counts_cbb.length();
+    }
+
     public int lastCount() {
       return lastCount;
     }
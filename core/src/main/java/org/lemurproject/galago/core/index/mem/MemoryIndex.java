@@ -138,6 +138,11 @@ public class MemoryIndex implements DynamicIndex, Index {
     return (documentCount - documentNumberOffset);
   }
 
+  @Override
+  public long getVersion() {
+    return documentCount;
+  }
+
   @Override
   public void process(Document doc) throws IOException {
     if (tokenizer != null){
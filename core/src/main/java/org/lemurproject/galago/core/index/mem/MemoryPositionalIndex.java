@@ -296,6 +296,13 @@ public class MemoryPositionalIndex implements MemoryIndexPart, AggregateIndexPar
       return key;
     }
 
+    /**
+     * Number of bytes in the compressed document, count and position buffers.
+     */
+    public long byteLength() {
+      return documents_cbb.length() + counts_cbb.length() + positions_cbb.length();
+    }
+
     public byte[] getDocumentDataBytes() {
       return documents_cbb.getBytes();
     }
@@ -0,0 +1,171 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.mem;
+
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.types.DocumentSplit;
+import org.lemurproject.galago.core.util.DocumentSplitFactory;
+import org.lemurproject.galago.tupleflow.InputClass;
+import org.lemurproject.galago.tupleflow.OutputClass;
+import org.lemurproject.galago.tupleflow.StandardStep;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+import org.lemurproject.galago.tupleflow.execution.ErrorStore;
+import org.lemurproject.galago.tupleflow.execution.Verification;
+import org.lemurproject.galago.tupleflow.execution.Verified;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+
+/**
+ * Inverts documents in memory (SPIMI), instead of emitting one
+ * NumberWordPosition tuple per token for a global sort.
+ *
+ * Postings are accumulated in compressed per-term lists (see
+ * MemoryPositionalIndex). When the lists exceed 'memoryLimit' bytes, or when
+ * document numbers stop increasing (a new input split), they are written to a
+ * partial postings part in a new directory under 'spillPath'. One DocumentSplit
+ * is emitted per partial index; IndexPartMergeManager merges them into the
+ * final part.
+ *
+ * Positions are token offsets, as in NumberedPostingsPositionExtractor.
+ */
+@Verified
+@InputClass(className = "org.lemurproject.galago.core.parse.Document")
+@OutputClass(className = "org.lemurproject.galago.core.types.DocumentSplit")
+public class MemoryPostingsInverter extends StandardStep<Document, DocumentSplit> {
+
+  public static final String PART = "postings";
+  public static final long DEFAULT_MEMORY_LIMIT = 256L * 1024 * 1024;
+  private static final Logger logger = Logger.getLogger(MemoryPostingsInverter.class.getName());
+
+  private final File spillPath;
+  private final long memoryLimit;
+  private final Parameters partParameters;
+  private PartialIndex partial = null;
+  private long lastDocument = -1;
+  private int spillCount = 0;
+
+  public MemoryPostingsInverter(TupleFlowParameters parameters) {
+    Parameters p = parameters.getJSON();
+    spillPath = new File(p.getString("spillPath"));
+    memoryLimit = p.get("memoryLimit", DEFAULT_MEMORY_LIMIT);
+
+    partParameters = Parameters.create();
+    partParameters.set("skipping", p.get("skipping", true));
+    partParameters.set("skipDistance", p.get("skipDistance", 500L));
+    if (p.isString("stemmer")) {
+      partParameters.set("stemmer", p.getString("stemmer"));
+    }
+  }
+
+  @Override
+  public void process(Document doc) throws IOException {
+    // partial lists must be in document order
+    if (doc.identifier <= lastDocument) {
+      spill();
+    }
+    if (partial == null) {
+      try {
+        partial = new PartialIndex(partParameters.clone());
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+
+    partial.add(doc);
+    lastDocument = doc.identifier;
+
+    if (partial.bufferedBytes > memoryLimit) {
+      spill();
+    }
+  }
+
+  private void spill() throws IOException {
+    if (partial == null || partial.getDocumentCount() == 0) {
+      partial = null;
+      return;
+    }
+
+    if (!spillPath.isDirectory() && !spillPath.mkdirs() && !spillPath.isDirectory()) {
+      throw new IOException("Unable to create spill directory: " + spillPath);
+    }
+    File directory = Files.createTempDirectory(spillPath.toPath(), "partial-").toFile();
+    logger.info("Writing " + partial.getDocumentCount() + " documents ("
+            + partial.bufferedBytes + " bytes) to " + directory);
+    partial.flushToDisk(new File(directory, PART).getAbsolutePath());
+    partial.close();
+    partial = null;
+    lastDocument = -1;
+
+    processor.process(DocumentSplitFactory.numberedFile(directory.getAbsolutePath(), spillCount, 0));
+    spillCount++;
+  }
+
+  @Override
+  public void close() throws IOException {
+    spill();
+    processor.close();
+  }
+
+  public static void verify(TupleFlowParameters parameters, ErrorStore store) {
+    if (!parameters.getJSON().isString("spillPath")) {
+      store.addError("MemoryPostingsInverter requires a 'spillPath' parameter.");
+      return;
+    }
+    Verification.requireWriteableDirectory(parameters.getJSON().getString("spillPath"), store);
+  }
+
+  /**
+   * A MemoryPositionalIndex that keeps track of the size of its buffers.
+   */
+  private static class PartialIndex extends MemoryPositionalIndex {
+
+    // rough per-list cost of the key, the list object and its three buffers
+    private static final int LIST_OVERHEAD = 192;
+    long bufferedBytes = 0;
+
+    PartialIndex(Parameters parameters) throws Exception {
+      super(parameters);
+    }
+
+    void add(Document doc) {
+      int posted = 0;
+      for (int i = 0; i < doc.terms.size(); i++) {
+        String term = doc.terms.get(i);
+        if (term == null) {
+          continue;
+        }
+        String stem = stemAsRequired(term);
+        if (stem != null) {
+          addPosting(ByteUtil.fromString(stem), doc.identifier, i);
+          posted++;
+        }
+      }
+
+      collectionDocumentCount += 1;
+      // stopped (null) terms keep their positions, but are not postings
+      collectionPostingsCount += posted;
+      vocabCount = postings.size();
+    }
+
+    @Override
+    protected void addPosting(byte[] byteWord, long document, int position) {
+      PositionalPostingList postingList = postings.get(byteWord);
+      if (postingList == null) {
+        postingList = new PositionalPostingList(byteWord);
+        postings.put(byteWord, postingList);
+        bufferedBytes += byteWord.length + LIST_OVERHEAD;
+      }
+
+      long before = postingList.byteLength();
+      postingList.add(document, position);
+      bufferedBytes += postingList.byteLength() - before;
+
+      this.highestDocumentCount = Math.max(highestDocumentCount, postingList.termDocumentCount);
+      this.highestFrequency = Math.max(highestFrequency, postingList.termPostingsCount);
+    }
+  }
+}
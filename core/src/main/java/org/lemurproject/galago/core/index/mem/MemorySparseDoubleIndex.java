@@ -66,23 +66,7 @@ public class MemorySparseDoubleIndex implements MemoryIndexPart {
 
 
       ScoreIterator mi = (ScoreIterator) iterator;
-      ScoringContext c = new ScoringContext();
-      c.document = -1; // impossible document score - to extract defaulty score.
-
-      // note that dirichet should not have a static default score
-      //  -> this cache should not be used for dirichlet scores
-      double defaultScore = Utility.tinyLogProbScore;
-      PostingList postingList = new PostingList(key, defaultScore);
-
-      while (!mi.isDone()) {
-        long document = mi.currentCandidate();
-        c.document = document;
-        if (mi.hasMatch(c)) {
-          double score = mi.score(c);
-          postingList.add(document, score);
-        }
-        mi.movePast(document);
-      }
+      PostingList postingList = buildPostingList(key, mi);
 
       // specifically wait until we have finished building the posting list to add it
       //  - we do not want to search partial data.
@@ -92,6 +76,30 @@ public class MemorySparseDoubleIndex implements MemoryIndexPart {
     }
   }
 
+  /**
+   * Reads all scores from the iterator into a new posting list.
+   */
+  public static PostingList buildPostingList(byte[] key, ScoreIterator iterator) throws IOException {
+    ScoringContext c = new ScoringContext();
+    c.document = -1; // impossible document score - to extract defaulty score.
+
+    // note that dirichet should not have a static default score
+    //  -> this cache should not be used for dirichlet scores
+    double defaultScore = Utility.tinyLogProbScore;
+    PostingList postingList = new PostingList(key, defaultScore);
+
+    while (!iterator.isDone()) {
+      long document = iterator.currentCandidate();
+      c.document = document;
+      if (iterator.hasMatch(c)) {
+        double score = iterator.score(c);
+        postingList.add(document, score);
+      }
+      iterator.movePast(document);
+    }
+    return postingList;
+  }
+
   @Override
   public void removeIteratorData(byte[] key) throws IOException {
     postings.remove(key);
@@ -242,6 +250,13 @@ public class MemorySparseDoubleIndex implements MemoryIndexPart {
       return lastDocument;
     }
 
+    /**
+     * Approximate size of the encoded data in bytes.
+     */
+    public long byteLength() {
+      return key.length + documents_cbb.length() + scores_cbb.length();
+    }
+
     public long postingCount() {
       return termPostingsCount;
     }
@@ -83,25 +83,31 @@ public class MemoryWindowIndex implements MemoryIndexPart, AggregateIndexPart {
       return;
     }
 
+    WindowPostingList postingList = buildPostingList(key, (ExtentIterator) iterator);
+    postings.put(key, postingList);
+
+    this.highestDocumentCount = Math.max(highestDocumentCount, postingList.termDocumentCount);
+    this.highestFrequency = Math.max(highestFrequency, postingList.termWindowCount);
+    this.vocabCount = postings.size();
+  }
+
+  /**
+   * Reads all extents from the iterator into a new posting list.
+   */
+  public static WindowPostingList buildPostingList(byte[] key, ExtentIterator iterator) throws IOException {
     WindowPostingList postingList = new WindowPostingList(key);
-    ExtentIterator mi = (ExtentIterator) iterator;
     ScoringContext sc = new ScoringContext();
-    while (!mi.isDone()) {
-      long document = mi.currentCandidate();
+    while (!iterator.isDone()) {
+      long document = iterator.currentCandidate();
       sc.document = document;
-      ExtentArrayIterator ei = new ExtentArrayIterator(mi.extents(sc));
+      ExtentArrayIterator ei = new ExtentArrayIterator(iterator.extents(sc));
       while (!ei.isDone()) {
         postingList.add(document, ei.currentBegin(), ei.currentEnd());
         ei.next();
       }
-      mi.movePast(document);
+      iterator.movePast(document);
     }
-
-    postings.put(key, postingList);
-
-    this.highestDocumentCount = Math.max(highestDocumentCount, postingList.termDocumentCount);
-    this.highestFrequency = Math.max(highestFrequency, postingList.termWindowCount);
-    this.vocabCount = postings.size();
+    return postingList;
   }
 
   @Override
@@ -303,6 +309,13 @@ public class MemoryWindowIndex implements MemoryIndexPart, AggregateIndexPart {
       return lastDocument;
     }
 
+    /**
+     * Approximate size of the encoded data in bytes.
+     */
+    public long byteLength() {
+      return key.length + documents_cbb.length() + counts_cbb.length() + begins_cbb.length() + ends_cbb.length();
+    }
+
     public int lastCount() {
       return lastCount;
     }
@@ -5,6 +5,7 @@ import org.lemurproject.galago.core.index.disk.DiskLengthsWriter;
 import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.types.FieldLengthData;
+import org.lemurproject.galago.tupleflow.Order;
 import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 import org.lemurproject.galago.utility.CmpUtil;
@@ -92,4 +93,9 @@ public class DocumentLengthsMerger extends GenericIndexMerger<FieldLengthData> {
       return CmpUtil.compare(currentDocument, other.currentDocument);
     }
   }
+
+  @Override
+  public Order<FieldLengthData> getWriterOrder() {
+    return new FieldLengthData.FieldDocumentOrder();
+  }
 }
@@ -7,23 +7,39 @@ import org.lemurproject.galago.core.types.DocumentMappingData;
 import org.lemurproject.galago.tupleflow.TypeReader;
 import org.lemurproject.galago.tupleflow.Utility;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
  * Maps a docid key (bytes) to a new docid key (bytes)
  *
+ * The mapping either adds an increment to the documents of each index, which
+ * keeps their order, or reorders the documents (see DocumentReorderer): the
+ * i-th document of the new order is numbered i.
+ *
  * @author sjh
  */
 public class DocumentMappingReader {
 
   private HashMap<Integer, Long> indexIncrements = null;
+  // reordering
+  private HashMap<Integer, long[]> indexDocuments = null;
+  private int[] orderIndexIds = null;
+  private long[] orderDocuments = null;
 
   public DocumentMappingReader() {
     // this constructor creates a null mapping reader
     // --> docId is return unchanged.
   }
-  
+
   public DocumentMappingReader(TypeReader<DocumentMappingData> mappingDataStream) throws IOException {
     indexIncrements = new HashMap<>();
     DocumentMappingData dat;
@@ -32,8 +48,33 @@ public class DocumentMappingReader {
     }
   }
 
+  /**
+   * Creates a reordering mapping: the i-th document of the new order is
+   * document orderDocuments[i] of index orderIndexIds[i].
+   */
+  public DocumentMappingReader(int[] orderIndexIds, long[] orderDocuments) {
+    this.orderIndexIds = orderIndexIds;
+    this.orderDocuments = orderDocuments;
+    this.indexDocuments = new HashMap<>();
+    for (int i = 0; i < orderDocuments.length; i++) {
+      long[] documents = indexDocuments.get(orderIndexIds[i]);
+      if (documents == null || documents.length <= orderDocuments[i]) {
+        long[] grown = new long[(int) Math.max(orderDocuments[i] + 1, (documents == null) ? 1024 : documents.length * 2)];
+        Arrays.fill(grown, -1);
+        if (documents != null) {
+          System.arraycopy(documents, 0, grown, 0, documents.length);
+        }
+        documents = grown;
+        indexDocuments.put(orderIndexIds[i], documents);
+      }
+      documents[(int) orderDocuments[i]] = i;
+    }
+  }
+
   public long map(int indexId, long docId) {
-    if(indexIncrements != null){
+    if (indexDocuments != null) {
+      return indexDocuments.get(indexId)[(int) docId];
+    } else if(indexIncrements != null){
       return docId + indexIncrements.get(indexId);
     } else {
       return docId;
@@ -44,4 +85,60 @@ public class DocumentMappingReader {
     // TODO stop casting document to int
     return Utility.fromLong(this.map(indexId, Utility.toLong(keyBytes)));
   }
+
+  /**
+   * @return true if the mapping changes the order of the documents.
+   */
+  public boolean isReordering() {
+    return indexDocuments != null;
+  }
+
+  /**
+   * The number of documents of a reordering mapping.
+   */
+  public int getDocumentCount() {
+    return orderDocuments.length;
+  }
+
+  /**
+   * The index of the document numbered newDocId by a reordering mapping.
+   */
+  public int getOriginalIndexId(long newDocId) {
+    return orderIndexIds[(int) newDocId];
+  }
+
+  /**
+   * The original number of the document numbered newDocId by a reordering
+   * mapping.
+   */
+  public long getOriginalDocument(long newDocId) {
+    return orderDocuments[(int) newDocId];
+  }
+
+  /**
+   * Writes the order of a reordering mapping, to be read by
+   * readDocumentOrder.
+   */
+  public void writeDocumentOrder(File output) throws IOException {
+    try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+      stream.writeInt(orderDocuments.length);
+      for (int i = 0; i < orderDocuments.length; i++) {
+        stream.writeInt(orderIndexIds[i]);
+        stream.writeLong(orderDocuments[i]);
+      }
+    }
+  }
+
+  public static DocumentMappingReader readDocumentOrder(File input) throws IOException {
+    try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(input)))) {
+      int count = stream.readInt();
+      int[] indexIds = new int[count];
+      long[] documents = new long[count];
+      for (int i = 0; i < count; i++) {
+        indexIds[i] = stream.readInt();
+        documents[i] = stream.readLong();
+      }
+      return new DocumentMappingReader(indexIds, documents);
+    }
+  }
 }
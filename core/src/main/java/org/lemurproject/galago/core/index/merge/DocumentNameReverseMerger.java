@@ -4,6 +4,7 @@ package org.lemurproject.galago.core.index.merge;
 import org.lemurproject.galago.core.index.disk.DiskNameReverseReader;
 import org.lemurproject.galago.core.index.disk.DiskNameReverseWriter;
 import org.lemurproject.galago.core.types.DocumentNameId;
+import org.lemurproject.galago.tupleflow.Order;
 import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 import org.lemurproject.galago.utility.ByteUtil;
@@ -37,4 +38,9 @@ public class DocumentNameReverseMerger extends GenericIndexMerger<DocumentNameId
         long documentId = this.mappingReader.map(this.partIds.get(keyIterators.get(0)), i.getCurrentIdentifier());
         this.writer.process(new DocumentNameId(ByteUtil.fromString(i.getCurrentName()), documentId));
     }
+
+    @Override
+    public Order<DocumentNameId> getWriterOrder() {
+        return new DocumentNameId.NameOrder();
+    }
 }
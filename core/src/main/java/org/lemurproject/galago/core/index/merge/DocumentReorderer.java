@@ -0,0 +1,344 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.merge;
+
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.corpus.DocumentReader;
+import org.lemurproject.galago.core.index.disk.DiskIndex;
+import org.lemurproject.galago.core.index.disk.DiskNameReader;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Computes a new order for the documents of one or more indexes, applied by
+ * the part mergers through a reordering DocumentMappingReader. Similar
+ * documents are given close numbers, so the d-gaps of the posting lists are
+ * small, and the lists compress better.
+ *
+ * url: documents are sorted by their 'url' metadata (from the corpus part),
+ * or by name.
+ *
+ * bp: recursive graph bisection over the terms of the documents (read from the
+ * 'reorderPart' postings part, default 'postings'), starting from the url
+ * order. Each bisection swaps documents between the two halves while this
+ * reduces the estimated cost of the d-gaps of the terms.
+ */
+public class DocumentReorderer {
+
+  private static final Logger logger = Logger.getLogger("DocumentReorderer");
+
+  // all documents, in their current (working) order
+  int[] indexIds;
+  long[] documents;
+  String[] urls;
+  // bp: terms of each document (CSR)
+  int[] termOffsets;
+  int[] terms;
+  int termCount;
+
+  private DocumentReorderer() {
+  }
+
+  /**
+   * @param indexPaths the input indexes; the index id of an index is its
+   * position in the list (as assigned by IndexNumberer).
+   */
+  public static DocumentMappingReader computeOrder(List<String> indexPaths, Parameters p) throws IOException {
+    String method = p.get("reorderDocuments", "bp");
+    if (!method.equals("url") && !method.equals("bp")) {
+      throw new IllegalArgumentException("reorderDocuments should be url or bp, not: " + method);
+    }
+
+    DocumentReorderer reorderer = new DocumentReorderer();
+    reorderer.readDocuments(indexPaths);
+    reorderer.sortByUrl();
+    if (method.equals("bp")) {
+      reorderer.readTerms(indexPaths, p.get("reorderPart", "postings"), (int) p.get("bpMinDocumentFrequency", 2L));
+      int[] order = new int[reorderer.documents.length];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+      reorderer.bisect(order, 0, order.length, 0,
+              (int) p.get("bpIterations", 20L), (int) p.get("bpMaxDepth", 32L), (int) p.get("bpLeafSize", 16L));
+      reorderer.permute(order);
+    }
+    return new DocumentMappingReader(reorderer.indexIds, reorderer.documents);
+  }
+
+  private void readDocuments(List<String> indexPaths) throws IOException {
+    int count = 0;
+    for (String indexPath : indexPaths) {
+      IndexPartReader names = DiskIndex.openIndexPart(indexPath + File.separator + "names");
+      count += (int) names.getManifest().getLong("keyCount");
+      names.close();
+    }
+    indexIds = new int[count];
+    documents = new long[count];
+    urls = new String[count];
+
+    int i = 0;
+    for (int indexId = 0; indexId < indexPaths.size(); indexId++) {
+      String indexPath = indexPaths.get(indexId);
+      DiskNameReader names = (DiskNameReader) DiskIndex.openIndexPart(indexPath + File.separator + "names");
+      HashMap<Long, Integer> positions = new HashMap<>();
+      DiskNameReader.KeyIterator iterator = names.getIterator();
+      while (!iterator.isDone()) {
+        indexIds[i] = indexId;
+        documents[i] = iterator.getCurrentIdentifier();
+        urls[i] = iterator.getCurrentName();
+        positions.put(documents[i], i);
+        i++;
+        iterator.nextKey();
+      }
+      names.close();
+
+      // prefer the url of the document
+      File corpus = new File(indexPath, "corpus");
+      if (corpus.exists()) {
+        DocumentReader reader = (DocumentReader) DiskIndex.openIndexPart(corpus.getAbsolutePath());
+        DocumentReader.DocumentIterator documentIterator = (DocumentReader.DocumentIterator) reader.getIterator();
+        DocumentComponents metadataOnly = new DocumentComponents(false, true, false);
+        while (!documentIterator.isDone()) {
+          Document document = documentIterator.getDocument(metadataOnly);
+          Integer position = positions.get(document.identifier);
+          if (position != null && document.metadata.containsKey("url")) {
+            urls[position] = document.metadata.get("url");
+          }
+          documentIterator.nextKey();
+        }
+        reader.close();
+      }
+    }
+  }
+
+  private void sortByUrl() {
+    Integer[] order = new Integer[documents.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> {
+      int c = urls[a].compareTo(urls[b]);
+      return (c != 0) ? c : Integer.compare(a, b);
+    });
+    int[] permutation = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      permutation[i] = order[i];
+    }
+    permute(permutation);
+  }
+
+  /**
+   * Applies a permutation: the i-th document becomes the order[i]-th.
+   */
+  private void permute(int[] order) {
+    int[] newIndexIds = new int[order.length];
+    long[] newDocuments = new long[order.length];
+    String[] newUrls = new String[order.length];
+    for (int i = 0; i < order.length; i++) {
+      newIndexIds[i] = indexIds[order[i]];
+      newDocuments[i] = documents[order[i]];
+      newUrls[i] = urls[order[i]];
+    }
+    indexIds = newIndexIds;
+    documents = newDocuments;
+    urls = newUrls;
+  }
+
+  /**
+   * Reads the terms of each document from the postings part of each index.
+   * Terms of fewer than minDocumentFrequency documents can not reduce d-gaps,
+   * and are ignored.
+   */
+  private void readTerms(List<String> indexPaths, String part, int minDocumentFrequency) throws IOException {
+    HashMap<Integer, HashMap<Long, Integer>> positions = new HashMap<>();
+    for (int i = 0; i < documents.length; i++) {
+      positions.computeIfAbsent(indexIds[i], k -> new HashMap<>()).put(documents[i], i);
+    }
+
+    // first pass counts the terms of each document, second pass fills them in
+    HashMap<String, Integer> termIds = new HashMap<>();
+    int[] documentTerms = new int[documents.length];
+    for (int pass = 0; pass < 2; pass++) {
+      if (pass == 1) {
+        termOffsets = new int[documents.length + 1];
+        for (int i = 0; i < documents.length; i++) {
+          termOffsets[i + 1] = termOffsets[i] + documentTerms[i];
+        }
+        terms = new int[termOffsets[documents.length]];
+        Arrays.fill(documentTerms, 0);
+      }
+      for (int indexId = 0; indexId < indexPaths.size(); indexId++) {
+        HashMap<Long, Integer> indexPositions = positions.get(indexId);
+        if (indexPositions == null) {
+          continue;
+        }
+        IndexPartReader reader = DiskIndex.openIndexPart(indexPaths.get(indexId) + File.separator + part);
+        KeyIterator keys = reader.getIterator();
+        while (!keys.isDone()) {
+          CountIterator iterator = (CountIterator) keys.getValueIterator();
+          if (iterator.totalEntries() >= minDocumentFrequency) {
+            int termId = termIds.computeIfAbsent(ByteUtil.toString(keys.getKey()), k -> termIds.size());
+            while (!iterator.isDone()) {
+              Integer position = indexPositions.get(iterator.currentCandidate());
+              if (position != null) {
+                if (pass == 1) {
+                  terms[termOffsets[position] + documentTerms[position]] = termId;
+                }
+                documentTerms[position]++;
+              }
+              iterator.movePast(iterator.currentCandidate());
+            }
+          }
+          keys.nextKey();
+        }
+        reader.close();
+      }
+    }
+    termCount = termIds.size();
+    logger.info("Reordering " + documents.length + " documents, using " + termCount + " terms.");
+  }
+
+  // bp: term degrees in the two halves of the current bisection
+  private int[] leftDegrees;
+  private int[] rightDegrees;
+  private float[] leftGains;
+  private float[] rightGains;
+
+  /**
+   * Bisects order[begin, end), then each half, until the parts have leafSize
+   * documents or maxDepth is reached.
+   */
+  private void bisect(int[] order, int begin, int end, int depth, int iterations, int maxDepth, int leafSize) {
+    if (end - begin <= leafSize || depth >= maxDepth) {
+      return;
+    }
+    if (leftDegrees == null) {
+      leftDegrees = new int[termCount];
+      rightDegrees = new int[termCount];
+      leftGains = new float[termCount];
+      rightGains = new float[termCount];
+    }
+
+    int middle = (begin + end) >>> 1;
+    for (int i = begin; i < end; i++) {
+      int[] degrees = (i < middle) ? leftDegrees : rightDegrees;
+      for (int t = termOffsets[order[i]]; t < termOffsets[order[i] + 1]; t++) {
+        degrees[terms[t]]++;
+      }
+    }
+
+    long[] leftMoves = new long[middle - begin];
+    long[] rightMoves = new long[end - middle];
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      computeTermGains(order, begin, end, middle - begin, end - middle);
+      for (int i = begin; i < middle; i++) {
+        leftMoves[i - begin] = sortKey(documentGain(order[i], leftGains), order[i]);
+      }
+      for (int i = middle; i < end; i++) {
+        rightMoves[i - middle] = sortKey(documentGain(order[i], rightGains), order[i]);
+      }
+      // best moves first
+      Arrays.sort(leftMoves);
+      Arrays.sort(rightMoves);
+
+      int swaps = 0;
+      for (int i = 0; i < leftMoves.length && i < rightMoves.length; i++) {
+        int left = (int) leftMoves[i];
+        int right = (int) rightMoves[i];
+        if (documentGain(left, leftGains) + documentGain(right, rightGains) <= 0) {
+          break;
+        }
+        moveTerms(left, leftDegrees, rightDegrees);
+        moveTerms(right, rightDegrees, leftDegrees);
+        leftMoves[i] = right;
+        rightMoves[i] = left;
+        swaps++;
+      }
+      for (int i = 0; i < leftMoves.length; i++) {
+        order[begin + i] = (int) leftMoves[i];
+      }
+      for (int i = 0; i < rightMoves.length; i++) {
+        order[middle + i] = (int) rightMoves[i];
+      }
+      if (swaps == 0) {
+        break;
+      }
+    }
+
+    // reset the degrees for the next bisection
+    for (int i = begin; i < end; i++) {
+      for (int t = termOffsets[order[i]]; t < termOffsets[order[i] + 1]; t++) {
+        leftDegrees[terms[t]] = 0;
+        rightDegrees[terms[t]] = 0;
+      }
+    }
+
+    bisect(order, begin, middle, depth + 1, iterations, maxDepth, leafSize);
+    bisect(order, middle, end, depth + 1, iterations, maxDepth, leafSize);
+  }
+
+  /**
+   * The gain of moving a document that contains the term to the other half,
+   * for the terms of order[begin, end).
+   */
+  private void computeTermGains(int[] order, int begin, int end, int leftSize, int rightSize) {
+    for (int i = begin; i < end; i++) {
+      for (int t = termOffsets[order[i]]; t < termOffsets[order[i] + 1]; t++) {
+        int term = terms[t];
+        int l = leftDegrees[term];
+        int r = rightDegrees[term];
+        double cost = gapCost(l, leftSize) + gapCost(r, rightSize);
+        leftGains[term] = (float) (cost - gapCost(l - 1, leftSize) - gapCost(r + 1, rightSize));
+        rightGains[term] = (float) (cost - gapCost(l + 1, leftSize) - gapCost(r - 1, rightSize));
+      }
+    }
+  }
+
+  /**
+   * The estimated size of the d-gaps of a term with degree documents in a
+   * part of size documents.
+   */
+  private static double gapCost(int degree, int size) {
+    return (degree <= 0) ? 0.0 : degree * log2((double) size / (degree + 1));
+  }
+
+  private static double log2(double x) {
+    return Math.log(x) / Math.log(2);
+  }
+
+  private float documentGain(int document, float[] gains) {
+    float gain = 0;
+    for (int t = termOffsets[document]; t < termOffsets[document + 1]; t++) {
+      gain += gains[terms[t]];
+    }
+    return gain;
+  }
+
+  private void moveTerms(int document, int[] from, int[] to) {
+    for (int t = termOffsets[document]; t < termOffsets[document + 1]; t++) {
+      from[terms[t]]--;
+      to[terms[t]]++;
+    }
+  }
+
+  /**
+   * Packs a gain and a document into a long that sorts by decreasing gain.
+   */
+  private static long sortKey(float gain, int document) {
+    int bits = Float.floatToIntBits(-gain);
+    bits ^= (bits >> 31) & 0x7fffffff;
+    return ((long) bits << 32) | (document & 0xffffffffL);
+  }
+}
@@ -3,16 +3,26 @@ package org.lemurproject.galago.core.index.merge;
 
 import org.lemurproject.galago.core.index.IndexPartReader;
 import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.tupleflow.Order;
 import org.lemurproject.galago.tupleflow.Processor;
+import org.lemurproject.galago.tupleflow.Sorter;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+import org.lemurproject.galago.tupleflow.Utility;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.PriorityQueue;
 
 /**
+ * Merges one part of several indexes, mapping the document numbers.
+ *
+ * If the mapping reorders the documents, parts keyed by document are merged
+ * in the new document order, and the output of other parts is sorted into the
+ * input order of the writer (getWriterOrder).
  *
  * @author sjh
  */
@@ -35,6 +45,13 @@ public abstract class GenericIndexMerger<T> {
 
   public void setDocumentMapping(DocumentMappingReader mappingReader) {
     this.mappingReader = mappingReader;
+    if (mappingReader.isReordering() && !mappingKeys()) {
+      Order<T> order = getWriterOrder();
+      if (order == null) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can not reorder documents.");
+      }
+      writer = new Sorter<>(order, null, writer);
+    }
   }
 
   // this requires that the mappingReader has been set.
@@ -51,6 +68,11 @@ public abstract class GenericIndexMerger<T> {
   }
 
   public void performKeyMerge() throws IOException {
+    if (mappingKeys() && mappingReader != null && mappingReader.isReordering()) {
+      performReorderedKeyMerge();
+      return;
+    }
+
     ArrayList<KeyIteratorWrapper> head = new ArrayList<KeyIteratorWrapper>();
     while (!queue.isEmpty()) {
       head.clear();
@@ -72,10 +94,39 @@ public abstract class GenericIndexMerger<T> {
     }
   }
 
+  /**
+   * Visits the documents in their new order, finding each one in its input.
+   */
+  private void performReorderedKeyMerge() throws IOException {
+    HashMap<Integer, KeyIteratorWrapper> inputs = new HashMap<>();
+    for (KeyIteratorWrapper w : partIds.keySet()) {
+      inputs.put(partIds.get(w), w);
+    }
+
+    for (long document = 0; document < mappingReader.getDocumentCount(); document++) {
+      KeyIteratorWrapper input = inputs.get(mappingReader.getOriginalIndexId(document));
+      if (input == null) {
+        continue;
+      }
+      byte[] originalKey = Utility.fromLong(mappingReader.getOriginalDocument(document));
+      if (input.iterator.findKey(originalKey) && Arrays.equals(originalKey, input.iterator.getKey())) {
+        performValueMerge(Utility.fromLong(document), Collections.singletonList(input));
+      }
+    }
+  }
+
   public void close() throws IOException {
     writer.close();
   }
 
+  /**
+   * The order of the tuples expected by the writer, used to sort the output
+   * when documents are reordered. Parts keyed by document do not need one.
+   */
+  public Order<T> getWriterOrder() {
+    return null;
+  }
+
   // returns a boolean value that indicates if the index key is to be mapped
   public abstract boolean mappingKeys();
   
@@ -6,7 +6,9 @@ package org.lemurproject.galago.core.index.merge;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.lemurproject.galago.core.index.disk.DiskIndex;
@@ -19,8 +21,15 @@ import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 import org.lemurproject.galago.tupleflow.TypeReader;
 import org.lemurproject.galago.tupleflow.execution.Verified;
+import org.lemurproject.galago.utility.FSUtil;
 
 /**
+ * Merges one part of several indexes.
+ *
+ * If 'deleteInputs' is true, the input index folders are deleted once the
+ * merge has completed (used to merge the partial indexes of a build).
+ * If 'mergerClass' is set, it is used instead of the merger of the inputs, to
+ * write the merged part in another format.
  *
  * @author sjh
  */
@@ -34,13 +43,22 @@ public class IndexPartMergeManager implements Processor<DocumentSplit> {
   HashMap<IndexPartReader, Integer> indexPartReaders = new HashMap();
   String mergerClassName = null;
   String writerClassName = null;
+  // optionally merges the inputs into a different format
+  String outputMergerClassName;
   DocumentMappingReader mappingData;
+  boolean deleteInputs;
+  List<String> inputFolders = new ArrayList<>();
 
   public IndexPartMergeManager(TupleFlowParameters parameters) throws IOException {
     this.parameters = parameters;
     part = parameters.getJSON().getString("part");
+    deleteInputs = parameters.getJSON().get("deleteInputs", false);
+    outputMergerClassName = parameters.getJSON().get("mergerClass", (String) null);
 
-    if (parameters.getJSON().containsKey("mappingDataStream")) {
+    if (parameters.getJSON().isString("documentOrder")) {
+      // the documents are reordered (see DocumentReorderer)
+      mappingData = DocumentMappingReader.readDocumentOrder(new File(parameters.getJSON().getString("documentOrder")));
+    } else if (parameters.getJSON().containsKey("mappingDataStream")) {
       String mappingDataStreamName = parameters.getJSON().get("mappingDataStream", "");
       TypeReader mappingDataStream = parameters.getTypeReader(mappingDataStreamName);
       mappingData = new DocumentMappingReader(mappingDataStream);
@@ -52,9 +70,11 @@ public class IndexPartMergeManager implements Processor<DocumentSplit> {
 
   public void process(DocumentSplit index) throws IOException {
     IndexPartReader reader = DiskIndex.openIndexPart(index.fileName + File.separator + part);
-    
+    inputFolders.add(index.fileName);
+
     // do not worry about empty files
     if(reader.getManifest().get("emptyIndexFile", false)){
+      reader.close();
       return;
     }
 
@@ -64,6 +84,10 @@ public class IndexPartMergeManager implements Processor<DocumentSplit> {
     if (mergerClassName == null) {
       mergerClassName = reader.getManifest().getString("mergerClass");
       writerClassName = reader.getManifest().getString("writerClass");
+      // the merged part is stemmed by the same stemmer
+      if (reader.getManifest().isString("stemmer") && !parameters.getJSON().containsKey("stemmer")) {
+        parameters.getJSON().set("stemmer", reader.getManifest().getString("stemmer"));
+      }
     } else {
       assert (mergerClassName.equals(reader.getManifest().getString("mergerClass"))) : "mergeClass attributes are inconsistent.";
       assert (writerClassName.equals(reader.getManifest().getString("writerClass"))) : "writerClass attributes are inconsistent.";
@@ -74,13 +98,14 @@ public class IndexPartMergeManager implements Processor<DocumentSplit> {
 
   public void close() throws IOException {
     if(indexPartReaders.isEmpty()){
+      deleteInputs();
       return;
     }
     
     try {
       parameters.getJSON().set("writerClass", writerClassName);
       parameters.getJSON().copyFrom( partStats.toParameters() );
-      Class m = Class.forName(mergerClassName);
+      Class m = Class.forName((outputMergerClassName != null) ? outputMergerClassName : mergerClassName);
       Constructor c = m.getConstructor(TupleFlowParameters.class);
 
       GenericIndexMerger merger = (GenericIndexMerger) c.newInstance(parameters);
@@ -94,6 +119,27 @@ public class IndexPartMergeManager implements Processor<DocumentSplit> {
       Logger.getLogger(IndexPartMergeManager.class.getName()).log(Level.SEVERE, "Errored Merging Part: " + part, ex);
       throw new IOException(ex);
     }
+
+    for (IndexPartReader reader : indexPartReaders.keySet()) {
+      reader.close();
+    }
+    deleteInputs();
+  }
+
+  private void deleteInputs() throws IOException {
+    if (!deleteInputs) {
+      return;
+    }
+    for (String folder : inputFolders) {
+      File input = new File(folder);
+      FSUtil.deleteDirectory(input);
+      // remove the enclosing spill folder once it is empty
+      File parent = input.getParentFile();
+      String[] remaining = (parent == null) ? null : parent.list();
+      if (remaining != null && remaining.length == 0) {
+        parent.delete();
+      }
+    }
   }
 
   private void mergeStatistics(Parameters manifest) {
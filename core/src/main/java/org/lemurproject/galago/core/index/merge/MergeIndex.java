@@ -7,6 +7,7 @@ import org.lemurproject.galago.core.index.disk.DiskIndex;
 import org.lemurproject.galago.utility.tools.AppFunction;
 import org.lemurproject.galago.core.types.DocumentMappingData;
 import org.lemurproject.galago.core.types.DocumentSplit;
+import org.lemurproject.galago.tupleflow.FileUtility;
 import org.lemurproject.galago.tupleflow.TupleflowAppUtil;
 import org.lemurproject.galago.utility.Parameters;
 import org.lemurproject.galago.tupleflow.execution.*;
@@ -18,6 +19,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,8 +29,11 @@ import java.util.logging.Logger;
  */
 public class MergeIndex extends AppFunction {
 
+  private static final Logger logger = Logger.getLogger("MergeIndex");
+
   private String outputPath;
   private List<String> inputPaths;
+  private File documentOrder;
 
   // tupleflow stage functions
   private Stage getNumberIndexStage() {
@@ -60,15 +65,19 @@ public class MergeIndex extends AppFunction {
     return stage;
   }
 
-  private Stage getPartMerger(String stageName, String part, String outputFile) {
+  private Stage getPartMerger(String stageName, String part, String outputFile, File documentOrder) {
     Stage stage = new Stage(stageName);
 
     stage.addInput("indexes", new DocumentSplit.FileIdOrder());
-    stage.addInput("documentMappingData", new DocumentMappingData.IndexIdOrder());
+    Parameters p = Parameters.create();
+    if (documentOrder == null) {
+      stage.addInput("documentMappingData", new DocumentMappingData.IndexIdOrder());
+      p.set("mappingDataStream", "documentMappingData");
+    } else {
+      p.set("documentOrder", documentOrder.getAbsolutePath());
+    }
 
     stage.add(new InputStepInformation("indexes"));
-    Parameters p = Parameters.create();
-    p.set("mappingDataStream", "documentMappingData");
     p.set("part", part);
     p.set("filename", outputFile);
     stage.add(new StepInformation(IndexPartMergeManager.class, p));
@@ -107,25 +116,73 @@ public class MergeIndex extends AppFunction {
       i.close();
     }
 
+    // parts without a merger are left out, a reordered copy would not match the new document ids
+    if (p.isString("reorderDocuments")) {
+      for (String part : getUnmergeableParts(inputPaths)) {
+        logger.warning("Skipping part " + part + ": it has no merger, so it can not be reordered.");
+      }
+    }
+
     // log the parts to be merged.
     for (String part : sharedParts) {
-      Logger.getLogger(getClass().getName()).log(Level.INFO, "Merging Part: " + part);
+      logger.log(Level.INFO, "Merging Part: " + part);
     }
 
-    job.add(getNumberIndexStage());
-    job.add(getDocumentMappingStage(p.get("renumberDocuments", true)));
+    // optionally, documents are reordered to reduce the d-gaps of the postings,
+    // the order is written to the job directory (see deleteDocumentOrder)
+    documentOrder = null;
+    if (p.isString("reorderDocuments")) {
+      File jobDir = FileUtility.createTemporaryDirectory(p.get("galagoJobDir", ""));
+      p.set("galagoJobDir", jobDir.getAbsolutePath());
+      documentOrder = new File(jobDir, "documentOrder");
+      DocumentReorderer.computeOrder(inputPaths, p).writeDocumentOrder(documentOrder);
+    }
 
-    job.connect("indexNumberer", "documentMapper", ConnectionAssignmentType.Combined);
+    job.add(getNumberIndexStage());
+    if (documentOrder == null) {
+      job.add(getDocumentMappingStage(p.get("renumberDocuments", true)));
+      job.connect("indexNumberer", "documentMapper", ConnectionAssignmentType.Combined);
+    }
 
     for (String part : sharedParts) {
-      job.add(getPartMerger(part + "MergeStage", part, outputPath + File.separator + part));
+      job.add(getPartMerger(part + "MergeStage", part, outputPath + File.separator + part, documentOrder));
       job.connect("indexNumberer", part + "MergeStage", ConnectionAssignmentType.Combined);
-      job.connect("documentMapper", part + "MergeStage", ConnectionAssignmentType.Combined);
+      if (documentOrder == null) {
+        job.connect("documentMapper", part + "MergeStage", ConnectionAssignmentType.Combined);
+      }
     }
 
     return job;
   }
 
+  /**
+   * Deletes the document order written by getJob, once the job has run.
+   */
+  public void deleteDocumentOrder() {
+    if (documentOrder != null) {
+      documentOrder.delete();
+      documentOrder = null;
+    }
+  }
+
+  /**
+   * Returns the parts of the indexes that can not be merged (their manifest
+   * has no mergerClass). merge-index leaves these parts out of its output.
+   */
+  public static Set<String> getUnmergeableParts(List<String> indexes) throws IOException {
+    Set<String> unmergeable = new TreeSet<>();
+    for (String index : indexes) {
+      DiskIndex i = new DiskIndex(index);
+      for (String part : i.getPartNames()) {
+        if (!i.getIndexPart(part).getManifest().containsKey("mergerClass")) {
+          unmergeable.add(part);
+        }
+      }
+      i.close();
+    }
+    return unmergeable;
+  }
+
   // static main functions
   @Override
   public String getName(){
@@ -141,7 +198,12 @@ public class MergeIndex extends AppFunction {
             + "  --inputPath+{/path/to/input} : Path to input index. Must supply two or more of this parameter.\n"
             + "  --indexPath={/path/to/output} : Path to output index.\n"
             + "  --renumberDocuments={true|false} : Boolean determines if new document identifiers should be generated.\n"
-            + "                                   [default=true]\n\n"
+            + "                                   [default=true]\n"
+            + "  --reorderDocuments={url|bp} : Renumbers the documents in url order, or clusters similar documents\n"
+            + "                                by recursive graph bisection, for smaller postings. Can be used with\n"
+            + "                                a single input index. Parts that can not be merged are skipped.\n"
+            + "                                [optional]\n"
+            + "  --reorderPart=<part> : Postings part read by bp. [default=postings]\n\n"
             + TupleflowAppUtil.getTupleFlowParameterString();
   }
 
@@ -155,6 +217,10 @@ public class MergeIndex extends AppFunction {
 
     MergeIndex build = new MergeIndex();
     Job job = build.getJob(p);
-    TupleflowAppUtil.runTupleFlowJob(job, p, output);
+    try {
+      TupleflowAppUtil.runTupleFlowJob(job, p, output);
+    } finally {
+      build.deleteDocumentOrder();
+    }
   }
 }
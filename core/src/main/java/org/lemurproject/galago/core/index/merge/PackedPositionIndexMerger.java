@@ -0,0 +1,22 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.merge;
+
+import org.lemurproject.galago.core.index.disk.PackedPositionIndexWriter;
+import org.lemurproject.galago.core.types.NumberWordPosition;
+import org.lemurproject.galago.tupleflow.Processor;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+
+public class PackedPositionIndexMerger extends PositionIndexMerger {
+
+  public PackedPositionIndexMerger(TupleFlowParameters parameters) throws Exception {
+    super(parameters);
+  }
+
+  @Override
+  public Processor<NumberWordPosition> createIndexWriter(TupleFlowParameters parameters) throws Exception {
+    PackedPositionIndexWriter w = new PackedPositionIndexWriter(parameters);
+    return new NumberWordPosition.WordDocumentPositionOrder.TupleShredder(w);
+  }
+}
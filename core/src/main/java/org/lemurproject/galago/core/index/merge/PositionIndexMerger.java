@@ -6,6 +6,7 @@ package org.lemurproject.galago.core.index.merge;
 import org.lemurproject.galago.core.index.disk.PositionIndexWriter;
 import org.lemurproject.galago.core.types.NumberWordPosition;
 import org.lemurproject.galago.core.util.ExtentArray;
+import org.lemurproject.galago.tupleflow.Order;
 import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 
@@ -37,4 +38,9 @@ public class PositionIndexMerger extends GenericExtentValueIndexMerger<NumberWor
       this.writer.process( new NumberWordPosition( extentArray.getDocument(), key, extentArray.begin(i) ) );
     }
   }
+
+  @Override
+  public Order<NumberWordPosition> getWriterOrder() {
+    return new NumberWordPosition.WordDocumentPositionOrder();
+  }
 }
@@ -0,0 +1,42 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.merge;
+
+import org.lemurproject.galago.core.index.disk.StemDictionaryWriter;
+import org.lemurproject.galago.core.types.KeyValuePair;
+import org.lemurproject.galago.tupleflow.Order;
+import org.lemurproject.galago.tupleflow.Processor;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Merges stem dictionaries: the union of the terms of each dictionary.
+ */
+public class StemDictionaryMerger extends GenericIndexMerger<KeyValuePair> {
+
+  public StemDictionaryMerger(TupleFlowParameters p) throws Exception {
+    super(p);
+  }
+
+  @Override
+  public boolean mappingKeys() {
+    return false;
+  }
+
+  @Override
+  public Processor<KeyValuePair> createIndexWriter(TupleFlowParameters parameters) throws Exception {
+    return new KeyValuePair.KeyValueOrder.TupleShredder(new StemDictionaryWriter(parameters));
+  }
+
+  @Override
+  public void performValueMerge(byte[] key, List<KeyIteratorWrapper> keyIterators) throws IOException {
+    // each dictionary holds the same stem for the term
+    this.writer.process(new KeyValuePair(key, keyIterators.get(0).getIterator().getValueBytes()));
+  }
+
+  @Override
+  public Order<KeyValuePair> getWriterOrder() {
+    return new KeyValuePair.KeyValueOrder();
+  }
+}
@@ -7,6 +7,7 @@ package org.lemurproject.galago.core.index.merge;
 import org.lemurproject.galago.core.index.disk.WindowIndexWriter;
 import org.lemurproject.galago.core.types.NumberedExtent;
 import org.lemurproject.galago.core.util.ExtentArray;
+import org.lemurproject.galago.tupleflow.Order;
 import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 
@@ -38,4 +39,9 @@ public class WindowIndexMerger extends GenericExtentValueIndexMerger<NumberedExt
       this.writer.process(new NumberedExtent(key, extentArray.getDocument(), extentArray.begin(i), extentArray.end(i)) );
     }
   }
+
+  @Override
+  public Order<NumberedExtent> getWriterOrder() {
+    return new NumberedExtent.ExtentNameNumberBeginOrder();
+  }
 }
@@ -15,6 +15,7 @@ public abstract class BTreeValueSource implements DiskSource {
   public static final int HAS_SKIPS = 0x01;
   public static final int HAS_MAXTF = 0x02;
   public static final int HAS_INLINING = 0x04;
+  public static final int HAS_BLOCKMAX = 0x08;
   
   final protected BTreeIterator btreeIter;
   final protected String key;
@@ -0,0 +1,27 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.source;
+
+import java.io.IOException;
+
+/**
+ * A CountSource that can bound the counts of a block of its postings, without
+ * decoding the block. Used for block-local score upper bounds (Block-Max WAND).
+ */
+public interface BlockMaxSource extends CountSource {
+
+  /**
+   * @return false if this list was written without block maxima.
+   */
+  public boolean hasBlockMaxima();
+
+  /**
+   * Returns the last identifier covered by the block that would contain id.
+   * The final block returns Long.MAX_VALUE.
+   */
+  public long blockLastCandidate(long id) throws IOException;
+
+  /**
+   * Returns the maximum count in the block that would contain id.
+   */
+  public int blockMaximumCount(long id) throws IOException;
+}
@@ -0,0 +1,211 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.links.pagerank;
+
+import org.lemurproject.galago.core.links.LinkDestNamer;
+import org.lemurproject.galago.core.types.DocumentUrl;
+import org.lemurproject.galago.core.types.ExtractedLink;
+import org.lemurproject.galago.tupleflow.OrderedCombiner;
+import org.lemurproject.galago.tupleflow.TypeReader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The link graph of harvested link data (see HarvestLinksFn), in compressed
+ * sparse row form: documents are numbered in name order, and the incoming
+ * links of document d are the sources at [offsets[d], offsets[d+1]).
+ *
+ * Links are counted as ComputeRandomWalk counts them: self links are
+ * ignored, links to external pages or to unknown documents count in the
+ * out-degree of their source, but are not stored.
+ *
+ * The sources are held in memory, or memory-mapped from a temporary file when
+ * they are larger than the memory limit.
+ */
+public class CsrLinkGraph implements Closeable {
+
+  private static final Logger logger = Logger.getLogger("CsrLinkGraph");
+  // each mapped segment holds 2^28 sources (1GB)
+  private static final int SEGMENT_BITS = 28;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+  final String[] names;
+  final int[] outDegree;
+  final int[] externalLinks;
+  final long[] offsets;
+  // sources, in memory
+  private int[] sources = null;
+  // or memory-mapped
+  private IntBuffer[] segments = null;
+  private File mappedFile = null;
+
+  private CsrLinkGraph(String[] names) {
+    this.names = names;
+    this.outDegree = new int[names.length];
+    this.externalLinks = new int[names.length];
+    this.offsets = new long[names.length + 1];
+  }
+
+  /**
+   * Reads the documents (DocumentUrl files, in identifier order) and the links
+   * (ExtractedLink files, in source name order) of harvested link data.
+   */
+  public static CsrLinkGraph build(List<String> nameFiles, List<String> linkFiles, long memoryLimit, File tempFolder) throws IOException {
+    CsrLinkGraph graph = new CsrLinkGraph(readNames(nameFiles));
+
+    // first pass counts the links of each document
+    long links = graph.readLinks(linkFiles, null);
+    for (int d = 0; d < graph.names.length; d++) {
+      graph.offsets[d + 1] += graph.offsets[d];
+    }
+
+    if (links * 4 > memoryLimit || links > Integer.MAX_VALUE - 8) {
+      graph.mapSources(links, tempFolder);
+    } else {
+      graph.sources = new int[(int) links];
+    }
+
+    // second pass fills in the sources
+    graph.readLinks(linkFiles, Arrays.copyOf(graph.offsets, graph.names.length));
+    logger.info("Read " + graph.names.length + " documents and " + links + " links.");
+    return graph;
+  }
+
+  private static String[] readNames(List<String> nameFiles) throws IOException {
+    List<String> names = new ArrayList<>();
+    if (nameFiles.isEmpty()) {
+      return new String[0];
+    }
+    TypeReader<DocumentUrl> reader = OrderedCombiner.combineFromFiles(nameFiles, new DocumentUrl.IdentifierOrder());
+    DocumentUrl url;
+    while ((url = reader.read()) != null) {
+      if (names.isEmpty() || !names.get(names.size() - 1).equals(url.identifier)) {
+        names.add(url.identifier);
+      }
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Counts the links (cursors == null), or stores them at the cursors.
+   *
+   * @return the number of stored links.
+   */
+  private long readLinks(List<String> linkFiles, long[] cursors) throws IOException {
+    long links = 0;
+    if (linkFiles.isEmpty()) {
+      return links;
+    }
+    TypeReader<ExtractedLink> reader = OrderedCombiner.combineFromFiles(linkFiles, new ExtractedLink.SrcNameOrder());
+    String srcName = null;
+    int src = -1;
+    ExtractedLink link;
+    while ((link = reader.read()) != null) {
+      if (!link.srcName.equals(srcName)) {
+        srcName = link.srcName;
+        src = getDocument(srcName);
+      }
+      // documents are not allowed to link to themselves
+      if (src < 0 || link.srcName.equals(link.destName)) {
+        continue;
+      }
+      if (cursors == null) {
+        outDegree[src]++;
+      }
+      if (link.destName.startsWith(LinkDestNamer.EXTERNAL_PREFIX)) {
+        if (cursors == null) {
+          externalLinks[src]++;
+        }
+        continue;
+      }
+      int dest = getDocument(link.destName);
+      if (dest >= 0) {
+        if (cursors == null) {
+          offsets[dest + 1]++;
+        } else {
+          setSource(cursors[dest]++, src);
+        }
+        links++;
+      }
+    }
+    return links;
+  }
+
+  private void mapSources(long links, File tempFolder) throws IOException {
+    tempFolder.mkdirs();
+    mappedFile = File.createTempFile("links.", ".csr", tempFolder);
+    mappedFile.deleteOnExit();
+    int segmentCount = (int) ((links + SEGMENT_MASK) >>> SEGMENT_BITS);
+    segments = new IntBuffer[segmentCount];
+    try (RandomAccessFile file = new RandomAccessFile(mappedFile, "rw")) {
+      file.setLength(links * 4);
+      FileChannel channel = file.getChannel();
+      for (int s = 0; s < segmentCount; s++) {
+        long start = ((long) s << SEGMENT_BITS) * 4;
+        long length = Math.min(links * 4 - start, (SEGMENT_MASK + 1) * 4);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+        segments[s] = buffer.asIntBuffer();
+      }
+    }
+    logger.info("Memory-mapped " + links + " links in " + mappedFile);
+  }
+
+  /**
+   * @return the number of the document, or -1 if it is unknown.
+   */
+  public int getDocument(String name) {
+    int d = Arrays.binarySearch(names, name);
+    return (d < 0) ? -1 : d;
+  }
+
+  public int getDocumentCount() {
+    return names.length;
+  }
+
+  public String getName(int document) {
+    return names[document];
+  }
+
+  public long getLinkCount() {
+    return offsets[names.length];
+  }
+
+  public int getSource(long link) {
+    if (sources != null) {
+      return sources[(int) link];
+    }
+    return segments[(int) (link >>> SEGMENT_BITS)].get((int) (link & SEGMENT_MASK));
+  }
+
+  private void setSource(long link, int source) {
+    if (sources != null) {
+      sources[(int) link] = source;
+    } else {
+      segments[(int) (link >>> SEGMENT_BITS)].put((int) (link & SEGMENT_MASK), source);
+    }
+  }
+
+  public boolean isMapped() {
+    return segments != null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    sources = null;
+    segments = null;
+    if (mappedFile != null) {
+      mappedFile.delete();
+    }
+  }
+}
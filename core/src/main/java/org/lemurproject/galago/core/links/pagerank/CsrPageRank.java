@@ -0,0 +1,203 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.links.pagerank;
+
+import org.lemurproject.galago.core.types.PageRankScore;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.Processor;
+import org.lemurproject.galago.tupleflow.Sorter;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Computes pagerank over a CsrLinkGraph, in memory, with the same model as
+ * the TupleFlow iteration of PageRankFn (ComputeRandomWalk,
+ * ComputeRandomJump, PageRankScoreCombiner):
+ *
+ * each document passes (1-lambda) of its score along its links, the rest of
+ * the score, and the walks from documents without links or to external pages,
+ * is spread evenly over all documents as a random jump.
+ *
+ * Each iteration is split over a pool of threads: the documents are divided
+ * into ranges, and each thread pulls the scores of the incoming links of its
+ * documents. The iteration stops when no score changes by more than delta.
+ */
+public class CsrPageRank {
+
+  private static final Logger logger = Logger.getLogger("CsrPageRank");
+  private final CsrLinkGraph graph;
+  private final double lambda;
+  private final int threads;
+  private int iterations = 0;
+  private boolean converged = false;
+
+  public CsrPageRank(CsrLinkGraph graph, double lambda, int threads) {
+    this.graph = graph;
+    this.lambda = lambda;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * @return the scores after convergence, or maxItr iterations.
+   */
+  public double[] run(double initialScore, int maxItr, double delta) throws Exception {
+    final int documentCount = graph.getDocumentCount();
+    double[] scores = new double[documentCount];
+    Arrays.fill(scores, initialScore);
+    double[] next = new double[documentCount];
+    final double[] walks = new double[documentCount];
+
+    iterations = 0;
+    converged = false;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<int[]> ranges = getRanges(documentCount);
+      while (iterations < maxItr) {
+        iterations++;
+        // walk along the links of each document, sum the random jumps
+        final double[] current = scores;
+        double[] jumps = new double[3];
+        for (double[] partial : invokeAll(pool, ranges, range -> walk(current, walks, range))) {
+          for (int i = 0; i < jumps.length; i++) {
+            jumps[i] += partial[i];
+          }
+        }
+        // lambda of the total score, plus the walks that end in a jump
+        final double jump = (lambda * jumps[0] + jumps[1] + jumps[2]) / documentCount;
+
+        // collect the walks along the incoming links of each document
+        final double[] updated = next;
+        double difference = 0.0;
+        for (double[] partial : invokeAll(pool, ranges, range -> collect(current, updated, walks, jump, range))) {
+          difference = Math.max(difference, partial[0]);
+        }
+
+        next = scores;
+        scores = updated;
+        logger.info("Iteration " + iterations + ": largest change " + difference);
+        if (difference <= delta) {
+          converged = true;
+          break;
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+    return scores;
+  }
+
+  /**
+   * @return the number of iterations run.
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * @return true if the last run converged before maxItr iterations.
+   */
+  public boolean hasConverged() {
+    return converged;
+  }
+
+  /**
+   * Computes the walk along each link of the documents of the range.
+   *
+   * @return {total score, walks from documents without links, walks to
+   * external pages}
+   */
+  private double[] walk(double[] scores, double[] walks, int[] range) {
+    double total = 0.0;
+    double dangling = 0.0;
+    double external = 0.0;
+    for (int d = range[0]; d < range[1]; d++) {
+      total += scores[d];
+      int degree = graph.outDegree[d];
+      if (degree == 0) {
+        dangling += (1.0 - lambda) * scores[d];
+        walks[d] = 0.0;
+      } else {
+        walks[d] = (1.0 - lambda) * scores[d] / (double) degree;
+        external += walks[d] * graph.externalLinks[d];
+      }
+    }
+    return new double[]{total, dangling, external};
+  }
+
+  /**
+   * @return {largest change of a score in the range}
+   */
+  private double[] collect(double[] scores, double[] next, double[] walks, double jump, int[] range) {
+    double difference = 0.0;
+    for (int d = range[0]; d < range[1]; d++) {
+      double score = jump;
+      for (long l = graph.offsets[d]; l < graph.offsets[d + 1]; l++) {
+        score += walks[graph.getSource(l)];
+      }
+      next[d] = score;
+      difference = Math.max(difference, Math.abs(score - scores[d]));
+    }
+    return new double[]{difference};
+  }
+
+  private interface RangeTask {
+
+    double[] run(int[] range) throws Exception;
+  }
+
+  private static List<double[]> invokeAll(ExecutorService pool, List<int[]> ranges, final RangeTask task) throws Exception {
+    List<Callable<double[]>> tasks = new ArrayList<>();
+    for (final int[] range : ranges) {
+      tasks.add(() -> task.run(range));
+    }
+    List<double[]> results = new ArrayList<>();
+    // results are combined in range order, so the scores do not depend on the threads
+    for (Future<double[]> future : pool.invokeAll(tasks)) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  private List<int[]> getRanges(int documentCount) {
+    int rangeSize = Math.max(1024, documentCount / (threads * 8) + 1);
+    List<int[]> ranges = new ArrayList<>();
+    for (int start = 0; start < documentCount; start += rangeSize) {
+      ranges.add(new int[]{start, Math.min(documentCount, start + rangeSize)});
+    }
+    return ranges;
+  }
+
+  /**
+   * Writes the scores in document name order, and in descending score order,
+   * with FinalPageRankScoreWriter.
+   */
+  public static void write(CsrLinkGraph graph, double[] scores, File docNameOutput, File scoreOutput) throws IOException {
+    Parameters p1 = Parameters.create();
+    p1.set("output", docNameOutput.getAbsolutePath());
+    Processor<PageRankScore> docNameWriter = new FinalPageRankScoreWriter(new FakeParameters(p1));
+
+    Parameters p2 = Parameters.create();
+    p2.set("output", scoreOutput.getAbsolutePath());
+    Processor<PageRankScore> scoreWriter = new Sorter<>(new PageRankScore.DescScoreOrder(), null,
+            new FinalPageRankScoreWriter(new FakeParameters(p2)));
+
+    for (int d = 0; d < graph.getDocumentCount(); d++) {
+      PageRankScore score = new PageRankScore(graph.getName(d), scores[d]);
+      docNameWriter.process(score);
+      scoreWriter.process(score);
+    }
+    docNameWriter.close();
+    scoreWriter.close();
+  }
+}
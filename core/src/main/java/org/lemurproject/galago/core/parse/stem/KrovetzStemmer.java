@@ -4,14 +4,11 @@ package org.lemurproject.galago.core.parse.stem;
 import org.lemurproject.galago.krovetz.KStem;
 
 public class KrovetzStemmer extends Stemmer {
-  KStem kstem;
-
-  public KrovetzStemmer() {
-    kstem = new KStem();
-  }
+  // KStem is not thread-safe
+  final ThreadLocal<KStem> kstem = ThreadLocal.withInitial(KStem::new);
 
   @Override
   protected String stemTerm(String term) {
-    return kstem.stemTerm(term);
+    return kstem.get().stemTerm(term);
   }
 }
@@ -10,11 +10,13 @@ import org.tartarus.snowball.ext.englishStemmer;
  */
 public class Porter2Stemmer extends Stemmer {
 
-  englishStemmer stemmer = new englishStemmer();
+  // snowball programs are not thread-safe
+  final ThreadLocal<englishStemmer> stemmer = ThreadLocal.withInitial(englishStemmer::new);
 
   @Override
   protected String stemTerm(String term) {
     String stem = term;
+    englishStemmer stemmer = this.stemmer.get();
     stemmer.setCurrent(term);
     if (stemmer.stem()) {
       stem = stemmer.getCurrent();
@@ -10,11 +10,13 @@ import org.tartarus.snowball.ext.russianStemmer;
  */
 public class RussianStemmer extends Stemmer {
 
-  russianStemmer stemmer = new russianStemmer();
+  // snowball programs are not thread-safe
+  final ThreadLocal<russianStemmer> stemmer = ThreadLocal.withInitial(russianStemmer::new);
 
   @Override
   protected String stemTerm(String term) {
     String stem = term;
+    russianStemmer stemmer = this.stemmer.get();
     stemmer.setCurrent(term);
     if (stemmer.stem()) {
       stem = stemmer.getCurrent();
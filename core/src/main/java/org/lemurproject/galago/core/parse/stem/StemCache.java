@@ -0,0 +1,105 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.parse.stem;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A thread-safe, bounded term -> stem cache, shared by the threads using a
+ * Stemmer.
+ *
+ * Each entry counts its hits. When the cache passes its limit, one thread
+ * evicts entries without hits and halves the hits of the others (aging),
+ * until the cache is back to 3/4 of the limit. Frequent terms stay cached;
+ * other threads keep reading and writing while the cache is evicted.
+ */
+class StemCache {
+
+  private static class Entry {
+
+    final String stem;
+    // racy increments only lose hits
+    volatile int hits = 0;
+
+    Entry(String stem) {
+      this.stem = stem;
+    }
+  }
+
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicBoolean evicting = new AtomicBoolean(false);
+  private volatile long limit;
+
+  StemCache(long limit) {
+    this.limit = limit;
+  }
+
+  /**
+   * @return the cached stem, or null.
+   */
+  String get(String term) {
+    Entry entry = entries.get(term);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.hits < Integer.MAX_VALUE) {
+      entry.hits++;
+    }
+    return entry.stem;
+  }
+
+  void put(String term, String stem) {
+    entries.putIfAbsent(term, new Entry(stem));
+    if (entries.size() > limit) {
+      evict();
+    }
+  }
+
+  long size() {
+    return entries.size();
+  }
+
+  long getLimit() {
+    return limit;
+  }
+
+  void setLimit(long limit) {
+    this.limit = limit;
+    if (entries.size() > limit) {
+      evict();
+    }
+  }
+
+  void clear() {
+    entries.clear();
+  }
+
+  private void evict() {
+    // one evicting thread is enough
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long target = limit * 3 / 4;
+      long size = entries.size();
+      while (size > target) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > target && iterator.hasNext()) {
+          Entry entry = iterator.next();
+          if (entry.hits == 0) {
+            iterator.remove();
+            size--;
+          } else {
+            entry.hits >>>= 1;
+          }
+        }
+        size = entries.size();
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+}
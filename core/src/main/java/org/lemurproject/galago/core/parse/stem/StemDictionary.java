@@ -0,0 +1,17 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.parse.stem;
+
+/**
+ * A pre-computed mapping of terms to stems, consulted by a Stemmer before
+ * stemming a term (see StemDictionaryReader).
+ */
+public interface StemDictionary {
+
+  /**
+   * @return the stem of the term, or null if the term is not in the
+   * dictionary.
+   */
+  public String getStem(String term);
+}
@@ -0,0 +1,54 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.parse.stem;
+
+import java.io.IOException;
+import java.util.HashSet;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.types.KeyValuePair;
+import org.lemurproject.galago.tupleflow.*;
+import org.lemurproject.galago.tupleflow.execution.ErrorStore;
+import org.lemurproject.galago.utility.ByteUtil;
+
+/**
+ * Emits a (term, stem) pair for each term of the documents, to build a stem
+ * dictionary part (see StemDictionaryWriter).
+ *
+ * Recently emitted terms are not repeated; the remaining duplicates are
+ * removed by a ConflationReducer.
+ */
+@InputClass(className = "org.lemurproject.galago.core.parse.Document")
+@OutputClass(className = "org.lemurproject.galago.core.types.KeyValuePair")
+public class StemDictionaryExtractor extends StandardStep<Document, KeyValuePair> {
+
+  private static final int SEEN_LIMIT = 100000;
+  Stemmer stemmer;
+  HashSet<String> seen = new HashSet<>();
+
+  public StemDictionaryExtractor(TupleFlowParameters params) throws Exception {
+    String stemmerClass = params.getJSON().getString("stemmerClass");
+    stemmer = (Stemmer) Class.forName(stemmerClass).getConstructor().newInstance();
+  }
+
+  @Override
+  public void process(Document doc) throws IOException {
+    for (String term : doc.terms) {
+      if (term != null && seen.add(term)) {
+        String stem = stemmer.stem(term);
+        if (stem != null) {
+          processor.process(new KeyValuePair(ByteUtil.fromString(term), ByteUtil.fromString(stem)));
+        }
+      }
+    }
+    if (seen.size() > SEEN_LIMIT) {
+      seen.clear();
+    }
+  }
+
+  public static void verify(TupleFlowParameters parameters, ErrorStore store) {
+    if (!parameters.getJSON().isString("stemmerClass")) {
+      store.addError(StemDictionaryExtractor.class.getName() + " requires a stemmerClass parameter.");
+    }
+  }
+}
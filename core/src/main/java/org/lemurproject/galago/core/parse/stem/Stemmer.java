@@ -4,7 +4,6 @@
 package org.lemurproject.galago.core.parse.stem;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.tupleflow.error.IncompatibleProcessorException;
@@ -18,17 +17,21 @@ import org.lemurproject.galago.tupleflow.execution.ErrorStore;
 import org.lemurproject.galago.utility.reflection.ReflectUtil;
 
 /**
- * 
- * 
+ * Stems terms, through a bounded cache of recent stems, and optionally a
+ * dictionary of pre-computed stems.
+ *
+ * A Stemmer may be shared by several threads (e.g. the stemmer of an index
+ * part, used by every query): the cache is thread-safe, and subclasses keep
+ * their stemming state per thread (see stemTerm).
+ *
  * @author sjh
  */
 public abstract class Stemmer implements Source<Document>, Processor<Document> {
 
-  // each create of Stemmer should have it's own lock
-  final Object lock = new Object();
-  
-  long cacheLimit = 50000;
-  HashMap<String, String> cache = new HashMap<>();
+  public static final long DEFAULT_CACHE_LIMIT = 50000;
+
+  final StemCache cache = new StemCache(DEFAULT_CACHE_LIMIT);
+  volatile StemDictionary dictionary = null;
   public Processor<Document> processor;
 
   @Override
@@ -73,24 +76,49 @@ public abstract class Stemmer implements Source<Document>, Processor<Document> {
   }
 
   public String stem(String term) {
-    if (cache.containsKey(term)) {
-      return cache.get(term);
-    }
-    String stemmedTerm;
-    
-    synchronized (lock) {
-      stemmedTerm = stemTerm(term);
-    }
-    
-    if (!cache.containsKey(stemmedTerm)) {
+    String stemmedTerm = cache.get(term);
+    if (stemmedTerm == null) {
+      StemDictionary dictionary = this.dictionary;
+      if (dictionary != null) {
+        stemmedTerm = dictionary.getStem(term);
+      }
+      if (stemmedTerm == null) {
+        stemmedTerm = stemTerm(term);
+      }
       cache.put(term, stemmedTerm);
     }
-    if (cache.size() > cacheLimit) {
-      cache.clear();
-    }
     return stemmedTerm;
   }
-  
+
+  /**
+   * Caches the stems of a set of terms, e.g. the vocabulary of an index.
+   * Stops when the cache is full.
+   */
+  public void warmCache(Iterable<String> terms) {
+    for (String term : terms) {
+      if (cache.size() >= cache.getLimit()) {
+        return;
+      }
+      stem(term);
+    }
+  }
+
+  /**
+   * Sets a dictionary of pre-computed stems, consulted before stemming a term
+   * (see StemDictionaryReader). The dictionary must hold the stems of this
+   * stemmer.
+   */
+  public void setDictionary(StemDictionary dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Sets the number of cached stems.
+   */
+  public void setCacheLimit(long cacheLimit) {
+    cache.setLimit(cacheLimit);
+  }
+
   public final String stemAsRequired(String term) {
     if(term.contains("~")) {
       return this.stemWindow(term);
@@ -99,7 +127,8 @@ public abstract class Stemmer implements Source<Document>, Processor<Document> {
     }
   }
 
-  // This function should only be use synchronously (see 'lock')
+  // This function may be called by several threads at once: stemming
+  // programs with state should be kept per thread.
   protected abstract String stemTerm(String term);
 
   /**
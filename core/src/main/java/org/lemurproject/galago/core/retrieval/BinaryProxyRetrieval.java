@@ -0,0 +1,148 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackStatistics;
+import org.lemurproject.galago.core.tokenize.Tokenizer;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Client-side stub for a remote index, using the binary protocol of
+ * RetrievalCodec. See org.lemurproject.galago.core.tools.BinaryContextHandler
+ * for the server side.
+ *
+ * Unlike ProxyRetrieval, connections are kept alive and pooled
+ * ("remoteConnections" per server, default 16), so concurrent callers do not
+ * pay for connection setup. Several calls can be sent in one round trip with
+ * invokeAll.
+ *
+ * RetrievalFactory uses it when "remoteProtocol" is "binary"; older servers
+ * only serve the Java serialization protocol of ProxyRetrieval (the default).
+ */
+public class BinaryProxyRetrieval implements InvocationHandler {
+
+  String indexUrl;
+  int compressionThreshold;
+  private final PoolingHttpClientConnectionManager connections;
+  private final CloseableHttpClient client;
+  /**
+   * As in ProxyRetrieval, this is the proxy object created by RetrievalFactory.
+   */
+  private Retrieval thisAsRetrieval;
+  // feedback documents are read through the proxy, and cached on this side
+  private FeedbackStatistics feedbackStatistics = null;
+
+  public BinaryProxyRetrieval(String url, Parameters parameters) throws IOException {
+    this.indexUrl = url + "/binary";
+    this.compressionThreshold = (int) parameters.get("remoteCompressionThreshold", (long) RetrievalCodec.DEFAULT_COMPRESSION_THRESHOLD);
+
+    int maxConnections = (int) parameters.get("remoteConnections", 16L);
+    this.connections = new PoolingHttpClientConnectionManager();
+    this.connections.setMaxTotal(maxConnections);
+    this.connections.setDefaultMaxPerRoute(maxConnections);
+    this.client = HttpClients.custom().setConnectionManager(connections).build();
+  }
+
+  /**
+   * Releases the pooled connections; the remote index stays open.
+   */
+  public void close() throws IOException {
+    synchronized (this) {
+      if (feedbackStatistics != null) {
+        feedbackStatistics.close();
+        feedbackStatistics = null;
+      }
+    }
+    client.close();
+  }
+
+  @Override
+  public Object invoke(Object caller, Method method, Object[] args) throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      return method.invoke(this, args);
+    }
+    switch (method.getName()) {
+      case "close":
+        close();
+        return null;
+      case "getFeedbackStatistics":
+        synchronized (this) {
+          if (feedbackStatistics == null) {
+            feedbackStatistics = FeedbackStatistics.create((Retrieval) caller);
+          }
+          return feedbackStatistics;
+        }
+      case "getTokenizer":
+        // tokenizers are not sent over the wire; build one from the remote configuration
+        return Tokenizer.create(thisAsRetrieval.getGlobalParameters());
+      default:
+        return invoke(method.getName(), args);
+    }
+  }
+
+  public Object invoke(String methodName, Object[] args) throws IOException {
+    List<String> methods = new ArrayList<>();
+    methods.add(methodName);
+    List<Object[]> arguments = new ArrayList<>();
+    arguments.add(args);
+    return invokeAll(methods, arguments).get(0);
+  }
+
+  /**
+   * Sends several calls in one request, and returns their results in order.
+   */
+  public List<Object> invokeAll(List<String> methodNames, List<Object[]> arguments) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(body);
+    for (int i = 0; i < methodNames.size(); i++) {
+      Object[] args = (arguments.get(i) == null) ? new Object[0] : arguments.get(i);
+      RetrievalCodec.writeFrame(output, RetrievalCodec.encodeCall(methodNames.get(i), args), compressionThreshold);
+    }
+    output.close();
+
+    HttpPost post = new HttpPost(indexUrl);
+    post.setEntity(new ByteArrayEntity(body.toByteArray(), ContentType.APPLICATION_OCTET_STREAM));
+
+    List<Object> results = new ArrayList<>();
+    try (CloseableHttpResponse response = client.execute(post)) {
+      HttpEntity entity = response.getEntity();
+      if (response.getStatusLine().getStatusCode() != 200) {
+        EntityUtils.consume(entity);
+        throw new IOException("Remote call to " + indexUrl + " failed: " + response.getStatusLine());
+      }
+      // the whole reply is read, so the connection can be reused
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(EntityUtils.toByteArray(entity)));
+      for (int i = 0; i < methodNames.size(); i++) {
+        byte[] payload = RetrievalCodec.readFrame(input);
+        if (payload == null) {
+          throw new IOException("Incomplete reply from " + indexUrl);
+        }
+        Object result = RetrievalCodec.decodeReply(payload);
+        // hack any result objects back in:
+        if (result instanceof Results) {
+          ((Results) result).retrieval = thisAsRetrieval;
+        }
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  public void setRetrieval(Retrieval retrieval) {
+    this.thisAsRetrieval = retrieval;
+  }
+}
@@ -3,33 +3,65 @@
  */
 package org.lemurproject.galago.core.retrieval;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.lemurproject.galago.core.index.mem.*;
 import org.lemurproject.galago.core.index.stats.AggregateStatistic;
 import org.lemurproject.galago.core.retrieval.iterator.*;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskCountIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskExtentIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskLengthsIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskScoreIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.utility.ByteUtil;
 import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.Bytes;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * The CacbedRetrieval object exists in a retrieval - it allows in-memory
+ * The CachedRetrieval object exists in a retrieval - it allows in-memory
  * caching of node iterators - particularly useful for caching complex nodes for
- * repeated querying, as in parameter tuning
+ * repeated querying, as in parameter tuning, and for serving popular posting
+ * lists of a query log from the heap.
+ *
+ * Cached posting lists are kept in a bounded cache, weighted by the size of
+ * their encoded data ("cacheMaximumBytes"). Eviction is size-based (TinyLFU),
+ * and the cache can be used concurrently by many query threads.
+ *
+ * Nodes can be cached explicitly (addToCache), or are admitted automatically
+ * once they have been requested "cacheAdmissionCount" times (default 2, 0
+ * disables automatic admission). Only count and extent nodes (leaves and
+ * windows) are admitted automatically. Admitted posting lists are read by a
+ * background thread ("cacheAsyncAdmission", default true), and queries use
+ * the disk iterators until they are cached.
  *
  * @author sjh
  */
 public class CachedRetrieval {
 
+  private static final Logger logger = Logger.getLogger("CachedRetrieval");
   protected Parameters parameters;
   // scores are risky to cache -> dirichlet smoothed scores depend on the length of the document.
   protected boolean cacheScores;
   protected boolean cacheLeafNodes;
   protected boolean cacheStats;
-  protected ConcurrentHashMap<String, MemoryIndexPart> cacheParts;
-  protected ConcurrentHashMap<String, String> cachedNodes;
-  protected ConcurrentHashMap<String, AggregateStatistic> cachedStats;
+  protected int admissionCount;
+  protected boolean asyncAdmission;
+  private ExecutorService admissionExecutor = null;
+  protected Cache<String, CachedPostings> cachedNodes;
+  protected Cache<String, AtomicInteger> requestCounts;
+  protected Cache<String, AggregateStatistic> cachedStats;
 
   /**
    * One retrieval interacts with one index. Parameters dictate the behavior
@@ -48,28 +80,28 @@ public class CachedRetrieval {
     this.cacheScores = this.parameters.get("cacheScores", false);
     this.cacheLeafNodes = this.parameters.get("cacheLeafNodes", true);
     this.cacheStats = this.parameters.get("cacheStats", false); // useful when we just need lots of stats, no real iterators
+    this.admissionCount = (int) this.parameters.get("cacheAdmissionCount", 2L);
+    this.asyncAdmission = this.parameters.get("cacheAsyncAdmission", true);
 
-    this.cachedNodes = new ConcurrentHashMap<>();
-    this.cachedStats = new ConcurrentHashMap<>();
-    this.cacheParts = new ConcurrentHashMap<>();
-
-    this.cacheParts.put("score", new MemorySparseDoubleIndex(Parameters.create()));
-    this.cacheParts.put("extent", new MemoryWindowIndex(Parameters.create()));
-    this.cacheParts.put("count", new MemoryCountIndex(Parameters.create()));
-    // this.cacheParts.put("names", new MemoryDocumentNames(Parameters.create()));
-    this.cacheParts.put("lengths", new MemoryDocumentLengths(Parameters.create()));
-
+    this.cachedNodes = Caffeine.newBuilder()
+            .maximumWeight(this.parameters.get("cacheMaximumBytes", 128L * 1024 * 1024))
+            .weigher((String key, CachedPostings value) -> value.weight)
+            .recordStats()
+            .build();
+    this.requestCounts = Caffeine.newBuilder()
+            .maximumSize(this.parameters.get("cacheAdmissionWindow", 100_000L))
+            .build();
+    this.cachedStats = Caffeine.newBuilder()
+            .maximumSize(this.parameters.get("cacheStatsSize", 100_000L))
+            .build();
   }
 
   public BaseIterator getCachedIterator(Node node) throws IOException {
-    String nodeString = node.toString();
-    if (cachedNodes.containsKey(nodeString)) {
-      // new behaviour - check cache for this node.
-      //logger.info("Getting cached iterator cache for node : " + nodeString);
-      return cacheParts.get(cachedNodes.get(nodeString)).getIterator(ByteUtil.fromString(nodeString));
-    } else {
-      return null;
+    CachedPostings postings = cachedNodes.getIfPresent(node.toString());
+    if (postings != null) {
+      return postings.getIterator();
     }
+    return null;
   }
 
   // caching functions
@@ -77,80 +109,125 @@ public class CachedRetrieval {
    * Checks if a particular node is cached or not.
    */
   public boolean isCached(Node node) {
-    String nodeString = node.toString();
-    return cachedNodes.containsKey(nodeString);
+    return cachedNodes.asMap().containsKey(node.toString());
   }
 
   /**
-   * caches an arbitrary query node currently can store only count, extent, and
-   * score iterators.
+   * Records a request for a node that was not cached. Returns true if the node
+   * has now been requested often enough to be admitted to the cache.
    */
-  public void addToCache(Node node, BaseIterator iterator) throws Exception {
+  public boolean recordRequest(Node node, BaseIterator iterator) {
+    if (admissionCount <= 0 || !isAdmissible(node, iterator)) {
+      return false;
+    }
+    AtomicInteger count = requestCounts.get(node.toString(), k -> new AtomicInteger());
+    return count.incrementAndGet() == admissionCount;
+  }
 
-    String nodeString = node.toString();
-    if (!cachedNodes.containsKey(nodeString)) {
-      if (this.cacheLeafNodes || node.numChildren() > 0) {
-        if (iterator instanceof ScoreIterator) {
-          if (this.cacheScores) {
-            cachedNodes.put(nodeString, "score");
-            cacheParts.get("score").addIteratorData(ByteUtil.fromString(nodeString), iterator);
-            // logger.info("Cached scoring node : " + nodeString);
-          } else {
-            // logger.info("Scoring node are not cachable : " + nodeString);
-          }
-
-        } else if (iterator instanceof LengthsIterator) {
-          cachedNodes.put(nodeString, "lengths");
-          cacheParts.get("lengths").addIteratorData(ByteUtil.fromString(nodeString), iterator);
-
-        } else if (iterator instanceof ExtentIterator) {
-          cachedNodes.put(nodeString, "extent");
-          cacheParts.get("extent").addIteratorData(ByteUtil.fromString(nodeString), iterator);
-          // logger.info("Cached extent node : " + nodeString);
-
-        } else if (iterator instanceof CountIterator) {
-          cachedNodes.put(nodeString, "count");
-          cacheParts.get("count").addIteratorData(ByteUtil.fromString(nodeString), iterator);
-          // logger.info("Cached count node : " + nodeString);
-
-        } else {
-          // logger.info("Unable to cache node : " + nodeString);
-        }
-      } else {
-        // logger.info("Already cached node : " + nodeString);
+  /**
+   * Admits a node to the cache, reading the posting list from the supplied
+   * iterator. With "cacheAsyncAdmission" the list is read by a background
+   * thread, so the requesting query is not delayed.
+   */
+  public void admit(Node node, Callable<BaseIterator> source) throws Exception {
+    if (!asyncAdmission) {
+      addToCache(node, source.call());
+      return;
+    }
+    getAdmissionExecutor().submit(() -> {
+      try {
+        addToCache(node, source.call());
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Failed to cache node: " + node, e);
       }
+    });
+  }
+
+  /**
+   * Waits for the admissions submitted so far to be cached.
+   */
+  public void awaitAdmissions() throws InterruptedException, ExecutionException {
+    ExecutorService executor;
+    synchronized (this) {
+      executor = admissionExecutor;
+    }
+    if (executor != null) {
+      // admissions run in order on a single thread
+      executor.submit(() -> {
+      }).get();
     }
   }
 
-  public void removeFromCache(Node node) throws Exception {
+  /**
+   * Stops the admission thread, pending admissions are dropped.
+   */
+  public synchronized void close() {
+    if (admissionExecutor != null) {
+      admissionExecutor.shutdownNow();
+      admissionExecutor = null;
+    }
+  }
+
+  private synchronized ExecutorService getAdmissionExecutor() {
+    if (admissionExecutor == null) {
+      ThreadFactory factory = (Runnable r) -> {
+        Thread t = new Thread(r, "cache-admission");
+        t.setDaemon(true);
+        return t;
+      };
+      admissionExecutor = Executors.newSingleThreadExecutor(factory);
+    }
+    return admissionExecutor;
+  }
+
+  private boolean isAdmissible(Node node, BaseIterator iterator) {
+    if (!this.cacheLeafNodes && node.numChildren() == 0) {
+      return false;
+    }
+    return !(iterator instanceof ScoreIterator)
+            && !(iterator instanceof LengthsIterator)
+            && (iterator instanceof ExtentIterator || iterator instanceof CountIterator);
+  }
+
+  /**
+   * caches an arbitrary query node currently can store only count, extent,
+   * lengths and score iterators. The iterator is consumed.
+   */
+  public void addToCache(Node node, BaseIterator iterator) throws Exception {
+
     String nodeString = node.toString();
-    if (cachedNodes.containsKey(nodeString)) {
-      if (cachedNodes.get(nodeString).equals("score")) {
-        cachedNodes.remove(nodeString);
-        cacheParts.get("score").removeIteratorData(ByteUtil.fromString(nodeString));
-        // logger.info("Deleted cached scoring node : " + nodeString);
-      } else if (cachedNodes.get(nodeString).equals("count")) {
-//        NodeStatistics ns = super.getNodeStatistics(node);
-//        cachedStats.remove(nodeString);
-        cachedNodes.remove(nodeString);
-        cacheParts.get("extent").removeIteratorData(ByteUtil.fromString(nodeString));
-        // logger.info("Deleted cached extent node : " + nodeString);
-
-      } else if (cachedNodes.get(nodeString).equals("extent")) {
-//        NodeStatistics ns = super.getNodeStatistics(node);
-//        cachedStats.remove(nodeString);
-        cachedNodes.remove(nodeString);
-        cacheParts.get("count").removeIteratorData(ByteUtil.fromString(nodeString));
-        // logger.info("Deleted cached count node : " + nodeString);
-
-      } else {
-        // logger.info("Unable to delete cached node : " + nodeString);
+    if (cachedNodes.getIfPresent(nodeString) != null) {
+      // logger.info("Already cached node : " + nodeString);
+      return;
+    }
+    if (!this.cacheLeafNodes && node.numChildren() == 0) {
+      return;
+    }
+
+    byte[] key = ByteUtil.fromString(nodeString);
+    CachedPostings postings = null;
+    if (iterator instanceof ScoreIterator) {
+      if (this.cacheScores) {
+        postings = new CachedScores(MemorySparseDoubleIndex.buildPostingList(key, (ScoreIterator) iterator));
       }
-    } else {
-      // logger.info("Ignoring non-cached node : " + nodeString);
+    } else if (iterator instanceof LengthsIterator) {
+      postings = new CachedLengths(key, (LengthsIterator) iterator);
+    } else if (iterator instanceof ExtentIterator) {
+      postings = new CachedExtents(MemoryWindowIndex.buildPostingList(key, (ExtentIterator) iterator));
+    } else if (iterator instanceof CountIterator) {
+      postings = new CachedCounts(MemoryCountIndex.buildPostingList(key, (CountIterator) iterator));
+    }
+
+    if (postings != null) {
+      cachedNodes.put(nodeString, postings);
+      requestCounts.invalidate(nodeString);
     }
   }
 
+  public void removeFromCache(Node node) throws Exception {
+    cachedNodes.invalidate(node.toString());
+  }
+
   /**
    * Stores several types of statistics:
    *  partName -> IndexPartStatistics
@@ -158,20 +235,120 @@ public class CachedRetrieval {
    *  countNode -> NodeStatistics
    */
   public void addToCache(String key, AggregateStatistic stat) {
-    if (!cachedNodes.containsKey(key)) {
-      cachedStats.put(key, stat);
-    } else {
-      // logger.info(Ignoring non-cached node : " + key);
-    }
+    cachedStats.put(key, stat);
   }
 
   public AggregateStatistic getCachedStatistic(String key) throws Exception {
-    // check the node cache first - this will avoid zeros.
-    if (cachedStats.containsKey(key)) {
-      //logger.info("Getting stats from cache for node : " + nodeString);
-      return this.cachedStats.get(key);
+    return this.cachedStats.getIfPresent(key);
+  }
+
+  /**
+   * Returns the hit, miss and eviction counts of the posting list cache, and
+   * its current size.
+   */
+  public Parameters getCacheStatistics() {
+    // apply pending writes and evictions
+    cachedNodes.cleanUp();
+    CacheStats stats = cachedNodes.stats();
+    Parameters p = Parameters.create();
+    p.set("hitCount", stats.hitCount());
+    p.set("missCount", stats.missCount());
+    p.set("hitRate", stats.hitRate());
+    p.set("evictionCount", stats.evictionCount());
+    p.set("entries", cachedNodes.estimatedSize());
+    p.set("bytes", cachedNodes.policy().eviction().get().weightedSize().orElse(0L));
+    return p;
+  }
+
+  /**
+   * A cached posting list: the encoded data and its weight.
+   */
+  protected static abstract class CachedPostings {
+
+    // small fixed cost per entry (objects and cache node)
+    private static final int OVERHEAD = 128;
+    final int weight;
+
+    CachedPostings(long byteLength) {
+      this.weight = (int) Math.min(Integer.MAX_VALUE, byteLength + OVERHEAD);
+    }
+
+    abstract BaseIterator getIterator() throws IOException;
+  }
+
+  private static class CachedCounts extends CachedPostings {
+
+    final MemoryCountIndex.PostingList postings;
+
+    CachedCounts(MemoryCountIndex.PostingList postings) {
+      super(postings.byteLength());
+      this.postings = postings;
+    }
+
+    @Override
+    BaseIterator getIterator() throws IOException {
+      return new DiskCountIterator(new MemoryCountIndexCountSource(postings));
+    }
+  }
+
+  private static class CachedExtents extends CachedPostings {
+
+    final MemoryWindowIndex.WindowPostingList postings;
+
+    CachedExtents(MemoryWindowIndex.WindowPostingList postings) {
+      super(postings.byteLength());
+      this.postings = postings;
+    }
+
+    @Override
+    BaseIterator getIterator() throws IOException {
+      return new DiskExtentIterator(new MemoryWindowIndexExtentSource(postings));
+    }
+  }
+
+  private static class CachedScores extends CachedPostings {
+
+    final MemorySparseDoubleIndex.PostingList postings;
+
+    CachedScores(MemorySparseDoubleIndex.PostingList postings) {
+      super(postings.byteLength());
+      this.postings = postings;
+    }
+
+    @Override
+    BaseIterator getIterator() throws IOException {
+      return new DiskScoreIterator(new MemorySparseDoubleIndexScoreSource(postings));
     }
-    return null;
   }
 
+  private static class CachedLengths extends CachedPostings {
+
+    final MemoryDocumentLengths.FieldLengthList lengths;
+
+    CachedLengths(byte[] key, LengthsIterator iterator) throws IOException {
+      this(readLengths(key, iterator));
+    }
+
+    private CachedLengths(MemoryDocumentLengths.FieldLengthList lengths) {
+      // one int per document
+      super(4L * (lengths.lastDocument() - lengths.firstDocument() + 1));
+      this.lengths = lengths;
+    }
+
+    private static MemoryDocumentLengths.FieldLengthList readLengths(byte[] key, LengthsIterator iterator) throws IOException {
+      MemoryDocumentLengths.FieldLengthList lengths = new MemoryDocumentLengths.FieldLengthList(new Bytes(key));
+      ScoringContext c = new ScoringContext();
+      while (!iterator.isDone()) {
+        c.document = iterator.currentCandidate();
+        lengths.add(c.document, iterator.length(c));
+        iterator.movePast(c.document);
+      }
+      return lengths;
+    }
+
+    @Override
+    BaseIterator getIterator() throws IOException {
+      return new DiskLengthsIterator(new MemoryDocumentLengthsSource(lengths));
+    }
+  }
 }
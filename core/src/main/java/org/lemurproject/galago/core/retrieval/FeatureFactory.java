@@ -122,6 +122,7 @@ public class FeatureFactory {
     PRMS2Traversal.class.getName(),
     TransformRootTraversal.class.getName(),
     WindowRewriteTraversal.class.getName(),
+    IndexedWindowTraversal.class.getName(),
     TextFieldRewriteTraversal.class.getName(),
     PartAssignerTraversal.class.getName(),
     InsideToFieldPartTraversal.class.getName(),
@@ -8,6 +8,7 @@ import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackStatistics;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
 import org.lemurproject.galago.core.retrieval.query.QueryType;
@@ -37,6 +38,7 @@ public class GroupRetrieval implements Retrieval {
   protected String defGroup;
   protected Map<String, Retrieval> groups;
   protected List<Traversal> defaultTraversals;
+  protected FeedbackStatistics feedbackStatistics = null;
 
   public GroupRetrieval(Map<String, Retrieval> groups, Parameters parameters,
           String defGroup) throws Exception {
@@ -62,6 +64,12 @@ public class GroupRetrieval implements Retrieval {
 
   @Override
   public void close() throws IOException {
+    synchronized (this) {
+      if (feedbackStatistics != null) {
+        feedbackStatistics.close();
+        feedbackStatistics = null;
+      }
+    }
     for (Retrieval r : groups.values()) {
       r.close();
     }
@@ -171,6 +179,14 @@ public class GroupRetrieval implements Retrieval {
     return groups.get(defGroup).getTokenizer();
   }
 
+  @Override
+  public synchronized FeedbackStatistics getFeedbackStatistics() {
+    if (feedbackStatistics == null) {
+      feedbackStatistics = FeedbackStatistics.create(this);
+    }
+    return feedbackStatistics;
+  }
+
   // IDENTICAL FUNCTIONS THAT USE PARTICULAR GROUPS //
   public Parameters getGlobalParameters(String group) {
     return groups.get(group).getGlobalParameters();
@@ -3,12 +3,14 @@ package org.lemurproject.galago.core.retrieval;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.lemurproject.galago.core.index.DynamicIndex;
 import org.lemurproject.galago.core.index.Index;
 import org.lemurproject.galago.core.index.disk.DiskIndex;
 import org.lemurproject.galago.core.index.stats.*;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
 import org.lemurproject.galago.core.retrieval.iterator.*;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackStatistics;
 import org.lemurproject.galago.core.retrieval.processing.ProcessingModel;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.Node;
@@ -44,12 +46,18 @@ public class LocalRetrieval implements Retrieval {
     protected FeatureFactory features;
     protected Parameters globalParameters;
     protected CachedRetrieval cache;
+    protected ResultCache resultCache;
     protected List<Traversal> defaultTraversals;
+    @Nullable
+    protected ThreadLocal<List<Traversal>> threadTraversals;
+    protected TransformCache transformCache;
 
     @Nullable
     protected Cache<Long, String> nameCache;
     @Nullable
     protected Cache<Node, NodeStatistics> nodeStatisticsCache;
+    @Nullable
+    protected FeedbackStatistics feedbackStatistics;
 
 
     /**
@@ -67,7 +75,7 @@ public class LocalRetrieval implements Retrieval {
     }
 
     public LocalRetrieval(String filename, Parameters parameters) throws IOException {
-        this(new DiskIndex(filename), parameters);
+        this(new DiskIndex(filename, parameters), parameters);
     }
 
     public LocalRetrieval(Index index, Parameters parameters) {
@@ -92,12 +100,33 @@ public class LocalRetrieval implements Retrieval {
             this.index = indx;
             features = new FeatureFactory(globalParameters);
             defaultTraversals = features.getTraversals(this);
+            threadTraversals = null;
+            if (this.globalParameters.get("traversalsPerThread", false)) {
+                // for traversals that keep per-query state
+                threadTraversals = ThreadLocal.withInitial(() -> {
+                    try {
+                        return features.getTraversals(this);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
             if(nodeStatisticsCache != null) nodeStatisticsCache.invalidateAll();
             if(nameCache != null) nameCache.invalidateAll();
+            dropFeedbackStatistics();
+            if (cache != null) cache.close();
             cache = null;
             if (this.globalParameters.get("cache", false)) {
                 cache = new CachedRetrieval(this.globalParameters);
             }
+            resultCache = null;
+            if (this.globalParameters.get("resultCache", false)) {
+                resultCache = new ResultCache(this.globalParameters);
+            }
+            transformCache = null;
+            if (this.globalParameters.get("transformCache", false)) {
+                transformCache = new TransformCache(this.globalParameters);
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -108,6 +137,8 @@ public class LocalRetrieval implements Retrieval {
      */
     @Override
     public void close() throws IOException {
+        dropFeedbackStatistics();
+        if (cache != null) cache.close();
         index.close();
     }
 
@@ -125,6 +156,50 @@ public class LocalRetrieval implements Retrieval {
         return this.globalParameters;
     }
 
+    /**
+     * Returns the posting list cache, or null if "cache" is not enabled.
+     */
+    public CachedRetrieval getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the feedback document statistics shared by the relevance models
+     * of this retrieval, created on first use.
+     */
+    @Override
+    public synchronized FeedbackStatistics getFeedbackStatistics() {
+        if (feedbackStatistics == null) {
+            feedbackStatistics = FeedbackStatistics.create(this);
+        }
+        return feedbackStatistics;
+    }
+
+    private synchronized void dropFeedbackStatistics() {
+        if (feedbackStatistics != null) {
+            feedbackStatistics.close();
+            feedbackStatistics = null;
+        }
+    }
+
+    /**
+     * Returns the query result cache, or null if "resultCache" is not enabled.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Dynamic indexes change version as documents are added; static indexes
+     * never change.
+     */
+    public long getIndexVersion() {
+        if (index instanceof DynamicIndex) {
+            return ((DynamicIndex) index).getVersion();
+        }
+        return 0;
+    }
+
     /*
      * {
      * <partName> : { <nodeName> : <iteratorClass>, stemming : false, ... },
@@ -246,15 +321,27 @@ public class LocalRetrieval implements Retrieval {
         }
         ProcessingModel pm = ProcessingModel.create(this, queryTree, queryParams);
 
-        // get some results
-        results = pm.execute(queryTree, queryParams);
+        // check for repeated queries
+        long indexVersion = getIndexVersion();
+        results = (resultCache != null) ? resultCache.get(queryTree, queryParams, indexVersion) : null;
         if (results == null) {
-            results = new ScoredDocument[0];
-        }
+            Parameters cacheKeyParams = (resultCache != null) ? queryParams.clone() : null;
 
-        // Format and get names
-        String indexId = this.globalParameters.get("indexId", "0");
-        List<ScoredDocument> rankedList = Arrays.asList(getArrayResults(results, indexId));
+            // get some results
+            results = pm.execute(queryTree, queryParams);
+            if (results == null) {
+                results = new ScoredDocument[0];
+            }
+
+            // Format and get names
+            String indexId = this.globalParameters.get("indexId", "0");
+            results = getArrayResults(results, indexId);
+
+            if (resultCache != null) {
+                resultCache.put(queryTree, cacheKeyParams, indexVersion, results);
+            }
+        }
+        List<ScoredDocument> rankedList = Arrays.asList(results);
 
         Results r = new Results(this);
         r.inputQuery = queryTree;
@@ -283,9 +370,8 @@ public class LocalRetrieval implements Retrieval {
         }
 
         // second check if this node is cached
-        if (cache != null && cache.isCached(node)) {
-            iterator = cache.getCachedIterator(node);
-        } else {
+        iterator = (cache != null) ? cache.getCachedIterator(node) : null;
+        if (iterator == null) {
 
       // otherwise we need to create a new iterator
             // start by recursively creating children
@@ -298,6 +384,11 @@ public class LocalRetrieval implements Retrieval {
             if (iterator == null) {
                 iterator = features.getIterator(node, internalIterators);
             }
+
+            // frequently requested nodes are admitted to the cache, using a separate iterator
+            if (cache != null && cache.recordRequest(node, iterator)) {
+                cache.admit(node, () -> createNodeMergedIterator(node, null));
+            }
         }
 
         // we've created a new iterator - add to the cache for future nodes
@@ -310,10 +401,35 @@ public class LocalRetrieval implements Retrieval {
 
     @Override
     public Node transformQuery(Node queryTree, Parameters queryParams) throws Exception {
-        return transformQuery(defaultTraversals, queryTree, queryParams);
+        List<Traversal> traversals = (threadTraversals != null) ? threadTraversals.get() : defaultTraversals;
+        if (transformCache == null) {
+            return transformQuery(traversals, queryTree, queryParams);
+        }
+
+        // the traversals modify the tree and parameters; key on the raw query
+        String key = transformCache.key(queryTree, queryParams, getIndexVersion());
+        Node transformed = transformCache.get(key, queryParams);
+        if (transformed == null) {
+            Parameters rawParams = queryParams.clone();
+            transformed = transformQuery(traversals, queryTree, queryParams);
+            transformCache.put(key, transformed, rawParams, queryParams);
+        }
+        return transformed;
     }
 
-    private synchronized Node transformQuery(List<Traversal> traversals, Node queryTree, Parameters queryParams) throws Exception {
+    /**
+     * Returns the transformed query cache, or null if "transformCache" is not
+     * enabled.
+     */
+    public TransformCache getTransformCache() {
+        return transformCache;
+    }
+
+    /**
+     * Traversals are shared by all query threads, unless "traversalsPerThread"
+     * is set; they must not keep per-query state in fields.
+     */
+    private Node transformQuery(List<Traversal> traversals, Node queryTree, Parameters queryParams) throws Exception {
         for (Traversal traversal : traversals) {
       //System.out.println("Before:"+traversal.getClass());
             //System.out.println("Before:"+queryTree);
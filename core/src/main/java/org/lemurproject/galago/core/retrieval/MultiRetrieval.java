@@ -7,6 +7,7 @@ import org.lemurproject.galago.core.index.stats.NodeStatistics;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
 import org.lemurproject.galago.core.retrieval.iterator.*;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackStatistics;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
 import org.lemurproject.galago.core.retrieval.query.QueryType;
@@ -17,6 +18,7 @@ import org.lemurproject.galago.utility.Parameters;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class allows searching over a set of Retrievals.
@@ -25,6 +27,12 @@ import java.util.*;
  * MultiRetrievals under a MultiRetrieval, it is not recommended, as this
  * behavior has not been tested and is currently undefined.
  *
+ * Shards are queried in parallel on a shared executor (see createExecutor),
+ * with an optional per-shard deadline ("shardTimeout", ms). By default a failed
+ * or late shard fails the whole query; "shardPartialResults" returns the
+ * results of the remaining shards instead. Ranked lists are merged with a
+ * k-way merge.
+ *
  * @author sjh
  */
 public class MultiRetrieval implements Retrieval {
@@ -36,17 +44,52 @@ public class MultiRetrieval implements Retrieval {
   protected Parameters retrievalParts;
   protected HashMap<String, String> defaultIndexOperators = new HashMap<>();
   protected HashSet<String> knownIndexOperators = new HashSet<>();
+  protected ResultCache resultCache = null;
+  protected ExecutorService executor;
+  protected FeedbackStatistics feedbackStatistics = null;
 
   public MultiRetrieval(ArrayList<Retrieval> indexes, Parameters p) throws Exception {
     this.retrievals = indexes;
     this.globalParameters = p;
+    this.executor = createExecutor(p);
     initRetrieval();
     this.features = new FeatureFactory(this.globalParameters);
     defaultTraversals = features.getTraversals(this);
+    if (this.globalParameters.get("resultCache", false)) {
+      resultCache = new ResultCache(this.globalParameters);
+    }
+  }
+
+  /**
+   * Returns the query result cache, or null if "resultCache" is not enabled.
+   */
+  public ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * Combines the versions of local shards; versions only ever increase, so the
+   * sum changes whenever any shard changes.
+   */
+  protected long getIndexVersion() {
+    long version = 0;
+    for (Retrieval r : retrievals) {
+      if (r instanceof LocalRetrieval) {
+        version += ((LocalRetrieval) r).getIndexVersion();
+      }
+    }
+    return version;
   }
 
   @Override
   public void close() throws IOException {
+    executor.shutdown();
+    synchronized (this) {
+      if (feedbackStatistics != null) {
+        feedbackStatistics.close();
+        feedbackStatistics = null;
+      }
+    }
     for (Retrieval r : retrievals) {
       r.close();
     }
@@ -109,71 +152,164 @@ public class MultiRetrieval implements Retrieval {
   // Based on the root of the tree, that dictates how we execute.
   @Override
   public Results executeQuery(Node queryTree, Parameters p) throws Exception {
-    ScoredDocument[] rankedList = runRankedQuery(queryTree, p);
+    ScoredDocument[] rankedList = null;
+    long indexVersion = getIndexVersion();
+    if (resultCache != null) {
+      rankedList = resultCache.get(queryTree, p, indexVersion);
+    }
+    if (rankedList == null) {
+      Parameters cacheKeyParams = (resultCache != null) ? p.clone() : null;
+      rankedList = runRankedQuery(queryTree, p);
+      if (resultCache != null) {
+        resultCache.put(queryTree, cacheKeyParams, indexVersion, rankedList);
+      }
+    }
     Results results = new Results(this);
     results.inputQuery = queryTree;
     results.scoredDocuments = Arrays.asList(rankedList);
     return results;
   }
 
-  private ScoredDocument[] runRankedQuery(Node root, Parameters parameters) throws Exception {
-    // Asynchronously run retrieval
-    ArrayList<Thread> threads = new ArrayList<>();
-    final List<ScoredDocument> queryResultCollector = Collections.synchronizedList(new ArrayList<ScoredDocument>());
-    final List<String> errorCollector = Collections.synchronizedList(new ArrayList<String>());
-    final Node queryTree = root;
-
-    for (Retrieval retrieval : retrievals) {
-      final Parameters shardParams = parameters.clone();
-      final Retrieval r = retrieval;
-      Thread t = new Thread() {
-        @Override
-        public void run() {
-          try {
-            List<ScoredDocument> results = r.executeQuery(queryTree, shardParams).scoredDocuments;
-            if (results != null) {
-              queryResultCollector.addAll(results);
-            }
-          } catch (Exception e) {
-            errorCollector.add(e.getMessage());
-          }
-        }
-      };
-      threads.add(t);
-      t.start();
+  private ScoredDocument[] runRankedQuery(final Node queryTree, Parameters parameters) throws Exception {
+    ShardResults<List<ScoredDocument>> shardResults = fanOut(parameters, (Retrieval r, Parameters shardParams) -> {
+      List<ScoredDocument> results = r.executeQuery(queryTree, shardParams).scoredDocuments;
+      return (results != null) ? results : Collections.<ScoredDocument>emptyList();
+    });
+
+    if (!shardResults.errors.isEmpty()) {
+      System.err.println("Failed to run: " + queryTree.toString());
+      for (String e : shardResults.errors) {
+        System.err.println(e);
+      }
+      // unless partial results are acceptable, we do not want to return partial or erroneous results.
+      if (!parameters.get("shardPartialResults", globalParameters.get("shardPartialResults", false))) {
+        return new ScoredDocument[0];
+      }
     }
 
-    // Wait for a finished list
-    for (Thread t : threads) {
-      t.join();
+    // get the best {requested} results, and fix ranks
+    int requested = (int) parameters.get("requested", 1000);
+    return merge(shardResults.results, requested);
+  }
+
+  /**
+   * K-way merge of the (sorted) shard result lists, stopping after requested
+   * documents.
+   */
+  protected static ScoredDocument[] merge(List<List<ScoredDocument>> shardLists, int requested) {
+    PriorityQueue<ShardCursor> heads = new PriorityQueue<>();
+    int total = 0;
+    for (List<ScoredDocument> list : shardLists) {
+      total += list.size();
+      if (!list.isEmpty()) {
+        heads.add(new ShardCursor(list));
+      }
     }
 
-    if (errorCollector.size() > 0) {
-      System.err.println("Failed to run: " + root.toString());
-      for (String e : errorCollector) {
-        System.err.println(e);
+    ScoredDocument[] results = new ScoredDocument[Math.min(total, requested)];
+    for (int i = 0; i < results.length; i++) {
+      ShardCursor head = heads.poll();
+      results[i] = head.current();
+      results[i].rank = i + 1;
+      if (head.next()) {
+        heads.add(head);
       }
-      // we do not want to return partial or erroneous results.
-      return new ScoredDocument[0];
     }
+    return results;
+  }
 
+  private static class ShardCursor implements Comparable<ShardCursor> {
 
-    // sort the results and invert (sort is inverted)
-    Collections.sort(queryResultCollector, Collections.reverseOrder());
+    final List<ScoredDocument> list;
+    int position = 0;
 
-    // get the best {requested} results
-    int requested = (int) parameters.get("requested", 1000);
+    ShardCursor(List<ScoredDocument> list) {
+      this.list = list;
+    }
 
-    // fix ranks
-    List<ScoredDocument> scoredDocuments = queryResultCollector.subList(0, Math.min(queryResultCollector.size(), requested));
-    ScoredDocument[] results = scoredDocuments.toArray(new ScoredDocument[scoredDocuments.size()]);
-    int rank = 1;
-    for (ScoredDocument r : results) {
-      r.rank = rank;
-      rank += 1;
+    ScoredDocument current() {
+      return list.get(position);
     }
 
-    return results;
+    boolean next() {
+      position++;
+      return position < list.size();
+    }
+
+    // best document first
+    @Override
+    public int compareTo(ShardCursor other) {
+      return other.current().compareTo(current());
+    }
+  }
+
+  /**
+   * Runs a call on every shard, using the shared executor. Shards that do not
+   * respond within "shardTimeout" milliseconds (query or global parameter,
+   * default 0: no limit) are cancelled, and reported as errors.
+   */
+  private <T> ShardResults<T> fanOut(Parameters parameters, ShardCall<T> call) throws InterruptedException {
+    List<Callable<T>> tasks = new ArrayList<>();
+    for (final Retrieval r : retrievals) {
+      final Parameters shardParams = (parameters != null) ? parameters.clone() : null;
+      tasks.add(() -> call.call(r, shardParams));
+    }
+
+    long timeout = globalParameters.get("shardTimeout", 0L);
+    if (parameters != null) {
+      timeout = parameters.get("shardTimeout", timeout);
+    }
+    List<Future<T>> futures = (timeout > 0)
+            ? executor.invokeAll(tasks, timeout, TimeUnit.MILLISECONDS)
+            : executor.invokeAll(tasks);
+
+    ShardResults<T> output = new ShardResults<>();
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        output.results.add(futures.get(i).get());
+      } catch (CancellationException e) {
+        output.errors.add("Shard " + i + " timed out after " + timeout + "ms");
+      } catch (ExecutionException e) {
+        output.errors.add(e.getCause().getMessage());
+      }
+    }
+    return output;
+  }
+
+  private interface ShardCall<T> {
+
+    T call(Retrieval r, Parameters shardParams) throws Exception;
+  }
+
+  private static class ShardResults<T> {
+
+    final List<T> results = new ArrayList<>();
+    final List<String> errors = new ArrayList<>();
+  }
+
+  /**
+   * Shards are queried using a shared executor: "shardThreads" fixed threads,
+   * or a cached pool (default). With "shardVirtualThreads", virtual threads are
+   * used where the runtime provides them.
+   */
+  private static ExecutorService createExecutor(Parameters p) {
+    if (p.get("shardVirtualThreads", false)) {
+      try {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+        // not available in this runtime
+      }
+    }
+    ThreadFactory factory = (Runnable r) -> {
+      Thread t = new Thread(r, "multi-retrieval-shard");
+      t.setDaemon(true);
+      return t;
+    };
+    int threads = (int) p.get("shardThreads", 0L);
+    if (threads > 0) {
+      return Executors.newFixedThreadPool(threads, factory);
+    }
+    return Executors.newCachedThreadPool(factory);
   }
 
   @Override
@@ -271,41 +407,18 @@ public class MultiRetrieval implements Retrieval {
   }
 
   @Override
-  public FieldStatistics getCollectionStatistics(Node node) throws Exception {
-
-    ArrayList<Thread> threads = new ArrayList<Thread>();
-    final Node root = node;
-    final List<FieldStatistics> stats = Collections.synchronizedList(new ArrayList<FieldStatistics>());
-    final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
-
-    for (final Retrieval r : this.retrievals) {
-      Thread t = new Thread() {
-        @Override
-        public void run() {
-          try {
-            FieldStatistics ns = r.getCollectionStatistics(root);
-            stats.add(ns);
-          } catch (Exception ex) {
-            errors.add(ex.getMessage());
-          }
-        }
-      };
-      threads.add(t);
-      t.start();
-    }
-
-    for (Thread t : threads) {
-      t.join();
-    }
+  public FieldStatistics getCollectionStatistics(final Node node) throws Exception {
+    ShardResults<FieldStatistics> shardResults = fanOut(null, (Retrieval r, Parameters shardParams) -> r.getCollectionStatistics(node));
 
-    if (errors.size() > 0) {
-      System.err.println("Failed to count: " + root.toString());
-      for (String e : errors) {
+    if (!shardResults.errors.isEmpty()) {
+      System.err.println("Failed to count: " + node.toString());
+      for (String e : shardResults.errors) {
         System.err.println(e);
       }
       throw new IOException("Unable to count " + node.toString());
     }
 
+    List<FieldStatistics> stats = shardResults.results;
     FieldStatistics output = stats.remove(0);
     for (FieldStatistics s : stats) {
       output.add(s);
@@ -325,41 +438,18 @@ public class MultiRetrieval implements Retrieval {
   }
 
   @Override
-  public NodeStatistics getNodeStatistics(Node node) throws Exception {
-
-    ArrayList<Thread> threads = new ArrayList<Thread>();
-    final Node root = node;
-    final List<NodeStatistics> stats = Collections.synchronizedList(new ArrayList<NodeStatistics>());
-    final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
-
-    for (final Retrieval r : this.retrievals) {
-      Thread t = new Thread() {
-        @Override
-        public void run() {
-          try {
-            NodeStatistics ns = r.getNodeStatistics(root);
-            stats.add(ns);
-          } catch (Exception ex) {
-            errors.add(ex.getMessage());
-          }
-        }
-      };
-      threads.add(t);
-      t.start();
-    }
-
-    for (Thread t : threads) {
-      t.join();
-    }
+  public NodeStatistics getNodeStatistics(final Node node) throws Exception {
+    ShardResults<NodeStatistics> shardResults = fanOut(null, (Retrieval r, Parameters shardParams) -> r.getNodeStatistics(node));
 
-    if (errors.size() > 0) {
-      System.err.println("Failed to count: " + root.toString());
-      for (String e : errors) {
+    if (!shardResults.errors.isEmpty()) {
+      System.err.println("Failed to count: " + node.toString());
+      for (String e : shardResults.errors) {
         System.err.println(e);
       }
       throw new IOException("Unable to count " + node.toString());
     }
 
+    List<NodeStatistics> stats = shardResults.results;
     NodeStatistics output = stats.remove(0);
     for (NodeStatistics s : stats) {
       output.add(s);
@@ -499,4 +589,16 @@ public class MultiRetrieval implements Retrieval {
   public Tokenizer getTokenizer() {
     return this.retrievals.get(0).getTokenizer();
   }
+
+  /**
+   * Feedback documents are read through this retrieval (from the shards), and
+   * cached across queries.
+   */
+  @Override
+  public synchronized FeedbackStatistics getFeedbackStatistics() {
+    if (feedbackStatistics == null) {
+      feedbackStatistics = FeedbackStatistics.create(this);
+    }
+    return feedbackStatistics;
+  }
 }
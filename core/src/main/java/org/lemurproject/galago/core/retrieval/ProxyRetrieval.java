@@ -1,6 +1,7 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.retrieval;
 
+import org.lemurproject.galago.core.retrieval.prf.FeedbackStatistics;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.io.*;
@@ -27,6 +28,8 @@ public class ProxyRetrieval implements InvocationHandler {
    * This handle is set by RetrievalFactory so that we can touch its faked "Retrieval" interface object.
    */
   private Retrieval thisAsRetrieval;
+  // feedback documents are read through the proxy, and cached on this side
+  private FeedbackStatistics feedbackStatistics = null;
 
   public ProxyRetrieval(String url, Parameters parameters) throws IOException {
     this.indexUrl = url + "/stream";
@@ -38,9 +41,29 @@ public class ProxyRetrieval implements InvocationHandler {
 
   @Override
   public Object invoke(Object caller, Method method, Object[] args) throws Throwable {
+    if (method.getName().equals("getFeedbackStatistics")) {
+      return getFeedbackStatistics((Retrieval) caller);
+    }
+    if (method.getName().equals("close")) {
+      closeFeedbackStatistics();
+    }
     return invoke(method.getName(), args);
   }
 
+  private synchronized FeedbackStatistics getFeedbackStatistics(Retrieval caller) {
+    if (feedbackStatistics == null) {
+      feedbackStatistics = FeedbackStatistics.create(caller);
+    }
+    return feedbackStatistics;
+  }
+
+  private synchronized void closeFeedbackStatistics() {
+    if (feedbackStatistics != null) {
+      feedbackStatistics.close();
+      feedbackStatistics = null;
+    }
+  }
+
   public Object invoke(String methodName, Object[] args) throws Throwable {
 
     URL resource = new URL(this.indexUrl);
@@ -0,0 +1,122 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the ranked results of transformed queries.
+ *
+ * The key is the transformed query tree, plus every query parameter that is
+ * not listed in "resultCacheIgnore" (by default only parameters that name or
+ * describe the query, and can not change the ranking), plus the version of
+ * the index. Dynamic indexes change version when documents are added or shards
+ * are flushed, so results of older versions are never hit again; they are not
+ * cleared, but age out of the cache by weight (or TTL). Results computed for
+ * a version older than the newest seen version are not cached.
+ *
+ * Parameters:
+ *  resultCacheMaximumBytes : approximate memory bound (default 64MB)
+ *  resultCacheTTL : seconds after which results expire (default 0, never)
+ *  resultCacheIgnore : query parameters that do not affect results
+ */
+public class ResultCache {
+
+  // approximate heap cost of a cached ScoredDocument
+  private static final int DOCUMENT_BYTES = 96;
+
+  private final Cache<String, ScoredDocument[]> cache;
+  private final Set<String> ignoredParameters;
+  private final AtomicLong version = new AtomicLong(Long.MIN_VALUE);
+
+  public ResultCache(Parameters p) {
+    Caffeine<String, ScoredDocument[]> builder = Caffeine.newBuilder()
+            .maximumWeight(p.get("resultCacheMaximumBytes", 64L * 1024 * 1024))
+            .weigher((String key, ScoredDocument[] value) -> 2 * key.length() + DOCUMENT_BYTES * (value.length + 1))
+            .recordStats();
+    long ttl = p.get("resultCacheTTL", 0L);
+    if (ttl > 0) {
+      builder.expireAfterWrite(ttl, TimeUnit.SECONDS);
+    }
+    this.cache = builder.build();
+
+    this.ignoredParameters = new HashSet<>();
+    if (p.isList("resultCacheIgnore")) {
+      ignoredParameters.addAll(p.getAsList("resultCacheIgnore", String.class));
+    } else {
+      ignoredParameters.add("number");
+      ignoredParameters.add("qid");
+      ignoredParameters.add("text");
+      ignoredParameters.add("query");
+    }
+  }
+
+  /**
+   * Returns a copy of the cached results, or null.
+   */
+  public ScoredDocument[] get(Node queryTree, Parameters queryParams, long indexVersion) {
+    version.accumulateAndGet(indexVersion, Math::max);
+    ScoredDocument[] results = cache.getIfPresent(key(queryTree, queryParams, indexVersion));
+    return (results == null) ? null : copy(results);
+  }
+
+  public void put(Node queryTree, Parameters queryParams, long indexVersion, ScoredDocument[] results) {
+    // a query that started before documents were added
+    if (version.accumulateAndGet(indexVersion, Math::max) > indexVersion) {
+      return;
+    }
+    cache.put(key(queryTree, queryParams, indexVersion), copy(results));
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public Parameters getCacheStatistics() {
+    cache.cleanUp();
+    CacheStats stats = cache.stats();
+    Parameters p = Parameters.create();
+    p.set("hitCount", stats.hitCount());
+    p.set("missCount", stats.missCount());
+    p.set("hitRate", stats.hitRate());
+    p.set("evictionCount", stats.evictionCount());
+    p.set("entries", cache.estimatedSize());
+    return p;
+  }
+
+  /**
+   * Builds the canonical key: parameters are sorted, so insertion order does
+   * not matter.
+   */
+  String key(Node queryTree, Parameters queryParams, long indexVersion) {
+    return canonicalKey(queryTree, queryParams, ignoredParameters, indexVersion);
+  }
+
+  static String canonicalKey(Node queryTree, Parameters queryParams, Set<String> ignored, long indexVersion) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(indexVersion).append('\t').append(queryTree.toString());
+    for (String param : new TreeSet<>(queryParams.keySet())) {
+      if (!ignored.contains(param)) {
+        sb.append('\t').append(param).append('=').append(queryParams.get(param));
+      }
+    }
+    return sb.toString();
+  }
+
+  private static ScoredDocument[] copy(ScoredDocument[] results) {
+    ScoredDocument[] copy = new ScoredDocument[results.length];
+    for (int i = 0; i < results.length; i++) {
+      copy[i] = results[i].clone(results[i].score);
+    }
+    return copy;
+  }
+}
@@ -6,6 +6,7 @@ import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackStatistics;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
 import org.lemurproject.galago.core.retrieval.query.QueryType;
@@ -240,4 +241,13 @@ public interface Retrieval extends Closeable {
    * @return a tokenizer according to how this index was built.
    */
   Tokenizer getTokenizer();
+
+  /**
+   * Returns the statistics of feedback documents shared by the relevance
+   * models of this retrieval. Retrievals should hold one instance, so term
+   * vectors are cached across queries; by default a new one is created.
+   */
+  default FeedbackStatistics getFeedbackStatistics() {
+    return FeedbackStatistics.create(this);
+  }
 }
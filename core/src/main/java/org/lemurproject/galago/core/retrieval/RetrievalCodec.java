@@ -0,0 +1,641 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval;
+
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.parse.Tag;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.processing.ProcessingModel;
+import org.lemurproject.galago.core.retrieval.query.AnnotatedNode;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.core.retrieval.query.QueryType;
+import org.lemurproject.galago.utility.Parameters;
+import org.xerial.snappy.Snappy;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Compact binary encoding of the arguments and results of Retrieval calls, used
+ * by BinaryProxyRetrieval and BinaryContextHandler.
+ *
+ * Values are written with a one byte type tag, followed by an explicit
+ * encoding of the value; there is no Java serialization, so the client and
+ * server only need to agree on this format.
+ *
+ * Calls and replies are sent as frames: [int length][byte flags][payload].
+ * Payloads larger than the compression threshold are compressed with snappy.
+ * A request body may contain several call frames; the reply contains one
+ * frame per call, in order.
+ *
+ *  call payload : [utf method name][byte argument count][values]
+ *  reply payload : [value], or [ERROR][utf exception class][utf message]
+ */
+public final class RetrievalCodec {
+
+  public static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+  private static final byte FLAG_COMPRESSED = 1;
+
+  // value tags
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte LONG = 2;
+  private static final byte INTEGER = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte BOOLEAN = 5;
+  private static final byte PARAMETERS = 6;
+  private static final byte NODE = 7;
+  private static final byte RESULTS = 8;
+  private static final byte FIELD_STATISTICS = 9;
+  private static final byte NODE_STATISTICS = 10;
+  private static final byte PART_STATISTICS = 11;
+  private static final byte DOCUMENT = 12;
+  private static final byte DOCUMENT_MAP = 13;
+  private static final byte DOCUMENT_COMPONENTS = 14;
+  private static final byte STRING_LIST = 15;
+  private static final byte NODE_TYPE = 16;
+  private static final byte QUERY_TYPE = 17;
+  private static final byte ERROR = 18;
+
+  // node parameter tags
+  private static final byte NP_STRING = 0;
+  private static final byte NP_LONG = 1;
+  private static final byte NP_DOUBLE = 2;
+  private static final byte NP_BOOLEAN = 3;
+
+  private RetrievalCodec() {
+  }
+
+  // frames
+  public static void writeFrame(DataOutputStream output, byte[] payload, int compressionThreshold) throws IOException {
+    byte flags = 0;
+    if (compressionThreshold > 0 && payload.length > compressionThreshold) {
+      payload = Snappy.compress(payload);
+      flags |= FLAG_COMPRESSED;
+    }
+    output.writeInt(payload.length);
+    output.writeByte(flags);
+    output.write(payload);
+  }
+
+  /**
+   * Returns the payload of the next frame, or null at the end of the stream.
+   */
+  public static byte[] readFrame(DataInputStream input) throws IOException {
+    int length;
+    try {
+      length = input.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    byte flags = input.readByte();
+    byte[] payload = new byte[length];
+    input.readFully(payload);
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      payload = Snappy.uncompress(payload);
+    }
+    return payload;
+  }
+
+  // calls
+  public static byte[] encodeCall(String methodName, Object[] args) throws IOException {
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    output.writeUTF(methodName);
+    output.writeByte(args.length);
+    for (Object arg : args) {
+      writeValue(output, arg);
+    }
+    output.close();
+    return array.toByteArray();
+  }
+
+  public static String readMethodName(DataInputStream input) throws IOException {
+    return input.readUTF();
+  }
+
+  public static Object[] readArguments(DataInputStream input) throws IOException {
+    Object[] args = new Object[input.readUnsignedByte()];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = readValue(input);
+    }
+    return args;
+  }
+
+  // replies
+  public static byte[] encodeReply(Object value) throws IOException {
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    writeValue(output, value);
+    output.close();
+    return array.toByteArray();
+  }
+
+  public static byte[] encodeError(Throwable error) throws IOException {
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    output.writeByte(ERROR);
+    writeString(output, error.getClass().getName());
+    writeString(output, String.valueOf(error.getMessage()));
+    output.close();
+    return array.toByteArray();
+  }
+
+  /**
+   * Decodes a reply; remote exceptions are thrown as IOExceptions.
+   */
+  public static Object decodeReply(byte[] payload) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+    if (payload.length > 0 && payload[0] == ERROR) {
+      input.readByte();
+      String errorClass = readString(input);
+      String message = readString(input);
+      throw new IOException("Remote call failed: " + errorClass + ": " + message);
+    }
+    return readValue(input);
+  }
+
+  // values
+  public static void writeValue(DataOutputStream output, Object value) throws IOException {
+    if (value == null) {
+      output.writeByte(NULL);
+    } else if (value instanceof String) {
+      output.writeByte(STRING);
+      writeString(output, (String) value);
+    } else if (value instanceof Long) {
+      output.writeByte(LONG);
+      output.writeLong((Long) value);
+    } else if (value instanceof Integer) {
+      output.writeByte(INTEGER);
+      output.writeInt((Integer) value);
+    } else if (value instanceof Double) {
+      output.writeByte(DOUBLE);
+      output.writeDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      output.writeByte(BOOLEAN);
+      output.writeBoolean((Boolean) value);
+    } else if (value instanceof Parameters) {
+      output.writeByte(PARAMETERS);
+      writeString(output, value.toString());
+    } else if (value instanceof Node) {
+      output.writeByte(NODE);
+      writeNode(output, (Node) value);
+    } else if (value instanceof Results) {
+      output.writeByte(RESULTS);
+      writeResults(output, (Results) value);
+    } else if (value instanceof FieldStatistics) {
+      output.writeByte(FIELD_STATISTICS);
+      writeFieldStatistics(output, (FieldStatistics) value);
+    } else if (value instanceof NodeStatistics) {
+      output.writeByte(NODE_STATISTICS);
+      NodeStatistics ns = (NodeStatistics) value;
+      writeNullableString(output, ns.node);
+      output.writeLong(ns.nodeFrequency);
+      output.writeLong(ns.nodeDocumentCount);
+      output.writeLong(ns.maximumCount);
+    } else if (value instanceof IndexPartStatistics) {
+      output.writeByte(PART_STATISTICS);
+      IndexPartStatistics ps = (IndexPartStatistics) value;
+      writeNullableString(output, ps.partName);
+      output.writeLong(ps.collectionLength);
+      output.writeLong(ps.vocabCount);
+      output.writeLong(ps.highestDocumentCount);
+      output.writeLong(ps.highestFrequency);
+    } else if (value instanceof Document) {
+      output.writeByte(DOCUMENT);
+      writeDocument(output, (Document) value);
+    } else if (value instanceof DocumentComponents) {
+      output.writeByte(DOCUMENT_COMPONENTS);
+      writeString(output, ((DocumentComponents) value).toJSON().toString());
+    } else if (value instanceof NodeType) {
+      output.writeByte(NODE_TYPE);
+      writeString(output, ((NodeType) value).getIteratorClass().getName());
+    } else if (value instanceof QueryType) {
+      output.writeByte(QUERY_TYPE);
+      writeString(output, ((QueryType) value).name());
+    } else if (value instanceof Map) {
+      output.writeByte(DOCUMENT_MAP);
+      Map<?, ?> map = (Map<?, ?>) value;
+      output.writeInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeString(output, (String) entry.getKey());
+        writeDocument(output, (Document) entry.getValue());
+      }
+    } else if (value instanceof List) {
+      output.writeByte(STRING_LIST);
+      List<?> list = (List<?>) value;
+      output.writeInt(list.size());
+      for (Object s : list) {
+        writeString(output, (String) s);
+      }
+    } else {
+      throw new IOException("Can not encode values of type " + value.getClass().getName());
+    }
+  }
+
+  public static Object readValue(DataInputStream input) throws IOException {
+    byte tag = input.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case STRING:
+        return readString(input);
+      case LONG:
+        return input.readLong();
+      case INTEGER:
+        return input.readInt();
+      case DOUBLE:
+        return input.readDouble();
+      case BOOLEAN:
+        return input.readBoolean();
+      case PARAMETERS:
+        return Parameters.parseString(readString(input));
+      case NODE:
+        return readNode(input);
+      case RESULTS:
+        return readResults(input);
+      case FIELD_STATISTICS:
+        return readFieldStatistics(input);
+      case NODE_STATISTICS: {
+        NodeStatistics ns = new NodeStatistics();
+        ns.node = readNullableString(input);
+        ns.nodeFrequency = input.readLong();
+        ns.nodeDocumentCount = input.readLong();
+        ns.maximumCount = input.readLong();
+        return ns;
+      }
+      case PART_STATISTICS: {
+        IndexPartStatistics ps = new IndexPartStatistics();
+        ps.partName = readNullableString(input);
+        ps.collectionLength = input.readLong();
+        ps.vocabCount = input.readLong();
+        ps.highestDocumentCount = input.readLong();
+        ps.highestFrequency = input.readLong();
+        return ps;
+      }
+      case DOCUMENT:
+        return readDocument(input);
+      case DOCUMENT_COMPONENTS:
+        return new DocumentComponents(Parameters.parseString(readString(input)));
+      case NODE_TYPE:
+        return new NodeType(readClass(readString(input), BaseIterator.class));
+      case QUERY_TYPE:
+        return QueryType.valueOf(readString(input));
+      case DOCUMENT_MAP: {
+        int size = input.readInt();
+        Map<String, Document> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+          String key = readString(input);
+          map.put(key, readDocument(input));
+        }
+        return map;
+      }
+      case STRING_LIST: {
+        int size = input.readInt();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          list.add(readString(input));
+        }
+        return list;
+      }
+      default:
+        throw new IOException("Unknown value tag: " + tag);
+    }
+  }
+
+  // query trees
+  private static void writeNode(DataOutputStream output, Node node) throws IOException {
+    writeString(output, node.getOperator());
+    output.writeInt(node.getPosition());
+    NodeParameters np = node.getNodeParameters();
+    Set<String> keys = np.getKeySet();
+    output.writeShort(keys.size());
+    for (String key : keys) {
+      writeString(output, key);
+      if (np.isLong(key)) {
+        output.writeByte(NP_LONG);
+        output.writeLong(np.getLong(key));
+      } else if (np.isDouble(key)) {
+        output.writeByte(NP_DOUBLE);
+        output.writeDouble(np.getDouble(key));
+      } else if (np.isBoolean(key)) {
+        output.writeByte(NP_BOOLEAN);
+        output.writeBoolean(np.getBoolean(key));
+      } else {
+        output.writeByte(NP_STRING);
+        writeString(output, np.isString(key) ? np.getString(key) : np.getAsString(key));
+      }
+    }
+    List<Node> children = node.getInternalNodes();
+    output.writeShort(children.size());
+    for (Node child : children) {
+      writeNode(output, child);
+    }
+  }
+
+  private static Node readNode(DataInputStream input) throws IOException {
+    String operator = readString(input);
+    int position = input.readInt();
+    NodeParameters np = new NodeParameters();
+    int keyCount = input.readUnsignedShort();
+    for (int i = 0; i < keyCount; i++) {
+      String key = readString(input);
+      byte type = input.readByte();
+      switch (type) {
+        case NP_LONG:
+          np.set(key, input.readLong());
+          break;
+        case NP_DOUBLE:
+          np.set(key, input.readDouble());
+          break;
+        case NP_BOOLEAN:
+          np.set(key, input.readBoolean());
+          break;
+        default:
+          np.set(key, readString(input));
+      }
+    }
+    int childCount = input.readUnsignedShort();
+    List<Node> children = new ArrayList<>(childCount);
+    for (int i = 0; i < childCount; i++) {
+      children.add(readNode(input));
+    }
+    return new Node(operator, np, children, position);
+  }
+
+  // results
+  private static void writeResults(DataOutputStream output, Results results) throws IOException {
+    writeValue(output, results.inputQuery);
+    writeNullableString(output, (results.processingModel != null) ? results.processingModel.getName() : null);
+    List<ScoredDocument> docs = (results.scoredDocuments != null) ? results.scoredDocuments : Collections.<ScoredDocument>emptyList();
+    output.writeInt(docs.size());
+    for (ScoredDocument doc : docs) {
+      boolean passage = doc instanceof ScoredPassage;
+      output.writeBoolean(passage);
+      output.writeLong(doc.document);
+      output.writeDouble(doc.score);
+      output.writeInt(doc.rank);
+      writeNullableString(output, doc.documentName);
+      writeNullableString(output, doc.source);
+      if (passage) {
+        output.writeInt(((ScoredPassage) doc).begin);
+        output.writeInt(((ScoredPassage) doc).end);
+      }
+      writeAnnotation(output, doc.annotation);
+    }
+  }
+
+  private static Results readResults(DataInputStream input) throws IOException {
+    Results results = new Results(null);
+    results.inputQuery = (Node) readValue(input);
+    String processingModel = readNullableString(input);
+    if (processingModel != null) {
+      results.processingModel = readClass(processingModel, ProcessingModel.class);
+    }
+    int count = input.readInt();
+    results.scoredDocuments = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      boolean passage = input.readBoolean();
+      ScoredDocument doc = passage ? new ScoredPassage() : new ScoredDocument();
+      doc.document = input.readLong();
+      doc.score = input.readDouble();
+      doc.rank = input.readInt();
+      doc.documentName = readNullableString(input);
+      doc.source = readNullableString(input);
+      if (passage) {
+        ((ScoredPassage) doc).begin = input.readInt();
+        ((ScoredPassage) doc).end = input.readInt();
+      }
+      doc.annotation = readAnnotation(input);
+      results.scoredDocuments.add(doc);
+    }
+    return results;
+  }
+
+  private static void writeAnnotation(DataOutputStream output, AnnotatedNode node) throws IOException {
+    output.writeBoolean(node != null);
+    if (node == null) {
+      return;
+    }
+    writeNullableString(output, node.type);
+    writeNullableString(output, node.className);
+    writeNullableString(output, node.parameters);
+    output.writeLong(node.document);
+    output.writeBoolean(node.atCandidate);
+    writeNullableString(output, node.returnValue);
+    writeNullableString(output, node.extraInfo);
+    List<AnnotatedNode> children = (node.children != null) ? node.children : Collections.<AnnotatedNode>emptyList();
+    output.writeInt(children.size());
+    for (AnnotatedNode child : children) {
+      writeAnnotation(output, child);
+    }
+  }
+
+  private static AnnotatedNode readAnnotation(DataInputStream input) throws IOException {
+    if (!input.readBoolean()) {
+      return null;
+    }
+    AnnotatedNode node = new AnnotatedNode();
+    node.type = readNullableString(input);
+    node.className = readNullableString(input);
+    node.parameters = readNullableString(input);
+    node.document = input.readLong();
+    node.atCandidate = input.readBoolean();
+    node.returnValue = readNullableString(input);
+    node.extraInfo = readNullableString(input);
+    int count = input.readInt();
+    node.children = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      node.children.add(readAnnotation(input));
+    }
+    return node;
+  }
+
+  // statistics
+  private static void writeFieldStatistics(DataOutputStream output, FieldStatistics fs) throws IOException {
+    writeNullableString(output, fs.fieldName);
+    output.writeLong(fs.collectionLength);
+    output.writeLong(fs.documentCount);
+    output.writeLong(fs.maxLength);
+    output.writeLong(fs.minLength);
+    output.writeDouble(fs.avgLength);
+    output.writeLong(fs.nonZeroLenDocCount);
+    output.writeLong(fs.firstDocId);
+    output.writeLong(fs.lastDocId);
+  }
+
+  private static FieldStatistics readFieldStatistics(DataInputStream input) throws IOException {
+    FieldStatistics fs = new FieldStatistics();
+    fs.fieldName = readNullableString(input);
+    fs.collectionLength = input.readLong();
+    fs.documentCount = input.readLong();
+    fs.maxLength = input.readLong();
+    fs.minLength = input.readLong();
+    fs.avgLength = input.readDouble();
+    fs.nonZeroLenDocCount = input.readLong();
+    fs.firstDocId = input.readLong();
+    fs.lastDocId = input.readLong();
+    return fs;
+  }
+
+  // documents
+  private static void writeDocument(DataOutputStream output, Document doc) throws IOException {
+    output.writeBoolean(doc != null);
+    if (doc == null) {
+      return;
+    }
+    output.writeLong(doc.identifier);
+    writeNullableString(output, doc.name);
+    writeStringMap(output, doc.metadata);
+    writeNullableString(output, doc.text);
+
+    output.writeBoolean(doc.terms != null);
+    if (doc.terms != null) {
+      output.writeInt(doc.terms.size());
+      for (String term : doc.terms) {
+        writeString(output, term);
+      }
+      writeIntList(output, doc.termCharBegin);
+      writeIntList(output, doc.termCharEnd);
+    }
+
+    output.writeBoolean(doc.tags != null);
+    if (doc.tags != null) {
+      output.writeInt(doc.tags.size());
+      for (Tag tag : doc.tags) {
+        writeString(output, tag.name);
+        writeStringMap(output, tag.attributes);
+        output.writeInt(tag.begin);
+        output.writeInt(tag.end);
+        output.writeInt(tag.charBegin);
+        output.writeInt(tag.charEnd);
+      }
+    }
+  }
+
+  private static Document readDocument(DataInputStream input) throws IOException {
+    if (!input.readBoolean()) {
+      return null;
+    }
+    Document doc = new Document();
+    doc.identifier = input.readLong();
+    doc.name = readNullableString(input);
+    doc.metadata = readStringMap(input);
+    doc.text = readNullableString(input);
+
+    if (input.readBoolean()) {
+      int count = input.readInt();
+      doc.terms = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        doc.terms.add(readString(input));
+      }
+      doc.termCharBegin = readIntList(input);
+      doc.termCharEnd = readIntList(input);
+    }
+
+    if (input.readBoolean()) {
+      int count = input.readInt();
+      doc.tags = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        String name = readString(input);
+        Map<String, String> attributes = readStringMap(input);
+        int begin = input.readInt();
+        int end = input.readInt();
+        int charBegin = input.readInt();
+        int charEnd = input.readInt();
+        doc.tags.add(new Tag(name, attributes, begin, end, charBegin, charEnd));
+      }
+    }
+    return doc;
+  }
+
+  private static void writeStringMap(DataOutputStream output, Map<String, String> map) throws IOException {
+    output.writeInt((map != null) ? map.size() : -1);
+    if (map != null) {
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        writeString(output, entry.getKey());
+        writeNullableString(output, entry.getValue());
+      }
+    }
+  }
+
+  private static Map<String, String> readStringMap(DataInputStream input) throws IOException {
+    int size = input.readInt();
+    if (size < 0) {
+      return null;
+    }
+    Map<String, String> map = new HashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      String key = readString(input);
+      map.put(key, readNullableString(input));
+    }
+    return map;
+  }
+
+  private static void writeIntList(DataOutputStream output, List<Integer> list) throws IOException {
+    output.writeInt((list != null) ? list.size() : -1);
+    if (list != null) {
+      for (int value : list) {
+        output.writeInt(value);
+      }
+    }
+  }
+
+  private static List<Integer> readIntList(DataInputStream input) throws IOException {
+    int size = input.readInt();
+    if (size < 0) {
+      return null;
+    }
+    List<Integer> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(input.readInt());
+    }
+    return list;
+  }
+
+  // strings are written as [int length][utf-8 bytes], writeUTF is limited to 64k
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    byte[] data = value.getBytes("UTF-8");
+    output.writeInt(data.length);
+    output.write(data);
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    byte[] data = new byte[input.readInt()];
+    input.readFully(data);
+    return new String(data, "UTF-8");
+  }
+
+  private static void writeNullableString(DataOutputStream output, String value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      writeString(output, value);
+    }
+  }
+
+  private static String readNullableString(DataInputStream input) throws IOException {
+    return input.readBoolean() ? readString(input) : null;
+  }
+
+  /**
+   * Class names are sent by the other side, so the class is checked against
+   * the expected type before it is initialized.
+   */
+  private static <T> Class<? extends T> readClass(String name, Class<T> expected) throws IOException {
+    Class<?> clazz;
+    try {
+      clazz = Class.forName(name, false, RetrievalCodec.class.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    }
+    if (!expected.isAssignableFrom(clazz)) {
+      throw new IOException("Class " + name + " is not a " + expected.getName());
+    }
+    return clazz.asSubclass(expected);
+  }
+}
@@ -18,6 +18,9 @@ import java.util.*;
  * { "index" : { "g1" : [ "/path/to/index1", "/path/to/index2" ] "g2" :
  * "/path/to/index3" } }
  *
+ * { "index" : "/path/to/index", "firstTierIndex" : "/path/to/pruned/index" }
+ * (see TieredRetrieval)
+ *
  *
  * @author irmarc, sjh
  */
@@ -34,8 +37,15 @@ public class RetrievalFactory {
   }
 
   public static Retrieval create(Parameters parameters) throws Exception {
-    // if we have a single index:
-    if (parameters.isString("index")) {
+    // if we have a first tier in front of the index:
+    if (parameters.isString("firstTierIndex")) {
+      Parameters fullParameters = parameters.clone();
+      fullParameters.remove("firstTierIndex");
+      return new TieredRetrieval(instance(parameters.getString("firstTierIndex"), parameters),
+              create(fullParameters), parameters);
+
+      // if we have a single index:
+    } else if (parameters.isString("index")) {
       return instance(parameters.getString("index"), parameters);
 
       // if we have a list of index paths:
@@ -74,6 +84,14 @@ public class RetrievalFactory {
    */
   public static Retrieval instance(String path, Parameters parameters) throws Exception {
     if (path.startsWith("http://")) {
+      // "remoteProtocol": "binary" needs a server with the /binary endpoint
+      if (parameters.get("remoteProtocol", "java").equals("binary")) {
+        BinaryProxyRetrieval ih = new BinaryProxyRetrieval(path, parameters);
+        Retrieval asRetrieval = (Retrieval) Proxy.newProxyInstance(Retrieval.class.getClassLoader(),
+                new Class[]{Retrieval.class}, ih);
+        ih.setRetrieval(asRetrieval);
+        return asRetrieval;
+      }
       // create a proxy, using the ProxyRetrieval as the InvocationHandler
       ProxyRetrieval ih = new ProxyRetrieval(path, parameters);
       Retrieval asRetrieval = (Retrieval) Proxy.newProxyInstance(Retrieval.class.getClassLoader(),
@@ -0,0 +1,200 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval;
+
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackStatistics;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.core.retrieval.query.QueryType;
+import org.lemurproject.galago.core.tokenize.Tokenizer;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queries a small first tier index (e.g. a pruned copy of the index, see
+ * prune-index) first, and falls back to the full index when the first tier
+ * does not return enough documents ('tierMinimumResults', default
+ * 'requested'). A pruned index keeps the best scoring postings of each term,
+ * so the first tier can usually fill the requested ranking.
+ *
+ * Queries are transformed by the full index, so the first tier scores
+ * documents with the collection statistics of the full index, and the scores
+ * of both tiers are comparable. The tiers must share document ids.
+ *
+ * All other functions are answered by the full index.
+ */
+public class TieredRetrieval implements Retrieval {
+
+  protected Retrieval firstTier;
+  protected Retrieval fullIndex;
+  protected Parameters globalParameters;
+  protected AtomicLong firstTierQueries = new AtomicLong();
+  protected AtomicLong fullIndexQueries = new AtomicLong();
+
+  public TieredRetrieval(Retrieval firstTier, Retrieval fullIndex, Parameters parameters) {
+    this.firstTier = firstTier;
+    this.fullIndex = fullIndex;
+    this.globalParameters = parameters;
+  }
+
+  @Override
+  public Node transformQuery(Node root, Parameters queryParams) throws Exception {
+    return fullIndex.transformQuery(root, queryParams);
+  }
+
+  @Override
+  public Results executeQuery(Node root) throws Exception {
+    return executeQuery(root, Parameters.create());
+  }
+
+  @Override
+  public Results executeQuery(Node root, Parameters queryParams) throws Exception {
+    long requested = queryParams.get("requested", 1000L);
+    long minimum = queryParams.get("tierMinimumResults", globalParameters.get("tierMinimumResults", requested));
+
+    Results results = firstTier.executeQuery(root, queryParams);
+    if (results.scoredDocuments.size() >= minimum) {
+      firstTierQueries.incrementAndGet();
+      results.retrieval = this;
+      return results;
+    }
+    fullIndexQueries.incrementAndGet();
+    return fullIndex.executeQuery(root, queryParams);
+  }
+
+  /**
+   * @return the number of queries answered by the first tier.
+   */
+  public long getFirstTierQueries() {
+    return firstTierQueries.get();
+  }
+
+  /**
+   * @return the number of queries answered by the full index.
+   */
+  public long getFullIndexQueries() {
+    return fullIndexQueries.get();
+  }
+
+  public Retrieval getFirstTier() {
+    return firstTier;
+  }
+
+  public Retrieval getFullIndex() {
+    return fullIndex;
+  }
+
+  @Override
+  public void close() throws IOException {
+    firstTier.close();
+    fullIndex.close();
+  }
+
+  @Override
+  public void addNodeToCache(Node node) throws Exception {
+    firstTier.addNodeToCache(node);
+    fullIndex.addNodeToCache(node);
+  }
+
+  @Override
+  public void addAllNodesToCache(Node node) throws Exception {
+    firstTier.addAllNodesToCache(node);
+    fullIndex.addAllNodesToCache(node);
+  }
+
+  // FUNCTIONS FORWARDED TO THE FULL INDEX
+  @Override
+  public Parameters getGlobalParameters() {
+    return globalParameters;
+  }
+
+  @Override
+  public Parameters getAvailableParts() throws IOException {
+    return fullIndex.getAvailableParts();
+  }
+
+  @Override
+  public Document getDocument(String identifier, DocumentComponents p) throws IOException {
+    return fullIndex.getDocument(identifier, p);
+  }
+
+  @Override
+  public Long getDocumentId(String docname) throws IOException {
+    return fullIndex.getDocumentId(docname);
+  }
+
+  @Override
+  public Map<String, Document> getDocuments(List<String> identifier, DocumentComponents p) throws IOException {
+    return fullIndex.getDocuments(identifier, p);
+  }
+
+  @Override
+  public NodeType getNodeType(Node node) throws Exception {
+    return fullIndex.getNodeType(node);
+  }
+
+  @Override
+  public QueryType getQueryType(Node node) throws Exception {
+    return fullIndex.getQueryType(node);
+  }
+
+  @Override
+  public IndexPartStatistics getIndexPartStatistics(String partName) throws IOException {
+    return fullIndex.getIndexPartStatistics(partName);
+  }
+
+  @Override
+  public FieldStatistics getCollectionStatistics(String nodeString) throws Exception {
+    return fullIndex.getCollectionStatistics(nodeString);
+  }
+
+  @Override
+  public FieldStatistics getCollectionStatistics(Node node) throws Exception {
+    return fullIndex.getCollectionStatistics(node);
+  }
+
+  @Override
+  public NodeStatistics getNodeStatistics(String nodeString) throws Exception {
+    return fullIndex.getNodeStatistics(nodeString);
+  }
+
+  @Override
+  public NodeStatistics getNodeStatistics(Node node) throws Exception {
+    return fullIndex.getNodeStatistics(node);
+  }
+
+  @Override
+  public Integer getDocumentLength(Long docid) throws IOException {
+    return fullIndex.getDocumentLength(docid);
+  }
+
+  @Override
+  public Integer getDocumentLength(String docname) throws IOException {
+    return fullIndex.getDocumentLength(docname);
+  }
+
+  @Override
+  public String getDocumentName(Long docid) throws IOException {
+    return fullIndex.getDocumentName(docid);
+  }
+
+  @Override
+  public Tokenizer getTokenizer() {
+    return fullIndex.getTokenizer();
+  }
+
+  @Override
+  public FeedbackStatistics getFeedbackStatistics() {
+    return fullIndex.getFeedbackStatistics();
+  }
+}
@@ -0,0 +1,108 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Caches the output of the traversal chain.
+ *
+ * The key is the raw (untransformed) query tree, the query parameters that
+ * are not listed in "transformCacheIgnore", and the version of the index
+ * (traversals annotate collection statistics). Some traversals also set query
+ * parameters; these changes are recorded and re-applied on a hit.
+ *
+ * Parameters:
+ *  transformCacheSize : maximum number of cached trees (default 10000)
+ *  transformCacheIgnore : query parameters that do not affect the traversals
+ */
+public class TransformCache {
+
+  private final Cache<String, TransformedQuery> cache;
+  private final Set<String> ignoredParameters;
+
+  public TransformCache(Parameters p) {
+    this.cache = Caffeine.newBuilder()
+            .maximumSize(p.get("transformCacheSize", 10_000L))
+            .recordStats()
+            .build();
+
+    this.ignoredParameters = new HashSet<>();
+    if (p.isList("transformCacheIgnore")) {
+      ignoredParameters.addAll(p.getAsList("transformCacheIgnore", String.class));
+    } else {
+      ignoredParameters.add("number");
+      ignoredParameters.add("qid");
+    }
+  }
+
+  /**
+   * Must be computed before the traversals run, they modify the tree.
+   */
+  public String key(Node rawTree, Parameters queryParams, long indexVersion) {
+    return ResultCache.canonicalKey(rawTree, queryParams, ignoredParameters, indexVersion);
+  }
+
+  /**
+   * Returns a copy of the transformed tree, and applies the recorded parameter
+   * changes to queryParams; or returns null.
+   */
+  public Node get(String key, Parameters queryParams) {
+    TransformedQuery transformed = cache.getIfPresent(key);
+    if (transformed == null) {
+      return null;
+    }
+    if (!transformed.changes.isEmpty()) {
+      queryParams.copyFrom(transformed.changes);
+    }
+    return transformed.tree.clone();
+  }
+
+  /**
+   * @param before a copy of the query parameters, taken before the traversals ran
+   * @param after the query parameters, after the traversals ran
+   */
+  public void put(String key, Node transformedTree, Parameters before, Parameters after) {
+    Parameters changes = Parameters.create();
+    for (String param : after.keySet()) {
+      if (!before.containsKey(param) || !Objects.equals(before.get(param), after.get(param))) {
+        changes.put(param, after.get(param));
+      }
+    }
+    cache.put(key, new TransformedQuery(transformedTree.clone(), changes.clone()));
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public Parameters getCacheStatistics() {
+    cache.cleanUp();
+    CacheStats stats = cache.stats();
+    Parameters p = Parameters.create();
+    p.set("hitCount", stats.hitCount());
+    p.set("missCount", stats.missCount());
+    p.set("hitRate", stats.hitRate());
+    p.set("evictionCount", stats.evictionCount());
+    p.set("entries", cache.estimatedSize());
+    return p;
+  }
+
+  private static class TransformedQuery {
+
+    final Node tree;
+    final Parameters changes;
+
+    TransformedQuery(Node tree, Parameters changes) {
+      this.tree = tree;
+      this.changes = changes;
+    }
+  }
+}
@@ -5,6 +5,7 @@ package org.lemurproject.galago.core.retrieval.iterator;
 
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.util.ExtentArray;
 
 import java.io.IOException;
 
@@ -26,40 +27,28 @@ public class BigramIterator extends ExtentConjunctionIterator {
 
         assert (iterators.length == 2);
 
-        final ExtentIterator leftTerm = (ExtentIterator) iterators[0];
-        final ExtentIterator rightTerm = (ExtentIterator) iterators[1];
-
-        if (leftTerm.isDone() || rightTerm.isDone() || !leftTerm.hasMatch(c) || !rightTerm.hasMatch(c)) {
-            return;
-        }
-
-        final int leftCount = leftTerm.count(c);
-        final int rightCount = rightTerm.count(c);
-
-        if (leftCount == 0 || rightCount == 0) {
+        if (!loadChildExtents(c)) {
             return;
         }
 
-        final ExtentArrayIterator left = new ExtentArrayIterator(leftTerm.extents(c));
-        final ExtentArrayIterator right = new ExtentArrayIterator(rightTerm.extents(c));
-
-        // redundant?
-        if (left.isDone() || right.isDone()) {
-            return;
-        }
+        final ExtentArray left = childExtents[0];
+        final ExtentArray right = childExtents[1];
+        final int leftCount = left.size();
+        final int rightCount = right.size();
 
-        boolean hasNext = true;
-        while (hasNext) {
-            final int lhs = left.currentEnd();
-            final int rhs = right.currentBegin();
+        int l = 0;
+        int r = 0;
+        while (l < leftCount && r < rightCount) {
+            final int lhs = left.end(l);
+            final int rhs = right.begin(r);
 
             if (lhs < rhs) {
-                hasNext = left.next();
+                l++;
             } else if (lhs > rhs) {
-                hasNext = right.next();
+                r++;
             } else { // equal; matched
-                extentCache.add(left.currentBegin(), right.currentEnd());
-                hasNext = left.next();
+                extentCache.add(left.begin(l), right.end(r));
+                l++;
             }
         }
     }
@@ -0,0 +1,31 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.iterator;
+
+import java.io.IOException;
+
+/**
+ * A count iterator that can report an upper bound on the counts of the
+ * postings around a document, without decoding them.
+ *
+ * Used to compute block-local score bounds (Block-Max WAND).
+ *
+ * @see org.lemurproject.galago.core.index.source.BlockMaxSource
+ */
+public interface BlockMaxIterator extends CountIterator {
+
+  /**
+   * @return false if the underlying list does not store block maxima.
+   */
+  public boolean hasBlockMaxima();
+
+  /**
+   * Returns the last document covered by the block that would contain this
+   * document. The final block returns Long.MAX_VALUE.
+   */
+  public long blockLastCandidate(long document) throws IOException;
+
+  /**
+   * Returns the maximum count in the block that would contain this document.
+   */
+  public int blockMaximumCount(long document) throws IOException;
+}
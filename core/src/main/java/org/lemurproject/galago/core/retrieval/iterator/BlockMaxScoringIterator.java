@@ -0,0 +1,30 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.iterator;
+
+import java.io.IOException;
+
+/**
+ * Extends the delta-score interface with block-local score upper bounds. The
+ * block bounds are derived from the per-skip-block maximum counts stored in
+ * the index (see BlockMaxIterator).
+ */
+public interface BlockMaxScoringIterator extends DeltaScoringIterator {
+
+  /**
+   * @return false if the underlying counts do not provide block maxima; in
+   * this case the block bound is the list-wide maximum.
+   */
+  public boolean hasBlockMaxima();
+
+  /**
+   * Returns the last document for which blockMaximumWeightedScore(document)
+   * is a valid bound.
+   */
+  public long blockLastCandidate(long document) throws IOException;
+
+  /**
+   * Returns the maximum score (weighted using parameter 'w') that can be
+   * produced for any document in the block that would contain this document.
+   */
+  public double blockMaximumWeightedScore(long document) throws IOException;
+}
@@ -0,0 +1,20 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.iterator;
+
+/**
+ * A delta scoring iterator whose score only depends on the count of a single
+ * CountIterator and the length of the document. Term-at-a-time processing
+ * reads the counts and lengths directly, and uses score(count, length).
+ */
+public interface CountScoringIterator extends DeltaScoringIterator {
+
+  public CountIterator getCountIterator();
+
+  public LengthsIterator getLengthsIterator();
+
+  /**
+   * Returns the (unweighted) score of a document of this length, that
+   * contains count instances of the scored node.
+   */
+  public double score(int count, int length);
+}
@@ -22,10 +22,16 @@ public abstract class ExtentConjunctionIterator extends ConjunctionIterator impl
     protected ExtentArray extentCache;
     protected byte[] key;
     protected ScoringContext cachedContext = null;
+    // extents and cursor of each child for the current document,
+    // reused for every candidate (see loadChildExtents).
+    protected final ExtentArray[] childExtents;
+    protected final int[] cursors;
 
     public ExtentConjunctionIterator(NodeParameters parameters, ExtentIterator[] iterators) throws IOException {
         super(parameters, iterators);
         this.extentCache = new ExtentArray();
+        this.childExtents = new ExtentArray[iterators.length];
+        this.cursors = new int[iterators.length];
     }
 
     @Override
@@ -86,6 +92,26 @@ public abstract class ExtentConjunctionIterator extends ConjunctionIterator impl
         throw new RuntimeException("Not Implemented");
     }
 
+    /**
+     * Fills childExtents with the extents of each child for this document, and
+     * resets the cursors to the first extent. Returns false if any child has no
+     * extents here, in which case no extents can match.
+     */
+    protected boolean loadChildExtents(ScoringContext c) {
+        for (int i = 0; i < iterators.length; i++) {
+            if (iterators[i].isDone() || !iterators[i].hasMatch(c)) {
+                return false;
+            }
+            ExtentArray extents = ((ExtentIterator) iterators[i]).extents(c);
+            if (extents.size() == 0) {
+                return false;
+            }
+            childExtents[i] = extents;
+            cursors[i] = 0;
+        }
+        return true;
+    }
+
     @Override
     public AnnotatedNode getAnnotatedNode(ScoringContext c) throws IOException {
         // ensure extentCache are loaded
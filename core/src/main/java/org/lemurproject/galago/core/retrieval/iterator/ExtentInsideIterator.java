@@ -3,6 +3,7 @@ package org.lemurproject.galago.core.retrieval.iterator;
 
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.util.ExtentArray;
 
 import java.io.IOException;
 
@@ -62,22 +63,26 @@ public class ExtentInsideIterator extends ExtentConjunctionIterator {
     @Override
     public void loadExtentsCommon(ScoringContext c) {
 
-        if (innerIterator.isDone() || !innerIterator.hasMatch(c) || outerIterator.isDone() || !outerIterator.hasMatch(c)) {
-        // then we can't have any extentCache for this document
+        if (!loadChildExtents(c)) {
+            // then we can't have any extentCache for this document
             return;
         }
 
-        ExtentArrayIterator inner = new ExtentArrayIterator(innerIterator.extents(c));
-        ExtentArrayIterator outer = new ExtentArrayIterator(outerIterator.extents(c));
+        final ExtentArray inner = childExtents[0];
+        final ExtentArray outer = childExtents[1];
+        final int innerCount = inner.size();
+        final int outerCount = outer.size();
 
-        while (!inner.isDone() && !outer.isDone()) {
-            if (outer.currentlyContains(inner)) {
-                extentCache.add(inner.currentBegin(), inner.currentEnd());
-                inner.next();
-            } else if (outer.currentEnd() <= inner.currentBegin()) {
-                outer.next();
+        int i = 0;
+        int o = 0;
+        while (i < innerCount && o < outerCount) {
+            if (outer.begin(o) <= inner.begin(i) && outer.end(o) >= inner.end(i)) {
+                extentCache.add(inner.begin(i), inner.end(i));
+                i++;
+            } else if (outer.end(o) <= inner.begin(i)) {
+                o++;
             } else {
-                inner.next();
+                i++;
             }
         }
     }
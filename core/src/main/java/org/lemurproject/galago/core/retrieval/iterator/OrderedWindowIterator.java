@@ -5,6 +5,7 @@ package org.lemurproject.galago.core.retrieval.iterator;
 
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.util.ExtentArray;
 
 import java.io.IOException;
 
@@ -24,63 +25,49 @@ public class OrderedWindowIterator extends ExtentConjunctionIterator {
 
     @Override
     public void loadExtentsCommon(ScoringContext c) {
-
-        ExtentArrayIterator[] arrayIterators;
-        arrayIterators = new ExtentArrayIterator[iterators.length];
-        for (int i = 0; i < iterators.length; i++) {
-            if (iterators[i].isDone() || !iterators[i].hasMatch(c)) {
-                // we can not load any extentCache if the iterator is done - or is at the wrong document.
-                return;
-            }
-
-            arrayIterators[i] = new ExtentArrayIterator(((ExtentIterator) iterators[i]).extents(c));
-            if (arrayIterators[i].isDone()) {
-                // if this document does not have any extentCache we can not load any extentCache
-                return;
-            }
+        if (!loadChildExtents(c)) {
+            // some child has no extents in this document
+            return;
         }
 
-        boolean notDone = true;
-        while (notDone) {
+        final ExtentArray first = childExtents[0];
+        final int firstCount = first.size();
+
+        for (int f = 0; f < firstCount; f++) {
             // find the start of the first word
+            final int begin = first.begin(f);
+            int end = first.end(f);
             boolean invalid = false;
-            int begin = arrayIterators[0].currentBegin();
 
             // loop over all the rest of the words
-            for (int i = 1; i < arrayIterators.length; i++) {
-                int end = arrayIterators[i - 1].currentEnd();
-
-                // try to move this iterator so that it's past the end of the previous word
-                assert (arrayIterators[i] != null);
-                assert (!arrayIterators[i].isDone());
-                while (end > arrayIterators[i].currentBegin()) {
-                    notDone = arrayIterators[i].next();
-
-                    // if there are no more occurrences of this word,
-                    // no more ordered windows are possible
-                    if (!notDone) {
-                        return;
-                    }
+            for (int i = 1; i < childExtents.length; i++) {
+                final ExtentArray extents = childExtents[i];
+                final int count = extents.size();
+                int cursor = cursors[i];
+
+                // move this cursor so that it's past the end of the previous word
+                while (cursor < count && extents.begin(cursor) < end) {
+                    cursor++;
                 }
-
-                if (width == -1) {
-                    continue; // always valid setting.
+                // if there are no more occurrences of this word,
+                // no more ordered windows are possible
+                if (cursor == count) {
+                    return;
                 }
-                if (arrayIterators[i].currentBegin() - end >= width) {
+                cursors[i] = cursor;
+
+                if (width != -1 && extents.begin(cursor) - end >= width) {
                     invalid = true;
                     break;
                 }
+                end = extents.end(cursor);
             }
 
-            int end = arrayIterators[arrayIterators.length - 1].currentEnd();
-
             // if it's a match, record it
             if (!invalid) {
                 extentCache.add(begin, end);
             }
-
-            // move the first iterator forward - we are double dipping on all other iterators.
-            notDone = arrayIterators[0].next();
+            // the first word moves forward - we are double dipping on all other cursors.
         }
     }
 }
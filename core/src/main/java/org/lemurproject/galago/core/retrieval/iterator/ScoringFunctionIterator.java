@@ -41,6 +41,14 @@ public abstract class ScoringFunctionIterator extends TransformIterator implemen
     this.lengthsIterator.syncTo(document);
   }
   
+  public CountIterator getCountIterator() {
+    return countIterator;
+  }
+
+  public LengthsIterator getLengthsIterator() {
+    return lengthsIterator;
+  }
+
   @Override
   public double maximumScore() {
     return Double.POSITIVE_INFINITY;
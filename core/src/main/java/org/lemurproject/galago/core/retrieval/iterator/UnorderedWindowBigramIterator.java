@@ -2,6 +2,7 @@ package org.lemurproject.galago.core.retrieval.iterator;
 
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.util.ExtentArray;
 
 import java.io.IOException;
 
@@ -27,33 +28,35 @@ public class UnorderedWindowBigramIterator extends ExtentConjunctionIterator {
     public void loadExtentsCommon(ScoringContext c) {
 
         // we can not load any extentCache if the iterator is done - or is at the wrong document.
-        if (iterators[0].isDone() || iterators[1].isDone() || !iterators[0].hasMatch(c) || !iterators[1].hasMatch(c)) {
-            return;
-        }
-
-        ExtentArrayIterator iterA = new ExtentArrayIterator(((ExtentIterator) iterators[0]).extents(c));
-        ExtentArrayIterator iterB = new ExtentArrayIterator(((ExtentIterator) iterators[1]).extents(c));
-
-        if (iterA.isDone() || iterB.isDone()) {
+        if (!loadChildExtents(c)) {
             return;
         }
 
+        final ExtentArray a = childExtents[0];
+        final ExtentArray b = childExtents[1];
+        final int aCount = a.size();
+        final int bCount = b.size();
         final boolean anySizeWindow = (width < 0);
 
-        boolean hasNext = true;
-        while (hasNext) {
-            // choose minimum iterator based on start
-            final ExtentArrayIterator minIter = (iterA.currentBegin() < iterB.currentBegin()) ? iterA : iterB;
-            final int minimumPosition = minIter.currentBegin();
-            final int maximumPosition = Math.max(iterA.currentEnd(), iterB.currentEnd());
+        int ai = 0;
+        int bi = 0;
+        while (ai < aCount && bi < bCount) {
+            // choose minimum cursor based on start
+            final boolean aIsMin = a.begin(ai) < b.begin(bi);
+            final int minimumPosition = aIsMin ? a.begin(ai) : b.begin(bi);
+            final int maximumPosition = Math.max(a.end(ai), b.end(bi));
 
             // check for a match
             if (anySizeWindow || maximumPosition - minimumPosition <= width) {
                 extentCache.add(minimumPosition, maximumPosition);
             }
 
-            // move minimum iterator
-            hasNext = minIter.next();
+            // move minimum cursor
+            if (aIsMin) {
+                ai++;
+            } else {
+                bi++;
+            }
         }
     }
 
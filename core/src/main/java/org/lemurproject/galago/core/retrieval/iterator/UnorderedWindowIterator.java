@@ -3,6 +3,7 @@ package org.lemurproject.galago.core.retrieval.iterator;
 
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.util.ExtentArray;
 
 import java.io.IOException;
 
@@ -26,29 +27,17 @@ public class UnorderedWindowIterator extends ExtentConjunctionIterator {
 
     @Override
     public void loadExtentsCommon(ScoringContext c) {
-
-        ExtentArrayIterator[] arrayIterators;
-        int maximumPosition = 0;
-        int minimumPosition = Integer.MAX_VALUE;
+        if (!loadChildExtents(c)) {
+            // some child has no extents in this document
+            return;
+        }
 
         // someday this will be a heap/priorityQueue for the overlapping case
-        arrayIterators = new ExtentArrayIterator[iterators.length];
-
-        for (int i = 0; i < iterators.length; i++) {
-            if (iterators[i].isDone() || !iterators[i].hasMatch(c)) {
-                // we can not load any extentCache if the iterator is done - or is at the wrong document.
-                return;
-            }
-
-            arrayIterators[i] = new ExtentArrayIterator(((ExtentIterator) iterators[i]).extents(c));
-
-            if (arrayIterators[i].isDone()) {
-                // if this document does not have any extentCache we can not load any extentCache
-                return;
-            }
-
-            minimumPosition = Math.min(arrayIterators[i].currentBegin(), minimumPosition);
-            maximumPosition = Math.max(arrayIterators[i].currentEnd(), maximumPosition);
+        int minimumPosition = Integer.MAX_VALUE;
+        int maximumPosition = 0;
+        for (ExtentArray extents : childExtents) {
+            minimumPosition = Math.min(minimumPosition, extents.begin(0));
+            maximumPosition = Math.max(maximumPosition, extents.end(0));
         }
 
         do {
@@ -58,23 +47,21 @@ public class UnorderedWindowIterator extends ExtentConjunctionIterator {
                 extentCache.add(minimumPosition, maximumPosition);
             }
 
-            for (int i = 0; i < arrayIterators.length; i++) {
-                if (arrayIterators[i].currentBegin() == minimumPosition) {
-                    boolean result = arrayIterators[i].next();
-                    if (!result) {
+            for (int i = 0; i < childExtents.length; i++) {
+                if (childExtents[i].begin(cursors[i]) == minimumPosition) {
+                    cursors[i]++;
+                    if (cursors[i] == childExtents[i].size()) {
                         return;
                     }
                 }
             }
 
-            // reset the minimumPosition
+            // now, reset bounds
             minimumPosition = Integer.MAX_VALUE;
             maximumPosition = 0;
-
-            // now, reset bounds
-            for (int i = 0; i < arrayIterators.length; i++) {
-                minimumPosition = Math.min(minimumPosition, arrayIterators[i].currentBegin());
-                maximumPosition = Math.max(maximumPosition, arrayIterators[i].currentEnd());
+            for (int i = 0; i < childExtents.length; i++) {
+                minimumPosition = Math.min(minimumPosition, childExtents[i].begin(cursors[i]));
+                maximumPosition = Math.max(maximumPosition, childExtents[i].end(cursors[i]));
             }
         } while (true);
     }
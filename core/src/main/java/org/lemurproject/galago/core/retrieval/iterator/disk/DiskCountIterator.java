@@ -1,9 +1,11 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.retrieval.iterator.disk;
 
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
 import org.lemurproject.galago.core.index.source.CountSource;
 import org.lemurproject.galago.core.index.stats.NodeAggregateIterator;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxIterator;
 import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.AnnotatedNode;
@@ -17,7 +19,7 @@ import java.util.List;
  * @author jfoley, sjh
  */
 public class DiskCountIterator extends SourceIterator
-        implements NodeAggregateIterator, CountIterator {
+        implements NodeAggregateIterator, CountIterator, BlockMaxIterator {
 
   CountSource countSrc;
 
@@ -57,4 +59,25 @@ public class DiskCountIterator extends SourceIterator
   public boolean indicator(ScoringContext c) {
     return count(c) > 0;
   }
+
+  @Override
+  public boolean hasBlockMaxima() {
+    return (countSrc instanceof BlockMaxSource) && ((BlockMaxSource) countSrc).hasBlockMaxima();
+  }
+
+  @Override
+  public long blockLastCandidate(long document) throws IOException {
+    if (countSrc instanceof BlockMaxSource) {
+      return ((BlockMaxSource) countSrc).blockLastCandidate(document);
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int blockMaximumCount(long document) throws IOException {
+    if (countSrc instanceof BlockMaxSource) {
+      return ((BlockMaxSource) countSrc).blockMaximumCount(document);
+    }
+    return (int) countSrc.getStatistics().maximumCount;
+  }
 }
@@ -1,9 +1,11 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.retrieval.iterator.disk;
 
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
 import org.lemurproject.galago.core.index.source.ExtentSource;
 import org.lemurproject.galago.core.index.stats.NodeAggregateIterator;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ExtentIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.AnnotatedNode;
@@ -16,7 +18,7 @@ import java.util.Collections;
  *
  * @author jfoley
  */
-public class DiskExtentIterator extends SourceIterator implements NodeAggregateIterator, ExtentIterator {
+public class DiskExtentIterator extends SourceIterator implements NodeAggregateIterator, ExtentIterator, BlockMaxIterator {
 
   ExtentSource extentSrc;
 
@@ -74,4 +76,25 @@ public class DiskExtentIterator extends SourceIterator implements NodeAggregateI
   public boolean indicator(ScoringContext c) {
     return count(c) > 0;
   }
+
+  @Override
+  public boolean hasBlockMaxima() {
+    return (extentSrc instanceof BlockMaxSource) && ((BlockMaxSource) extentSrc).hasBlockMaxima();
+  }
+
+  @Override
+  public long blockLastCandidate(long document) throws IOException {
+    if (extentSrc instanceof BlockMaxSource) {
+      return ((BlockMaxSource) extentSrc).blockLastCandidate(document);
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int blockMaximumCount(long document) throws IOException {
+    if (extentSrc instanceof BlockMaxSource) {
+      return ((BlockMaxSource) extentSrc).blockMaximumCount(document);
+    }
+    return (int) extentSrc.getStatistics().maximumCount;
+  }
 }
@@ -3,8 +3,10 @@ package org.lemurproject.galago.core.retrieval.iterator.scoring;
 
 import org.lemurproject.galago.core.retrieval.RequiredParameters;
 import org.lemurproject.galago.core.retrieval.RequiredStatistics;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxIterator;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
-import org.lemurproject.galago.core.retrieval.iterator.DeltaScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.CountScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ScoringFunctionIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
@@ -21,7 +23,7 @@ import java.util.List;
  */
 @RequiredStatistics(statistics = {"collectionLength", "documentCount", "nodeFrequency", "nodeDocumentCount", "maximumCount"})
 @RequiredParameters(parameters = {"b", "k"})
-public class BM25ScoringIterator extends ScoringFunctionIterator implements DeltaScoringIterator {
+public class BM25ScoringIterator extends ScoringFunctionIterator implements BlockMaxScoringIterator, CountScoringIterator {
 
   // delta
   private final double weight;
@@ -30,6 +32,8 @@ public class BM25ScoringIterator extends ScoringFunctionIterator implements Delt
   private final double weightedMax;
   private final double weightedMin;
   private final double weightedMaxDiff;
+  // block-max
+  private final BlockMaxIterator blockMaxIterator;
   // scoring
   private final double b;
   private final double k;
@@ -66,6 +70,9 @@ public class BM25ScoringIterator extends ScoringFunctionIterator implements Delt
     weightedMin = weight * min;
     weightedMax = weight * max;
     weightedMaxDiff = weightedMax - weightedMin;
+
+    blockMaxIterator = (it instanceof BlockMaxIterator && ((BlockMaxIterator) it).hasBlockMaxima())
+            ? (BlockMaxIterator) it : null;
   }
 
   @Override
@@ -98,6 +105,25 @@ public class BM25ScoringIterator extends ScoringFunctionIterator implements Delt
     return weightedMin;
   }
 
+  @Override
+  public boolean hasBlockMaxima() {
+    return blockMaxIterator != null;
+  }
+
+  @Override
+  public long blockLastCandidate(long document) throws IOException {
+    return (blockMaxIterator != null) ? blockMaxIterator.blockLastCandidate(document) : Long.MAX_VALUE;
+  }
+
+  @Override
+  public double blockMaximumWeightedScore(long document) throws IOException {
+    if (blockMaxIterator == null) {
+      return weightedMax;
+    }
+    int maxCount = blockMaxIterator.blockMaximumCount(document);
+    return Math.max(weight * score(maxCount, maxCount), weightedMin);
+  }
+
   @Override
   public double deltaScore(ScoringContext c) {
     double diff = weight * (max - score(c));
@@ -117,6 +143,11 @@ public class BM25ScoringIterator extends ScoringFunctionIterator implements Delt
     return score(count, length);
   }
 
+  @Override
+  public double score(int count, int length) {
+    return score((double) count, (double) length);
+  }
+
   private double score(double count, double length) {
     double numerator = count * (k + 1);
     double denominator = count + (k * (1 - b + (b * length / avgDocLength)));
@@ -3,8 +3,10 @@ package org.lemurproject.galago.core.retrieval.iterator.scoring;
 
 import org.lemurproject.galago.core.retrieval.RequiredParameters;
 import org.lemurproject.galago.core.retrieval.RequiredStatistics;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxIterator;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
-import org.lemurproject.galago.core.retrieval.iterator.DeltaScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.CountScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ScoringFunctionIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
@@ -21,7 +23,7 @@ import java.io.IOException;
 @RequiredStatistics(statistics = {"collectionLength", "nodeFrequency", "maximumCount"})
 @RequiredParameters(parameters = {"mu"})
 public class DirichletScoringIterator extends ScoringFunctionIterator
-        implements DeltaScoringIterator {
+        implements BlockMaxScoringIterator, CountScoringIterator {
 
   // delta
   private final double weight;
@@ -30,6 +32,8 @@ public class DirichletScoringIterator extends ScoringFunctionIterator
   private final double weightedMin;
   private final double weightedMax;
   private final double weightedMaxDiff;
+  // block-max
+  private final BlockMaxIterator blockMaxIterator;
   // stats
   private final double mu;
   private final double background;
@@ -60,6 +64,9 @@ public class DirichletScoringIterator extends ScoringFunctionIterator
     weightedMin = weight * min;
     weightedMax = weight * max;
     weightedMaxDiff = weightedMax - weightedMin;
+
+    blockMaxIterator = (it instanceof BlockMaxIterator && ((BlockMaxIterator) it).hasBlockMaxima())
+            ? (BlockMaxIterator) it : null;
   }
 
   @Override
@@ -97,6 +104,26 @@ public class DirichletScoringIterator extends ScoringFunctionIterator
     return weightedMaxDiff;
   }
 
+  @Override
+  public boolean hasBlockMaxima() {
+    return blockMaxIterator != null;
+  }
+
+  @Override
+  public long blockLastCandidate(long document) throws IOException {
+    return (blockMaxIterator != null) ? blockMaxIterator.blockLastCandidate(document) : Long.MAX_VALUE;
+  }
+
+  @Override
+  public double blockMaximumWeightedScore(long document) throws IOException {
+    if (blockMaxIterator == null) {
+      return weightedMax;
+    }
+    // as for the list-wide max, the block maxtf is also assumed to be the length of the document
+    int maxCount = blockMaxIterator.blockMaximumCount(document);
+    return Math.max(weight * dirichletScore(maxCount, maxCount), weightedMin);
+  }
+
   @Override
   public double score(ScoringContext c) {
     int count = ((CountIterator) iterator).count(c);
@@ -104,6 +131,11 @@ public class DirichletScoringIterator extends ScoringFunctionIterator
     return dirichletScore(count, length);
   }
 
+  @Override
+  public double score(int count, int length) {
+    return dirichletScore(count, length);
+  }
+
   private double dirichletScore(double count, double length) {
     double numerator = count + (mu * background);
     double denominator = length + mu;
@@ -4,7 +4,7 @@ package org.lemurproject.galago.core.retrieval.iterator.scoring;
 import org.lemurproject.galago.core.retrieval.RequiredParameters;
 import org.lemurproject.galago.core.retrieval.RequiredStatistics;
 import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
-import org.lemurproject.galago.core.retrieval.iterator.DeltaScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.CountScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ScoringFunctionIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
@@ -19,7 +19,7 @@ import java.io.IOException;
 @RequiredStatistics(statistics = {"maximumCount", "collectionLength", "nodeFrequency"})
 @RequiredParameters(parameters = {"lambda"})
 public class JelinekMercerScoringIterator extends ScoringFunctionIterator
-        implements DeltaScoringIterator {
+        implements CountScoringIterator {
 
   // delta
   private final double weight;
@@ -96,11 +96,16 @@ public class JelinekMercerScoringIterator extends ScoringFunctionIterator
   public double score(ScoringContext c) {
     int count = ((CountIterator) iterator).count(c);
     int length = this.lengthsIterator.length(c);
+    return score(count, length);
+  }
+
+  @Override
+  public double score(int count, int length) {
     // Make safe for scoring missing documents:
     if(length == 0) {
       return Math.log((1-lambda) * background);
     }
-    return score(count, length);
+    return score((double) count, (double) length);
   }
 
   public double score(double count, double length) {
@@ -0,0 +1,39 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.prf;
+
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.GroupRetrieval;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+
+import java.io.IOException;
+
+/**
+ * Reads feedback documents from the corpus, and tokenizes them.
+ */
+public class CorpusTermSource implements FeedbackTermSource {
+
+  private final Retrieval retrieval;
+
+  public CorpusTermSource(Retrieval retrieval) {
+    this.retrieval = retrieval;
+  }
+
+  @Override
+  public FeedbackTermVector getTermVector(ScoredDocument sd, String group) throws IOException {
+    DocumentComponents corpusParams = new DocumentComponents(true, false, true);
+    Document doc;
+    if (group != null && retrieval instanceof GroupRetrieval) {
+      doc = ((GroupRetrieval) retrieval).getDocument(sd.documentName, corpusParams, group);
+    } else {
+      doc = retrieval.getDocument(sd.documentName, corpusParams);
+    }
+    if (doc == null) {
+      return null;
+    }
+    return FeedbackTermVector.fromTerms(doc.terms);
+  }
+}
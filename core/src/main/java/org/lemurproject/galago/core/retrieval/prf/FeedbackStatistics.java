@@ -0,0 +1,168 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.prf;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides the term vectors of feedback documents to the relevance models.
+ *
+ * Documents are read by a FeedbackTermSource ("rmTermSource", default: the
+ * tokenized corpus), in document id order, split over a pool of "rmThreads"
+ * threads owned by the instance (see close).
+ * Term vectors are cached across queries, up to "rmCacheSize" documents
+ * (0 disables the cache).
+ *
+ * Retrievals hold one instance, shared by their relevance models (see
+ * Retrieval.getFeedbackStatistics).
+ */
+public class FeedbackStatistics {
+
+  private ExecutorService executor = null;
+  private final FeedbackTermSource source;
+  private final int threads;
+  private final Cache<String, FeedbackTermVector> cache;
+
+  public FeedbackStatistics(FeedbackTermSource source, Parameters p) {
+    this.source = source;
+    this.threads = (int) p.get("rmThreads", (long) Runtime.getRuntime().availableProcessors());
+    long cacheSize = p.get("rmCacheSize", 1000L);
+    this.cache = (cacheSize > 0) ? Caffeine.newBuilder().maximumSize(cacheSize).build() : null;
+  }
+
+  /**
+   * @return the statistics shared by the relevance models of the retrieval.
+   */
+  public static FeedbackStatistics get(Retrieval retrieval) {
+    return retrieval.getFeedbackStatistics();
+  }
+
+  public static FeedbackStatistics create(Retrieval retrieval) {
+    Parameters p = retrieval.getGlobalParameters();
+    return new FeedbackStatistics(createSource(p, retrieval), p);
+  }
+
+  public static FeedbackTermSource createSource(Parameters p, Retrieval retrieval) {
+    if (p.isString("rmTermSource")) {
+      try {
+        Class<?> clazz = Class.forName(p.getString("rmTermSource"));
+        return (FeedbackTermSource) clazz.getConstructor(Retrieval.class).newInstance(retrieval);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return new CorpusTermSource(retrieval);
+  }
+
+  /**
+   * @return the term vectors of the documents that could be read.
+   */
+  public Map<ScoredDocument, FeedbackTermVector> getTermVectors(List<ScoredDocument> documents, final String group) throws IOException {
+    Map<ScoredDocument, FeedbackTermVector> vectors = new HashMap<>();
+    List<ScoredDocument> missing = new ArrayList<>();
+    for (ScoredDocument sd : documents) {
+      FeedbackTermVector vector = (cache == null) ? null : cache.getIfPresent(getKey(sd, group));
+      if (vector != null) {
+        vectors.put(sd, vector);
+      } else {
+        missing.add(sd);
+      }
+    }
+
+    // documents are read in document id order
+    Collections.sort(missing, (a, b) -> Long.compare(a.document, b.document));
+
+    int chunkCount = Math.min(threads, missing.size());
+    if (chunkCount <= 1) {
+      read(missing, group, vectors);
+      return vectors;
+    }
+
+    List<Future<Map<ScoredDocument, FeedbackTermVector>>> futures = new ArrayList<>();
+    int chunkSize = (missing.size() + chunkCount - 1) / chunkCount;
+    for (int start = 0; start < missing.size(); start += chunkSize) {
+      final List<ScoredDocument> chunk = missing.subList(start, Math.min(missing.size(), start + chunkSize));
+      futures.add(getExecutor().submit(() -> {
+        Map<ScoredDocument, FeedbackTermVector> read = new HashMap<>();
+        read(chunk, group, read);
+        return read;
+      }));
+    }
+    for (Future<Map<ScoredDocument, FeedbackTermVector>> future : futures) {
+      try {
+        vectors.putAll(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+    return vectors;
+  }
+
+  private void read(List<ScoredDocument> documents, String group, Map<ScoredDocument, FeedbackTermVector> vectors) throws IOException {
+    for (ScoredDocument sd : documents) {
+      FeedbackTermVector vector = source.getTermVector(sd, group);
+      if (vector != null) {
+        vectors.put(sd, vector);
+        if (cache != null) {
+          cache.put(getKey(sd, group), vector);
+        }
+      }
+    }
+  }
+
+  public void clearCache() {
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  private static String getKey(ScoredDocument sd, String group) {
+    return (group == null) ? sd.documentName : group + "\t" + sd.documentName;
+  }
+
+  /**
+   * Stops the reading threads; the retrieval that holds the instance calls
+   * this when it drops it.
+   */
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      ThreadFactory factory = (Runnable r) -> {
+        Thread t = new Thread(r, "feedback-statistics");
+        t.setDaemon(true);
+        return t;
+      };
+      executor = Executors.newFixedThreadPool(threads, factory);
+    }
+    return executor;
+  }
+}
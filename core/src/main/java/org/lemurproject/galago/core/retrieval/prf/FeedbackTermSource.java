@@ -0,0 +1,23 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.prf;
+
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+
+import java.io.IOException;
+
+/**
+ * Reads the term vectors of feedback documents for the relevance models.
+ *
+ * Implementations are constructed with the Retrieval (see
+ * FeedbackStatistics), and must be thread-safe: documents are read in
+ * parallel.
+ */
+public interface FeedbackTermSource {
+
+  /**
+   * @return the term vector of the document, or null if it can not be read.
+   */
+  FeedbackTermVector getTermVector(ScoredDocument document, String group) throws IOException;
+}
@@ -0,0 +1,34 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.prf;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The term counts and the length of a feedback document.
+ */
+public class FeedbackTermVector {
+
+  public final int length;
+  public final Map<String, Integer> counts;
+
+  public FeedbackTermVector(int length, Map<String, Integer> counts) {
+    this.length = length;
+    this.counts = Collections.unmodifiableMap(counts);
+  }
+
+  /**
+   * Counts the terms of a tokenized document.
+   */
+  public static FeedbackTermVector fromTerms(List<String> terms) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (String term : terms) {
+      counts.merge(term, 1, Integer::sum);
+    }
+    return new FeedbackTermVector(terms.size(), counts);
+  }
+}
@@ -3,11 +3,8 @@
  */
 package org.lemurproject.galago.core.retrieval.prf;
 
-import org.lemurproject.galago.core.parse.Document;
-import org.lemurproject.galago.core.parse.Document.DocumentComponents;
 import org.lemurproject.galago.core.parse.stem.KrovetzStemmer;
 import org.lemurproject.galago.core.parse.stem.Stemmer;
-import org.lemurproject.galago.core.retrieval.GroupRetrieval;
 import org.lemurproject.galago.core.retrieval.Results;
 import org.lemurproject.galago.core.retrieval.Retrieval;
 import org.lemurproject.galago.core.retrieval.ScoredDocument;
@@ -170,30 +167,25 @@ public class RelevanceModel1 implements ExpansionModel {
   public static Map<String, Map<ScoredDocument, Integer>> countGrams(Retrieval retrieval, List<ScoredDocument> results, Stemmer stemmer, Parameters fbParams, Set<String> stemmedQueryTerms, Set<String> exclusionTerms, Set<String> inclusionTerms) throws IOException {
     Map<String, Map<ScoredDocument, Integer>> counts = new HashMap<String, Map<ScoredDocument, Integer>>();
     Map<ScoredDocument, Integer> termCounts;
-    Document doc;
-
-    DocumentComponents corpusParams = new DocumentComponents(true, false, true);
 
     String group = fbParams.get("group", (String) null);
-     
+
+    // term vectors are read in parallel, and cached across queries
+    Map<ScoredDocument, FeedbackTermVector> vectors = FeedbackStatistics.get(retrieval).getTermVectors(results, group);
+
     for (ScoredDocument sd : results) {
-      if (group != null && retrieval instanceof GroupRetrieval) {
-        doc = ((GroupRetrieval) retrieval).getDocument(sd.documentName, corpusParams, group);
-      } else {
-        doc = retrieval.getDocument(sd.documentName, corpusParams);
-      }
+      FeedbackTermVector vector = vectors.get(sd);
 
-      if (doc == null) {
+      if (vector == null) {
         logger.info("Failed to retrieve document: " + sd.documentName + " -- RM skipping document.");
         continue;
       }
 
-      List<String> docterms = doc.terms;
-
       sd.annotation = new AnnotatedNode();
-      sd.annotation.extraInfo = "" + docterms.size();
+      sd.annotation.extraInfo = "" + vector.length;
 
-      for (String term : docterms) {
+      for (Map.Entry<String, Integer> entry : vector.counts.entrySet()) {
+        String term = entry.getKey();
         // perform stopword and query term filtering here //
         if (inclusionTerms != null && !inclusionTerms.contains(term)) {
             continue; // not on the whitelist
@@ -201,15 +193,12 @@ public class RelevanceModel1 implements ExpansionModel {
         if (stemmedQueryTerms.contains(stemmer.stem(term)) || exclusionTerms.contains(term)) {
           continue; // on the blacklist
         }
-        if (!counts.containsKey(term)) {
-          counts.put(term, new HashMap<ScoredDocument, Integer>());
-        }
         termCounts = counts.get(term);
-        if (termCounts.containsKey(sd)) {
-          termCounts.put(sd, termCounts.get(sd) + 1);
-        } else {
-          termCounts.put(sd, 1);
+        if (termCounts == null) {
+          termCounts = new HashMap<ScoredDocument, Integer>();
+          counts.put(term, termCounts);
         }
+        termCounts.put(sd, entry.getValue());
       }
     }
     return counts;
@@ -0,0 +1,337 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.processing;
+
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.DeltaScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.DisjunctionIterator;
+import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.utility.CmpUtil;
+import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Implements the Block-Max WAND processing model (Ding and Suel 2011)
+ *
+ * The pivot is selected using list-wide maximum scores (as in WAND). Before
+ * the pivot is scored, the block-local maxima of all lists at or before the
+ * pivot are summed; if this tighter bound can not beat the heap threshold, the
+ * whole range of documents up to the end of the shallowest block is skipped.
+ *
+ * Block maxima are read from the skip data of the positions index, iterators
+ * without block maxima fall back to their list-wide maximum score.
+ *
+ * This processing model CAN NOT share nodes.
+ */
+public class BlockMaxWeakAndDocumentModel extends ProcessingModel {
+
+  LocalRetrieval retrieval;
+
+  public BlockMaxWeakAndDocumentModel(LocalRetrieval lr) {
+    this.retrieval = lr;
+  }
+
+  @Override
+  public ScoredDocument[] execute(Node queryTree, Parameters queryParams) throws Exception {
+    ScoringContext context = new ScoringContext();
+    int requested = (int) queryParams.get("requested", 1000);
+
+    // 1.0 is rank-k-safe, higher values are not.
+    double factor = queryParams.get("weakandfactor", 1.0);
+
+    // step one: find the set of deltaScoringNodes in the tree
+    List<Node> scoringNodes = new ArrayList<>();
+    boolean canScore = findDeltaNodes(queryTree, scoringNodes, retrieval);
+    if (!canScore) {
+      throw new IllegalArgumentException("Query tree does not support delta scoring interface.\n" + queryTree.toPrettyString());
+    }
+
+    // step two: create an iterator for each node
+    BlockMaxIteratorWrapper[] sortedIterators = createScoringIterators(context, scoringNodes, retrieval);
+    Arrays.sort(sortedIterators);
+    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+
+    // NOTE that the min scores here are OVER-ESTIMATES of the actual minimum scores
+    double minimumPossibleScore = 0.0;
+    double maximumPossibleScore = 0.0;
+    for (BlockMaxIteratorWrapper scorer : sortedIterators) {
+      minimumPossibleScore += scorer.itr.minimumWeightedScore();
+      maximumPossibleScore += scorer.itr.maximumWeightedScore();
+    }
+
+    context.document = -1;
+    double minDocScore = Double.NEGATIVE_INFINITY;
+    int advancePosition;
+    while (true) {
+      // if advance position is set, then an iterator has moved.
+      advancePosition = -1;
+
+      int pivotPosition = findPivot(sortedIterators, minimumPossibleScore, minDocScore);
+      if (pivotPosition == -1) {
+        break;
+      }
+
+      if (sortedIterators[pivotPosition].itr.isDone()) {
+        break;
+      }
+
+      long pivot = sortedIterators[pivotPosition].currentCandidate;
+
+      // all iterators sitting on the pivot contribute to its score
+      while (pivotPosition + 1 < sortedIterators.length && sortedIterators[pivotPosition + 1].currentCandidate == pivot) {
+        pivotPosition++;
+      }
+
+      // if the pivot is less than or equal to the last scored document, move on.
+      if (pivot <= context.document) {
+        advancePosition = pickAdvancingSentinel(sortedIterators, context.document);
+        sortedIterators[advancePosition].next(context.document + 1);
+
+      } else if (minDocScore != Double.NEGATIVE_INFINITY
+              && blockMaximumScore(sortedIterators, pivotPosition, pivot, minimumPossibleScore) <= minDocScore) {
+        // no document in the current blocks can enter the heap, jump to the next block boundary.
+        long nextCandidate = nextBlockCandidate(sortedIterators, pivotPosition, pivot);
+        advancePosition = pickAdvancingSentinel(sortedIterators, pivot + 1);
+        sortedIterators[advancePosition].next(nextCandidate);
+
+      } else if (sortedIterators[0].currentCandidate == pivot) {
+        // score the document.
+        context.document = pivot;
+        double score = score(sortedIterators, context, maximumPossibleScore);
+
+        if (queue.size() < requested || score > queue.peek().score) {
+          ScoredDocument scoredDocument = new ScoredDocument(context.document, score);
+          queue.offer(scoredDocument);
+
+          if (queue.size() == requested) {
+            minDocScore = factor * queue.peek().score;
+          }
+        }
+      } else {
+        advancePosition = pickAdvancingSentinel(sortedIterators, pivot);
+        sortedIterators[advancePosition].next(pivot);
+      }
+
+      // We only moved one iterator, so we only need to worry about putting that one in the right place
+      if (advancePosition != -1) {
+        shuffleDown(sortedIterators, advancePosition);
+      }
+    }
+
+    return toReversedArray(queue);
+  }
+
+  // see WeakAndDocumentModel.shuffleDown
+  private void shuffleDown(BlockMaxIteratorWrapper[] s, int start) {
+    for (int i = start; i < s.length - 1; i++) {
+      int result = s[i].compareTo(s[i + 1]);
+      if (result <= 0) {
+        break;
+      } else {
+        BlockMaxIteratorWrapper tmp = s[i];
+        s[i] = s[i + 1];
+        s[i + 1] = tmp;
+      }
+    }
+  }
+
+  private double score(BlockMaxIteratorWrapper[] sortedIterators, ScoringContext context, double maximumPossibleScore) throws IOException {
+    double runningScore = maximumPossibleScore;
+    for (BlockMaxIteratorWrapper sortedIterator : sortedIterators) {
+      DeltaScoringIterator dsi = sortedIterator.itr;
+      dsi.syncTo(context.document);
+      runningScore -= dsi.deltaScore(context);
+    }
+    return runningScore;
+  }
+
+  private int findPivot(BlockMaxIteratorWrapper[] sortedIterators, double scoreMinimum, double threshold) {
+    if (threshold == Double.NEGATIVE_INFINITY) {
+      // score the first document
+      return 0;
+    }
+
+    double sum = scoreMinimum;
+    for (int i = 0; i < sortedIterators.length; i++) {
+      DeltaScoringIterator dsi = sortedIterators[i].itr;
+      if (!dsi.isDone()) {
+        sum += dsi.maximumDifference();
+      }
+
+      if (sum > threshold) {
+        return i;
+      }
+    }
+
+    return -1; // couldn't exceed threshold
+  }
+
+  /**
+   * Sums the block-local maximum differences of the iterators up to (and
+   * including) the pivot position.
+   */
+  private double blockMaximumScore(BlockMaxIteratorWrapper[] sortedIterators, int pivotPosition, long pivot, double scoreMinimum) throws IOException {
+    double sum = scoreMinimum;
+    for (int i = 0; i <= pivotPosition; i++) {
+      sum += sortedIterators[i].blockMaximumDifference(pivot);
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the first document that may be in a different block for any
+   * iterator up to the pivot position, or that may be matched by an iterator
+   * after the pivot position.
+   */
+  private long nextBlockCandidate(BlockMaxIteratorWrapper[] sortedIterators, int pivotPosition, long pivot) throws IOException {
+    long next = Long.MAX_VALUE;
+    for (int i = 0; i <= pivotPosition; i++) {
+      long blockEnd = sortedIterators[i].blockLastCandidate(pivot);
+      if (blockEnd != Long.MAX_VALUE) {
+        next = Math.min(next, blockEnd + 1);
+      }
+    }
+    if (pivotPosition + 1 < sortedIterators.length) {
+      next = Math.min(next, sortedIterators[pivotPosition + 1].currentCandidate);
+    }
+    return Math.max(next, pivot + 1);
+  }
+
+  /**
+   * Returns the iterator that should be advanced.
+   *
+   * @see WeakAndDocumentModel
+   */
+  private int pickAdvancingSentinel(BlockMaxIteratorWrapper[] sortedIterators, long limitDoc) {
+    long minEntries = Long.MAX_VALUE;
+    int minPos = 0;
+    for (int i = 0; i < sortedIterators.length; i++) {
+      BlockMaxIteratorWrapper dsi = sortedIterators[i];
+      if (dsi.currentCandidate < limitDoc) {
+        if (dsi.entries < minEntries) {
+          minEntries = dsi.entries;
+          minPos = i;
+        }
+      } else {
+        return minPos;
+      }
+    }
+    return minPos;
+  }
+
+  private boolean findDeltaNodes(Node n, List<Node> scorers, LocalRetrieval ret) throws Exception {
+    // throw exception if we can't determine the class of each node.
+    NodeType nt = ret.getNodeType(n);
+    Class<? extends BaseIterator> iteratorClass = nt.getIteratorClass();
+
+    if (DeltaScoringIterator.class.isAssignableFrom(iteratorClass)) {
+      // we have a delta scoring class
+      scorers.add(n);
+      return true;
+
+    } else if (DisjunctionIterator.class.isAssignableFrom(iteratorClass) && ScoreIterator.class.isAssignableFrom(iteratorClass)) {
+      // we have a disjoint score combination node (e.g. #combine)
+      boolean r = true;
+      for (Node c : n.getInternalNodes()) {
+        r &= findDeltaNodes(c, scorers, ret);
+      }
+      return r;
+
+    } else {
+      return false;
+    }
+  }
+
+  private BlockMaxIteratorWrapper[] createScoringIterators(ScoringContext context, List<Node> scoringNodes, LocalRetrieval ret) throws Exception {
+    BlockMaxIteratorWrapper[] scoringIterators = new BlockMaxIteratorWrapper[scoringNodes.size()];
+
+    // NO Node sharing is permitted.
+    for (int i = 0; i < scoringNodes.size(); i++) {
+      DeltaScoringIterator scorer = (DeltaScoringIterator) ret.createNodeMergedIterator(scoringNodes.get(i), null);
+      scoringIterators[i] = new BlockMaxIteratorWrapper(context, scorer, scoringNodes.get(i));
+    }
+
+    return scoringIterators;
+  }
+
+  public static class BlockMaxIteratorWrapper implements Comparable<BlockMaxIteratorWrapper> {
+
+    private final ScoringContext ctx;
+    public DeltaScoringIterator itr;
+    // null if the iterator has no block maxima
+    private BlockMaxScoringIterator blockItr;
+    public long currentCandidate;
+    private long entries;
+
+    private BlockMaxIteratorWrapper(ScoringContext context, DeltaScoringIterator itr, Node node) throws IOException {
+      this.itr = itr;
+      this.ctx = context.getPrototype();
+
+      if (itr instanceof BlockMaxScoringIterator && ((BlockMaxScoringIterator) itr).hasBlockMaxima()) {
+        this.blockItr = (BlockMaxScoringIterator) itr;
+      } else {
+        this.blockItr = null;
+      }
+
+      if (node.getNodeParameters().containsKey("nodeDocumentCount")) {
+        this.entries = node.getNodeParameters().getLong("nodeDocumentCount");
+      } else if (node.getNodeParameters().containsKey("nodeFrequency")) {
+        this.entries = node.getNodeParameters().getLong("nodeFrequency");
+      } else {
+        // otherwise all nodes are considered equal
+        this.entries = 1;
+      }
+
+      // find the first document that has a match
+      this.currentCandidate = -1;
+      next();
+    }
+
+    @Override
+    public int compareTo(BlockMaxIteratorWrapper t) {
+      return CmpUtil.compare(currentCandidate, t.currentCandidate);
+    }
+
+    public double blockMaximumDifference(long document) throws IOException {
+      if (itr.isDone()) {
+        return 0.0;
+      }
+      if (blockItr == null) {
+        return itr.maximumDifference();
+      }
+      return blockItr.blockMaximumWeightedScore(document) - itr.minimumWeightedScore();
+    }
+
+    public long blockLastCandidate(long document) throws IOException {
+      if (blockItr == null) {
+        return Long.MAX_VALUE;
+      }
+      return blockItr.blockLastCandidate(document);
+    }
+
+    public void next() throws IOException {
+      do {
+        itr.movePast(currentCandidate);
+        currentCandidate = itr.currentCandidate();
+        ctx.document = currentCandidate;
+      } while (!itr.isDone() && !itr.hasMatch(ctx));
+    }
+
+    public void next(long doc) throws IOException {
+      // want to move past currentCandidate, to at least doc
+      currentCandidate = (doc <= currentCandidate) ? currentCandidate : (doc - 1);
+      next();
+    }
+  }
+}
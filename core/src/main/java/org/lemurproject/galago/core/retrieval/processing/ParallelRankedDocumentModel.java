@@ -0,0 +1,134 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.processing;
+
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Performs document-at-a-time processing of a fully annotated query, in
+ * parallel over ranges of document identifiers.
+ *
+ * The identifier space of the index is split into "parallelRanges" ranges
+ * (default: the number of processors). Each range gets an independent iterator
+ * tree, which is synced to the start of the range and scored until the end of
+ * the range. The per-range queues are then merged. Results are the same as
+ * RankedDocumentModel.
+ *
+ * Ranges are scored on a ForkJoinPool with "parallelThreads" threads, shared
+ * between all instances of this model with the same number of threads
+ * (default: the common pool).
+ */
+public class ParallelRankedDocumentModel extends ProcessingModel {
+
+  // one pool for each number of threads, kept for the life of the JVM
+  private static final ConcurrentHashMap<Integer, ForkJoinPool> sharedPools = new ConcurrentHashMap<>();
+
+  LocalRetrieval retrieval;
+  ForkJoinPool pool;
+
+  public ParallelRankedDocumentModel(LocalRetrieval lr) {
+    retrieval = lr;
+    pool = getPool(retrieval.getGlobalParameters().get("parallelThreads", 0L));
+  }
+
+  static ForkJoinPool getPool(long threads) {
+    if (threads <= 0) {
+      return ForkJoinPool.commonPool();
+    }
+    return sharedPools.computeIfAbsent((int) threads, ForkJoinPool::new);
+  }
+
+  @Override
+  public ScoredDocument[] execute(final Node queryTree, final Parameters queryParams) throws Exception {
+    final int requested = queryParams.get("requested", 1000);
+    int rangeCount = (int) queryParams.get("parallelRanges", (long) Runtime.getRuntime().availableProcessors());
+
+    // the identifier space of the collection
+    FieldStatistics stats = retrieval.getCollectionStatistics(StructuredQuery.parse("#lengths:document:part=lengths()"));
+    long first = stats.firstDocId;
+    long last = stats.lastDocId;
+
+    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    if (stats.documentCount == 0) {
+      return toReversedArray(queue);
+    }
+
+    long span = last - first + 1;
+    rangeCount = (int) Math.max(1, Math.min(rangeCount, span));
+    long rangeSize = (span + rangeCount - 1) / rangeCount;
+
+    List<Callable<FixedSizeMinHeap<ScoredDocument>>> tasks = new ArrayList<>();
+    for (long start = first; start <= last; start += rangeSize) {
+      final long rangeStart = start;
+      final long rangeEnd = Math.min(start + rangeSize, last + 1);
+      tasks.add(() -> scoreRange(queryTree, queryParams, requested, rangeStart, rangeEnd));
+    }
+
+    for (Future<FixedSizeMinHeap<ScoredDocument>> result : pool.invokeAll(tasks)) {
+      FixedSizeMinHeap<ScoredDocument> rangeQueue;
+      try {
+        rangeQueue = result.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+          throw (Exception) e.getCause();
+        }
+        throw e;
+      }
+      for (ScoredDocument doc : rangeQueue.getUnsortedList()) {
+        if (queue.size() < requested || queue.peek().score < doc.score) {
+          queue.offer(doc);
+        }
+      }
+    }
+    return toReversedArray(queue);
+  }
+
+  /**
+   * Scores the documents in [start, end) with a new iterator tree.
+   */
+  private FixedSizeMinHeap<ScoredDocument> scoreRange(Node queryTree, Parameters queryParams, int requested, long start, long end) throws Exception {
+    ScoringContext context = new ScoringContext();
+    boolean annotate = queryParams.get("annotate", false);
+
+    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+
+    ScoreIterator iterator = (ScoreIterator) retrieval.createIterator(queryParams, queryTree);
+    iterator.syncTo(start);
+
+    while (!iterator.isDone()) {
+      long document = iterator.currentCandidate();
+      if (document >= end) {
+        break;
+      }
+
+      context.document = document;
+      iterator.syncTo(document);
+      if (iterator.hasMatch(context)) {
+        double score = iterator.score(context);
+        if (queue.size() < requested || queue.peek().score < score) {
+          ScoredDocument scoredDocument = new ScoredDocument(document, score);
+          if (annotate) {
+            scoredDocument.annotation = iterator.getAnnotatedNode(context);
+          }
+          queue.offer(scoredDocument);
+        }
+      }
+      iterator.movePast(document);
+    }
+    return queue;
+  }
+}
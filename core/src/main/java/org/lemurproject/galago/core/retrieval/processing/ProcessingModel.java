@@ -51,6 +51,10 @@ public abstract class ProcessingModel {
         case "rankeddocument": return new RankedDocumentModel(r);
         case "rankedpassage": return new RankedPassageModel(r);
         case "maxscore": return new MaxScoreDocumentModel(r);
+        case "bmw": return new BlockMaxWeakAndDocumentModel(r);
+        case "parallel": return new ParallelRankedDocumentModel(r);
+        case "taat": return new TermAtATimeDocumentModel(r);
+        case "saat": return new ScoreAtATimeDocumentModel(r);
         // CURRENTLY BROKEN DO NOT USE
 //      } else if (modelName.equals("wand")) {
 //        return new WANDScoreDocumentModel(r);
@@ -0,0 +1,232 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.processing;
+
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.disk.ImpactIndexReader;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
+import org.lemurproject.galago.core.retrieval.iterator.DisjunctionIterator;
+import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
+import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
+import org.lemurproject.galago.core.retrieval.iterator.scoring.BM25ScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.scoring.DirichletScoringIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Score-at-a-time (saat) processing of bag-of-words queries, over an
+ * impact-ordered part (see ImpactIndexWriter and build-impacts).
+ *
+ * The segments of all query terms are read in decreasing order of weighted
+ * impact, and each document of a segment has the segment's impact added to
+ * its accumulator. Processing stops when all segments are read, or early when
+ * 'saatPostingsBudget' postings have been read or 'saatTimeLimit'
+ * milliseconds have passed; the best segments have been read first, so the
+ * ranking degrades gracefully. Without a limit, the ranking only differs from
+ * RankedDocumentModel by the quantization of the impacts.
+ *
+ * The query must be a (nested) score combination of the scorer the part was
+ * built with (bm25 or dirichlet, with the same parameters), over counts of the
+ * part's input part. Other queries, or indexes without the part ('impactPart',
+ * default 'impacts'), are processed by RankedDocumentModel.
+ */
+public class ScoreAtATimeDocumentModel extends ProcessingModel {
+
+  // postings read between checks of 'saatTimeLimit', inside long segments
+  private static final int DEADLINE_CHECK_INTERVAL = 4096;
+  LocalRetrieval retrieval;
+
+  public ScoreAtATimeDocumentModel(LocalRetrieval lr) {
+    this.retrieval = lr;
+  }
+
+  @Override
+  public ScoredDocument[] execute(Node queryTree, Parameters queryParams) throws Exception {
+    IndexPartReader part = retrieval.getIndex().getIndexPart(queryParams.get("impactPart", "impacts"));
+    List<Node> scoringNodes = new ArrayList<>();
+    // the weights of the scorers are set by the DeltaCheckTraversal
+    if (!(part instanceof ImpactIndexReader)
+            || !queryParams.get("deltaReady", false)
+            || queryParams.get("annotate", false)
+            || !findScoringNodes(queryTree, scoringNodes, part.getManifest())) {
+      return new RankedDocumentModel(retrieval).execute(queryTree, queryParams);
+    }
+
+    ImpactIndexReader impacts = (ImpactIndexReader) part;
+    Parameters manifest = impacts.getManifest();
+    boolean dirichlet = manifest.getString("scorer").equals("dirichlet");
+    double minimum = manifest.getDouble("impactMinimum");
+    double scale = manifest.getDouble("impactScale");
+    long collectionLength = manifest.getLong("collectionLength");
+    double mu = manifest.get("mu", 1500.0);
+
+    int requested = (int) queryParams.get("requested", 1000);
+    long postingsBudget = queryParams.get("saatPostingsBudget", Long.MAX_VALUE);
+    long timeLimit = queryParams.get("saatTimeLimit", 0L);
+    long deadline = (timeLimit > 0) ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+
+    // the next segment of each term, best weighted impact first
+    PriorityQueue<TermSegments> segments = new PriorityQueue<>();
+    double totalWeight = 0.0;
+    double lengthIndependentScore = 0.0;
+    for (Node n : scoringNodes) {
+      double weight = n.getNodeParameters().get("w", 1.0);
+      ImpactIndexReader.ImpactList list = impacts.getImpactList(getCountNode(n).getDefaultParameter());
+      if (dirichlet) {
+        // log(count + mu * bg) - log(length + mu) = log(mu * bg) + impact - log(length + mu)
+        long collectionFrequency = (list == null) ? 0 : list.collectionFrequency;
+        double background = (collectionFrequency > 0)
+                ? (double) collectionFrequency / (double) collectionLength
+                : 0.5 / (double) collectionLength;
+        lengthIndependentScore += weight * Math.log(mu * background);
+        totalWeight += weight;
+      }
+      if (list != null && list.nextSegment()) {
+        segments.add(new TermSegments(list, weight, minimum, scale));
+      }
+    }
+
+    float[] accumulators = new float[1024];
+    BitSet accumulated = new BitSet();
+    long postingsRead = 0;
+    boolean expired = false;
+    while (!segments.isEmpty() && postingsRead < postingsBudget) {
+      TermSegments term = segments.poll();
+      float impact = (float) term.weightedImpact();
+      while (term.list.remaining() > 0 && postingsRead < postingsBudget) {
+        long document = term.list.nextDocument();
+        if (document > Integer.MAX_VALUE - 1) {
+          throw new IllegalArgumentException("ScoreAtATimeDocumentModel can not accumulate document " + document);
+        }
+        int d = (int) document;
+        if (d >= accumulators.length) {
+          accumulators = Arrays.copyOf(accumulators, Math.max(d + 1, accumulators.length * 2));
+        }
+        accumulators[d] += impact;
+        accumulated.set(d);
+        postingsRead++;
+        if (postingsRead % DEADLINE_CHECK_INTERVAL == 0 && System.currentTimeMillis() > deadline) {
+          expired = true;
+          break;
+        }
+      }
+      if (expired || System.currentTimeMillis() > deadline) {
+        break;
+      }
+      if (term.list.nextSegment()) {
+        segments.add(term);
+      }
+    }
+
+    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    LengthsIterator lengths = dirichlet ? retrieval.getIndex().getLengthsIterator() : null;
+    ScoringContext context = new ScoringContext();
+    for (int d = accumulated.nextSetBit(0); d >= 0; d = accumulated.nextSetBit(d + 1)) {
+      double score = accumulators[d];
+      if (dirichlet) {
+        context.document = d;
+        lengths.syncTo(d);
+        score += lengthIndependentScore - totalWeight * Math.log(lengths.length(context) + mu);
+      }
+      if (queue.size() < requested || queue.peek().score < score) {
+        queue.offer(new ScoredDocument(d, score));
+      }
+    }
+    return toReversedArray(queue);
+  }
+
+  /**
+   * Collects the scoring nodes, checking that each one matches the scorer of
+   * the impact part.
+   */
+  private boolean findScoringNodes(Node n, List<Node> scorers, Parameters manifest) throws Exception {
+    NodeType nt = retrieval.getNodeType(n);
+    if (nt == null) {
+      return false;
+    }
+    Class<? extends BaseIterator> iteratorClass = nt.getIteratorClass();
+
+    if (BM25ScoringIterator.class.isAssignableFrom(iteratorClass)
+            || DirichletScoringIterator.class.isAssignableFrom(iteratorClass)) {
+      NodeParameters np = n.getNodeParameters();
+      boolean matches;
+      if (BM25ScoringIterator.class.isAssignableFrom(iteratorClass)) {
+        matches = manifest.get("scorer", "").equals("bm25")
+                && np.get("k", 1.2) == manifest.get("k", 1.2)
+                && np.get("b", 0.75) == manifest.get("b", 0.75);
+      } else {
+        matches = manifest.get("scorer", "").equals("dirichlet")
+                && np.get("mu", 1500.0) == manifest.get("mu", 1500.0);
+      }
+      Node counts = getCountNode(n);
+      if (!matches || counts == null
+              || !retrieval.getIndex().getIndexPartName(counts).equals(manifest.get("inputPart", ""))) {
+        return false;
+      }
+      scorers.add(n);
+      return true;
+
+    } else if (DisjunctionIterator.class.isAssignableFrom(iteratorClass) && ScoreIterator.class.isAssignableFrom(iteratorClass)) {
+      // we have a disjoint score combination node (e.g. #combine)
+      boolean r = true;
+      for (Node c : n.getInternalNodes()) {
+        r &= findScoringNodes(c, scorers, manifest);
+      }
+      return r;
+
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * @return the index node counted by the scorer, or null if the scorer does
+   * not count a single term.
+   */
+  private Node getCountNode(Node scorer) throws Exception {
+    for (Node c : scorer.getInternalNodes()) {
+      NodeType nt = retrieval.getNodeType(c);
+      if (nt != null && CountIterator.class.isAssignableFrom(nt.getIteratorClass())) {
+        return (c.numChildren() == 0 && c.getDefaultParameter() != null) ? c : null;
+      }
+    }
+    return null;
+  }
+
+  private static class TermSegments implements Comparable<TermSegments> {
+
+    final ImpactIndexReader.ImpactList list;
+    final double weight;
+    final double minimum;
+    final double scale;
+
+    TermSegments(ImpactIndexReader.ImpactList list, double weight, double minimum, double scale) {
+      this.list = list;
+      this.weight = weight;
+      this.minimum = minimum;
+      this.scale = scale;
+    }
+
+    double weightedImpact() {
+      return weight * (minimum + list.impact() * scale);
+    }
+
+    @Override
+    public int compareTo(TermSegments other) {
+      return Double.compare(other.weightedImpact(), weightedImpact());
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.processing;
+
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
+import org.lemurproject.galago.core.retrieval.iterator.CountScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.DisjunctionIterator;
+import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
+import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Term-at-a-time (taat) processing of bag-of-words queries.
+ *
+ * Each term's counts are read in one pass, and the difference between its
+ * score and its score for a count of zero is added to a dense accumulator of
+ * the document. The scores of a count of zero only depend on the document
+ * length, so they are added once per accumulated document at the end.
+ * Documents are ranked as by RankedDocumentModel.
+ *
+ * The query must be a (nested) score combination of CountScoringIterators,
+ * that all use the same lengths (e.g. #combine(a b c)); other queries are
+ * processed by RankedDocumentModel.
+ *
+ * If 'taatAccumulatorLimit' is set, terms are processed from the shortest to
+ * the longest list, and once the limit is reached, no new accumulators are
+ * created (the 'continue' strategy). This is not rank safe.
+ *
+ * This processing model CAN NOT share nodes.
+ */
+public class TermAtATimeDocumentModel extends ProcessingModel {
+
+  LocalRetrieval retrieval;
+
+  public TermAtATimeDocumentModel(LocalRetrieval lr) {
+    this.retrieval = lr;
+  }
+
+  @Override
+  public ScoredDocument[] execute(Node queryTree, Parameters queryParams) throws Exception {
+    List<Node> scoringNodes = new ArrayList<>();
+    // the weights of the scorers are set by the DeltaCheckTraversal
+    if (!queryParams.get("deltaReady", false)
+            || queryParams.get("annotate", false)
+            || !findCountScoringNodes(queryTree, scoringNodes)
+            || !haveSameLengths(scoringNodes)) {
+      return new RankedDocumentModel(retrieval).execute(queryTree, queryParams);
+    }
+
+    int requested = (int) queryParams.get("requested", 1000);
+    long accumulatorLimit = queryParams.get("taatAccumulatorLimit", Long.MAX_VALUE);
+
+    // NO Node sharing is permitted.
+    CountScoringIterator[] scorers = new CountScoringIterator[scoringNodes.size()];
+    long[] entries = new long[scorers.length];
+    Integer[] order = new Integer[scorers.length];
+    for (int i = 0; i < scorers.length; i++) {
+      scorers[i] = (CountScoringIterator) retrieval.createNodeMergedIterator(scoringNodes.get(i), null);
+      entries[i] = scoringNodes.get(i).getNodeParameters().get("nodeDocumentCount", scorers[i].totalEntries());
+      order[i] = i;
+    }
+    // shortest lists first
+    Arrays.sort(order, (a, b) -> Long.compare(entries[a], entries[b]));
+
+    ScoringContext context = new ScoringContext();
+    float[] accumulators = new float[1024];
+    BitSet accumulated = new BitSet();
+    // lengths of the accumulated documents, in the order they were accumulated
+    int[] documents = new int[256];
+    int[] lengths = new int[256];
+    int accumulatedCount = 0;
+
+    for (int t : order) {
+      CountScoringIterator scorer = scorers[t];
+      CountIterator counts = scorer.getCountIterator();
+      LengthsIterator lengthsIterator = scorer.getLengthsIterator();
+      double weight = scorer.getWeight();
+      boolean createAccumulators = accumulatedCount < accumulatorLimit;
+
+      while (!counts.isDone()) {
+        long document = counts.currentCandidate();
+        context.document = document;
+        if (counts.hasMatch(context)) {
+          if (document > Integer.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("TermAtATimeDocumentModel can not accumulate document " + document);
+          }
+          int d = (int) document;
+          boolean seen = accumulated.get(d);
+          if (seen || createAccumulators) {
+            lengthsIterator.syncTo(document);
+            int length = lengthsIterator.length(context);
+            int count = counts.count(context);
+            if (!seen) {
+              if (d >= accumulators.length) {
+                accumulators = Arrays.copyOf(accumulators, Math.max(d + 1, accumulators.length * 2));
+              }
+              if (accumulatedCount == documents.length) {
+                documents = Arrays.copyOf(documents, documents.length * 2);
+                lengths = Arrays.copyOf(lengths, lengths.length * 2);
+              }
+              accumulated.set(d);
+              documents[accumulatedCount] = d;
+              lengths[accumulatedCount] = length;
+              accumulatedCount++;
+              createAccumulators = accumulatedCount < accumulatorLimit;
+            }
+            accumulators[d] += (float) (weight * (scorer.score(count, length) - scorer.score(0, length)));
+          }
+        }
+        counts.movePast(document);
+      }
+    }
+
+    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    for (int i = 0; i < accumulatedCount; i++) {
+      int d = documents[i];
+      double score = accumulators[d];
+      for (CountScoringIterator scorer : scorers) {
+        score += scorer.getWeight() * scorer.score(0, lengths[i]);
+      }
+      if (queue.size() < requested || queue.peek().score < score) {
+        queue.offer(new ScoredDocument(d, score));
+      }
+    }
+    return toReversedArray(queue);
+  }
+
+  private boolean findCountScoringNodes(Node n, List<Node> scorers) throws Exception {
+    NodeType nt = retrieval.getNodeType(n);
+    if (nt == null) {
+      return false;
+    }
+    Class<? extends BaseIterator> iteratorClass = nt.getIteratorClass();
+
+    if (CountScoringIterator.class.isAssignableFrom(iteratorClass)) {
+      scorers.add(n);
+      return true;
+
+    } else if (DisjunctionIterator.class.isAssignableFrom(iteratorClass) && ScoreIterator.class.isAssignableFrom(iteratorClass)) {
+      // we have a disjoint score combination node (e.g. #combine)
+      boolean r = true;
+      for (Node c : n.getInternalNodes()) {
+        r &= findCountScoringNodes(c, scorers);
+      }
+      return r;
+
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * The scores for a count of zero are computed from one length per document.
+   */
+  private boolean haveSameLengths(List<Node> scoringNodes) throws Exception {
+    String lengths = null;
+    for (Node n : scoringNodes) {
+      for (Node c : n.getInternalNodes()) {
+        NodeType nt = retrieval.getNodeType(c);
+        if (nt != null && LengthsIterator.class.isAssignableFrom(nt.getIteratorClass())) {
+          if (lengths == null) {
+            lengths = c.toString();
+          } else if (!lengths.equals(c.toString())) {
+            return false;
+          }
+        }
+      }
+    }
+    return lengths != null;
+  }
+}
@@ -0,0 +1,194 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.traversal;
+
+import org.lemurproject.galago.core.index.Index;
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.disk.WindowIndexWriter;
+import org.lemurproject.galago.core.parse.stem.Stemmer;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.util.TextPartAssigner;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replaces window operators over text nodes with a lookup in a pre-built
+ * window index part (see BuildWindowIndex), when the index has one that
+ * matches the operator:
+ *
+ * #od:1(a b) -> #extents:part=od.n2.w1.h1:a~b()
+ *
+ * A part matches if it is positional, covers whole documents, and has the same
+ * number of terms, width, ordering and stemmer as the window and the postings
+ * part its terms would be read from. Parts built with threshold 1 hold every
+ * window, so they are always used. Thresholded parts, and parts restricted to
+ * query log windows, are only used for windows they contain; the others are
+ * still evaluated from positions.
+ *
+ * Only #od:1 windows are counted identically by the window index, so #uw
+ * windows are only rewritten if the query sets 'approximateWindows' to true.
+ * Set 'windowIndex' to false to disable the rewrite.
+ */
+public class IndexedWindowTraversal extends Traversal {
+
+  private static final Logger logger = Logger.getLogger(IndexedWindowTraversal.class.getName());
+  private final Retrieval retrieval;
+  private final Parameters availableParts;
+  private final List<WindowPart> windowParts = new ArrayList<>();
+  // stemmer class of each positional part
+  private final Map<String, Class> partStemmers = new HashMap<>();
+
+  public IndexedWindowTraversal(Retrieval retrieval) throws IOException {
+    this.retrieval = retrieval;
+    this.availableParts = retrieval.getAvailableParts();
+
+    // part manifests are only visible for local indexes
+    if (!(retrieval instanceof LocalRetrieval)) {
+      return;
+    }
+    Index index = ((LocalRetrieval) retrieval).getIndex();
+    for (String partName : index.getPartNames()) {
+      try {
+        IndexPartReader reader = index.getIndexPart(partName);
+        if (reader == null) {
+          continue;
+        }
+        Parameters manifest = reader.getManifest();
+        partStemmers.put(partName, Stemmer.create(manifest).getClass());
+        if (WindowIndexWriter.class.getName().equals(manifest.get("writerClass", ""))
+                && coversDocuments(manifest)) {
+          windowParts.add(new WindowPart(partName, manifest));
+        }
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Unable to read the manifest of part: " + partName, e);
+      }
+    }
+    // prefer complete parts, then lower thresholds
+    Collections.sort(windowParts);
+  }
+
+  @Override
+  public void beforeNode(Node original, Parameters queryParameters) throws Exception {
+  }
+
+  @Override
+  public Node afterNode(Node original, Parameters queryParameters) throws Exception {
+    if (windowParts.isEmpty() || !queryParameters.get("windowIndex", true)) {
+      return original;
+    }
+
+    String operator = original.getOperator();
+    boolean ordered = operator.equals("od") || operator.equals("ordered");
+    boolean unordered = operator.equals("uw") || operator.equals("unordered");
+    if (!ordered && !unordered) {
+      return original;
+    }
+
+    int width = (int) original.getNodeParameters().get("default", -1);
+    if ((ordered && width != 1) || (unordered && (width < 1 || !queryParameters.get("approximateWindows", false)))) {
+      return original;
+    }
+
+    List<Node> children = original.getInternalNodes();
+    if (children.size() < 2) {
+      return original;
+    }
+    String textPart = null;
+    List<String> terms = new ArrayList<>();
+    for (Node child : children) {
+      if (!child.getOperator().equals("text") || child.numChildren() > 0) {
+        return original;
+      }
+      String part = TextPartAssigner.assignPart(child.clone(), queryParameters, availableParts).getNodeParameters().get("part", (String) null);
+      if (part == null || (textPart != null && !textPart.equals(part))) {
+        return original;
+      }
+      textPart = part;
+      terms.add(child.getDefaultParameter());
+    }
+
+    WindowPart windowPart = null;
+    for (WindowPart wp : windowParts) {
+      if (wp.matches(children.size(), width, ordered, partStemmers.get(textPart))) {
+        windowPart = wp;
+        break;
+      }
+    }
+    if (windowPart == null) {
+      return original;
+    }
+
+    if (unordered) {
+      // unordered windows are indexed with stemmed terms in sorted order
+      final Stemmer stemmer = Stemmer.create(windowPart.manifest);
+      Collections.sort(terms, (a, b) -> stemmer.stem(a).compareTo(stemmer.stem(b)));
+    }
+
+    NodeParameters np = new NodeParameters();
+    np.set("part", windowPart.name);
+    np.set("default", String.join("~", terms));
+    Node indexed = new Node("extents", np, new ArrayList<Node>(), original.getPosition());
+
+    // an incomplete part can only answer for the windows it contains
+    if (!windowPart.complete && retrieval.getNodeStatistics(indexed.clone()).nodeFrequency == 0) {
+      return original;
+    }
+    return indexed;
+  }
+
+  private static boolean coversDocuments(Parameters manifest) {
+    if (!manifest.containsKey("fields")) {
+      return true;
+    }
+    List<String> fields = manifest.getAsList("fields", String.class);
+    return fields.size() == 1 && fields.get(0).equals("document");
+  }
+
+  private static class WindowPart implements Comparable<WindowPart> {
+
+    final String name;
+    final Parameters manifest;
+    final int n;
+    final int width;
+    final boolean ordered;
+    final long threshold;
+    final boolean complete;
+    final Class stemmer;
+
+    WindowPart(String name, Parameters manifest) throws ReflectiveOperationException {
+      this.name = name;
+      this.manifest = manifest;
+      this.n = (int) manifest.getLong("n");
+      this.width = (int) manifest.getLong("width");
+      this.ordered = manifest.getBoolean("ordered");
+      this.threshold = manifest.get("threshold", 1L);
+      this.complete = threshold <= 1 && !manifest.containsKey("queryLogTopN");
+      this.stemmer = Stemmer.create(manifest).getClass();
+    }
+
+    boolean matches(int n, int width, boolean ordered, Class stemmer) {
+      return this.n == n && this.width == width && this.ordered == ordered && this.stemmer.equals(stemmer);
+    }
+
+    @Override
+    public int compareTo(WindowPart other) {
+      if (complete != other.complete) {
+        return complete ? -1 : 1;
+      }
+      if (threshold != other.threshold) {
+        return Long.compare(threshold, other.threshold);
+      }
+      return name.compareTo(other.name);
+    }
+  }
+}
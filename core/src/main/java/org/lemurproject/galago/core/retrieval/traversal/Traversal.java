@@ -9,6 +9,9 @@ import org.lemurproject.galago.utility.Parameters;
  *
  * 'before's are pre-order traversals 'after's are post-order traversals
  *
+ * A retrieval shares one instance of each traversal between all query
+ * threads, so implementations should not keep per-query state in fields.
+ *
  * @author trevor, sjh
  */
 public abstract class Traversal {
@@ -0,0 +1,107 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.tools;
+
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.RetrievalCodec;
+import org.lemurproject.galago.tupleflow.web.WebHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Answers requests encoded with RetrievalCodec, by forwarding them to the
+ * retrieval object attached to the Search object.
+ *
+ * A request may contain several calls; one reply frame is written per call,
+ * in order. Exceptions thrown by a call are sent back as error replies.
+ *
+ * @see org.lemurproject.galago.core.retrieval.BinaryProxyRetrieval
+ */
+public class BinaryContextHandler implements WebHandler {
+
+  Search search;
+  int compressionThreshold;
+  // remote calls are restricted to the Retrieval interface
+  private final Map<String, Method[]> methods = new HashMap<>();
+
+  public BinaryContextHandler(Search search) {
+    this.search = search;
+    this.compressionThreshold = (int) search.retrieval.getGlobalParameters()
+            .get("remoteCompressionThreshold", (long) RetrievalCodec.DEFAULT_COMPRESSION_THRESHOLD);
+    for (Method m : Retrieval.class.getMethods()) {
+      Method[] overloads = methods.get(m.getName());
+      Method[] extended = (overloads == null) ? new Method[1] : Arrays.copyOf(overloads, overloads.length + 1);
+      extended[extended.length - 1] = m;
+      methods.put(m.getName(), extended);
+    }
+  }
+
+  @Override
+  public void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(request.getInputStream()));
+
+    ByteArrayOutputStream replies = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(replies);
+    byte[] call;
+    while ((call = RetrievalCodec.readFrame(input)) != null) {
+      byte[] reply;
+      try {
+        reply = RetrievalCodec.encodeReply(invoke(call));
+      } catch (InvocationTargetException e) {
+        reply = RetrievalCodec.encodeError(e.getCause());
+      } catch (Exception e) {
+        reply = RetrievalCodec.encodeError(e);
+      }
+      RetrievalCodec.writeFrame(output, reply, compressionThreshold);
+    }
+    output.close();
+
+    response.setContentType("application/octet-stream");
+    response.setContentLength(replies.size());
+    replies.writeTo(response.getOutputStream());
+    response.flushBuffer();
+  }
+
+  private Object invoke(byte[] call) throws Exception {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(call));
+    String methodName = RetrievalCodec.readMethodName(input);
+    Object[] arguments = RetrievalCodec.readArguments(input);
+
+    Method m = findMethod(methodName, arguments);
+    if (m == null) {
+      throw new NoSuchMethodException(methodName + " with " + arguments.length + " arguments");
+    }
+    if (methodName.equals("close")) {
+      // the index is shared by all clients
+      return null;
+    }
+    return m.invoke(search.getRetrieval(), arguments);
+  }
+
+  private Method findMethod(String methodName, Object[] arguments) {
+    Method[] overloads = methods.get(methodName);
+    if (overloads == null) {
+      return null;
+    }
+    for (Method method : overloads) {
+      Class<?>[] types = method.getParameterTypes();
+      if (types.length != arguments.length) {
+        continue;
+      }
+      boolean matches = true;
+      for (int i = 0; i < types.length && matches; i++) {
+        matches = (arguments[i] == null) || types[i].isInstance(arguments[i]);
+      }
+      if (matches) {
+        return method;
+      }
+    }
+    return null;
+  }
+}
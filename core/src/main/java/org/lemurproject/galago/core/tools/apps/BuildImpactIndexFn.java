@@ -0,0 +1,244 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.tools.apps;
+
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.disk.ImpactIndexWriter;
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
+import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.tools.AppFunction;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Builds an impact-ordered part (ImpactIndexWriter) from a counts or positions
+ * part of an existing index.
+ *
+ * Impacts are scores for a fixed scorer configuration, uniformly quantized
+ * over the whole part: a first pass finds the range of the scores (bm25 scores
+ * of very common terms are negative), the second pass writes the quantized
+ * lists.
+ */
+public class BuildImpactIndexFn extends AppFunction {
+
+  @Override
+  public String getName() {
+    return "build-impacts";
+  }
+
+  @Override
+  public String getHelpString() {
+    return "galago build-impacts --indexPath=<index> --inputPart=<part> [flags]\n\n"
+            + "  Builds an impact-ordered copy of a counts or positions part, for\n"
+            + "  score-at-a-time processing (--processingModel=saat).\n\n"
+            + "<inputPart>: The name of a counts or positions part, e.g. postings.krovetz.\n"
+            + "Flags:\n"
+            + "  --outputPart=<part>:     [default=impacts]\n"
+            + "  --scorer={bm25|dirichlet}: [default=bm25]\n"
+            + "  --k=<k>, --b=<b>:        BM25 parameters [default=1.2, 0.75]\n"
+            + "  --mu=<mu>:               Dirichlet parameter [default=1500]\n"
+            + "  --impactBits=<bits>:     Bits per quantized impact [default=8]\n";
+  }
+
+  @Override
+  public void run(Parameters p, PrintStream output) throws Exception {
+    if (!p.isString("indexPath") || !p.isString("inputPart")) {
+      output.println(getHelpString());
+      return;
+    }
+
+    String indexPath = p.getString("indexPath");
+    String inputPart = p.getString("inputPart");
+    String outputPart = p.get("outputPart", "impacts");
+    String scorer = p.get("scorer", "bm25");
+    if (!scorer.equals("bm25") && !scorer.equals("dirichlet")) {
+      throw new IllegalArgumentException("build-impacts supports the bm25 and dirichlet scorers, not: " + scorer);
+    }
+    int impactBits = (int) p.get("impactBits", 8L);
+    if (impactBits < 1 || impactBits > 16) {
+      throw new IllegalArgumentException("impactBits must be between 1 and 16.");
+    }
+
+    LocalRetrieval retrieval = new LocalRetrieval(indexPath, Parameters.create());
+    FieldStatistics collection = retrieval.getCollectionStatistics("#lengths:part=lengths()");
+    IndexPartReader reader = retrieval.getIndex().getIndexPart(inputPart);
+    if (reader == null) {
+      throw new IllegalArgumentException("Index " + indexPath + " has no part " + inputPart);
+    }
+
+    ImpactFunction function = new ImpactFunction(scorer, p, collection);
+
+    // first pass : find the range of the impacts
+    ListBuffer buffer = new ListBuffer();
+    double minimum = Double.POSITIVE_INFINITY;
+    double maximum = Double.NEGATIVE_INFINITY;
+    KeyIterator keys = reader.getIterator();
+    while (!keys.isDone()) {
+      buffer.read(keys, retrieval);
+      for (int i = 0; i < buffer.size; i++) {
+        double impact = function.impact(buffer, i);
+        minimum = Math.min(minimum, impact);
+        maximum = Math.max(maximum, impact);
+      }
+      keys.nextKey();
+    }
+
+    int levels = (1 << impactBits) - 1;
+    if (minimum > maximum) {
+      minimum = maximum = 0.0;
+    }
+    double scale = (maximum > minimum) ? (maximum - minimum) / levels : 1.0;
+
+    Parameters writerParams = Parameters.create();
+    writerParams.set("filename", indexPath + File.separator + outputPart);
+    writerParams.set("inputPart", inputPart);
+    writerParams.set("scorer", scorer);
+    function.setParameters(writerParams);
+    writerParams.set("impactBits", impactBits);
+    writerParams.set("impactMinimum", minimum);
+    writerParams.set("impactScale", scale);
+    writerParams.set("collectionLength", collection.collectionLength);
+    writerParams.set("documentCount", collection.documentCount);
+    if (reader.getManifest().isString("stemmer")) {
+      writerParams.set("stemmer", reader.getManifest().getString("stemmer"));
+    }
+    ImpactIndexWriter writer = new ImpactIndexWriter(new FakeParameters(writerParams));
+
+    // second pass : write the segments, best impacts first
+    long[] sorted = new long[0];
+    keys.reset();
+    while (!keys.isDone()) {
+      buffer.read(keys, retrieval);
+      if (sorted.length < buffer.size) {
+        sorted = new long[buffer.documents.length];
+      }
+      // sort by (impact desc, document asc), packed into one long
+      for (int i = 0; i < buffer.size; i++) {
+        long impact = Math.max(0, Math.min(levels, Math.round((function.impact(buffer, i) - minimum) / scale)));
+        sorted[i] = ((levels - impact) << 40) | buffer.documents[i];
+      }
+      Arrays.sort(sorted, 0, buffer.size);
+
+      writer.processWord(keys.getKey(), buffer.collectionFrequency);
+      int start = 0;
+      while (start < buffer.size) {
+        long impact = levels - (sorted[start] >>> 40);
+        int end = start;
+        while (end < buffer.size && (levels - (sorted[end] >>> 40)) == impact) {
+          end++;
+        }
+        writer.processSegment((int) impact, end - start);
+        for (int i = start; i < end; i++) {
+          writer.processDocument(sorted[i] & ((1L << 40) - 1));
+        }
+        start = end;
+      }
+      keys.nextKey();
+    }
+    writer.close();
+    retrieval.close();
+
+    output.println("Wrote " + outputPart + " from " + inputPart + " (" + scorer + ", scale " + scale + ").");
+  }
+
+  /**
+   * The postings of one term.
+   */
+  static class ListBuffer {
+
+    long[] documents = new long[1024];
+    int[] counts = new int[1024];
+    int[] lengths = new int[1024];
+    int size;
+    long collectionFrequency;
+
+    void read(KeyIterator keys, LocalRetrieval retrieval) throws Exception {
+      CountIterator iterator = (CountIterator) keys.getValueIterator();
+      LengthsIterator lengthsIterator = retrieval.getIndex().getLengthsIterator();
+      ScoringContext context = new ScoringContext();
+      size = 0;
+      collectionFrequency = 0;
+      while (!iterator.isDone()) {
+        context.document = iterator.currentCandidate();
+        if (iterator.hasMatch(context)) {
+          if (context.document >= (1L << 40)) {
+            throw new IllegalArgumentException("build-impacts does not support document " + context.document);
+          }
+          if (size == documents.length) {
+            documents = Arrays.copyOf(documents, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+          }
+          lengthsIterator.syncTo(context.document);
+          documents[size] = context.document;
+          counts[size] = iterator.count(context);
+          lengths[size] = lengthsIterator.length(context);
+          collectionFrequency += counts[size];
+          size++;
+        }
+        iterator.movePast(context.document);
+      }
+    }
+  }
+
+  /**
+   * The score of a posting; for dirichlet, only the part of the score that
+   * depends on the count (the rest is added at query time).
+   */
+  static class ImpactFunction {
+
+    final boolean bm25;
+    final double k;
+    final double b;
+    final double mu;
+    final FieldStatistics collection;
+
+    ImpactFunction(String scorer, Parameters p, FieldStatistics collection) {
+      this.bm25 = scorer.equals("bm25");
+      this.k = p.get("k", 1.2);
+      this.b = p.get("b", 0.75);
+      this.mu = p.get("mu", 1500.0);
+      this.collection = collection;
+    }
+
+    void setParameters(Parameters p) {
+      if (bm25) {
+        p.set("k", k);
+        p.set("b", b);
+      } else {
+        p.set("mu", mu);
+      }
+    }
+
+    double impact(ListBuffer list, int i) {
+      double count = list.counts[i];
+      if (bm25) {
+        // as BM25ScoringIterator
+        double idf = Math.log(collection.documentCount / (list.size + 0.5));
+        double avgDocLength = (double) collection.collectionLength / (double) collection.documentCount;
+        return idf * (count * (k + 1)) / (count + (k * (1 - b + (b * list.lengths[i] / avgDocLength))));
+      } else {
+        // log((count + mu * background) / (mu * background)), see ScoreAtATimeDocumentModel
+        double background = (double) list.collectionFrequency / (double) collection.collectionLength;
+        return Math.log1p(count / (mu * background));
+      }
+    }
+
+    double[] impacts(ListBuffer list) {
+      double[] impacts = new double[list.size];
+      for (int i = 0; i < list.size; i++) {
+        impacts[i] = impact(list, i);
+      }
+      return impacts;
+    }
+  }
+}
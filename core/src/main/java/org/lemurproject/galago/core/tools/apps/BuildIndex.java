@@ -6,14 +6,23 @@ import org.lemurproject.galago.core.index.corpus.CorpusFolderWriter;
 import org.lemurproject.galago.core.index.corpus.CorpusReader;
 import org.lemurproject.galago.core.btree.format.SplitBTreeKeyWriter;
 import org.lemurproject.galago.core.index.disk.CountIndexWriter;
+import org.lemurproject.galago.core.index.disk.DiskIndex;
 import org.lemurproject.galago.core.index.disk.DiskNameReader;
 import org.lemurproject.galago.core.index.disk.PositionFieldIndexWriter;
+import org.lemurproject.galago.core.index.disk.PackedPositionIndexWriter;
 import org.lemurproject.galago.core.index.disk.PositionIndexWriter;
+import org.lemurproject.galago.core.index.disk.StemDictionaryWriter;
+import org.lemurproject.galago.core.index.mem.MemoryPostingsInverter;
 import org.lemurproject.galago.core.index.merge.CorpusMerger;
+import org.lemurproject.galago.core.index.merge.IndexPartMergeManager;
+import org.lemurproject.galago.core.index.merge.MergeIndex;
+import org.lemurproject.galago.core.index.merge.PackedPositionIndexMerger;
 import org.lemurproject.galago.core.parse.*;
+import org.lemurproject.galago.core.parse.stem.ConflationReducer;
 import org.lemurproject.galago.core.parse.stem.KrovetzStemmer;
 import org.lemurproject.galago.core.parse.stem.NullStemmer;
 import org.lemurproject.galago.core.parse.stem.Porter2Stemmer;
+import org.lemurproject.galago.core.parse.stem.StemDictionaryExtractor;
 import org.lemurproject.galago.core.window.ReduceNumberWordCount;
 import org.lemurproject.galago.utility.StreamUtil;
 import org.lemurproject.galago.utility.tools.AppFunction;
@@ -29,8 +38,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
 
 import org.lemurproject.galago.utility.VersionInfo;
 
@@ -57,12 +70,26 @@ public class BuildIndex extends AppFunction {
     if (buildParameters.getBoolean("corpus")) {
       stage.addOutput("corpusKeys", new KeyValuePair.KeyOrder());
     }
+    boolean inMemoryInversion = buildParameters.getBoolean("inMemoryInversion");
     if (buildParameters.getBoolean("nonStemmedPostings")) {
-      stage.addOutput("numberedPostings", new NumberWordPosition.WordDocumentPositionOrder());
+      if (inMemoryInversion) {
+        stage.addOutput("partialPostings", new DocumentSplit.FileIdOrder());
+      } else {
+        stage.addOutput("numberedPostings", new NumberWordPosition.WordDocumentPositionOrder());
+      }
     }
     if (buildParameters.getBoolean("stemmedPostings")) {
       for (String stemmer : buildParameters.getList("stemmer", String.class)) {
-        stage.addOutput("numberedStemmedPostings-" + stemmer, new NumberWordPosition.WordDocumentPositionOrder());
+        if (inMemoryInversion) {
+          stage.addOutput("partialStemmedPostings-" + stemmer, new DocumentSplit.FileIdOrder());
+        } else {
+          stage.addOutput("numberedStemmedPostings-" + stemmer, new NumberWordPosition.WordDocumentPositionOrder());
+        }
+      }
+    }
+    if (buildParameters.getBoolean("stemDictionary")) {
+      for (String stemmer : buildParameters.getList("stemmer", String.class)) {
+        stage.addOutput("stemDictionary-" + stemmer, new KeyValuePair.KeyValueOrder());
       }
     }
     if (!buildParameters.getMap("tokenizer").getList("fields").isEmpty()) {
@@ -117,10 +144,15 @@ public class BuildIndex extends AppFunction {
               .addToGroup("corpus", new OutputStepInformation("corpusKeys"));
     }
     if (buildParameters.getBoolean("nonStemmedPostings")) {
-      processingFork.addGroup("postings",
-              BuildStageTemplates.getExtractionSteps("numberedPostings",
-              NumberedPostingsPositionExtractor.class,
-              new NumberWordPosition.WordDocumentPositionOrder()));
+      if (inMemoryInversion) {
+        processingFork.addGroup("postings",
+                getInversionSteps(buildParameters, "partialPostings", "postings", null));
+      } else {
+        processingFork.addGroup("postings",
+                BuildStageTemplates.getExtractionSteps("numberedPostings",
+                NumberedPostingsPositionExtractor.class,
+                new NumberWordPosition.WordDocumentPositionOrder()));
+      }
     }
     if (!buildParameters.getMap("tokenizer").getList("fields").isEmpty()) {
       processingFork.addGroup("extents",
@@ -153,6 +185,11 @@ public class BuildIndex extends AppFunction {
     if (buildParameters.getBoolean("stemmedPostings")) {
       for (String stemmer : buildParameters.getList("stemmer", String.class)) {
         String name = "postings-" + stemmer;
+        if (inMemoryInversion) {
+          processingFork.addGroup(name,
+                  getInversionSteps(buildParameters, "partialStemmedPostings-" + stemmer, "postings." + stemmer, stemmer));
+          continue;
+        }
         processingFork.addGroup(name).addToGroup(name,
             BuildStageTemplates.getStemmerStep(Parameters.create(),
                 Class.forName(buildParameters.getMap("stemmerClass").getString(stemmer))))
@@ -162,6 +199,18 @@ public class BuildIndex extends AppFunction {
       }
     }
 
+    if (buildParameters.getBoolean("stemDictionary")) {
+      for (String stemmer : buildParameters.getList("stemmer", String.class)) {
+        String name = "stemDictionary-" + stemmer;
+        Parameters p = Parameters.create();
+        p.set("stemmerClass", buildParameters.getMap("stemmerClass").getString(stemmer));
+        processingFork.addGroup(name).addToGroup(name, new StepInformation(StemDictionaryExtractor.class, p))
+                .addToGroup(name, Utility.getSorter(new KeyValuePair.KeyValueOrder()))
+                .addToGroup(name, new StepInformation(ConflationReducer.class))
+                .addToGroup(name, new OutputStepInformation(name));
+      }
+    }
+
     if (buildParameters.getBoolean("fieldIndex")) {
       if (buildParameters.getMap("fieldIndexParameters").getBoolean("nonStemmedPostings")) {
         processingFork.addGroup("fieldIndex",
@@ -223,6 +272,67 @@ public class BuildIndex extends AppFunction {
 //
 //    return stage;
 //  }
+  /**
+   * Inverts documents in memory, and emits the partial indexes written for
+   * indexName.
+   */
+  public static List<StepInformation> getInversionSteps(Parameters buildParameters,
+          String outputName, String indexName, String stemmerName) {
+    Parameters p = Parameters.create();
+    p.set("spillPath", getSpillPath(buildParameters, indexName));
+    p.set("memoryLimit", buildParameters.getLong("inversionMemory"));
+    p.set("skipping", buildParameters.getBoolean("skipping"));
+    p.set("skipDistance", buildParameters.getLong("skipDistance"));
+    if (stemmerName != null) {
+      p.set("stemmer", buildParameters.getMap("stemmerClass").getString(stemmerName));
+    }
+
+    List<StepInformation> steps = new ArrayList<>();
+    steps.add(new StepInformation(MemoryPostingsInverter.class, p));
+    steps.add(Utility.getSorter(new DocumentSplit.FileIdOrder()));
+    steps.add(new OutputStepInformation(outputName));
+    return steps;
+  }
+
+  /**
+   * Merges the partial indexes written by getInversionSteps, then deletes them.
+   */
+  public static Stage getMergePostingsStage(Parameters buildParameters, String stageName,
+          String inputName, String indexName, String stemmerName) {
+
+    Parameters p = Parameters.create();
+    p.set("filename", buildParameters.getString("indexPath") + File.separator + indexName);
+    p.set("part", MemoryPostingsInverter.PART);
+    p.set("deleteInputs", true);
+    p.set("skipping", buildParameters.getBoolean("skipping"));
+    p.set("skipDistance", buildParameters.getLong("skipDistance"));
+    if (stemmerName != null) {
+      p.set("stemmer", buildParameters.getMap("stemmerClass").getString(stemmerName));
+    }
+    if (buildParameters.get("packedPostings", false)) {
+      p.set("mergerClass", PackedPositionIndexMerger.class.getName());
+      p.set("postingsBlockSize", buildParameters.getLong("postingsBlockSize"));
+    }
+
+    Stage stage = new Stage(stageName);
+    stage.addInput(inputName, new DocumentSplit.FileIdOrder());
+    stage.add(new InputStepInformation(inputName));
+    stage.add(new StepInformation(IndexPartMergeManager.class, p));
+
+    return stage;
+  }
+
+  private static Class getPostingsWriterClass(Parameters buildParameters) {
+    if (buildParameters.getBoolean("packedPostings")) {
+      return PackedPositionIndexWriter.class;
+    }
+    return PositionIndexWriter.class;
+  }
+
+  private static String getSpillPath(Parameters buildParameters, String indexName) {
+    return buildParameters.getString("indexPath") + File.separator + indexName + ".partial";
+  }
+
   public static Stage getWritePostingsStage(Parameters buildParameters, String stageName,
           String inputName, Order inputOrder, String indexName,
           Class indexWriter, String stemmerName) {
@@ -234,6 +344,9 @@ public class BuildIndex extends AppFunction {
     if (stemmerName != null) {
       p.set("stemmer", buildParameters.getMap("stemmerClass").getString(stemmerName));
     }
+    if (indexWriter == PackedPositionIndexWriter.class) {
+      p.set("postingsBlockSize", buildParameters.getLong("postingsBlockSize"));
+    }
 
 
     Stage stage = new Stage(stageName);
@@ -244,6 +357,22 @@ public class BuildIndex extends AppFunction {
     return stage;
   }
 
+  public static Stage getWriteStemDictionaryStage(Parameters buildParameters, String stageName,
+          String inputName, String indexName, String stemmerName) {
+    Parameters p = Parameters.create();
+    p.set("filename", buildParameters.getString("indexPath") + File.separator + indexName);
+    p.set("stemmer", buildParameters.getMap("stemmerClass").getString(stemmerName));
+
+    Stage stage = new Stage(stageName);
+    stage.addInput(inputName, new KeyValuePair.KeyValueOrder());
+    stage.add(new InputStepInformation(inputName));
+    // the same term may come from several parsers
+    stage.add(new StepInformation(ConflationReducer.class));
+    stage.add(new StepInformation(StemDictionaryWriter.class, p));
+
+    return stage;
+  }
+
   public static Stage getParallelIndexKeyWriterStage(String name, String input, Parameters indexParameters) {
     Stage stage = new Stage(name);
 
@@ -304,6 +433,57 @@ public class BuildIndex extends AppFunction {
       globalParameters.set("skipDistance", 500);
     }
 
+    // inMemoryInversion inverts each parsed split in memory, then merges
+    // partial indexes, instead of sorting one tuple per posting [optional]
+    // [default = false]
+    if (globalParameters.containsKey("inMemoryInversion")) {
+      try {
+        boolean inversion = globalParameters.getBoolean("inMemoryInversion");
+      } catch (Exception e) {
+        errorLog.add("Parameter 'inMemoryInversion' should be a boolean. Defaults to false.");
+      }
+    } else {
+      globalParameters.set("inMemoryInversion", false);
+    }
+
+    // inversionMemory is the number of bytes of postings buffered by each
+    // inverter before a partial index is written [optional]
+    // [default = 256MB]
+    if (globalParameters.containsKey("inversionMemory")) {
+      try {
+        long inversionMemory = globalParameters.getLong("inversionMemory");
+      } catch (Exception e) {
+        errorLog.add("Parameter 'inversionMemory' should be a long value. Defaults to 268435456.");
+      }
+    } else {
+      globalParameters.set("inversionMemory", MemoryPostingsInverter.DEFAULT_MEMORY_LIMIT);
+    }
+
+    // packedPostings writes the postings parts in blocks of bit-packed
+    // integers (PackedPositionIndexWriter) [optional]
+    // [default = false]
+    if (globalParameters.containsKey("packedPostings")) {
+      try {
+        boolean packed = globalParameters.getBoolean("packedPostings");
+      } catch (Exception e) {
+        errorLog.add("Parameter 'packedPostings' should be a boolean. Defaults to false.");
+      }
+    } else {
+      globalParameters.set("packedPostings", false);
+    }
+
+    // postingsBlockSize is the number of documents in each block of a packed
+    // postings part [optional]
+    // [default = 128]
+    if (globalParameters.containsKey("postingsBlockSize")) {
+      try {
+        long postingsBlockSize = globalParameters.getLong("postingsBlockSize");
+      } catch (Exception e) {
+        errorLog.add("Parameter 'postingsBlockSize' should be a long value. Defaults to 128.");
+      }
+    } else {
+      globalParameters.set("postingsBlockSize", PackedPositionIndexWriter.DEFAULT_BLOCK_SIZE);
+    }
 
     // corpus may be a boolean [optional parameter]
     // defaults to true
@@ -386,6 +566,18 @@ public class BuildIndex extends AppFunction {
       globalParameters.set("stemmedCounts", false);
     }
 
+    // stemDictionary writes a term -> stem part for each stemmer [optional]
+    // [default = false]
+    if (globalParameters.containsKey("stemDictionary")) {
+      try {
+        boolean stemDictionary = globalParameters.getBoolean("stemDictionary");
+      } catch (Exception e) {
+        errorLog.add("Parameter 'stemDictionary' should be a boolean. Defaults to false.");
+      }
+    } else {
+      globalParameters.set("stemDictionary", false);
+    }
+
     // stemmer must be a list of stemmers [optional parameter]
     //   possible values { null | porter | krovetz | <class> }
     if (globalParameters.containsKey("stemmer")) {
@@ -406,7 +598,8 @@ public class BuildIndex extends AppFunction {
         globalParameters.set("stemmer", new ArrayList());
       }
     } else {
-      if (globalParameters.getBoolean("stemmedPostings") || globalParameters.getBoolean("stemmedCounts")) {
+      if (globalParameters.getBoolean("stemmedPostings") || globalParameters.getBoolean("stemmedCounts")
+              || globalParameters.get("stemDictionary", false)) {
         ArrayList<String> stemmers = new ArrayList<>();
         // try to find the stemmerClass parameters
         if (globalParameters.containsKey("stemmerClass")
@@ -432,7 +625,8 @@ public class BuildIndex extends AppFunction {
         globalParameters.set("stemmerClass", Parameters.create());
       }
       Parameters stemmerClasses = globalParameters.getMap("stemmerClass");
-      if ((globalParameters.getBoolean("stemmedPostings") || globalParameters.getBoolean("stemmedCounts"))
+      if ((globalParameters.getBoolean("stemmedPostings") || globalParameters.getBoolean("stemmedCounts")
+              || globalParameters.get("stemDictionary", false))
               && globalParameters.isList("stemmer")) {
         // this is safe - thanks to previous checks
         List<String> stemmer = globalParameters.getList("stemmer", String.class);
@@ -701,9 +895,13 @@ public class BuildIndex extends AppFunction {
 
       // nonstemmedpostings
       if (buildParameters.getBoolean("nonStemmedPostings")) {
-        job.add(getWritePostingsStage(buildParameters, "writePostings", "numberedPostings",
-            new NumberWordPosition.WordDocumentPositionOrder(), "postings",
-            PositionIndexWriter.class, null));
+        if (buildParameters.getBoolean("inMemoryInversion")) {
+          job.add(getMergePostingsStage(buildParameters, "writePostings", "partialPostings", "postings", null));
+        } else {
+          job.add(getWritePostingsStage(buildParameters, "writePostings", "numberedPostings",
+              new NumberWordPosition.WordDocumentPositionOrder(), "postings",
+              getPostingsWriterClass(buildParameters), null));
+        }
 
         job.connect("parsePostings", "writePostings", ConnectionAssignmentType.Combined);
       }
@@ -724,14 +922,28 @@ public class BuildIndex extends AppFunction {
       // stemmedpostings
       if (buildParameters.getBoolean("stemmedPostings")) {
         for (String stemmer : buildParameters.getList("stemmer", String.class)) {
-          job.add(getWritePostingsStage(buildParameters, "writePostings-" + stemmer,
-              "numberedStemmedPostings-" + stemmer,
-              new NumberWordPosition.WordDocumentPositionOrder(),
-              "postings." + stemmer, PositionIndexWriter.class, stemmer));
+          if (buildParameters.getBoolean("inMemoryInversion")) {
+            job.add(getMergePostingsStage(buildParameters, "writePostings-" + stemmer,
+                "partialStemmedPostings-" + stemmer, "postings." + stemmer, stemmer));
+          } else {
+            job.add(getWritePostingsStage(buildParameters, "writePostings-" + stemmer,
+                "numberedStemmedPostings-" + stemmer,
+                new NumberWordPosition.WordDocumentPositionOrder(),
+                "postings." + stemmer, getPostingsWriterClass(buildParameters), stemmer));
+          }
           job.connect("parsePostings", "writePostings-" + stemmer, ConnectionAssignmentType.Combined);
         }
       }
 
+      // stem dictionaries
+      if (buildParameters.getBoolean("stemDictionary")) {
+        for (String stemmer : buildParameters.getList("stemmer", String.class)) {
+          job.add(getWriteStemDictionaryStage(buildParameters, "writeStemDictionary-" + stemmer,
+              "stemDictionary-" + stemmer, "stems." + stemmer, stemmer));
+          job.connect("parsePostings", "writeStemDictionary-" + stemmer, ConnectionAssignmentType.Combined);
+        }
+      }
+
       // if we have at least one field - write extents
       if (!buildParameters.getMap("tokenizer").getList("fields").isEmpty()) {
         job.add(BuildStageTemplates.getWriteExtentsStage("writeExtents", new File(indexPath, "extents"), "numberedExtents"));
@@ -812,8 +1024,27 @@ public class BuildIndex extends AppFunction {
             + "                           [default=[true]]\n"
             + "  --stemmer+porter|krovetz: Selects which stemmers to use.\n"
             + "                           [default=[porter]]\n"
+            + "  --stemDictionary={true|false}: Writes a term -> stem part for each\n"
+            + "                           stemmer (stems.<stemmer>), used to stem query terms.\n"
+            + "                           [default=false]\n"
             + "  --corpus={true|false}:   Selects to output a corpus folder.\n"
             + "                           [default=true]\n"
+            + "  --inMemoryInversion={true|false}: Inverts postings in memory and merges\n"
+            + "                           partial indexes, instead of sorting each posting.\n"
+            + "                           [default=false]\n"
+            + "  --inversionMemory=<bytes>: Postings buffered per inverter before spilling.\n"
+            + "                           [default=268435456]\n"
+            + "  --packedPostings={true|false}: Writes postings parts in blocks of\n"
+            + "                           bit-packed integers, with block-max skips.\n"
+            + "                           [default=false]\n"
+            + "  --postingsBlockSize=<n>: Documents per block of packed postings.\n"
+            + "                           [default=128]\n"
+            + "  --reorderDocuments={url|bp}: Renumbers the documents in url order, or\n"
+            + "                           clusters similar documents by graph bisection,\n"
+            + "                           for smaller postings (see merge-index). Parts\n"
+            + "                           that can not be reordered are kept in\n"
+            + "                           <indexPath>.unordered.\n"
+            + "                           [optional]\n"
             + "  --tokenizer/fields+{field-name}:   \n"
             + "                           Selects field parts to index.\n"
             + "                           [omitted]\n"
@@ -824,13 +1055,50 @@ public class BuildIndex extends AppFunction {
     //TODO: need to design parameters for field indexes + stemming for field indexes
   }
 
+  private static Set<String> getPartNames(String indexPath) throws IOException {
+    DiskIndex index = new DiskIndex(indexPath);
+    Set<String> parts = new TreeSet<>(index.getPartNames());
+    index.close();
+    return parts;
+  }
+
   public static void execute(Parameters p, PrintStream output) throws Exception {
+    // reordered documents: build a temporary index, then rewrite it in the new order
+    String indexPath = p.getString("indexPath");
+    File unorderedIndex = null;
+    if (p.isString("reorderDocuments")) {
+      unorderedIndex = new File(indexPath + ".unordered");
+      p.set("indexPath", unorderedIndex.getAbsolutePath());
+    }
+
     Job job = getIndexJob(p);
 
     long startJobTime = System.currentTimeMillis();
     if (job != null) {
       TupleflowAppUtil.runTupleFlowJob(job, p, output);
     }
+
+    if (unorderedIndex != null) {
+      p.set("indexPath", indexPath);
+      Parameters mergeParameters = p.clone();
+      mergeParameters.set("inputPath", Collections.singletonList(unorderedIndex.getAbsolutePath()));
+      MergeIndex reorder = new MergeIndex();
+      Job reorderJob = reorder.getJob(mergeParameters);
+      try {
+        TupleflowAppUtil.runTupleFlowJob(reorderJob, mergeParameters, output);
+      } finally {
+        reorder.deleteDocumentOrder();
+      }
+
+      // parts that can not be reordered (e.g. the fields part) only exist in the unordered index
+      Set<String> missingParts = getPartNames(unorderedIndex.getAbsolutePath());
+      missingParts.removeAll(getPartNames(indexPath));
+      if (missingParts.isEmpty()) {
+        FSUtil.deleteDirectory(unorderedIndex);
+      } else {
+        Logger.getLogger("BuildIndex").warning("Parts " + missingParts + " could not be reordered, they are kept in " + unorderedIndex);
+      }
+    }
     long endJobTime = System.currentTimeMillis();
 
     double timeInMillis = (endJobTime-startJobTime);
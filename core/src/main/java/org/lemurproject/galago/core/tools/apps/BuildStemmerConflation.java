@@ -7,7 +7,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
+import org.lemurproject.galago.core.index.KeyIterator;
 import org.lemurproject.galago.core.index.disk.ConflationIndexWriter;
+import org.lemurproject.galago.core.index.disk.StemDictionaryReader;
 import org.lemurproject.galago.core.parse.DocumentSource;
 import org.lemurproject.galago.core.parse.stem.ConflationExtractor;
 import org.lemurproject.galago.core.parse.stem.ConflationReducer;
@@ -16,6 +18,8 @@ import org.lemurproject.galago.core.parse.stem.Porter2Stemmer;
 import org.lemurproject.galago.utility.tools.AppFunction;
 import org.lemurproject.galago.core.types.DocumentSplit;
 import org.lemurproject.galago.core.types.KeyValuePair;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.Sorter;
 import org.lemurproject.galago.tupleflow.TupleflowAppUtil;
 import org.lemurproject.galago.utility.Parameters;
 import org.lemurproject.galago.tupleflow.Utility;
@@ -44,12 +48,19 @@ public class BuildStemmerConflation extends AppFunction {
             + "          Files may be gzip compressed (.gz|.bz).\n"
             + "<outputPath>:  The path of the index part to produce.\n"
             + "<stemmer>: Name of a stemmer; [porter, krovetz, ...]\n\n"
+            + "galago stemmer-conflation --outputPath=<outputPath> --stemDictionary=<part>\n\n"
+            + "  Builds the conflations from a stem dictionary part of an index\n"
+            + "  (see build --stemDictionary), e.g. <index>/stems.krovetz.\n\n"
             + TupleflowAppUtil.getTupleFlowParameterString();
     //TODO: need to design parameters for field indexes + stemming for field indexes
   }
 
   @Override
   public void run(Parameters p, PrintStream output) throws Exception {
+    if (p.isString("stemDictionary") && p.isString("outputPath")) {
+      invertStemDictionary(p.getString("stemDictionary"), p.getString("outputPath"));
+      return;
+    }
     if (!p.isString("output") && !p.isList("inputPath") && !p.isString("stemmer")) {
       output.println(getHelpString());
       return;
@@ -64,6 +75,27 @@ public class BuildStemmerConflation extends AppFunction {
 
   }
 
+  /**
+   * Writes the conflations of a stem dictionary part (see build
+   * --stemDictionary), without parsing the collection again.
+   */
+  private void invertStemDictionary(String stemDictionary, String outputPath) throws Exception {
+    StemDictionaryReader reader = new StemDictionaryReader(stemDictionary);
+    Parameters writerParams = Parameters.create();
+    writerParams.set("filename", new File(outputPath).getAbsolutePath());
+    writerParams.set("stemmer", reader.getStemmerClass());
+    Sorter<KeyValuePair> sorter = new Sorter<>(new KeyValuePair.KeyValueOrder(), null,
+            new KeyValuePair.KeyValueOrder.TupleShredder(new ConflationIndexWriter(new FakeParameters(writerParams))));
+
+    KeyIterator terms = reader.getIterator();
+    while (!terms.isDone()) {
+      sorter.process(new KeyValuePair(terms.getValueBytes(), terms.getKey()));
+      terms.nextKey();
+    }
+    sorter.close();
+    reader.close();
+  }
+
   private Job getIndexJob(Parameters p) throws IOException {
     Job job = new Job();
 
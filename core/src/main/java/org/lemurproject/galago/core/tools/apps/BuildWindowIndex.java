@@ -9,6 +9,8 @@ import org.lemurproject.galago.core.parse.DocumentSource;
 import org.lemurproject.galago.core.parse.stem.KrovetzStemmer;
 import org.lemurproject.galago.core.parse.stem.NullStemmer;
 import org.lemurproject.galago.core.parse.stem.Porter2Stemmer;
+import org.lemurproject.galago.core.parse.stem.Stemmer;
+import org.lemurproject.galago.core.tokenize.Tokenizer;
 import org.lemurproject.galago.utility.tools.AppFunction;
 import org.lemurproject.galago.core.types.DocumentSplit;
 import org.lemurproject.galago.core.types.NumberWordCount;
@@ -20,10 +22,15 @@ import org.lemurproject.galago.tupleflow.Utility;
 import org.lemurproject.galago.tupleflow.execution.*;
 import org.lemurproject.galago.utility.Parameters;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -52,6 +59,8 @@ public class BuildWindowIndex extends AppFunction {
   Parameters buildParameters;
   String stemmerName;
   Class stemmerClass;
+  int queryLogTopN;
+  List<String> queryLogKeys = null;
 
   public Stage getParseFilterStage() throws Exception {
     // reads through the corpus
@@ -85,6 +94,9 @@ public class BuildWindowIndex extends AppFunction {
       p2.set("fields", (List<String>) buildParameters.getAsList("fields"));
     }
     stage.add(new StepInformation(WindowProducer.class, p2));
+    if (queryLogKeys != null) {
+      stage.add(getKeyFilterStep());
+    }
 
     stage.add(new StepInformation(WindowFeaturer.class));
     stage.add(Utility.getSorter(new TextFeature.FeatureOrder()));
@@ -162,6 +174,9 @@ public class BuildWindowIndex extends AppFunction {
       p2.set("fields", (List<String>) buildParameters.getAsList("fields"));
     }
     stage.add(new StepInformation(WindowProducer.class, p2));
+    if (queryLogKeys != null) {
+      stage.add(getKeyFilterStep());
+    }
 
     if (spaceEfficient) {
       Parameters p3 = Parameters.create();
@@ -217,6 +232,10 @@ public class BuildWindowIndex extends AppFunction {
     p2.set("ordered", this.ordered);
     p2.set("usedocfreq", this.threshdf);
     p2.set("threshold", this.threshold);
+    if (queryLogKeys != null) {
+      // only some windows are indexed
+      p2.set("queryLogTopN", queryLogTopN);
+    }
     if (stemming) {
       p2.set("stemming", stemming); // slightly redundent only present if true //
       p2.set("stemmer", stemmerClass.getName());
@@ -230,6 +249,48 @@ public class BuildWindowIndex extends AppFunction {
     return stage;
   }
 
+  public StepInformation getKeyFilterStep() {
+    Parameters p = Parameters.create();
+    p.set("keys", queryLogKeys);
+    return new StepInformation(WindowKeyFilter.class, p);
+  }
+
+  /**
+   * Returns the queryLogTopN most frequent windows of n adjacent query terms
+   * in the query log (one query per line).
+   */
+  public List<String> getQueryLogKeys(String queryLog) throws Exception {
+    Tokenizer tokenizer = Tokenizer.create(buildParameters);
+    Stemmer stemmer = stemming ? (Stemmer) stemmerClass.newInstance() : null;
+
+    final Map<String, Integer> counts = new HashMap<>();
+    try (BufferedReader reader = Utility.utf8Reader(queryLog)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        List<String> terms = tokenizer.tokenize(line).terms;
+        for (int i = 0; i + n <= terms.size(); i++) {
+          List<String> window = new ArrayList<>(terms.subList(i, i + n));
+          if (stemmer != null) {
+            for (int j = 0; j < window.size(); j++) {
+              window.set(j, stemmer.stem(window.get(j)));
+            }
+          }
+          if (!ordered) {
+            Collections.sort(window);
+          }
+          counts.merge(Utility.join(window, "~"), 1, Integer::sum);
+        }
+      }
+    }
+
+    List<String> keys = new ArrayList<>(counts.keySet());
+    keys.sort((a, b) -> {
+      int cmp = Integer.compare(counts.get(b), counts.get(a));
+      return (cmp != 0) ? cmp : a.compareTo(b);
+    });
+    return new ArrayList<>(keys.subList(0, Math.min(queryLogTopN, keys.size())));
+  }
+
   public Job getIndexJob(Parameters p) throws Exception {
 
     Job job = new Job();
@@ -273,6 +334,11 @@ public class BuildWindowIndex extends AppFunction {
     this.threshold = (int) p.get("threshold", 2);
     this.threshdf = p.get("usedocfreq", false);
 
+    if (p.isString("queryLog")) {
+      this.queryLogTopN = (int) p.get("queryLogTopN", 10000);
+      this.queryLogKeys = getQueryLogKeys(p.getString("queryLog"));
+    }
+
     spaceEfficient = p.get("spaceEfficient", false);
     if (threshold <= 1) {
       // no point being space efficient.
@@ -304,6 +370,10 @@ public class BuildWindowIndex extends AppFunction {
         indexName = "uw.n" + n + ".w" + width + ".h" + threshold;
       }
 
+      if (queryLogKeys != null) {
+        indexName += ".top" + queryLogTopN;
+      }
+
       if (threshdf) {
         indexName += ".df";
       }
@@ -381,7 +451,12 @@ public class BuildWindowIndex extends AppFunction {
             + "                           [default=false]\n"
             + "  --positionalIndex={true|false}: Selects whether to write positional data to the index file.\n"
             + "                           (The benefit is a large decrease in space usage).\n"
-            + "                           [default=true]\n\n"
+            + "                           [default=true]\n"
+            + "  --queryLog={file}:       Only indexes the most frequent windows of n adjacent terms\n"
+            + "                           in a query log (one query per line).\n"
+            + "                           [omitted]\n"
+            + "  --queryLogTopN={int >= 1}: Selects the number of query log windows to index.\n"
+            + "                           [default=10000]\n\n"
             + TupleflowAppUtil.getTupleFlowParameterString();
   }
 
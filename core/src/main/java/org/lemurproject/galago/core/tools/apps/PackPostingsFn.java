@@ -0,0 +1,89 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.tools.apps;
+
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.disk.DiskIndex;
+import org.lemurproject.galago.core.index.disk.PackedPositionIndexWriter;
+import org.lemurproject.galago.core.index.merge.DocumentMappingReader;
+import org.lemurproject.galago.core.index.merge.PackedPositionIndexMerger;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.execution.ErrorStore;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.tools.AppFunction;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.HashMap;
+
+/**
+ * Rewrites an existing positions part as a packed positions part
+ * (PackedPositionIndexWriter), without re-parsing the collection.
+ */
+public class PackPostingsFn extends AppFunction {
+
+  @Override
+  public String getName() {
+    return "pack-postings";
+  }
+
+  @Override
+  public String getHelpString() {
+    return "galago pack-postings --indexPath=<index> --inputPart=<part> [--outputPart=<part>]\n"
+            + "                      [--postingsBlockSize=<n>]\n\n"
+            + "  Rewrites a positions part of an index as blocks of bit-packed integers,\n"
+            + "  with block-max skips. The new part can be used in place of the input\n"
+            + "  part, or alongside it (e.g. #extents:term:part=<outputPart>()).\n\n"
+            + "<inputPart>: The name of a positions part, e.g. postings.krovetz.\n"
+            + "<outputPart>: The name of the new part [default=<inputPart>.packed].\n"
+            + "<postingsBlockSize>: Documents per block [default=128].\n";
+  }
+
+  @Override
+  public void run(Parameters p, PrintStream output) throws Exception {
+    if (!p.isString("indexPath") || !p.isString("inputPart")) {
+      output.println(getHelpString());
+      return;
+    }
+
+    String indexPath = p.getString("indexPath");
+    String inputPart = p.getString("inputPart");
+    String outputPart = p.get("outputPart", inputPart + ".packed");
+
+    IndexPartReader reader = DiskIndex.openIndexPart(indexPath + File.separator + inputPart);
+    Parameters manifest = reader.getManifest();
+    if (!manifest.get("defaultOperator", "").equals("counts")
+            || !reader.getNodeTypes().containsKey("extents")) {
+      reader.close();
+      throw new IllegalArgumentException("Part " + inputPart + " is not a positions part.");
+    }
+
+    Parameters writerParams = Parameters.create();
+    writerParams.set("filename", indexPath + File.separator + outputPart);
+    writerParams.set("postingsBlockSize", p.get("postingsBlockSize", (long) PackedPositionIndexWriter.DEFAULT_BLOCK_SIZE));
+    if (manifest.isString("stemmer")) {
+      writerParams.set("stemmer", manifest.getString("stemmer"));
+    }
+
+    // the writer is not run by tupleflow, so its parameters are checked here
+    ErrorStore store = new ErrorStore();
+    PackedPositionIndexWriter.verify(new FakeParameters(writerParams), store);
+    if (store.hasStatements()) {
+      reader.close();
+      throw new IllegalArgumentException(store.toString());
+    }
+
+    // a merge of a single part, with unchanged document ids
+    PackedPositionIndexMerger merger = new PackedPositionIndexMerger(new FakeParameters(writerParams));
+    HashMap<IndexPartReader, Integer> inputs = new HashMap<>();
+    inputs.put(reader, 0);
+    merger.setDocumentMapping(new DocumentMappingReader());
+    merger.setInputs(inputs);
+    merger.performKeyMerge();
+    merger.close();
+    reader.close();
+
+    output.println("Wrote " + outputPart + " from " + inputPart + ".");
+  }
+}
@@ -21,6 +21,9 @@ import org.lemurproject.galago.utility.Parameters;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -47,6 +50,11 @@ public class PageRankFn extends AppFunction {
             + "\tmaxItr=10 \n"
             + "\tdefaultScore=1/||D|| \n"
             + "\tdeleteIntData=false \n"
+            + "\tengine=[tupleflow]|csr \n"
+            + "\t\tcsr runs the iterations in memory, over a compressed link graph\n"
+            + "\tthreads=[#processors] (csr only)\n"
+            + "\tcsrMemoryLimit=[max memory / 2] (csr only)\n"
+            + "\t\tlink graphs larger than this (in bytes) are memory-mapped\n"
             + "\n"
             + TupleflowAppUtil.getTupleFlowParameterString();
   }
@@ -67,6 +75,11 @@ public class PageRankFn extends AppFunction {
 
     File outputFolder = new File(p.getString("outputFolder"));
 
+    if (p.get("engine", "tupleflow").equals("csr")) {
+      runCsr(p, outputFolder, output);
+      return;
+    }
+
     logger.info("Initializing...");
     long docCount = initialize(p, output);
 
@@ -118,6 +131,58 @@ public class PageRankFn extends AppFunction {
     logger.info("Finished");
   }
 
+  /**
+   * Runs the iterations in memory, over a CsrLinkGraph of the link data. The
+   * output is the same as the TupleFlow iterations.
+   */
+  private void runCsr(Parameters p, File outputFolder, PrintStream output) throws Exception {
+    File inputData = new File(p.getString("linkdata"));
+    outputFolder.mkdirs();
+
+    logger.info("Reading link graph...");
+    long memoryLimit = p.get("csrMemoryLimit", Runtime.getRuntime().maxMemory() / 2);
+    CsrLinkGraph graph = CsrLinkGraph.build(listFiles(new File(inputData, "names")),
+            listFiles(new File(inputData, "srcNameOrder")), memoryLimit, outputFolder);
+    try {
+      if (graph.getDocumentCount() == 0) {
+        output.println("failed to initialize. Aborting.");
+        return;
+      }
+      p.set("docCount", (long) graph.getDocumentCount());
+
+      int threads = (int) p.get("threads", (long) Runtime.getRuntime().availableProcessors());
+      CsrPageRank pagerank = new CsrPageRank(graph, p.getDouble("lambda"), threads);
+      double initialScore = p.get("defaultScore", 1.0 / graph.getDocumentCount());
+      double[] scores = pagerank.run(initialScore, (int) p.get("maxItr", 10), p.get("delta", 0.000001));
+      if (pagerank.hasConverged()) {
+        logger.info("Converged at " + pagerank.getIterations());
+      } else {
+        logger.info("MaxIterations reached at " + pagerank.getIterations());
+      }
+
+      logger.info("Finalizing...");
+      CsrPageRank.write(graph, scores, new File(outputFolder, "pagerank.docNameOrder"),
+              new File(outputFolder, "pagerank.scoreOrder"));
+      logger.info("Finished");
+    } finally {
+      graph.close();
+    }
+  }
+
+  private static List<String> listFiles(File folder) {
+    List<String> files = new ArrayList<>();
+    File[] children = folder.listFiles();
+    if (children != null) {
+      for (File f : children) {
+        if (f.isFile()) {
+          files.add(f.getAbsolutePath());
+        }
+      }
+    }
+    Collections.sort(files);
+    return files;
+  }
+
   /**
    * Creates initial pagerank scores for documents;
    *   1 / ||D||
@@ -0,0 +1,326 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.tools.apps;
+
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.disk.CountIndexWriter;
+import org.lemurproject.galago.core.index.disk.PackedPositionIndexWriter;
+import org.lemurproject.galago.core.index.disk.PositionIndexWriter;
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
+import org.lemurproject.galago.core.retrieval.iterator.ExtentIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.types.NumberWordPosition;
+import org.lemurproject.galago.core.util.ExtentArray;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.tools.AppFunction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Writes a statically pruned copy of an index, to be used as the first tier
+ * of a TieredRetrieval.
+ *
+ * Postings parts (positions, packed positions and counts parts) are pruned by the score
+ * contribution of each posting (bm25 or the count-dependent part of
+ * dirichlet):
+ *
+ * term: each term keeps the postings that score at least pruneEpsilon times
+ * its pruneTopK-th best score (term-centric pruning).
+ *
+ * document: each document keeps the pruneFraction best scoring of its terms
+ * (document-centric pruning). The scores of all postings of a part are held
+ * in memory.
+ *
+ * Document ids are unchanged, and all other parts (lengths, names, corpus,
+ * ...) are copied, so the pruned index is consistent with the original. Other
+ * parts with counts or extents (e.g. window parts) are copied unpruned, with a
+ * warning.
+ */
+public class PruneIndexFn extends AppFunction {
+
+  private static final Logger logger = Logger.getLogger("PruneIndexFn");
+
+  @Override
+  public String getName() {
+    return "prune-index";
+  }
+
+  @Override
+  public String getHelpString() {
+    return "galago prune-index --indexPath=<index> --prunedIndexPath=<index> [flags]\n\n"
+            + "  Writes a statically pruned copy of an index. Postings are pruned by\n"
+            + "  their score contribution, other parts are copied. The pruned index\n"
+            + "  can be queried as a first tier, in front of the full index:\n"
+            + "  --firstTierIndex=<prunedIndexPath> --index=<indexPath>\n\n"
+            + "Flags:\n"
+            + "  --pruning={term|document}:  [default=term]\n"
+            + "  --pruneTopK=<k>:            term pruning; rank of the reference score [default=10]\n"
+            + "  --pruneEpsilon=<e>:         term pruning; fraction of the reference score [default=0.5]\n"
+            + "  --pruneFraction=<f>:        document pruning; fraction of terms kept [default=0.1]\n"
+            + "  --parts=<part>:             parts to prune (repeatable) [default=all postings parts]\n"
+            + "  --scorer={bm25|dirichlet}:  [default=bm25]\n"
+            + "  --k=<k>, --b=<b>, --mu=<mu>: scorer parameters [default=1.2, 0.75, 1500]\n";
+  }
+
+  @Override
+  public void run(Parameters p, PrintStream output) throws Exception {
+    if (!p.isString("indexPath") || !p.isString("prunedIndexPath")) {
+      output.println(getHelpString());
+      return;
+    }
+
+    File index = new File(p.getString("indexPath"));
+    File prunedIndex = new File(p.getString("prunedIndexPath"));
+    String pruning = p.get("pruning", "term");
+    if (!pruning.equals("term") && !pruning.equals("document")) {
+      throw new IllegalArgumentException("prune-index supports term and document pruning, not: " + pruning);
+    }
+    String scorer = p.get("scorer", "bm25");
+    if (!scorer.equals("bm25") && !scorer.equals("dirichlet")) {
+      throw new IllegalArgumentException("prune-index supports the bm25 and dirichlet scorers, not: " + scorer);
+    }
+    if (prunedIndex.getAbsoluteFile().equals(index.getAbsoluteFile())) {
+      throw new IllegalArgumentException("prunedIndexPath must differ from indexPath.");
+    }
+
+    LocalRetrieval retrieval = new LocalRetrieval(index.getAbsolutePath(), Parameters.create());
+    FieldStatistics collection = retrieval.getCollectionStatistics("#lengths:part=lengths()");
+    BuildImpactIndexFn.ImpactFunction function = new BuildImpactIndexFn.ImpactFunction(scorer, p, collection);
+
+    List<String> parts = new ArrayList<>();
+    if (p.isList("parts") || p.isString("parts")) {
+      parts.addAll(p.getAsList("parts", String.class));
+    } else {
+      for (String part : retrieval.getIndex().getPartNames()) {
+        IndexPartReader reader = retrieval.getIndex().getIndexPart(part);
+        if (isPostingsPart(reader)) {
+          parts.add(part);
+        } else if (reader != null && (reader.getNodeTypes().containsKey("counts") || reader.getNodeTypes().containsKey("extents"))) {
+          logger.warning("Part " + part + " (" + reader.getManifest().get("writerClass", "unknown writer")
+                  + ") can not be pruned, it is copied to the pruned index.");
+        }
+      }
+    }
+
+    // copy everything that is not pruned
+    copyIndex(index, prunedIndex, "", parts);
+
+    for (String part : parts) {
+      IndexPartReader reader = retrieval.getIndex().getIndexPart(part);
+      if (!isPostingsPart(reader)) {
+        throw new IllegalArgumentException("Part " + part + " is not a positions, packed positions or counts part.");
+      }
+
+      float[] documentThresholds = pruning.equals("document")
+              ? getDocumentThresholds(reader, retrieval, function, p.get("pruneFraction", 0.1))
+              : null;
+      int topK = (int) p.get("pruneTopK", 10L);
+      double epsilon = p.get("pruneEpsilon", 0.5);
+
+      Parameters writerParams = reader.getManifest().clone();
+      writerParams.set("filename", new File(prunedIndex, part).getAbsolutePath());
+      Parameters pruningParams = Parameters.create();
+      pruningParams.set("pruning", pruning);
+      pruningParams.set("scorer", scorer);
+      function.setParameters(pruningParams);
+      if (pruning.equals("term")) {
+        pruningParams.set("pruneTopK", topK);
+        pruningParams.set("pruneEpsilon", epsilon);
+      } else {
+        pruningParams.set("pruneFraction", p.get("pruneFraction", 0.1));
+      }
+      writerParams.set("pruning", pruningParams);
+      PostingsWriter writer = new PostingsWriter(writerParams);
+
+      BuildImpactIndexFn.ListBuffer buffer = new BuildImpactIndexFn.ListBuffer();
+      long postings = 0;
+      long kept = 0;
+      KeyIterator keys = reader.getIterator();
+      while (!keys.isDone()) {
+        buffer.read(keys, retrieval);
+        double[] scores = function.impacts(buffer);
+        boolean[] keep = new boolean[buffer.size];
+        if (documentThresholds == null) {
+          double threshold = getTermThreshold(scores, topK, epsilon);
+          for (int i = 0; i < buffer.size; i++) {
+            keep[i] = scores[i] >= threshold;
+          }
+        } else {
+          for (int i = 0; i < buffer.size; i++) {
+            keep[i] = (float) scores[i] >= documentThresholds[(int) buffer.documents[i]];
+          }
+        }
+        postings += buffer.size;
+        kept += writer.write(keys, buffer, keep);
+        keys.nextKey();
+      }
+      writer.close();
+
+      output.println("Pruned " + part + ": kept " + kept + " of " + postings + " postings.");
+    }
+    retrieval.close();
+  }
+
+  private static boolean isPostingsPart(IndexPartReader reader) {
+    if (reader == null) {
+      return false;
+    }
+    String writerClass = reader.getManifest().get("writerClass", "");
+    return writerClass.equals(PositionIndexWriter.class.getName())
+            || writerClass.equals(PackedPositionIndexWriter.class.getName())
+            || writerClass.equals(CountIndexWriter.class.getName());
+  }
+
+  /**
+   * Postings that score at least epsilon times the k-th best score are kept.
+   * Negative scores (bm25 for very common terms) keep the top k.
+   */
+  private static double getTermThreshold(double[] scores, int topK, double epsilon) {
+    if (scores.length <= topK) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    double[] sorted = scores.clone();
+    Arrays.sort(sorted);
+    double reference = sorted[sorted.length - topK];
+    return (reference > 0) ? epsilon * reference : reference;
+  }
+
+  /**
+   * Finds, for each document, the score of the last of its terms to keep.
+   */
+  private static float[] getDocumentThresholds(IndexPartReader reader, LocalRetrieval retrieval,
+          BuildImpactIndexFn.ImpactFunction function, double fraction) throws Exception {
+    float[][] documentScores = new float[1024][];
+    int[] documentTerms = new int[1024];
+
+    BuildImpactIndexFn.ListBuffer buffer = new BuildImpactIndexFn.ListBuffer();
+    KeyIterator keys = reader.getIterator();
+    while (!keys.isDone()) {
+      buffer.read(keys, retrieval);
+      for (int i = 0; i < buffer.size; i++) {
+        int d = (int) buffer.documents[i];
+        if (d >= documentScores.length) {
+          documentScores = Arrays.copyOf(documentScores, Math.max(d + 1, documentScores.length * 2));
+          documentTerms = Arrays.copyOf(documentTerms, documentScores.length);
+        }
+        if (documentScores[d] == null) {
+          documentScores[d] = new float[16];
+        } else if (documentTerms[d] == documentScores[d].length) {
+          documentScores[d] = Arrays.copyOf(documentScores[d], documentTerms[d] * 2);
+        }
+        documentScores[d][documentTerms[d]++] = (float) function.impact(buffer, i);
+      }
+      keys.nextKey();
+    }
+
+    float[] thresholds = new float[documentScores.length];
+    for (int d = 0; d < documentScores.length; d++) {
+      if (documentScores[d] != null) {
+        float[] scores = Arrays.copyOf(documentScores[d], documentTerms[d]);
+        Arrays.sort(scores);
+        int keep = Math.max(1, (int) Math.ceil(fraction * scores.length));
+        thresholds[d] = scores[scores.length - keep];
+        documentScores[d] = null;
+      }
+    }
+    return thresholds;
+  }
+
+  private static void copyIndex(File input, File output, String name, List<String> excluded) throws IOException {
+    if (input.isDirectory()) {
+      output.mkdirs();
+      for (File child : input.listFiles()) {
+        String childName = (name.isEmpty()) ? child.getName() : name + "/" + child.getName();
+        copyIndex(child, new File(output, child.getName()), childName, excluded);
+      }
+    } else if (!excluded.contains(name)) {
+      Files.copy(input.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Writes the kept postings of each list, with the writer of the input part.
+   */
+  private static class PostingsWriter {
+
+    final boolean positions;
+    final NumberWordPosition.WordDocumentPositionOrder.ShreddedProcessor positionsWriter;
+    final CountIndexWriter countsWriter;
+    final ScoringContext context = new ScoringContext();
+
+    PostingsWriter(Parameters writerParams) throws IOException {
+      String writerClass = writerParams.getString("writerClass");
+      this.positions = !writerClass.equals(CountIndexWriter.class.getName());
+      if (writerClass.equals(PackedPositionIndexWriter.class.getName())) {
+        this.positionsWriter = new PackedPositionIndexWriter(new FakeParameters(writerParams));
+      } else if (positions) {
+        this.positionsWriter = new PositionIndexWriter(new FakeParameters(writerParams));
+      } else {
+        this.positionsWriter = null;
+      }
+      this.countsWriter = positions ? null : new CountIndexWriter(new FakeParameters(writerParams));
+    }
+
+    /**
+     * @return the number of postings written.
+     */
+    int write(KeyIterator keys, BuildImpactIndexFn.ListBuffer buffer, boolean[] keep) throws IOException {
+      int kept = 0;
+      for (boolean k : keep) {
+        kept += k ? 1 : 0;
+      }
+      if (kept == 0) {
+        return 0;
+      }
+
+      if (positions) {
+        positionsWriter.processWord(keys.getKey());
+      } else {
+        countsWriter.processWord(keys.getKey());
+      }
+
+      // the iterator visits the documents of the buffer, in order
+      CountIterator iterator = (CountIterator) keys.getValueIterator();
+      for (int i = 0; i < buffer.size; i++) {
+        context.document = buffer.documents[i];
+        iterator.syncTo(context.document);
+        if (!keep[i]) {
+          continue;
+        }
+        if (positions) {
+          positionsWriter.processDocument(context.document);
+          ExtentArray extents = ((ExtentIterator) iterator).extents(context);
+          for (int e = 0; e < extents.size(); e++) {
+            positionsWriter.processPosition(extents.begin(e));
+          }
+          positionsWriter.processTuple();
+        } else {
+          countsWriter.processDocument(context.document);
+          countsWriter.processTuple(buffer.counts[i]);
+        }
+      }
+      return kept;
+    }
+
+    void close() throws IOException {
+      if (positions) {
+        positionsWriter.close();
+      } else {
+        countsWriter.close();
+      }
+    }
+  }
+}
@@ -63,10 +63,10 @@ public class WordLists {
         // ensure we keep the wordlist (also ensure unmodifiable).
         wordLists.put(name, Collections.unmodifiableSet(list));
       }
-    }
 
-    // otherwise we've already read this list.
-    return wordLists.get(name);
+      // otherwise we've already read this list.
+      return wordLists.get(name);
+    }
   }
 
   @Nonnull
@@ -0,0 +1,52 @@
+// BSD License (http://lemurproject.org/galago-license)
+
+package org.lemurproject.galago.core.window;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.debug.Counter;
+import org.lemurproject.galago.tupleflow.InputClass;
+import org.lemurproject.galago.tupleflow.OutputClass;
+import org.lemurproject.galago.tupleflow.StandardStep;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+import org.lemurproject.galago.tupleflow.execution.ErrorStore;
+import org.lemurproject.galago.tupleflow.execution.Verified;
+
+/**
+ * WindowKeyFilter only passes windows with one of the listed 'keys'
+ * (e.g. the most frequent windows of a query log).
+ */
+@Verified
+@InputClass(className = "org.lemurproject.galago.core.window.Window")
+@OutputClass(className = "org.lemurproject.galago.core.window.Window")
+public class WindowKeyFilter extends StandardStep<Window, Window> {
+
+  Set<String> keys;
+  Counter dropped;
+  Counter passed;
+
+  public WindowKeyFilter(TupleFlowParameters parameters) throws IOException {
+    keys = new HashSet<>(parameters.getJSON().getAsList("keys", String.class));
+
+    dropped = parameters.getCounter("Windows Dropped");
+    passed = parameters.getCounter("Windows Passed");
+  }
+
+  @Override
+  public void process(Window w) throws IOException {
+    if (keys.contains(ByteUtil.toString(w.data))) {
+      processor.process(w);
+      passed.increment();
+    } else {
+      dropped.increment();
+    }
+  }
+
+  public static void verify(TupleFlowParameters parameters, ErrorStore store) {
+    if (!parameters.getJSON().isList("keys", String.class)) {
+      store.addError("WindowKeyFilter requires a list of 'keys'.");
+    }
+  }
+}
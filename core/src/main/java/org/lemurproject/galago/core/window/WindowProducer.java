@@ -81,7 +81,7 @@ public class WindowProducer extends StandardStep<Document, Window> {
     
     for (Tag tag : tagList) {
       // check that the tag is desired & can contain at least one window
-      if ((tag.end - tag.begin) > n) {
+      if ((tag.end - tag.begin) >= n) {
         // get a sub-list of terms
         List<String> terms = doc.terms.subList(tag.begin, tag.end);
         for (windowBegin = 0; windowBegin < terms.size(); windowBegin++) {
@@ -187,4 +187,36 @@ public class IndexWriterTest {
     }
     reader.close();
   }
+
+  @Test
+  public void testMappedReader() throws IOException {
+    Parameters parameters = Parameters.create();
+    parameters.set("blockSize", 64);
+    temporary = FileUtility.createTemporary();
+    TupleflowDiskBTreeWriter writer = new TupleflowDiskBTreeWriter(temporary.getAbsolutePath(), parameters);
+    for (int i = 0; i < 1000; ++i) {
+      writer.add(new GenericElement(String.format("%05d", i), String.format("value%05d", i)));
+    }
+    writer.getManifest().set("mmap", true);
+    writer.close();
+
+    // the manifest requests a mapped buffer
+    DiskBTreeReader reader = new DiskBTreeReader(temporary.getAbsolutePath());
+    assertTrue(reader.isMapped());
+    for (int i = 1000 - 1; i >= 0; i--) {
+      assertEquals(String.format("value%05d", i), reader.getValueString(ByteUtil.fromString(String.format("%05d", i))));
+    }
+
+    DiskBTreeIterator iterator = reader.getIterator();
+    iterator.skipTo(ByteUtil.fromString("00500"));
+    assertEquals("00500", ByteUtil.toString(iterator.getKey()));
+    assertEquals("value00500", iterator.getValueString());
+    reader.close();
+
+    // mapping can also be requested by the caller
+    reader = new DiskBTreeReader(temporary.getAbsolutePath(), true);
+    assertTrue(reader.isMapped());
+    assertEquals("value00999", reader.getValueString(ByteUtil.fromString("00999")));
+    reader.close();
+  }
 }
@@ -7,6 +7,7 @@ import org.junit.Test;
 import org.lemurproject.galago.core.index.disk.DiskLengthsReader.KeyIterator;
 import org.lemurproject.galago.core.retrieval.iterator.disk.DiskLengthsIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
 import org.lemurproject.galago.core.types.FieldLengthData;
 import org.lemurproject.galago.tupleflow.FakeParameters;
 import org.lemurproject.galago.tupleflow.FileUtility;
@@ -92,6 +93,68 @@ public class DiskLengthsTest{
     }
   }
 
+  @Test
+  public void testResidentLengths() throws IOException {
+    File len = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("filename", len.getAbsolutePath());
+      DiskLengthsWriter writer = new DiskLengthsWriter(new FakeParameters(p));
+
+      byte[] doc = ByteUtil.fromString("document");
+      byte[] title = ByteUtil.fromString("title");
+      for (int i = 10; i <= 100; i++) {
+        writer.process(new FieldLengthData(doc, i, i + 1));
+      }
+      writer.process(new FieldLengthData(doc, 110, 111));
+      for (int i = 20; i <= 30; i++) {
+        writer.process(new FieldLengthData(title, i, 2));
+      }
+      writer.close();
+
+      DiskLengthsReader reader = new DiskLengthsReader(len.getAbsolutePath());
+      DiskLengthsIterator diskItr = (DiskLengthsIterator) reader.getLengthsIterator();
+
+      assertFalse(reader.isResident("document"));
+      assertTrue(reader.loadResident("document"));
+      assertTrue(reader.loadResident("title"));
+      assertFalse(reader.loadResident("missing"));
+      assertTrue(reader.isResident("document"));
+
+      assertEquals(0, reader.getLength(5));
+      assertEquals(91, reader.getLength(90));
+      assertEquals(51, reader.getLength(50));
+      assertEquals(0, reader.getLength(105));
+      assertEquals(111, reader.getLength(110));
+      assertEquals(0, reader.getLength(200));
+
+      // resident iterators must behave like disk iterators
+      DiskLengthsIterator memItr = (DiskLengthsIterator) reader.getLengthsIterator();
+      assertEquals(diskItr.getStatistics().toString(), memItr.getStatistics().toString());
+      ScoringContext sc = new ScoringContext();
+      for (long d = 0; d <= 120; d += 3) {
+        diskItr.syncTo(d);
+        memItr.syncTo(d);
+        sc.document = d;
+        assertEquals(diskItr.currentCandidate(), memItr.currentCandidate());
+        assertEquals(diskItr.isDone(), memItr.isDone());
+        assertEquals(diskItr.length(sc), memItr.length(sc));
+      }
+
+      DiskLengthsIterator titleItr = reader.getIterator(StructuredQuery.parse("#lengths:title:part=lengths()"));
+      assertEquals(20, titleItr.currentCandidate());
+      sc.document = 25;
+      titleItr.syncTo(25);
+      assertEquals(2, titleItr.length(sc));
+      titleItr.movePast(30);
+      assertTrue(titleItr.isDone());
+
+      reader.close();
+    } finally {
+      assertTrue(len.delete());
+    }
+  }
+
   @Test
   public void testBigLengths() throws IOException {
     File len = FileUtility.createTemporary();
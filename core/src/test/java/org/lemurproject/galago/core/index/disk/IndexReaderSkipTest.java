@@ -5,6 +5,8 @@ package org.lemurproject.galago.core.index.disk;
 
 import org.junit.Test;
 import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskCountIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskExtentIterator;
 import org.lemurproject.galago.tupleflow.FakeParameters;
 import org.lemurproject.galago.tupleflow.FileUtility;
 import org.lemurproject.galago.utility.ByteUtil;
@@ -14,6 +16,7 @@ import java.io.File;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -58,6 +61,61 @@ public class IndexReaderSkipTest {
     }
   }
 
+  @Test
+  public void testPositionIndexBlockMaxima() throws Exception {
+    File temp = FileUtility.createTemporary();
+
+    try {
+      Parameters parameters = Parameters.create();
+      parameters.set("filename", temp.getAbsolutePath());
+      parameters.set("skipDistance", 10);
+      parameters.set("skipResetDistance", 5);
+      PositionIndexWriter writer = new PositionIndexWriter(new FakeParameters(parameters));
+
+      // a short list (no skips) must not disable skips for the following lists
+      writer.processWord(ByteUtil.fromString("a"));
+      writer.processDocument(1);
+      writer.processPosition(1);
+
+      // every even document, count is (doc % 37) + 1
+      writer.processWord(ByteUtil.fromString("key"));
+      for (int doc = 0; doc < 2000; doc += 2) {
+        writer.processDocument(doc);
+        for (int begin = 0; begin <= doc % 37; begin++) {
+          writer.processPosition(begin);
+        }
+      }
+      writer.close();
+
+      PositionIndexReader reader = new PositionIndexReader(parameters.getString("filename"));
+      DiskCountIterator counts = reader.getTermCounts("key");
+      DiskExtentIterator extents = reader.getTermExtents("key");
+      assertTrue(counts.hasBlockMaxima());
+      assertTrue(extents.hasBlockMaxima());
+      assertFalse(reader.getTermCounts("a").hasBlockMaxima());
+
+      for (int doc = 0; doc < 2000; doc++) {
+        long blockEnd = counts.blockLastCandidate(doc);
+        int blockMax = counts.blockMaximumCount(doc);
+        assertTrue(blockEnd >= doc);
+        assertEquals(blockEnd, extents.blockLastCandidate(doc));
+        assertEquals(blockMax, extents.blockMaximumCount(doc));
+
+        // the bound must hold for every document in the block
+        int expected = 0;
+        for (int d = 0; d < 2000 && d <= blockEnd; d += 2) {
+          if (counts.blockLastCandidate(d) == blockEnd) {
+            expected = Math.max(expected, (d % 37) + 1);
+          }
+        }
+        assertEquals(expected, blockMax);
+      }
+      reader.close();
+    } finally {
+      assertTrue(temp.delete());
+    }
+  }
+
   @Test
   public void testCountIndexSkipping() throws Exception {
     Random r = new Random();
@@ -0,0 +1,232 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.disk;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.merge.PackedPositionIndexMerger;
+import org.lemurproject.galago.core.retrieval.iterator.ExtentIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskExtentIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.util.ExtentArray;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PackedPositionIndexWriterTest {
+
+  @Test
+  public void testPackedLists() throws Exception {
+    File tmp = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("filename", tmp.getAbsolutePath());
+      p.set("postingsBlockSize", 16);
+      PackedPositionIndexWriter writer = new PackedPositionIndexWriter(new FakeParameters(p));
+
+      // many blocks, with count c for the c'th document
+      writer.processWord(ByteUtil.fromString("test1"));
+      int c = 1;
+      for (long doc = 0; doc < 2020; doc += 2) {
+        writer.processDocument(doc);
+        for (int pos = 0; pos < c; pos++) {
+          writer.processPosition(pos * 3);
+          writer.processTuple();
+        }
+        c += 1;
+      }
+
+      // a single, partial block
+      writer.processWord(ByteUtil.fromString("test2"));
+      writer.processDocument(5);
+      writer.processPosition(2);
+      writer.processPosition(1000000);
+      writer.processDocument(1L << 30);
+      writer.processPosition(7);
+      writer.close();
+
+      PackedPositionIndexReader r = new PackedPositionIndexReader(tmp.getAbsolutePath());
+      assertEquals((1010L * 1011 / 2) + 3, r.getManifest().getLong("statistics/collectionLength"));
+
+      PackedPositionIndexExtentSource es = r.getIterator().getValueSource();
+      assertEquals(1010, es.totalEntries());
+      assertTrue(es.hasBlockMaxima());
+      int expC = 1;
+      while (!es.isDone()) {
+        long doc = es.currentCandidate();
+        assertEquals((expC - 1) * 2, doc);
+        assertEquals(expC, es.count(doc));
+        ExtentArray extents = es.extents(doc);
+        assertEquals(expC, extents.size());
+        for (int i = 0; i < extents.size(); i++) {
+          assertEquals(i * 3, extents.begin(i));
+        }
+        // each block holds 16 documents
+        assertEquals(Math.min(((expC - 1) / 16) * 16 + 16, 1010), es.blockMaximumCount(doc));
+        expC += 1;
+        es.movePast(doc);
+      }
+      assertEquals(1011, expC);
+
+      // skipping between blocks
+      es.reset();
+      es.syncTo(501);
+      assertEquals(502, es.currentCandidate());
+      assertEquals(252, es.count(502));
+      assertEquals(252, es.extents(502).size());
+      assertEquals(0, es.count(501));
+      es.syncTo(1500);
+      assertEquals(1500, es.currentCandidate());
+      assertEquals(62, es.blockLastCandidate(61));
+      assertEquals(Long.MAX_VALUE, es.blockLastCandidate(2018));
+      es.syncTo(2019);
+      assertTrue(es.isDone());
+
+      DiskExtentIterator it = r.getTermExtents("test2");
+      ScoringContext sc = new ScoringContext();
+      sc.document = it.currentCandidate();
+      assertEquals(5, sc.document);
+      assertEquals(2, it.extents(sc).size());
+      assertEquals(1000000, it.extents(sc).begin(1));
+      it.movePast(5);
+      sc.document = it.currentCandidate();
+      assertEquals(1L << 30, sc.document);
+      assertEquals(7, it.extents(sc).begin(0));
+      assertEquals(2, r.getTermCounts("test2").totalEntries());
+      r.close();
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  @Test
+  public void testPackPostings() throws Exception {
+    File trecFolder = FileUtility.createTemporaryDirectory();
+    File index = FileUtility.createTemporaryDirectory();
+    try {
+      Random random = new Random(7);
+      String[] words = {"a", "b", "c", "d", "e", "f", "g", "h"};
+      StringBuilder trec = new StringBuilder();
+      for (int d = 0; d < 300; d++) {
+        trec.append("<DOC>\n<DOCNO>d").append(d).append("</DOCNO>\n<TEXT>\n");
+        int length = 1 + random.nextInt(40);
+        for (int i = 0; i < length; i++) {
+          trec.append(words[Math.min(words.length - 1, Math.abs((int) (random.nextGaussian() * 3)))]).append(' ');
+        }
+        trec.append("</TEXT>\n</DOC>\n");
+      }
+      StreamUtil.copyStringToFile(trec.toString(), new File(trecFolder, "docs.trectext"));
+
+      Parameters indexParams = Parameters.create();
+      indexParams.set("inputPath", Collections.singletonList(trecFolder.getAbsolutePath()));
+      indexParams.set("indexPath", index.getAbsolutePath());
+      indexParams.set("stemmedPostings", false);
+      indexParams.set("server", false);
+      App.run("build", indexParams, System.out);
+
+      Parameters packParams = Parameters.create();
+      packParams.set("indexPath", index.getAbsolutePath());
+      packParams.set("inputPart", "postings");
+      packParams.set("postingsBlockSize", 0);
+      try {
+        App.run("pack-postings", packParams, System.out);
+        fail("the block size must be positive");
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains("'postingsBlockSize'"));
+      }
+      packParams.set("postingsBlockSize", 32);
+      App.run("pack-postings", packParams, System.out);
+
+      PositionIndexReader original = (PositionIndexReader) DiskIndex.openIndexPart(new File(index, "postings").getAbsolutePath());
+      PackedPositionIndexReader packed = (PackedPositionIndexReader) DiskIndex.openIndexPart(new File(index, "postings.packed").getAbsolutePath());
+      assertEquals(original.getStatistics().collectionLength, packed.getStatistics().collectionLength);
+      assertEquals(original.getStatistics().vocabCount, packed.getStatistics().vocabCount);
+
+      KeyIterator originalKeys = original.getIterator();
+      KeyIterator packedKeys = packed.getIterator();
+      ScoringContext sc = new ScoringContext();
+      while (!originalKeys.isDone()) {
+        assertFalse(packedKeys.isDone());
+        assertEquals(originalKeys.getKeyString(), packedKeys.getKeyString());
+
+        ExtentIterator expected = (ExtentIterator) originalKeys.getValueIterator();
+        ExtentIterator actual = (ExtentIterator) packedKeys.getValueIterator();
+        while (!expected.isDone()) {
+          assertFalse(actual.isDone());
+          sc.document = expected.currentCandidate();
+          assertEquals(sc.document, actual.currentCandidate());
+          assertEquals(expected.count(sc), actual.count(sc));
+          ExtentArray e = expected.extents(sc);
+          ExtentArray a = actual.extents(sc);
+          assertEquals(e.size(), a.size());
+          for (int i = 0; i < e.size(); i++) {
+            assertEquals(e.begin(i), a.begin(i));
+          }
+          // skip ahead a little, to mix syncTo with movePast
+          long target = sc.document + 1 + random.nextInt(4);
+          expected.syncTo(target);
+          actual.syncTo(target);
+        }
+        assertTrue(actual.isDone());
+
+        originalKeys.nextKey();
+        packedKeys.nextKey();
+      }
+      assertTrue(packedKeys.isDone());
+      original.close();
+      packed.close();
+    } finally {
+      FSUtil.deleteDirectory(trecFolder);
+      FSUtil.deleteDirectory(index);
+    }
+  }
+
+  @Test
+  public void testBuildPackedPostings() throws Exception {
+    File trecFolder = FileUtility.createTemporaryDirectory();
+    File index = FileUtility.createTemporaryDirectory();
+    try {
+      StreamUtil.copyStringToFile("<DOC>\n<DOCNO>d1</DOCNO>\n<TEXT>\ncat dog cat</TEXT>\n</DOC>\n"
+              + "<DOC>\n<DOCNO>d2</DOCNO>\n<TEXT>\ndog rat</TEXT>\n</DOC>\n", new File(trecFolder, "docs.trectext"));
+
+      for (boolean inMemoryInversion : new boolean[]{false, true}) {
+        Parameters indexParams = Parameters.create();
+        indexParams.set("inputPath", Collections.singletonList(trecFolder.getAbsolutePath()));
+        indexParams.set("indexPath", index.getAbsolutePath());
+        indexParams.set("packedPostings", true);
+        indexParams.set("inMemoryInversion", inMemoryInversion);
+        indexParams.set("server", false);
+        App.run("build", indexParams, System.out);
+
+        for (String part : new String[]{"postings", "postings.krovetz"}) {
+          PackedPositionIndexReader reader = (PackedPositionIndexReader) DiskIndex.openIndexPart(new File(index, part).getAbsolutePath());
+          assertEquals(PackedPositionIndexMerger.class.getName(), reader.getManifest().getString("mergerClass"));
+          DiskExtentIterator cat = reader.getTermExtents("cat");
+          assertEquals(1, cat.totalEntries());
+          ScoringContext sc = new ScoringContext();
+          sc.document = cat.currentCandidate();
+          assertEquals(2, cat.extents(sc).size());
+          assertEquals(2, cat.extents(sc).begin(1));
+          reader.close();
+        }
+      }
+    } finally {
+      FSUtil.deleteDirectory(trecFolder);
+      FSUtil.deleteDirectory(index);
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.merge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lemurproject.galago.core.index.disk.DiskIndex;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.Results;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.tools.AppTest;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentReordererTest {
+
+  File corpus;
+  File index;
+  File reordered;
+
+  @Before
+  public void setUp() throws Exception {
+    corpus = FileUtility.createTemporary();
+    index = FileUtility.createTemporaryDirectory();
+    reordered = FileUtility.createTemporaryDirectory();
+
+    // two topics, interleaved
+    StringBuilder c = new StringBuilder();
+    for (int i = 0; i < 30; i++) {
+      String text = (i % 2 == 0)
+              ? "apple banana cherry grape lemon melon " + i
+              : "zebra yak wolf tiger lion horse " + i;
+      c.append(AppTest.trecDocument("d-" + i, text));
+    }
+    StreamUtil.copyStringToFile(c.toString(), corpus);
+
+    Parameters p = Parameters.create();
+    p.set("inputPath", corpus.getAbsolutePath());
+    p.set("indexPath", index.getAbsolutePath());
+    App.run("build", p, new PrintStream(new ByteArrayOutputStream()));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    corpus.delete();
+    FSUtil.deleteDirectory(index);
+    FSUtil.deleteDirectory(reordered);
+  }
+
+  @Test
+  public void testUrlOrder() throws Exception {
+    reorder("url");
+
+    LocalRetrieval retrieval = new LocalRetrieval(reordered.getAbsolutePath(), Parameters.create());
+    // names sort as strings
+    assertEquals("d-0", retrieval.getDocumentName(0L));
+    assertEquals("d-1", retrieval.getDocumentName(1L));
+    assertEquals("d-10", retrieval.getDocumentName(2L));
+    retrieval.close();
+
+    verifyReordered();
+  }
+
+  @Test
+  public void testGraphBisection() throws Exception {
+    reorder("bp");
+
+    // the documents of each topic are clustered
+    LocalRetrieval retrieval = new LocalRetrieval(reordered.getAbsolutePath(), Parameters.create());
+    int changes = 0;
+    for (long d = 1; d < 30; d++) {
+      int previous = Integer.parseInt(retrieval.getDocumentName(d - 1).substring(2)) % 2;
+      int current = Integer.parseInt(retrieval.getDocumentName(d).substring(2)) % 2;
+      changes += (previous != current) ? 1 : 0;
+    }
+    assertTrue("topic changes: " + changes, changes < 5);
+    retrieval.close();
+
+    verifyReordered();
+  }
+
+  @Test
+  public void testBuildReordered() throws Exception {
+    FSUtil.deleteDirectory(reordered);
+    Parameters p = Parameters.create();
+    p.set("inputPath", corpus.getAbsolutePath());
+    p.set("indexPath", reordered.getAbsolutePath());
+    p.set("reorderDocuments", "url");
+    App.run("build", p, new PrintStream(new ByteArrayOutputStream()));
+
+    assertTrue(!new File(reordered.getAbsolutePath() + ".unordered").exists());
+    LocalRetrieval retrieval = new LocalRetrieval(reordered.getAbsolutePath(), Parameters.create());
+    assertEquals("d-10", retrieval.getDocumentName(2L));
+    retrieval.close();
+
+    verifyReordered();
+  }
+
+  @Test
+  public void testBuildReorderedWithFields() throws Exception {
+    FSUtil.deleteDirectory(reordered);
+    File unordered = FileUtility.createTemporaryDirectory();
+    try {
+      Parameters p = Parameters.create();
+      p.set("inputPath", corpus.getAbsolutePath());
+      p.set("indexPath", reordered.getAbsolutePath());
+      p.set("reorderDocuments", "url");
+      p.set("tokenizer", Parameters.create());
+      p.getMap("tokenizer").set("fields", Collections.singletonList("text"));
+      App.run("build", p.clone(), new PrintStream(new ByteArrayOutputStream()));
+
+      p.set("indexPath", unordered.getAbsolutePath());
+      p.remove("reorderDocuments");
+      App.run("build", p, new PrintStream(new ByteArrayOutputStream()));
+
+      // all the parts are rewritten, including the extents and field postings
+      DiskIndex reorderedIndex = new DiskIndex(reordered.getAbsolutePath());
+      DiskIndex unorderedIndex = new DiskIndex(unordered.getAbsolutePath());
+      Set<String> parts = reorderedIndex.getPartNames();
+      assertEquals(unorderedIndex.getPartNames(), parts);
+      assertTrue(parts.contains("extents"));
+      assertTrue(parts.contains("field.text"));
+      reorderedIndex.close();
+      unorderedIndex.close();
+
+      LocalRetrieval retrieval = new LocalRetrieval(reordered.getAbsolutePath(), Parameters.create());
+      assertEquals("d-10", retrieval.getDocumentName(2L));
+      retrieval.close();
+    } finally {
+      FSUtil.deleteDirectory(unordered);
+    }
+  }
+
+  @Test
+  public void testBuildReorderedUnmergeablePart() throws Exception {
+    FSUtil.deleteDirectory(reordered);
+    File unordered = new File(reordered.getAbsolutePath() + ".unordered");
+    try {
+      Parameters p = Parameters.create();
+      p.set("inputPath", corpus.getAbsolutePath());
+      p.set("indexPath", reordered.getAbsolutePath());
+      p.set("reorderDocuments", "url");
+      p.set("tokenizer", Parameters.create());
+      p.getMap("tokenizer").set("fields", Collections.singletonList("text"));
+      p.getMap("tokenizer").set("formats", Parameters.create());
+      p.getMap("tokenizer").getMap("formats").set("text", "string");
+      App.run("build", p, new PrintStream(new ByteArrayOutputStream()));
+
+      // the fields part has no merger: it is skipped, and kept in the unordered index
+      DiskIndex reorderedIndex = new DiskIndex(reordered.getAbsolutePath());
+      assertFalse(reorderedIndex.getPartNames().contains("fields"));
+      assertTrue(reorderedIndex.getPartNames().contains("postings"));
+      reorderedIndex.close();
+      DiskIndex unorderedIndex = new DiskIndex(unordered.getAbsolutePath());
+      assertTrue(unorderedIndex.getPartNames().contains("fields"));
+      unorderedIndex.close();
+    } finally {
+      FSUtil.deleteDirectory(unordered);
+    }
+  }
+
+  @Test
+  public void testReorderUnmergeablePart() throws Exception {
+    File fields = FileUtility.createTemporaryDirectory();
+    File jobDir = FileUtility.createTemporaryDirectory();
+    try {
+      Parameters p = Parameters.create();
+      p.set("inputPath", corpus.getAbsolutePath());
+      p.set("indexPath", fields.getAbsolutePath());
+      p.set("tokenizer", Parameters.create());
+      p.getMap("tokenizer").set("fields", Collections.singletonList("text"));
+      p.getMap("tokenizer").set("formats", Parameters.create());
+      p.getMap("tokenizer").getMap("formats").set("text", "string");
+      App.run("build", p, new PrintStream(new ByteArrayOutputStream()));
+      assertEquals(Collections.singleton("fields"), MergeIndex.getUnmergeableParts(Collections.singletonList(fields.getAbsolutePath())));
+
+      Parameters mp = Parameters.create();
+      mp.set("inputPath", Collections.singletonList(fields.getAbsolutePath()));
+      mp.set("indexPath", reordered.getAbsolutePath());
+      mp.set("reorderDocuments", "url");
+      mp.set("galagoJobDir", jobDir.getAbsolutePath());
+      mp.set("deleteJobDir", false);
+      App.run("merge-index", mp, new PrintStream(new ByteArrayOutputStream()));
+
+      // the fields part is skipped, the other parts are reordered
+      DiskIndex reorderedIndex = new DiskIndex(reordered.getAbsolutePath());
+      assertFalse(reorderedIndex.getPartNames().contains("fields"));
+      assertTrue(reorderedIndex.getPartNames().contains("postings"));
+      reorderedIndex.close();
+      LocalRetrieval retrieval = new LocalRetrieval(reordered.getAbsolutePath(), Parameters.create());
+      assertEquals("d-0", retrieval.getDocumentName(0L));
+      retrieval.close();
+
+      // the document order was written to the job directory, and deleted after the merge
+      assertTrue(jobDir.isDirectory());
+      assertFalse(new File(jobDir, "documentOrder").exists());
+    } finally {
+      FSUtil.deleteDirectory(fields);
+      FSUtil.deleteDirectory(jobDir);
+    }
+  }
+
+  private void reorder(String method) throws Exception {
+    Parameters p = Parameters.create();
+    p.set("inputPath", Collections.singletonList(index.getAbsolutePath()));
+    p.set("indexPath", reordered.getAbsolutePath());
+    p.set("reorderDocuments", method);
+    App.run("merge-index", p, new PrintStream(new ByteArrayOutputStream()));
+  }
+
+  /**
+   * The reordered index holds the same documents, lengths, text and scores.
+   */
+  private void verifyReordered() throws Exception {
+    AppTest.verifyIndexStructures(reordered);
+    LocalRetrieval original = new LocalRetrieval(index.getAbsolutePath(), Parameters.create());
+    LocalRetrieval retrieval = new LocalRetrieval(reordered.getAbsolutePath(), Parameters.create());
+
+    assertEquals(30, retrieval.getCollectionStatistics("#lengths:part=lengths()").documentCount);
+    for (long d = 0; d < 30; d++) {
+      String name = retrieval.getDocumentName(d);
+      assertEquals(d, (long) retrieval.getDocumentId(name));
+      assertEquals(original.getDocumentLength(name), retrieval.getDocumentLength(d));
+      Document document = retrieval.getDocument(name, Document.DocumentComponents.JustText);
+      assertEquals(original.getDocument(name, Document.DocumentComponents.JustText).text, document.text);
+    }
+
+    // tied documents are ranked by document id, so scores are compared by name
+    for (String query : new String[]{"#combine( banana 12 )", "#combine( #od:1( tiger lion ) )"}) {
+      assertEquals(run(original, query), run(retrieval, query));
+    }
+    original.close();
+    retrieval.close();
+  }
+
+  private static Map<String, Double> run(LocalRetrieval retrieval, String query) throws Exception {
+    Parameters qp = Parameters.create();
+    qp.set("requested", 30);
+    Node root = retrieval.transformQuery(StructuredQuery.parse(query), qp);
+    Results results = retrieval.executeQuery(root, qp);
+    Map<String, Double> scores = new HashMap<>();
+    for (ScoredDocument document : results.scoredDocuments) {
+      // rounded, the float arithmetic may differ with the order of the documents
+      scores.put(retrieval.getDocumentName(document.document), Math.round(document.score * 1e6) / 1e6);
+    }
+    return scores;
+  }
+}
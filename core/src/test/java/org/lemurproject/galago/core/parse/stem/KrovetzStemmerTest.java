@@ -18,6 +18,7 @@ import org.lemurproject.galago.utility.StreamUtil;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -140,6 +141,42 @@ public class KrovetzStemmerTest {
     }
   }
 
+  @Test
+  public void testConcurrentStemming() throws Exception {
+    Document test = new Document("test", text);
+    new TagTokenizer().tokenize(test);
+    final List<String> terms = test.terms;
+    final List<String> expected = new KrovetzStemmer().stem(test).terms;
+
+    // a small cache is evicted while the threads stem
+    final Stemmer stemmer = new KrovetzStemmer();
+    stemmer.setCacheLimit(20);
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int r = 0; r < 50; r++) {
+              for (int i = 0; i < terms.size(); i++) {
+                assertEquals(expected.get(i), stemmer.stem(terms.get(i)));
+              }
+            }
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(errors.toString(), errors.isEmpty());
+  }
+
   @Test
   public void testLowerCase() {
 
@@ -0,0 +1,44 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.parse.stem;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StemCacheTest {
+
+  @Test
+  public void testBoundedCache() {
+    StemCache cache = new StemCache(100);
+    cache.put("frequent", "frequ");
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("frequ", cache.get("frequent"));
+      cache.put("term-" + i, "stem-" + i);
+      assertTrue(cache.size() <= 100);
+    }
+    // frequent terms survive the evictions
+    assertEquals("frequ", cache.get("frequent"));
+    assertNull(cache.get("term-0"));
+    assertEquals("stem-999", cache.get("term-999"));
+
+    cache.setLimit(10);
+    assertTrue(cache.size() <= 10);
+  }
+
+  @Test
+  public void testWarmCache() {
+    Stemmer stemmer = new KrovetzStemmer();
+    stemmer.setCacheLimit(3);
+    stemmer.warmCache(Arrays.asList("cats", "dogs", "houses", "mice", "trees"));
+    assertEquals(3, stemmer.cache.size());
+    assertEquals("cat", stemmer.cache.get("cats"));
+    assertEquals("house", stemmer.cache.get("houses"));
+    assertNull(stemmer.cache.get("trees"));
+  }
+}
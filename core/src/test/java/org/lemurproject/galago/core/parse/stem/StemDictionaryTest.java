@@ -0,0 +1,131 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.parse.stem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lemurproject.galago.core.index.disk.ConflationIndexReader;
+import org.lemurproject.galago.core.index.disk.DiskIndex;
+import org.lemurproject.galago.core.index.disk.PositionIndexReader;
+import org.lemurproject.galago.core.index.disk.StemDictionaryReader;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.tools.AppTest;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StemDictionaryTest {
+
+  File corpus;
+  File index;
+
+  @Before
+  public void setUp() throws Exception {
+    corpus = FileUtility.createTemporary();
+    index = FileUtility.createTemporaryDirectory();
+
+    StringBuilder c = new StringBuilder();
+    c.append(AppTest.trecDocument("d-0", "having cats and dogs"));
+    c.append(AppTest.trecDocument("d-1", "has a cat"));
+    c.append(AppTest.trecDocument("d-2", "dogs are having fun"));
+    StreamUtil.copyStringToFile(c.toString(), corpus);
+
+    Parameters p = Parameters.create();
+    p.set("inputPath", corpus.getAbsolutePath());
+    p.set("indexPath", index.getAbsolutePath());
+    p.set("stemDictionary", true);
+    App.run("build", p, new PrintStream(new ByteArrayOutputStream()));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    corpus.delete();
+    FSUtil.deleteDirectory(index);
+  }
+
+  @Test
+  public void testDictionaryPart() throws Exception {
+    DiskIndex diskIndex = new DiskIndex(index.getAbsolutePath());
+    StemDictionaryReader dictionary = (StemDictionaryReader) diskIndex.getIndexPart("stems.krovetz");
+    assertNotNull(dictionary);
+    assertEquals(KrovetzStemmer.class.getName(), dictionary.getStemmerClass());
+    assertEquals("have", dictionary.getStem("having"));
+    assertEquals("cat", dictionary.getStem("cats"));
+    assertNull(dictionary.getStem("unseen"));
+
+    // the stemmed postings look terms up in the dictionary
+    PositionIndexReader postings = (PositionIndexReader) diskIndex.getIndexPart("postings.krovetz");
+    assertSame(dictionary, postings.getStemmer().dictionary);
+    assertEquals("have", postings.getTermCounts("having").getKeyString());
+    // terms that are not in the dictionary are stemmed
+    assertNull(dictionary.getStem("Cats"));
+    assertEquals("cat", postings.getTermCounts("Cats").getKeyString());
+    diskIndex.close();
+  }
+
+  @Test
+  public void testStemmerConsultsDictionary() {
+    Stemmer stemmer = new KrovetzStemmer();
+    stemmer.setDictionary(term -> term.equals("special") ? "stem" : null);
+    assertEquals("stem", stemmer.stem("special"));
+    assertEquals("cat", stemmer.stem("cats"));
+  }
+
+  @Test
+  public void testConflationFromDictionary() throws Exception {
+    File conflations = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("stemDictionary", new File(index, "stems.krovetz").getAbsolutePath());
+      p.set("outputPath", conflations.getAbsolutePath());
+      App.run("stemmer-conflation", p, new PrintStream(new ByteArrayOutputStream()));
+
+      ConflationIndexReader reader = new ConflationIndexReader(conflations.getAbsolutePath());
+      ConflationIndexReader.StemIterator iterator = (ConflationIndexReader.StemIterator) reader.getIterator();
+      assertTrue(iterator.findKey("cat".getBytes("UTF-8")));
+      assertEquals("cat", iterator.getKeyString());
+      assertEquals("cat,cats", iterator.getValueString());
+      reader.close();
+    } finally {
+      conflations.delete();
+    }
+  }
+
+  @Test
+  public void testMergeKeepsDictionary() throws Exception {
+    File merged = FileUtility.createTemporaryDirectory();
+    try {
+      Parameters p = Parameters.create();
+      p.set("inputPath", Collections.singletonList(index.getAbsolutePath()));
+      p.set("indexPath", merged.getAbsolutePath());
+      App.run("merge-index", p, new PrintStream(new ByteArrayOutputStream()));
+
+      StemDictionaryReader dictionary = new StemDictionaryReader(new File(merged, "stems.krovetz").getAbsolutePath());
+      assertEquals("have", dictionary.getStem("having"));
+      assertEquals(KrovetzStemmer.class.getName(), dictionary.getStemmerClass());
+      dictionary.close();
+
+      // merged stemmed parts keep their stemmer
+      DiskIndex mergedIndex = new DiskIndex(merged.getAbsolutePath());
+      assertEquals(KrovetzStemmer.class.getName(),
+              mergedIndex.getIndexPart("postings.krovetz").getManifest().getString("stemmer"));
+      mergedIndex.close();
+    } finally {
+      FSUtil.deleteDirectory(merged);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.tupleflow.web.WebServer;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a search server, and queries it with "remoteProtocol": "binary".
+ */
+public class BinaryProxyRetrievalTest {
+
+  @Test
+  public void testBinaryProxyRet() throws Exception {
+    final int port = 1112;
+    File index = null;
+    Thread server = null;
+    try {
+      index = ProxyRetrievalTest.makeIndex(200, 50, 100);
+      final Parameters retParams = Parameters.create();
+      retParams.set("index", index.getAbsolutePath());
+      retParams.set("port", port);
+
+      final List<Exception> exceptions = Collections.synchronizedList(new ArrayList<Exception>());
+      server = new Thread(() -> {
+        try {
+          App.run("search", retParams, System.err);
+        } catch (InterruptedException i) {
+          // stopped
+        } catch (Exception e) {
+          exceptions.add(e);
+        }
+      });
+      server.start();
+
+      String url = "http://" + WebServer.getHostName() + ":" + port;
+      boolean ready = false;
+      for (int i = 0; i < 50 && !ready; i++) {
+        ready = ProxyRetrievalTest.checkReadyURL(url);
+        Thread.sleep(100);
+      }
+      assertTrue("could not reach the search server", ready);
+
+      Parameters proxyParams = Parameters.create();
+      proxyParams.set("index", url);
+      proxyParams.set("remoteProtocol", "binary");
+      Retrieval remote = RetrievalFactory.create(proxyParams);
+      assertTrue(Proxy.getInvocationHandler(remote) instanceof BinaryProxyRetrieval);
+      LocalRetrieval local = new LocalRetrieval(index.getAbsolutePath(), Parameters.create());
+
+      // the remote answers are the local answers
+      assertEquals(local.getAvailableParts(), remote.getAvailableParts());
+      assertEquals(local.getCollectionStatistics("#lengths:document:part=lengths()").toString(),
+              remote.getCollectionStatistics("#lengths:document:part=lengths()").toString());
+      assertEquals(local.getNodeStatistics("#counts:@/1/:part=postings()").toString(),
+              remote.getNodeStatistics("#counts:@/1/:part=postings()").toString());
+      assertEquals(local.getDocumentLength("doc-2"), remote.getDocumentLength("doc-2"));
+      assertEquals(local.getDocumentName(1L), remote.getDocumentName(1L));
+
+      Document d = remote.getDocument("doc-2", new DocumentComponents(true, false, false));
+      assertEquals(local.getDocument("doc-2", new DocumentComponents(true, false, false)).text, d.text);
+      assertNull(d.terms);
+      Map<String, Document> docs = remote.getDocuments(Arrays.asList("doc-1", "doc-2"), new DocumentComponents());
+      assertEquals(2, docs.size());
+
+      Node query = StructuredQuery.parse("#combine(1 2 3)");
+      Node localTransformed = local.transformQuery(query.clone(), Parameters.create());
+      Node remoteTransformed = remote.transformQuery(query.clone(), Parameters.create());
+      assertEquals(localTransformed.toString(), remoteTransformed.toString());
+
+      Parameters qp = Parameters.create();
+      qp.set("requested", 10);
+      List<ScoredDocument> expected = local.executeQuery(localTransformed, qp).scoredDocuments;
+      List<ScoredDocument> actual = remote.executeQuery(remoteTransformed, qp).scoredDocuments;
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).document, actual.get(i).document);
+        assertEquals(expected.get(i).score, actual.get(i).score, 1e-10);
+      }
+
+      remote.close();
+      local.close();
+      assertTrue(exceptions.toString(), exceptions.isEmpty());
+    } finally {
+      if (server != null) {
+        server.interrupt();
+      }
+      if (index != null) {
+        FSUtil.deleteDirectory(index);
+      }
+    }
+  }
+}
@@ -155,4 +155,78 @@ public class CachedRetrievalTest {
       }
     }
   }
+
+  @Test
+  public void testAutomaticAdmission() throws Exception {
+    File trecCorpusFile = null;
+    File corpusFile = null;
+    File indexFile = null;
+    try {
+      File[] files = LocalRetrievalTest.make10DocIndex();
+      trecCorpusFile = files[0];
+      corpusFile = files[1];
+      indexFile = files[2];
+
+      Parameters p = Parameters.create();
+      p.set("cache", true);
+      p.set("cacheAdmissionCount", 2);
+      LocalRetrieval cacheRet = (LocalRetrieval) RetrievalFactory.instance(indexFile.getAbsolutePath(), p);
+      CachedRetrieval cache = cacheRet.getCache();
+
+      Node extent = StructuredQuery.parse("#extents:sample:part=postings()");
+      assertFalse(cache.isCached(extent));
+      cacheRet.createIterator(Parameters.create(), extent);
+      assertFalse(cache.isCached(extent));
+
+      // the second request admits the node, in the background
+      ExtentIterator diskExtentIterator = (ExtentIterator) cacheRet.createIterator(Parameters.create(), extent);
+      assertFalse(((DiskExtentIterator) diskExtentIterator).getSource() instanceof MemoryWindowIndexExtentSource);
+      cache.awaitAdmissions();
+      assertTrue(cache.isCached(extent));
+      ExtentIterator cachedExtentIterator = (ExtentIterator) cacheRet.createIterator(Parameters.create(), extent);
+      assertTrue(((DiskExtentIterator) cachedExtentIterator).getSource() instanceof MemoryWindowIndexExtentSource);
+
+      Parameters stats = cache.getCacheStatistics();
+      assertEquals(1, stats.getLong("entries"));
+      assertEquals(1, stats.getLong("hitCount"));
+      assertTrue(stats.getLong("bytes") > 0);
+
+      // score nodes are never admitted automatically
+      Node score = cacheRet.transformQuery(StructuredQuery.parse("#dirichlet(#counts:is:part=postings())"), p);
+      for (int i = 0; i < 3; i++) {
+        cacheRet.createIterator(Parameters.create(), score);
+      }
+      assertFalse(cache.isCached(score));
+
+      // synchronous admission caches the node on the requesting thread
+      Parameters sync = Parameters.create();
+      sync.set("cache", true);
+      sync.set("cacheAsyncAdmission", false);
+      LocalRetrieval syncRet = (LocalRetrieval) RetrievalFactory.instance(indexFile.getAbsolutePath(), sync);
+      syncRet.createIterator(Parameters.create(), extent);
+      syncRet.createIterator(Parameters.create(), extent);
+      assertTrue(syncRet.getCache().isCached(extent));
+      syncRet.close();
+
+      // a cache that is too small for the posting lists evicts them
+      Parameters small = Parameters.create();
+      small.set("cache", true);
+      small.set("cacheMaximumBytes", 1);
+      LocalRetrieval smallRet = (LocalRetrieval) RetrievalFactory.instance(indexFile.getAbsolutePath(), small);
+      smallRet.addNodeToCache(extent);
+      assertEquals(1, smallRet.getCache().getCacheStatistics().getLong("evictionCount"));
+      assertFalse(smallRet.getCache().isCached(extent));
+
+    } finally {
+      if (trecCorpusFile != null) {
+        trecCorpusFile.delete();
+      }
+      if (corpusFile != null) {
+        FSUtil.deleteDirectory(corpusFile);
+      }
+      if (indexFile != null) {
+        FSUtil.deleteDirectory(indexFile);
+      }
+    }
+  }
 }
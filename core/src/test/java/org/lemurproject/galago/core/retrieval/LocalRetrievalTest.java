@@ -363,4 +363,62 @@ public class LocalRetrievalTest {
         retrieval.close();
     }
 
+    @Test
+    public void testResultCache() throws Exception {
+        Parameters globals = Parameters.create();
+        globals.set("resultCache", true);
+        LocalRetrieval retrieval = new LocalRetrieval(tempPath.toString(), globals);
+        ResultCache cache = retrieval.getResultCache();
+
+        Node root = StructuredQuery.parse("#combine( #dirichlet:mu=1500( #counts:a() ) #dirichlet:mu=1500( #counts:b() ) )");
+        Parameters p = Parameters.create();
+        p.set("requested", 5);
+        p.set("number", "q1");
+        root = retrieval.transformQuery(root, p);
+
+        List<ScoredDocument> first = retrieval.executeQuery(root, p).scoredDocuments;
+        assertEquals(0L, cache.getCacheStatistics().getLong("hitCount"));
+
+        // the query name does not affect the ranking
+        p.set("number", "q2");
+        List<ScoredDocument> second = retrieval.executeQuery(root, p).scoredDocuments;
+        assertEquals(1L, cache.getCacheStatistics().getLong("hitCount"));
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).documentName, second.get(i).documentName);
+            assertEquals(first.get(i).score, second.get(i).score, 0.0);
+            assertEquals(first.get(i).rank, second.get(i).rank);
+        }
+
+        // cached results are copies
+        second.get(0).score = 0.0;
+        List<ScoredDocument> third = retrieval.executeQuery(root, p).scoredDocuments;
+        assertEquals(first.get(0).score, third.get(0).score, 0.0);
+
+        // the number of requested documents does
+        p.set("requested", 2);
+        List<ScoredDocument> fourth = retrieval.executeQuery(root, p).scoredDocuments;
+        assertEquals(2, fourth.size());
+        assertEquals(2L, cache.getCacheStatistics().getLong("hitCount"));
+        retrieval.close();
+    }
+
+    @Test
+    public void testResultCacheVersions() throws Exception {
+        ResultCache cache = new ResultCache(Parameters.create());
+        Node root = StructuredQuery.parse("#combine( a b )");
+        Parameters p = Parameters.create();
+        ScoredDocument[] results = new ScoredDocument[]{new ScoredDocument(1, 2.0)};
+
+        cache.put(root, p, 1, results);
+        // documents were added: a newer query is answered and cached
+        assertEquals(null, cache.get(root, p, 2));
+        cache.put(root, p, 2, results);
+        // a query that started before the add stores its results late
+        cache.put(root, p, 1, results);
+        assertEquals(1, cache.get(root, p, 2).length);
+        // older entries are not cleared, they age out
+        assertEquals(1, cache.get(root, p, 1).length);
+        assertEquals(2L, cache.getCacheStatistics().getLong("hitCount"));
+    }
 }
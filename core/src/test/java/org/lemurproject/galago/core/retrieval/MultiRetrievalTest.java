@@ -14,7 +14,9 @@ import org.lemurproject.galago.utility.Parameters;
 import org.lemurproject.galago.utility.StreamUtil;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -108,4 +110,24 @@ public class MultiRetrievalTest {
       }
     }
   }
+
+  @Test
+  public void testMerge() {
+    List<List<ScoredDocument>> shards = new ArrayList<>();
+    shards.add(Arrays.asList(new ScoredDocument(1, -1.0), new ScoredDocument(2, -4.0), new ScoredDocument(3, -5.0)));
+    shards.add(Collections.<ScoredDocument>emptyList());
+    shards.add(Arrays.asList(new ScoredDocument(10, -2.0), new ScoredDocument(11, -3.0)));
+    shards.add(Arrays.asList(new ScoredDocument(20, -0.5)));
+
+    ScoredDocument[] merged = MultiRetrieval.merge(shards, 4);
+    long[] expected = {20, 1, 10, 11};
+    assertEquals(expected.length, merged.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], merged[i].document);
+      assertEquals(i + 1, merged[i].rank);
+    }
+
+    // fewer results than requested
+    assertEquals(6, MultiRetrieval.merge(shards, 1000).length);
+  }
 }
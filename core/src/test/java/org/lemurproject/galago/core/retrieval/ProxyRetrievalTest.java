@@ -21,6 +21,7 @@ import org.lemurproject.galago.utility.FSUtil;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.io.*;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -109,6 +110,8 @@ public class ProxyRetrievalTest {
       Parameters proxyParams = Parameters.create();
       proxyParams.set("index", url);
       Retrieval instance = RetrievalFactory.create(proxyParams);
+      // java serialization is the default protocol
+      assertTrue(Proxy.getInvocationHandler(instance) instanceof ProxyRetrieval);
       // test proxied functions:
 
       try {
@@ -168,7 +171,7 @@ public class ProxyRetrievalTest {
   }
 
   // index construction
-  private File makeIndex(int docCount, int docLen, int vocab) throws Exception {
+  static File makeIndex(int docCount, int docLen, int vocab) throws Exception {
     File trecFile = FileUtility.createTemporary();
     File indexFolder = FileUtility.createTemporaryDirectory();
 
@@ -0,0 +1,158 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Tag;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskCountIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RetrievalCodecTest {
+
+  private static Object roundTrip(Object value) throws IOException {
+    return RetrievalCodec.decodeReply(RetrievalCodec.encodeReply(value));
+  }
+
+  @Test
+  public void testValues() throws IOException {
+    Node query = StructuredQuery.parse("#combine:w=0.5( #dirichlet:mu=1500.0( #counts:cat:part=postings() ) #od:1( a b ) )");
+    assertEquals(query.toString(), roundTrip(query).toString());
+
+    Parameters p = Parameters.parseArray("requested", 10L, "working", Arrays.asList("d1", "d2"), "mu", 0.5);
+    assertEquals(p, roundTrip(p));
+
+    FieldStatistics fs = new FieldStatistics();
+    fs.fieldName = "document";
+    fs.collectionLength = 100;
+    fs.documentCount = 10;
+    fs.avgLength = 10.0;
+    fs.lastDocId = 9;
+    assertEquals(fs.toString(), roundTrip(fs).toString());
+
+    NodeStatistics ns = new NodeStatistics();
+    ns.node = "cat";
+    ns.nodeFrequency = 12;
+    assertEquals(ns.toString(), roundTrip(ns).toString());
+
+    NodeType nt = (NodeType) roundTrip(new NodeType(DiskCountIterator.class));
+    assertEquals(DiskCountIterator.class, nt.getIteratorClass());
+
+    assertEquals(42L, roundTrip(42L));
+    assertEquals(7, roundTrip(7));
+    assertNull(roundTrip(null));
+  }
+
+  @Test
+  public void testResultsAndDocuments() throws IOException {
+    Results results = new Results(null, StructuredQuery.parse("#combine( a b )"));
+    ScoredDocument d = new ScoredDocument("doc-1", 1, -1.5);
+    d.document = 3;
+    d.source = "0";
+    results.scoredDocuments.add(d);
+    results.scoredDocuments.add(new ScoredPassage(4, -2.5, 10, 20));
+
+    Results copy = (Results) roundTrip(results);
+    assertEquals(results.inputQuery.toString(), copy.inputQuery.toString());
+    assertEquals(2, copy.scoredDocuments.size());
+    assertEquals("doc-1", copy.scoredDocuments.get(0).documentName);
+    assertEquals(3, copy.scoredDocuments.get(0).document);
+    assertEquals(-1.5, copy.scoredDocuments.get(0).score, 0.0);
+    ScoredPassage passage = (ScoredPassage) copy.scoredDocuments.get(1);
+    assertEquals(10, passage.begin);
+    assertEquals(20, passage.end);
+
+    Document doc = new Document("doc-1", "the cat");
+    doc.metadata.put("title", "cats");
+    doc.terms = Arrays.asList("the", "cat");
+    doc.termCharBegin = Arrays.asList(0, 4);
+    doc.termCharEnd = Arrays.asList(3, 7);
+    doc.tags = Collections.singletonList(new Tag("title", new HashMap<String, String>(), 0, 2, 0, 7));
+    Map<String, Document> docs = new HashMap<>();
+    docs.put("doc-1", doc);
+
+    @SuppressWarnings("unchecked")
+    Document docCopy = ((Map<String, Document>) roundTrip(docs)).get("doc-1");
+    assertEquals("the cat", docCopy.text);
+    assertEquals("cats", docCopy.metadata.get("title"));
+    assertEquals(doc.terms, docCopy.terms);
+    assertEquals(doc.termCharEnd, docCopy.termCharEnd);
+    assertEquals(1, docCopy.tags.size());
+    assertEquals(7, docCopy.tags.get(0).charEnd);
+  }
+
+  @Test
+  public void testFrames() throws IOException {
+    StringBuilder longName = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      longName.append("term").append(i).append(' ');
+    }
+
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    RetrievalCodec.writeFrame(output, RetrievalCodec.encodeCall("getDocumentLength", new Object[]{5L}), 1024);
+    RetrievalCodec.writeFrame(output, RetrievalCodec.encodeCall("getDocumentId", new Object[]{longName.toString()}), 1024);
+    output.close();
+    // the second call is compressed
+    assertTrue(array.size() < longName.length());
+
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(array.toByteArray()));
+    DataInputStream call = new DataInputStream(new ByteArrayInputStream(RetrievalCodec.readFrame(input)));
+    assertEquals("getDocumentLength", RetrievalCodec.readMethodName(call));
+    assertArrayEquals(new Object[]{5L}, RetrievalCodec.readArguments(call));
+
+    call = new DataInputStream(new ByteArrayInputStream(RetrievalCodec.readFrame(input)));
+    assertEquals("getDocumentId", RetrievalCodec.readMethodName(call));
+    assertArrayEquals(new Object[]{longName.toString()}, RetrievalCodec.readArguments(call));
+
+    assertNull(RetrievalCodec.readFrame(input));
+  }
+
+  @Test(expected = IOException.class)
+  public void testRemoteError() throws IOException {
+    RetrievalCodec.decodeReply(RetrievalCodec.encodeError(new IllegalArgumentException("bad query")));
+  }
+
+  @Test
+  public void testLongRemoteError() throws IOException {
+    StringBuilder message = new StringBuilder();
+    while (message.length() < 100000) {
+      message.append("bad query ");
+    }
+    try {
+      RetrievalCodec.decodeReply(RetrievalCodec.encodeError(new IllegalArgumentException(message.toString())));
+      fail("expected the remote error");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().endsWith(message.toString()));
+    }
+  }
+
+  @Test
+  public void testUnexpectedClass() throws IOException {
+    byte[] nodeType = RetrievalCodec.encodeReply(new NodeType(DiskCountIterator.class));
+
+    // a node type that names a class which is not an iterator
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    output.writeByte(nodeType[0]);
+    byte[] name = "java.lang.Runtime".getBytes("UTF-8");
+    output.writeInt(name.length);
+    output.write(name);
+    output.close();
+    try {
+      RetrievalCodec.decodeReply(array.toByteArray());
+      fail("expected the class to be rejected");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("java.lang.Runtime"));
+    }
+  }
+}
@@ -17,6 +17,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.*;
 
+import static org.junit.Assert.assertTrue;
+
 /**
  *
  * @author sjh
@@ -107,6 +109,69 @@ public class ThreadingTest {
     }
   }
 
+  @Test
+  public void testTransformQueryThreading() throws Exception {
+    final int vocab = 100;
+    final int qCount = 50;
+
+    File index = null;
+
+    try {
+      index = makeIndex(200, 50, vocab);
+      Parameters retParams = Parameters.create();
+      retParams.set("index", index.getAbsolutePath());
+      final LocalRetrieval plain = (LocalRetrieval) RetrievalFactory.create(retParams);
+
+      retParams.set("transformCache", true);
+      final LocalRetrieval ret = (LocalRetrieval) RetrievalFactory.create(retParams);
+
+      final Random r = new Random();
+      final List<String> queries = new ArrayList<>();
+      final Map<Integer, String> trueTrees = new HashMap<>();
+      for (int qid = 0; qid < qCount; qid++) {
+        String query = "#sdm( " + r.nextInt(vocab) + " " + r.nextInt(vocab) + " " + r.nextInt(vocab) + " )";
+        queries.add(query);
+        trueTrees.put(qid, plain.transformQuery(StructuredQuery.parse(query), Parameters.create()).toString());
+      }
+
+      final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+      List<Thread> runningThreads = new ArrayList<>();
+      for (int threadId = 0; threadId < 8; threadId++) {
+        Thread t = new Thread() {
+
+          @Override
+          public void run() {
+            try {
+              for (int q = 0; q < 2 * qCount; q++) {
+                int i = r.nextInt(qCount);
+                Node qnode = ret.transformQuery(StructuredQuery.parse(queries.get(i)), Parameters.create());
+                if (!qnode.toString().equals(trueTrees.get(i))) {
+                  errors.add(queries.get(i) + " -> " + qnode);
+                }
+              }
+            } catch (Exception e) {
+              errors.add(e.toString());
+            }
+          }
+        };
+        runningThreads.add(t);
+        t.start();
+      }
+
+      for (Thread t : runningThreads) {
+        t.join();
+      }
+
+      assertTrue(errors.toString(), errors.isEmpty());
+      assertTrue(ret.getTransformCache().getCacheStatistics().getLong("hitCount") > 0);
+
+    } finally {
+      if (index != null) {
+        FSUtil.deleteDirectory(index);
+      }
+    }
+  }
+
   // index construction
   private File makeIndex(int docCount, int docLen, int vocab) throws Exception {
     File trecFile = FileUtility.createTemporary();
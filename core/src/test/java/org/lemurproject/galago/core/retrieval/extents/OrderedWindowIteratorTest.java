@@ -26,6 +26,7 @@ import java.util.Arrays;
 import java.util.Collections;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -75,6 +76,47 @@ public class OrderedWindowIteratorTest {
     assertEquals(0, array.size());
   }
 
+  @Test
+  public void testMultipleDocuments() throws IOException {
+    int[][] dataOne = {{1, 0, 5, 9}, {3, 2, 7}};
+    int[][] dataTwo = {{1, 1, 6, 10}, {3, 3, 8}};
+    int[][] dataThree = {{1, 2, 11}, {3, 4, 9}};
+    FakeExtentIterator[] iters = {
+      new FakeExtentIterator(dataOne),
+      new FakeExtentIterator(dataTwo),
+      new FakeExtentIterator(dataThree)
+    };
+
+    NodeParameters oneParam = new NodeParameters();
+    oneParam.set("default", 1);
+    OrderedWindowIterator instance = new OrderedWindowIterator(oneParam, iters);
+
+    ScoringContext context = new ScoringContext();
+
+    context.document = instance.currentCandidate();
+    ExtentArray array = instance.extents(context);
+    assertEquals(1, array.getDocument());
+    assertEquals(2, array.size());
+    assertEquals(0, array.begin(0));
+    assertEquals(3, array.end(0));
+    assertEquals(9, array.begin(1));
+    assertEquals(12, array.end(1));
+
+    // cursors must start again at the first extent of each child
+    instance.movePast(context.document);
+    context.document = instance.currentCandidate();
+    array = instance.extents(context);
+    assertEquals(3, array.getDocument());
+    assertEquals(2, array.size());
+    assertEquals(2, array.begin(0));
+    assertEquals(5, array.end(0));
+    assertEquals(7, array.begin(1));
+    assertEquals(10, array.end(1));
+
+    instance.movePast(context.document);
+    assertTrue(instance.isDone());
+  }
+
   @Test
   public void testStats() throws Exception {
     try (MemoryIndex index = new MemoryIndex()) {
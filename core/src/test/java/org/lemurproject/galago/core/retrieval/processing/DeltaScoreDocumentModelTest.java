@@ -18,6 +18,7 @@ import org.lemurproject.galago.utility.StreamUtil;
 import java.io.File;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -105,7 +106,154 @@ public class DeltaScoreDocumentModelTest {
     }
   }
 
+  @Test
+  public void testBlockMaxWAND() throws Exception {
+    File corpus = FileUtility.createTemporary();
+    File index = FileUtility.createTemporaryDirectory();
+    try {
+      // small skip distance, so the lists have several blocks
+      makeIndex(corpus, index, Parameters.parseArray("skipDistance", 10));
+
+      Parameters globals = Parameters.create();
+      LocalRetrieval ret = new LocalRetrieval(index.getAbsolutePath(), globals);
+
+      Parameters queryParams = Parameters.create();
+      queryParams.set("requested", 10);
+      queryParams.set("processingModel", "bmw");
+
+      for (String scorer : new String[]{"dirichlet", "bm25"}) {
+        queryParams.set("scorer", scorer);
+        Node query = StructuredQuery.parse("#combine( test text 0 1 2 3 4 90 )");
+        query = ret.transformQuery(query, queryParams);
+
+        ProcessingModel deltaModel = ProcessingModel.create(ret, query, queryParams);
+        assertTrue(deltaModel instanceof BlockMaxWeakAndDocumentModel);
+        ScoredDocument[] deltaResults = deltaModel.execute(query, queryParams);
+
+        RankedDocumentModel safeModel = new RankedDocumentModel(ret);
+        ScoredDocument[] safeResults = safeModel.execute(query, queryParams);
+
+        assertEquals(safeResults.length, deltaResults.length);
+        for (int i = 0; i < safeResults.length; ++i) {
+          assertEquals(safeResults[i].document, deltaResults[i].document);
+          assertEquals(safeResults[i].score, deltaResults[i].score, 0.00001);
+        }
+      }
+    } finally {
+      corpus.delete();
+      FSUtil.deleteDirectory(index);
+    }
+  }
+
+  @Test
+  public void testTermAtATime() throws Exception {
+    File corpus = FileUtility.createTemporary();
+    File index = FileUtility.createTemporaryDirectory();
+    try {
+      makeIndex(corpus, index);
+
+      Parameters globals = Parameters.create();
+      LocalRetrieval ret = new LocalRetrieval(index.getAbsolutePath(), globals);
+
+      Parameters queryParams = Parameters.create();
+      queryParams.set("requested", 10);
+      queryParams.set("processingModel", "taat");
+
+      for (String scorer : new String[]{"dirichlet", "bm25", "jm"}) {
+        queryParams.set("scorer", scorer);
+        for (String q : new String[]{"#combine( test text 0 1 2 3 4 90 )", "#combine:0=0.9:1=0.1(#combine( text 95 ) #combine( 1 2 ))"}) {
+          Node query = ret.transformQuery(StructuredQuery.parse(q), queryParams);
+
+          ProcessingModel taatModel = ProcessingModel.create(ret, query, queryParams);
+          assertTrue(taatModel instanceof TermAtATimeDocumentModel);
+          ScoredDocument[] taatResults = taatModel.execute(query, queryParams);
+
+          RankedDocumentModel safeModel = new RankedDocumentModel(ret);
+          ScoredDocument[] safeResults = safeModel.execute(query, queryParams);
+
+          assertEquals(safeResults.length, taatResults.length);
+          for (int i = 0; i < safeResults.length; ++i) {
+            assertEquals(safeResults[i].document, taatResults[i].document);
+            assertEquals(safeResults[i].score, taatResults[i].score, 0.00001);
+          }
+        }
+      }
+
+      // unsupported operators fall back to document-at-a-time processing
+      queryParams = Parameters.create();
+      queryParams.set("requested", 10);
+      Node query = ret.transformQuery(StructuredQuery.parse("#wsum:0=1:1=2( test 3 )"), queryParams);
+      ScoredDocument[] taatResults = new TermAtATimeDocumentModel(ret).execute(query, queryParams);
+      ScoredDocument[] safeResults = new RankedDocumentModel(ret).execute(query, queryParams);
+      assertEquals(safeResults.length, taatResults.length);
+      for (int i = 0; i < safeResults.length; ++i) {
+        assertEquals(safeResults[i].document, taatResults[i].document);
+      }
+
+      // with one accumulator, only the first document of the rarest term is scored
+      queryParams = Parameters.create();
+      queryParams.set("requested", 10);
+      queryParams.set("taatAccumulatorLimit", 1);
+      query = ret.transformQuery(StructuredQuery.parse("#combine( test 105 )"), queryParams);
+      taatResults = new TermAtATimeDocumentModel(ret).execute(query, queryParams);
+      assertEquals(1, taatResults.length);
+      assertEquals((long) ret.getDocumentId("d-96"), taatResults[0].document);
+    } finally {
+      corpus.delete();
+      FSUtil.deleteDirectory(index);
+    }
+  }
+
+  @Test
+  public void testScoreAtATime() throws Exception {
+    File corpus = FileUtility.createTemporary();
+    File index = FileUtility.createTemporaryDirectory();
+    try {
+      makeIndex(corpus, index);
+
+      for (String scorer : new String[]{"bm25", "dirichlet"}) {
+        Parameters impactParams = Parameters.create();
+        impactParams.set("indexPath", index.getAbsolutePath());
+        impactParams.set("inputPart", "postings.krovetz");
+        impactParams.set("scorer", scorer);
+        impactParams.set("impactBits", 16);
+        App.run("build-impacts", impactParams, System.out);
+
+        LocalRetrieval ret = new LocalRetrieval(index.getAbsolutePath(), Parameters.create());
+        Parameters queryParams = Parameters.create();
+        queryParams.set("requested", 10);
+        queryParams.set("processingModel", "saat");
+        queryParams.set("scorer", scorer);
+        Node query = ret.transformQuery(StructuredQuery.parse("#combine( test text 0 1 2 3 4 90 )"), queryParams);
+
+        ProcessingModel saatModel = ProcessingModel.create(ret, query, queryParams);
+        assertTrue(saatModel instanceof ScoreAtATimeDocumentModel);
+        ScoredDocument[] saatResults = saatModel.execute(query, queryParams);
+        ScoredDocument[] safeResults = new RankedDocumentModel(ret).execute(query, queryParams);
+
+        // only the quantization of the impacts differs
+        assertEquals(safeResults.length, saatResults.length);
+        for (int i = 0; i < safeResults.length; ++i) {
+          assertEquals(safeResults[i].document, saatResults[i].document);
+          assertEquals(safeResults[i].score, saatResults[i].score, 0.001);
+        }
+
+        // with a budget of one posting, only one document is scored
+        queryParams.set("saatPostingsBudget", 1);
+        assertEquals(1, saatModel.execute(query, queryParams).length);
+        ret.close();
+      }
+    } finally {
+      corpus.delete();
+      FSUtil.deleteDirectory(index);
+    }
+  }
+
   private void makeIndex(File corpus, File index) throws Exception {
+    makeIndex(corpus, index, Parameters.create());
+  }
+
+  private void makeIndex(File corpus, File index, Parameters buildParams) throws Exception {
     StringBuilder c = new StringBuilder();
     for (int i = 0; i < 100; i++) {
       StringBuilder data = new StringBuilder();
@@ -116,7 +264,7 @@ public class DeltaScoreDocumentModelTest {
     }
     StreamUtil.copyStringToFile(c.toString(), corpus);
 
-    Parameters p = Parameters.create();
+    Parameters p = buildParams.clone();
     p.set("inputPath", corpus.getAbsolutePath());
     p.set("indexPath", index.getAbsolutePath());
     App.run("build", p, System.out);
@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 /**
  *
@@ -88,6 +90,41 @@ public class RankedDocumentModelTest {
     }
   }
 
+  @Test
+  public void testParallelRanges() throws Exception {
+    Parameters globals = Parameters.create();
+    globals.set("parallelThreads", 3);
+    LocalRetrieval ret = new LocalRetrieval(index.getAbsolutePath(), globals);
+
+    RankedDocumentModel model = new RankedDocumentModel(ret);
+    ParallelRankedDocumentModel parallelModel = new ParallelRankedDocumentModel(ret);
+
+    // a different number of threads gets its own pool, the first one is kept
+    assertEquals(3, parallelModel.pool.getParallelism());
+    assertEquals(2, ParallelRankedDocumentModel.getPool(2).getParallelism());
+    assertSame(parallelModel.pool, ParallelRankedDocumentModel.getPool(3));
+    assertFalse(parallelModel.pool.isShutdown());
+
+    for (String q : new String[]{"#combine( test text 0 1 2 3 4 )", "#combine( test text 99 )", "#sdm( 12 13 14 )"}) {
+      for (int ranges : new int[]{1, 3, 7, 200}) {
+        Parameters queryParams = Parameters.create();
+        queryParams.set("requested", 15);
+        queryParams.set("parallelRanges", ranges);
+
+        Node query = ret.transformQuery(StructuredQuery.parse(q), queryParams);
+        ScoredDocument[] results = model.execute(query, queryParams);
+        ScoredDocument[] parallelResults = parallelModel.execute(query, queryParams);
+
+        assertEquals(results.length, parallelResults.length);
+        for (int i = 0; i < results.length; i++) {
+          assertEquals(results[i].document, parallelResults[i].document);
+          assertEquals(results[i].score, parallelResults[i].score, 0.00001);
+          assertEquals(results[i].rank, parallelResults[i].rank);
+        }
+      }
+    }
+  }
+
   @Test
   public void testWhiteList() throws Exception {
     Parameters globals = Parameters.create();
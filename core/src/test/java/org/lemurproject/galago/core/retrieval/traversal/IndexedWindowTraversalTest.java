@@ -0,0 +1,120 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.traversal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedWindowTraversalTest {
+
+  File trecFolder;
+  File index;
+
+  public static String trecDocument(String docno, String text) {
+    return "<DOC>\n<DOCNO>" + docno + "</DOCNO>\n"
+            + "<TEXT>\n" + text + "</TEXT>\n</DOC>\n";
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    trecFolder = FileUtility.createTemporaryDirectory();
+    index = FileUtility.createTemporaryDirectory();
+
+    StreamUtil.copyStringToFile(trecDocument("d1", "cat dog rat cat dog"), new File(trecFolder, "one.trectext"));
+    StreamUtil.copyStringToFile(trecDocument("d2", "dog rat"), new File(trecFolder, "two.trectext"));
+    StreamUtil.copyStringToFile(trecDocument("d3", "rat cat dog dog rat"), new File(trecFolder, "three.trectext"));
+
+    Parameters indexParams = Parameters.create();
+    indexParams.set("inputPath", Collections.singletonList(trecFolder.getAbsolutePath()));
+    indexParams.set("indexPath", index.getAbsolutePath());
+    indexParams.set("server", false);
+    App.run("build", indexParams, System.out);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FSUtil.deleteDirectory(trecFolder);
+    FSUtil.deleteDirectory(index);
+  }
+
+  private void buildWindows(Parameters extra) throws Exception {
+    Parameters windowParams = Parameters.create();
+    windowParams.set("inputPath", trecFolder.getAbsolutePath());
+    windowParams.set("indexPath", index.getAbsolutePath());
+    windowParams.set("server", false);
+    windowParams.set("stemming", true);
+    windowParams.set("n", 2);
+    windowParams.set("width", 1);
+    windowParams.set("ordered", true);
+    windowParams.set("threshold", 1);
+    windowParams.set("positionalIndex", true);
+    windowParams.copyFrom(extra);
+    App.run("build-window", windowParams, System.out);
+  }
+
+  @Test
+  public void testCompleteWindowPart() throws Exception {
+    buildWindows(Parameters.create());
+    assertTrue(new File(index, "od.n2.w1.h1.krovetz").exists());
+
+    LocalRetrieval retrieval = new LocalRetrieval(index.getAbsolutePath(), Parameters.create());
+
+    Parameters qp = Parameters.create();
+    Node indexed = retrieval.transformQuery(StructuredQuery.parse("#sdm(cat dog rat)"), qp);
+    assertTrue(indexed.toString().contains("cat~dog:part=od.n2.w1.h1.krovetz"));
+    assertTrue(indexed.toString().contains("dog~rat:part=od.n2.w1.h1.krovetz"));
+    // unordered windows are not counted identically
+    assertTrue(indexed.toString().contains("#unordered:8("));
+
+    Parameters positionalQp = Parameters.create();
+    positionalQp.set("windowIndex", false);
+    Node positional = retrieval.transformQuery(StructuredQuery.parse("#sdm(cat dog rat)"), positionalQp);
+    assertFalse(positional.toString().contains("od.n2.w1.h1.krovetz"));
+
+    List<ScoredDocument> expected = retrieval.executeQuery(positional, positionalQp).scoredDocuments;
+    List<ScoredDocument> actual = retrieval.executeQuery(indexed, qp).scoredDocuments;
+    assertEquals(3, expected.size());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).documentName, actual.get(i).documentName);
+      assertEquals(expected.get(i).score, actual.get(i).score, 1e-10);
+    }
+    retrieval.close();
+  }
+
+  @Test
+  public void testQueryLogWindowPart() throws Exception {
+    File queryLog = new File(trecFolder, "queries.txt");
+    StreamUtil.copyStringToFile("cat dog\ncats dogs rat\n", queryLog);
+
+    Parameters p = Parameters.create();
+    p.set("queryLog", queryLog.getAbsolutePath());
+    p.set("queryLogTopN", 1);
+    buildWindows(p);
+    assertTrue(new File(index, "od.n2.w1.h1.top1.krovetz").exists());
+
+    LocalRetrieval retrieval = new LocalRetrieval(index.getAbsolutePath(), Parameters.create());
+    Node indexed = retrieval.transformQuery(StructuredQuery.parse("#combine(#od:1(cat dog) #od:1(dog rat))"), Parameters.create());
+    // only the most frequent query log window is in the part
+    assertTrue(indexed.toString().contains("cat~dog:part=od.n2.w1.h1.top1.krovetz"));
+    assertFalse(indexed.toString().contains("dog~rat"));
+    retrieval.close();
+  }
+}
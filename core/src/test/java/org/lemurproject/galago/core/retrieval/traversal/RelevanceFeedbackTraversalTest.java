@@ -6,8 +6,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.lemurproject.galago.core.retrieval.LocalRetrieval;
 import org.lemurproject.galago.core.retrieval.LocalRetrievalTest;
+import org.lemurproject.galago.core.retrieval.MultiRetrieval;
 import org.lemurproject.galago.core.retrieval.RetrievalFactory;
 import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.prf.CorpusTermSource;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackStatistics;
+import org.lemurproject.galago.core.retrieval.prf.FeedbackTermVector;
 import org.lemurproject.galago.core.retrieval.prf.RelevanceModel1;
 import org.lemurproject.galago.core.retrieval.prf.RelevanceModel3;
 import org.lemurproject.galago.core.retrieval.query.Node;
@@ -16,9 +21,13 @@ import org.lemurproject.galago.utility.FSUtil;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -159,6 +168,62 @@ public class RelevanceFeedbackTraversalTest {
     retrieval.close();
   }
 
+  @Test
+  public void testCachedFeedbackStatistics() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("index", indexFile.getAbsolutePath());
+    p.set("stemmedPostings", false);
+    p.set("relevanceModel", RelevanceModel1.class.getName());
+    p.set("rmwhitelist", "sentiwordlist.txt");
+    p.set("rmTermSource", CountingTermSource.class.getName());
+    p.set("rmThreads", 4);
+    LocalRetrieval retrieval = (LocalRetrieval) RetrievalFactory.create(p);
+    RelevanceModelTraversal traversal = new RelevanceModelTraversal(retrieval);
+
+    CountingTermSource.reads.set(0);
+    for (int i = 0; i < 2; i++) {
+      Node parsedTree = StructuredQuery.parse("#rm:fbDocs=10:fbTerms=4( #dirichlet( #extents:jumped:part=postings() ) )");
+      Node transformed = traversal.traverse(parsedTree, Parameters.create());
+      assertEquals(transformed.getNodeParameters().get("0", -1.0), 0.05001, 0.00001);
+      assertEquals(transformed.getNodeParameters().get("1", -1.0), 0.04165, 0.00001);
+      assertEquals("ugly", transformed.getChild(0).getDefaultParameter());
+      assertEquals("moon", transformed.getChild(1).getDefaultParameter());
+    }
+    // the second query reads the feedback documents from the cache
+    int reads = CountingTermSource.reads.get();
+    assertTrue(reads > 0 && reads <= 10);
+    // the statistics belong to the retrieval
+    assertSame(retrieval.getFeedbackStatistics(), FeedbackStatistics.get(retrieval));
+
+    retrieval.close();
+  }
+
+  @Test
+  public void testMultiRetrievalFeedbackStatistics() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("index", Arrays.asList(indexFile.getAbsolutePath(), indexFile.getAbsolutePath()));
+    Retrieval retrieval = RetrievalFactory.create(p);
+    assertTrue(retrieval instanceof MultiRetrieval);
+    // the statistics are held by the retrieval, not rebuilt for each query
+    assertSame(retrieval.getFeedbackStatistics(), FeedbackStatistics.get(retrieval));
+    retrieval.close();
+  }
+
+  public static class CountingTermSource extends CorpusTermSource {
+
+    static final AtomicInteger reads = new AtomicInteger();
+
+    public CountingTermSource(Retrieval retrieval) {
+      super(retrieval);
+    }
+
+    @Override
+    public FeedbackTermVector getTermVector(ScoredDocument document, String group) throws IOException {
+      reads.incrementAndGet();
+      return super.getTermVector(document, group);
+    }
+  }
+
   @After
   public void tearDown() throws Exception {
     if (relsFile != null) {
@@ -466,4 +466,70 @@ public class AppTest {
 
         }
     }
+
+    @Test
+    public void testInMemoryInversion() throws Exception {
+        File trecCorpusFile1 = null;
+        File trecCorpusFile2 = null;
+        File sortedIndex = null;
+        File invertedIndex = null;
+
+        try {
+            trecCorpusFile1 = FileUtility.createTemporary();
+            StreamUtil.copyStringToFile(trecDocument("55", "This is a sample document")
+                    + trecDocument("59", "sample document two")
+                    + trecDocument("61", "a document about documents and samples"), trecCorpusFile1);
+            trecCorpusFile2 = FileUtility.createTemporary();
+            StreamUtil.copyStringToFile(trecDocument("70", "two samples of one document")
+                    + trecDocument("72", "this is not a sample"), trecCorpusFile2);
+
+            sortedIndex = FileUtility.createTemporaryDirectory();
+            App.main(new String[]{"build", "--indexPath=" + sortedIndex.getAbsolutePath(),
+                "--inputPath+" + trecCorpusFile1.getAbsolutePath(),
+                "--inputPath+" + trecCorpusFile2.getAbsolutePath(),
+                "--corpus=false", "--server=false"});
+
+            // a tiny memory limit forces a partial index for every document
+            invertedIndex = FileUtility.createTemporaryDirectory();
+            App.main(new String[]{"build", "--indexPath=" + invertedIndex.getAbsolutePath(),
+                "--inputPath+" + trecCorpusFile1.getAbsolutePath(),
+                "--inputPath+" + trecCorpusFile2.getAbsolutePath(),
+                "--corpus=false", "--server=false",
+                "--inMemoryInversion=true", "--inversionMemory=1"});
+
+            verifyIndexStructures(invertedIndex);
+
+            for (String part : new File(sortedIndex.getAbsolutePath()).list()) {
+                if (!part.startsWith("postings")) {
+                    continue;
+                }
+                assertEquals(dumpIndex(new File(sortedIndex, part)), dumpIndex(new File(invertedIndex, part)));
+            }
+
+            // partial indexes are removed by the merge
+            for (String part : invertedIndex.list()) {
+                assertFalse(part, part.endsWith(".partial"));
+            }
+
+        } finally {
+            if (trecCorpusFile1 != null) {
+                Assert.assertTrue(trecCorpusFile1.delete());
+            }
+            if (trecCorpusFile2 != null) {
+                Assert.assertTrue(trecCorpusFile2.delete());
+            }
+            if (sortedIndex != null) {
+                FSUtil.deleteDirectory(sortedIndex);
+            }
+            if (invertedIndex != null) {
+                FSUtil.deleteDirectory(invertedIndex);
+            }
+        }
+    }
+
+    private static String dumpIndex(File part) throws Exception {
+        ByteArrayOutputStream byteArrayStream = new ByteArrayOutputStream();
+        App.run(new String[]{"dump-index", part.getAbsolutePath()}, new PrintStream(byteArrayStream));
+        return byteArrayStream.toString();
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.tools.apps;
+
+import org.junit.Test;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.tupleflow.Utility;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs pagerank with the csr engine, which must produce the same scores as
+ * the tupleflow engine (see PageRankFnTest).
+ */
+public class CsrPageRankTest {
+
+  // expected output (actual comparison is trucated to 6 decimal points)
+  private static final String DOC_NAME_ORDER = "test-0 0.14044514319221924\n"
+          + "test-1 0.10091959505482992\n"
+          + "test-10 0.05115981927289599\n"
+          + "test-11 0.05115981927289599\n"
+          + "test-2 0.08488240356450753\n"
+          + "test-3 0.08673666439408949\n"
+          + "test-4 0.07918772966163073\n"
+          + "test-5 0.0954103007236506\n"
+          + "test-6 0.07937310923332822\n"
+          + "test-7 0.07387799299215828\n"
+          + "test-8 0.07558165579260986\n"
+          + "test-9 0.08126576684518416\n";
+
+  private static final String SCORE_ORDER = "test-0 0.14044514319221924\n"
+          + "test-1 0.10091959505482992\n"
+          + "test-5 0.0954103007236506\n"
+          + "test-3 0.08673666439408949\n"
+          + "test-2 0.08488240356450753\n"
+          + "test-9 0.08126576684518416\n"
+          + "test-6 0.07937310923332822\n"
+          + "test-4 0.07918772966163073\n"
+          + "test-8 0.07558165579260986\n"
+          + "test-7 0.07387799299215828\n"
+          + "test-10 0.05115981927289599\n"
+          + "test-11 0.05115981927289599\n";
+
+  @Test
+  public void testCsrEngine() throws Exception {
+    File tempDir = FileUtility.createTemporaryDirectory();
+    try {
+      File input = new File(tempDir, "input.trecweb");
+      HarvestLinksFnTest.writeInput(input);
+
+      File galago = new File(tempDir, "galago");
+      File jobTmp = new File(tempDir, "jobTmp");
+
+      // run harvest links
+      Parameters p = Parameters.create();
+      p.set("inputPath", input.getAbsolutePath());
+      p.set("indri", false);
+      p.set("galago", true);
+      p.set("outputFolder", galago.getAbsolutePath());
+      p.set("galagoDist", 3);
+      p.set("distrib", 2);
+      p.set("galagoJobDir", jobTmp.getAbsolutePath());
+      p.set("server", false);
+
+      HarvestLinksFn hl = new HarvestLinksFn();
+      hl.run(p, System.out);
+
+      // in memory, and memory-mapped
+      for (long memoryLimit : new long[]{Integer.MAX_VALUE, 0}) {
+        File pagerank = new File(tempDir, "pagerank-csr-" + memoryLimit);
+
+        Parameters p2 = Parameters.create();
+        p2.set("linkdata", galago.getAbsolutePath());
+        p2.set("outputFolder", pagerank.getAbsolutePath());
+        p2.set("engine", "csr");
+        p2.set("lambda", 0.5);
+        p2.set("maxItr", 10);
+        p2.set("delta", 0.000000001);
+        p2.set("threads", 2);
+        p2.set("csrMemoryLimit", memoryLimit);
+
+        PageRankFn pg = new PageRankFn();
+        pg.run(p2, System.out);
+
+        checkOutput(Utility.readFileToString(new File(pagerank, "pagerank.docNameOrder")), DOC_NAME_ORDER);
+        checkOutput(Utility.readFileToString(new File(pagerank, "pagerank.scoreOrder")), SCORE_ORDER);
+      }
+    } finally {
+      FSUtil.deleteDirectory(tempDir);
+    }
+  }
+
+  private void checkOutput(String data, String expected) {
+    String[] dataLines = data.split("\n");
+    String[] expLines = expected.split("\n");
+    assertEquals(expLines.length, dataLines.length);
+
+    for (int i = 0; i < dataLines.length; i++) {
+      String[] exp = expLines[i].split(" ");
+      String[] dat = dataLines[i].split(" ");
+
+      assertEquals(exp[0], dat[0]);
+      assertEquals(Double.parseDouble(exp[1]), Double.parseDouble(dat[1]), 0.000001);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.tools.apps;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lemurproject.galago.core.index.disk.PackedPositionIndexWriter;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.Results;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.RetrievalFactory;
+import org.lemurproject.galago.core.retrieval.TieredRetrieval;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.tools.AppTest;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PruneIndexFnTest {
+
+  File corpus;
+  File index;
+  File prunedIndex;
+
+  @Before
+  public void setUp() throws Exception {
+    corpus = FileUtility.createTemporary();
+    index = FileUtility.createTemporaryDirectory();
+    prunedIndex = FileUtility.createTemporaryDirectory();
+
+    StringBuilder c = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      StringBuilder data = new StringBuilder();
+      for (int j = 0; j < (i + 10); j++) {
+        data.append(" ").append(j);
+      }
+      c.append(AppTest.trecDocument("d-" + i, "Test text" + data.toString()));
+    }
+    StreamUtil.copyStringToFile(c.toString(), corpus);
+
+    Parameters p = Parameters.create();
+    p.set("inputPath", corpus.getAbsolutePath());
+    p.set("indexPath", index.getAbsolutePath());
+    App.run("build", p, System.out);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    corpus.delete();
+    FSUtil.deleteDirectory(index);
+    FSUtil.deleteDirectory(prunedIndex);
+  }
+
+  @Test
+  public void testTermPruning() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("indexPath", index.getAbsolutePath());
+    p.set("prunedIndexPath", prunedIndex.getAbsolutePath());
+    p.set("pruneTopK", 5);
+    p.set("pruneEpsilon", 0.99);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    App.run("prune-index", p, new PrintStream(out));
+    assertTrue(out.toString().contains("Pruned postings.krovetz"));
+
+    // unpruned parts are copied
+    AppTest.verifyIndexStructures(prunedIndex);
+    LocalRetrieval pruned = new LocalRetrieval(prunedIndex.getAbsolutePath(), Parameters.create());
+    assertEquals(100, pruned.getCollectionStatistics("#lengths:part=lengths()").documentCount);
+    assertEquals("d-42", pruned.getDocumentName(pruned.getDocumentId("d-42")));
+    long testCount = pruned.getNodeStatistics("#counts:test:part=postings.krovetz()").nodeDocumentCount;
+    assertTrue(testCount >= 5 && testCount < 100);
+    pruned.close();
+
+    Parameters retrievalParams = Parameters.create();
+    retrievalParams.set("index", index.getAbsolutePath());
+    retrievalParams.set("firstTierIndex", prunedIndex.getAbsolutePath());
+    retrievalParams.set("scorer", "bm25");
+    Retrieval retrieval = RetrievalFactory.create(retrievalParams);
+    assertTrue(retrieval instanceof TieredRetrieval);
+    TieredRetrieval tiered = (TieredRetrieval) retrieval;
+
+    // the first tier holds the best postings of '90', and scores with the full statistics
+    Parameters qp = Parameters.create();
+    qp.set("requested", 5);
+    Node query = tiered.transformQuery(StructuredQuery.parse("#combine( 90 )"), qp);
+    Results tieredResults = tiered.executeQuery(query, qp);
+    Results fullResults = tiered.getFullIndex().executeQuery(query, qp);
+    assertEquals(1, tiered.getFirstTierQueries());
+    assertEquals(0, tiered.getFullIndexQueries());
+    assertEquals(fullResults.scoredDocuments.size(), tieredResults.scoredDocuments.size());
+    for (int i = 0; i < fullResults.scoredDocuments.size(); i++) {
+      assertEquals(fullResults.scoredDocuments.get(i).document, tieredResults.scoredDocuments.get(i).document);
+      assertEquals(fullResults.scoredDocuments.get(i).score, tieredResults.scoredDocuments.get(i).score, 0.00001);
+    }
+
+    // too few documents in the first tier
+    qp = Parameters.create();
+    qp.set("requested", 15);
+    query = tiered.transformQuery(StructuredQuery.parse("#combine( 90 )"), qp);
+    tieredResults = tiered.executeQuery(query, qp);
+    assertEquals(1, tiered.getFullIndexQueries());
+    assertEquals(15, tieredResults.scoredDocuments.size());
+
+    // a multi-term query is answered by the first tier, although every list is truncated
+    qp = Parameters.create();
+    qp.set("requested", 5);
+    query = tiered.transformQuery(StructuredQuery.parse("#combine( 90 91 92 )"), qp);
+    tieredResults = tiered.executeQuery(query, qp);
+    assertEquals(2, tiered.getFirstTierQueries());
+    assertEquals(1, tiered.getFullIndexQueries());
+    assertEquals(5, tieredResults.scoredDocuments.size());
+    tiered.close();
+  }
+
+  @Test
+  public void testPackedPostingsPruning() throws Exception {
+    File packedIndex = FileUtility.createTemporaryDirectory();
+    File prunedPackedIndex = FileUtility.createTemporaryDirectory();
+    try {
+      Parameters p = Parameters.create();
+      p.set("inputPath", corpus.getAbsolutePath());
+      p.set("indexPath", packedIndex.getAbsolutePath());
+      p.set("packedPostings", true);
+      App.run("build", p, System.out);
+
+      p = Parameters.create();
+      p.set("indexPath", packedIndex.getAbsolutePath());
+      p.set("prunedIndexPath", prunedPackedIndex.getAbsolutePath());
+      p.set("pruneTopK", 5);
+      p.set("pruneEpsilon", 0.99);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      App.run("prune-index", p, new PrintStream(out));
+      assertTrue(out.toString().contains("Pruned postings.krovetz"));
+
+      LocalRetrieval pruned = new LocalRetrieval(prunedPackedIndex.getAbsolutePath(), Parameters.create());
+      assertEquals(PackedPositionIndexWriter.class.getName(),
+              pruned.getIndex().getIndexPart("postings.krovetz").getManifest().getString("writerClass"));
+      long testCount = pruned.getNodeStatistics("#counts:test:part=postings.krovetz()").nodeDocumentCount;
+      assertTrue(testCount >= 5 && testCount < 100);
+      pruned.close();
+    } finally {
+      FSUtil.deleteDirectory(packedIndex);
+      FSUtil.deleteDirectory(prunedPackedIndex);
+    }
+  }
+
+  @Test
+  public void testDocumentPruning() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("indexPath", index.getAbsolutePath());
+    p.set("prunedIndexPath", prunedIndex.getAbsolutePath());
+    p.set("pruning", "document");
+    p.set("pruneFraction", 0.2);
+    p.set("parts", "postings.krovetz");
+    App.run("prune-index", p, new PrintStream(new ByteArrayOutputStream()));
+
+    LocalRetrieval full = new LocalRetrieval(index.getAbsolutePath(), Parameters.create());
+    LocalRetrieval pruned = new LocalRetrieval(prunedIndex.getAbsolutePath(), Parameters.create());
+    // every document keeps its best terms, 'test' is in every document
+    assertTrue(pruned.getNodeStatistics("#counts:test:part=postings.krovetz()").nodeDocumentCount < 100);
+    assertTrue(pruned.getNodeStatistics("#counts:@/99/:part=postings.krovetz()").nodeDocumentCount > 0);
+    // other parts are copied
+    assertEquals(full.getNodeStatistics("#counts:test:part=postings()").nodeDocumentCount,
+            pruned.getNodeStatistics("#counts:test:part=postings()").nodeDocumentCount);
+    full.close();
+    pruned.close();
+  }
+}
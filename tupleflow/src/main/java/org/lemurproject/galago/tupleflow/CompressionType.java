@@ -7,11 +7,15 @@ package org.lemurproject.galago.tupleflow;
  * If this list is tobe extended - append to the end of the list. - this ensures
  * that all previously written files are compatible
  *
+ * VBYTE and GZIP streams are gzipped; SNAPPY streams are vbyte encoded and
+ * compressed in independent snappy blocks, trading some compression for much
+ * cheaper encoding and decoding.
+ *
  * @author sjh
  */
 public enum CompressionType {
 
-  UNSPECIFIED, NONE, VBYTE, GZIP;
+  UNSPECIFIED, NONE, VBYTE, GZIP, SNAPPY;
 
   public static byte toByte(CompressionType c) {
     switch (c) {
@@ -23,6 +27,8 @@ public enum CompressionType {
         return (byte) 2;
       case GZIP:
         return (byte) 3;
+      case SNAPPY:
+        return (byte) 4;
       default:
         return (byte) 0;
     }
@@ -38,6 +44,8 @@ public enum CompressionType {
         return VBYTE;
       case 3:
         return GZIP;
+      case 4:
+        return SNAPPY;
       default:
         return UNSPECIFIED;
     }
@@ -1,7 +1,6 @@
 
 package org.lemurproject.galago.tupleflow;
 
-import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.lemurproject.galago.utility.FSUtil;
 import org.lemurproject.galago.utility.StreamUtil;
 
@@ -11,6 +10,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -19,7 +19,7 @@ import java.util.logging.Logger;
  */
 public class FileUtility {
   private static final Logger LOG = Logger.getLogger(FileUtility.class.getName());
-  private static final Set<String> roots = new ConcurrentHashSet<>();
+  private static final Set<String> roots = ConcurrentHashMap.newKeySet();
 
   // dynamically add to the set of roots
   public static void addTemporaryDirectory(String path) {
@@ -1,6 +1,7 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.tupleflow;
 
+import org.lemurproject.galago.tupleflow.buffer.SerializedSortBuffer;
 import org.lemurproject.galago.tupleflow.execution.ErrorStore;
 import org.lemurproject.galago.tupleflow.execution.Verification;
 import org.lemurproject.galago.tupleflow.runtime.FileOrderedWriter;
@@ -16,6 +17,8 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.management.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
@@ -47,6 +50,16 @@ import java.util.logging.Logger;
  * application. Using a Reducer allows the application to buffer fewer items and
  * hopefully reduce the reliance on the disk during sorting.</p>
  *
+ * <p> If the 'serialized' sorter option is set (and there is no Reducer),
+ * tuples are instead buffered as serialized records (see
+ * SerializedSortBuffer), optionally off-heap ('off-heap'), and runs are
+ * flushed when 'sort-buffer-bytes' bytes are buffered, rather than in response
+ * to heap usage notifications. </p>
+ *
+ * <p> Executors that run many sorters concurrently may bound the objects
+ * buffered by all sorters (setSharedObjectLimit), and the bytes buffered by
+ * all serialized sorters (setSharedByteLimit). </p>
+ *
  * @author Trevor Strohman
  * @param <T> the TupleflowType to sort
  */
@@ -57,6 +70,7 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
   public static final long DEFAULT_FILE_LIMIT = 20;
   public static final long DEFAULT_REDUCE_INTERVAL = 1 * 1024 * 1024;
   public static final double DEFAULT_MEMORY_FRACTION = 0.7;
+  public static final long DEFAULT_SORT_BUFFER_BYTES = 256 * 1024 * 1024;
   //public static final boolean DEFAULT_FLUSH_PAUSE = false;
   // create limits and parameters
   private long limit;
@@ -72,6 +86,8 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
   private ArrayList<T> objects;
   private ArrayList<List<T>> runs;
   private ArrayList<File> temporaryFiles;
+  // serialized record buffer; replaces objects and runs when set
+  private SerializedSortBuffer<T> serialized = null;
   // force flush - this variable is only used when pauseToFlush = true;
   private volatile boolean forceFlush;
   // statistics + logging
@@ -82,6 +98,16 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
   // counters to assign a better combineBufferSize
   private long minFlushSize = Sorter.DEFAULT_OBJECT_LIMIT;
   private int combineBufferSize;
+  // objects buffered by all sorters in this JVM; only counted when a shared limit is set
+  private static volatile long sharedObjectLimit = 0;
+  private static final AtomicLong sharedObjects = new AtomicLong();
+  private static final AtomicInteger bufferingSorters = new AtomicInteger();
+  private long sharedCount = 0;
+  // bytes buffered by all serialized sorters; only counted when a shared byte limit is set
+  private static volatile long sharedByteLimit = 0;
+  private static final AtomicLong sharedBytes = new AtomicLong();
+  private static final AtomicInteger serializingSorters = new AtomicInteger();
+  private long sharedByteCount = 0;
 
   public Sorter(Order<T> order) {
     this(order, null, null);
@@ -99,11 +125,13 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
     this.runs = new ArrayList<>();
     this.temporaryFiles = new ArrayList<>();
     this.lessThanCompare = order.lessThan();
-    this.compression = CompressionType.VBYTE;
+    this.compression = CompressionType.fromString(GalagoConf.getSorterOptions().get("compression", "VBYTE"));
     
     setLimits(Parameters.create());
 
-    requestMemoryWarnings();
+    if (serialized == null) {
+      requestMemoryWarnings();
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -112,7 +140,7 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
           IllegalAccessException, IOException {
     String className = parameters.getJSON().getString("class");
     String[] orderSpec = parameters.getJSON().getString("order").split(" ");
-    compression = CompressionType.fromString(parameters.getJSON().get("compression", "VBYTE"));
+    compression = CompressionType.fromString(parameters.getJSON().get("compression", GalagoConf.getSorterOptions().get("compression", "VBYTE")));
     if(compression == null){
       logger.info("WARNING: compression is set to NULL. Defaulting to VBYTE");
       compression = CompressionType.VBYTE;
@@ -137,9 +165,11 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
     this.filesWritten = parameters.getCounter("Sorter Files Written");
     this.sorterCombineSteps = parameters.getCounter("Sorter Combine Steps");
 
-    setLimits(Parameters.create());
+    setLimits(parameters.getJSON());
 
-    requestMemoryWarnings();
+    if (serialized == null) {
+      requestMemoryWarnings();
+    }
   }
 
   private void setLimits(Parameters localParameters) {
@@ -151,6 +181,19 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
     this.memoryFraction = localParameters.get("mem-fraction", globalParameters.get("mem-fraction", Sorter.DEFAULT_MEMORY_FRACTION));
     //this.pauseToFlush = localParameters.get("flush-pause", globalParameters.get("flush-pause", Sorter.DEFAULT_FLUSH_PAUSE));
 
+    if (localParameters.get("serialized", globalParameters.get("serialized", false))) {
+      if (reducer != null) {
+        logger.info("Sorter for " + this + " has a reducer; buffering objects.");
+      } else {
+        long sortBufferBytes = localParameters.get("sort-buffer-bytes", globalParameters.get("sort-buffer-bytes", Sorter.DEFAULT_SORT_BUFFER_BYTES));
+        boolean offHeap = localParameters.get("off-heap", globalParameters.get("off-heap", false));
+        this.serialized = SerializedSortBuffer.create(order, sortBufferBytes, offHeap);
+        if (serialized == null) {
+          logger.info("Unable to serialize " + this + "; buffering objects.");
+        }
+      }
+    }
+
     forceFlush = false;
   }
 
@@ -264,7 +307,100 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
   }
 
   public boolean needsFlush() {
-    return size() > limit || this.forceFlush;
+    return size() > limit || this.forceFlush || exceedsSharedLimit();
+  }
+
+  /**
+   * Bounds the total number of objects buffered by all sorters in this JVM,
+   * for executors that run many stage instances concurrently. Zero disables
+   * the shared limit.
+   */
+  public static void setSharedObjectLimit(long limit) {
+    sharedObjectLimit = limit;
+  }
+
+  public static long getSharedObjectLimit() {
+    return sharedObjectLimit;
+  }
+
+  /**
+   * Bounds the total number of bytes buffered by all serialized sorters in
+   * this JVM, the serialized counterpart of the shared object limit. Zero
+   * disables the shared limit.
+   */
+  public static void setSharedByteLimit(long limit) {
+    sharedByteLimit = limit;
+  }
+
+  public static long getSharedByteLimit() {
+    return sharedByteLimit;
+  }
+
+  static long getSharedBytes() {
+    return sharedBytes.get();
+  }
+
+  /**
+   * The shared limit is exceeded, and this sorter holds at least its share of
+   * the buffered objects.
+   */
+  private boolean exceedsSharedLimit() {
+    long sharedLimit = sharedObjectLimit;
+    if (sharedLimit <= 0 || sharedCount == 0) {
+      return false;
+    }
+    long total = sharedObjects.get();
+    return total > sharedLimit && sharedCount * bufferingSorters.get() >= total;
+  }
+
+  private void accountShared() {
+    if (sharedObjectLimit > 0) {
+      if (sharedCount == 0) {
+        bufferingSorters.incrementAndGet();
+      }
+      sharedCount++;
+      sharedObjects.incrementAndGet();
+    }
+  }
+
+  private void releaseShared() {
+    if (sharedCount > 0) {
+      sharedObjects.addAndGet(-sharedCount);
+      bufferingSorters.decrementAndGet();
+      sharedCount = 0;
+    }
+  }
+
+  /**
+   * The shared byte limit is exceeded, and this sorter holds at least its
+   * share of the buffered bytes.
+   */
+  private boolean exceedsSharedByteLimit() {
+    long sharedLimit = sharedByteLimit;
+    if (sharedLimit <= 0 || sharedByteCount == 0) {
+      return false;
+    }
+    long total = sharedBytes.get();
+    return total > sharedLimit && sharedByteCount * serializingSorters.get() >= total;
+  }
+
+  private void accountSharedBytes() {
+    if (sharedByteLimit > 0) {
+      if (sharedByteCount == 0) {
+        serializingSorters.incrementAndGet();
+      }
+      long buffered = serialized.bufferedBytes();
+      sharedBytes.addAndGet(buffered - sharedByteCount);
+      sharedByteCount = buffered;
+    }
+  }
+
+  private void releaseSharedBytes() {
+    if (sharedByteCount > 0) {
+      sharedBytes.addAndGet(-sharedByteCount);
+      serializingSorters.decrementAndGet();
+      sharedByteCount = 0;
+    }
   }
 
   public synchronized void flushIfNecessary() throws IOException {
@@ -279,7 +415,16 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
 
   @Override
   public synchronized void process(T object) throws IOException {
+    if (serialized != null) {
+      serialized.add(object);
+      accountSharedBytes();
+      if (serialized.isFull() || forceFlush || exceedsSharedByteLimit()) {
+        flush();
+      }
+      return;
+    }
     objects.add(object);
+    accountShared();
     flushIfNecessary();
   }
 
@@ -304,11 +449,17 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
       combineBufferSize = Math.max(20, (int) (minFlushSize / 10));
 
       combine();
+    } else if (serialized != null) {
+      serialized.sortTo(processor);
     } else {
 
       reduce();
       combineRuns(processor);
     }
+    if (serialized != null) {
+      serialized.release();
+      releaseSharedBytes();
+    }
     processor.close();
     processor = null;
   }
@@ -360,13 +511,23 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
    * Returns the number of currently buffered objects.
    */
   private long size() {
-    return runsCount + objects.size();
+    return runsCount + objects.size() + ((serialized == null) ? 0 : serialized.size());
   }
 
   public synchronized void flush() throws IOException {
     if (size() == 0) {
       return;
     }
+    if (serialized != null) {
+      minFlushSize = Math.min(minFlushSize, serialized.size());
+      FileOrderedWriter<T> writer = getTemporaryWriter();
+      serialized.sortTo(writer);
+      releaseSharedBytes();
+      writer.close();
+      filesWritten.increment();
+      forceFlush = false;
+      return;
+    }
     reduce();
     assert objects.isEmpty();
 
@@ -457,11 +618,12 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
 
     runs.clear();
     runsCount = 0;
+    releaseShared();
   }
 
   private synchronized FileOrderedWriter<T> getTemporaryWriter() throws IOException {
     File temporary = FileUtility.createTemporary();
-    // default to VBYTE compression (but make this configurable later...
+    // VBYTE unless set by the step or the 'compression' sorter option
     FileOrderedWriter<T> writer = new FileOrderedWriter<>(temporary.getAbsolutePath(), order, compression);
     temporaryFiles.add(temporary);
     return writer;
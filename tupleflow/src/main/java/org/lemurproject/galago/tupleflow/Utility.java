@@ -26,7 +26,8 @@ public class Utility {
    * @return a Step object that can be added to a TupleFlow Stage.
    */
   public static StepInformation getSorter(Order sortOrder) {
-    return getSorter(sortOrder, null, CompressionType.VBYTE);
+    // compression of temporary files defaults to the 'compression' sorter option (or VBYTE)
+    return getSorter(sortOrder, null, null);
   }
 
   public static StepInformation getSorter(Order sortOrder, CompressionType c) {
@@ -0,0 +1,634 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow.buffer;
+
+import org.lemurproject.galago.tupleflow.Order;
+import org.lemurproject.galago.tupleflow.Processor;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Buffers tuples as serialized records, instead of as objects, for the Sorter.
+ *
+ * Records are appended to large byte chunks (optionally direct, off-heap
+ * buffers), and an index holds the offset of each record and a normalized
+ * prefix of its first ordered field. Sorting permutes the index: prefixes are
+ * compared first, then the ordered fields are compared directly in the
+ * serialized bytes. Large runs are sorted in parallel. Objects are only
+ * created again when the sorted run is emitted.
+ *
+ * The codec is derived from the public fields of the Type class; types with
+ * unsupported fields cannot be serialized (see create).
+ */
+public class SerializedSortBuffer<T> {
+
+  private static final int MIN_CHUNK_SIZE = 64 * 1024;
+  private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+  private static final int PARALLEL_THRESHOLD = 16 * 1024;
+  private static final int INSERTION_THRESHOLD = 16;
+  // offset + prefix + two permutation entries per record
+  private static final int INDEX_BYTES = 8 + 8 + 4 + 4;
+
+  private enum Kind {
+
+    LONG, INT, SHORT, BYTE, BOOLEAN, FLOAT, DOUBLE, STRING, BYTES
+  }
+
+  private static class FieldCodec {
+
+    final Field field;
+    final Kind kind;
+    final boolean descending;
+
+    FieldCodec(Field field, Kind kind, boolean descending) {
+      this.field = field;
+      this.kind = kind;
+      this.descending = descending;
+    }
+  }
+
+  private final Class<T> typeClass;
+  // ordered fields first (in order), then the remaining fields
+  private final FieldCodec[] fields;
+  private final int orderedFields;
+  private final long byteLimit;
+  private final boolean offHeap;
+  private final int chunkSize;
+  // record storage
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+  private final List<ByteBuffer> views = new ArrayList<>();
+  private int currentChunk = 0;
+  private int chunkPosition = 0;
+  // record index
+  private long[] offsets = new long[1024];
+  private long[] prefixes = new long[1024];
+  private int[] permutation = new int[0];
+  private int[] scratch = new int[0];
+  private int count = 0;
+  private long bufferedBytes = 0;
+
+  private SerializedSortBuffer(Class<T> typeClass, FieldCodec[] fields, int orderedFields, long byteLimit, boolean offHeap) {
+    this.typeClass = typeClass;
+    this.fields = fields;
+    this.orderedFields = orderedFields;
+    this.byteLimit = byteLimit;
+    this.offHeap = offHeap;
+    this.chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, byteLimit / 4));
+  }
+
+  /**
+   * Returns a buffer for this order, or null if the ordered class has fields
+   * that cannot be serialized.
+   */
+  public static <T> SerializedSortBuffer<T> create(Order<T> order, long byteLimit, boolean offHeap) {
+    Class<T> typeClass = order.getOrderedClass();
+    try {
+      typeClass.getConstructor();
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+
+    List<FieldCodec> codecs = new ArrayList<>();
+    List<Field> remaining = new ArrayList<>();
+    for (Field f : typeClass.getFields()) {
+      if (!Modifier.isStatic(f.getModifiers()) && !Modifier.isFinal(f.getModifiers())) {
+        remaining.add(f);
+      }
+    }
+
+    for (String spec : order.getOrderSpec()) {
+      boolean descending = spec.startsWith("-");
+      String name = (spec.startsWith("-") || spec.startsWith("+")) ? spec.substring(1) : spec;
+      Field field = null;
+      for (Field f : remaining) {
+        if (f.getName().equals(name)) {
+          field = f;
+        }
+      }
+      Kind kind = (field == null) ? null : kindOf(field.getType());
+      if (kind == null) {
+        return null;
+      }
+      codecs.add(new FieldCodec(field, kind, descending));
+      remaining.remove(field);
+    }
+    int orderedFields = codecs.size();
+
+    for (Field f : remaining) {
+      Kind kind = kindOf(f.getType());
+      if (kind == null) {
+        return null;
+      }
+      codecs.add(new FieldCodec(f, kind, false));
+    }
+
+    return new SerializedSortBuffer<>(typeClass, codecs.toArray(new FieldCodec[codecs.size()]), orderedFields, byteLimit, offHeap);
+  }
+
+  private static Kind kindOf(Class<?> c) {
+    if (c == long.class) {
+      return Kind.LONG;
+    } else if (c == int.class) {
+      return Kind.INT;
+    } else if (c == short.class) {
+      return Kind.SHORT;
+    } else if (c == byte.class) {
+      return Kind.BYTE;
+    } else if (c == boolean.class) {
+      return Kind.BOOLEAN;
+    } else if (c == float.class) {
+      return Kind.FLOAT;
+    } else if (c == double.class) {
+      return Kind.DOUBLE;
+    } else if (c == String.class) {
+      return Kind.STRING;
+    } else if (c == byte[].class) {
+      return Kind.BYTES;
+    }
+    return null;
+  }
+
+  /**
+   * Number of buffered records.
+   */
+  public long size() {
+    return count;
+  }
+
+  /**
+   * Bytes used by the buffered records and their index entries.
+   */
+  public long bufferedBytes() {
+    return bufferedBytes;
+  }
+
+  public boolean isFull() {
+    return bufferedBytes >= byteLimit;
+  }
+
+  public void add(T object) {
+    try {
+      int length = recordLength(object);
+      ByteBuffer chunk = reserve(length);
+      int start = chunkPosition;
+      int position = start;
+      for (FieldCodec codec : fields) {
+        position = write(codec, object, chunk, position);
+      }
+      chunkPosition = position;
+
+      if (count == offsets.length) {
+        int capacity = Math.max(1024, offsets.length * 2);
+        offsets = Arrays.copyOf(offsets, capacity);
+        prefixes = Arrays.copyOf(prefixes, capacity);
+      }
+      offsets[count] = ((long) currentChunk << 32) | start;
+      prefixes[count] = (orderedFields > 0) ? prefix(fields[0], object) : 0L;
+      count++;
+      bufferedBytes += length + INDEX_BYTES;
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Sorts the buffered records, sends them to output in order, and empties
+   * the buffer. The output is not closed.
+   */
+  public void sortTo(Processor<T> output) throws IOException {
+    if (count == 0) {
+      return;
+    }
+    if (permutation.length < count) {
+      permutation = new int[offsets.length];
+      scratch = new int[offsets.length];
+    }
+    for (int i = 0; i < count; i++) {
+      permutation[i] = i;
+    }
+
+    if (count > PARALLEL_THRESHOLD) {
+      ForkJoinPool.commonPool().invoke(new SortTask(0, count));
+    } else {
+      sort(0, count);
+    }
+
+    try {
+      for (int i = 0; i < count; i++) {
+        output.process(read(permutation[i]));
+      }
+    } catch (IllegalAccessException | InstantiationException e) {
+      throw new IOException(e);
+    }
+    clear();
+  }
+
+  public void clear() {
+    count = 0;
+    bufferedBytes = 0;
+    currentChunk = 0;
+    chunkPosition = 0;
+  }
+
+  /**
+   * Releases all buffer memory.
+   */
+  public void release() {
+    clear();
+    chunks.clear();
+    views.clear();
+    offsets = new long[0];
+    prefixes = new long[0];
+    permutation = new int[0];
+    scratch = new int[0];
+  }
+
+  // storage
+  private ByteBuffer reserve(int length) {
+    while (currentChunk < chunks.size()) {
+      ByteBuffer chunk = chunks.get(currentChunk);
+      if (chunk.capacity() - chunkPosition >= length) {
+        return chunk;
+      }
+      currentChunk++;
+      chunkPosition = 0;
+    }
+    int capacity = Math.max(chunkSize, length);
+    ByteBuffer chunk = offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    chunks.add(chunk);
+    views.add(chunk.duplicate());
+    currentChunk = chunks.size() - 1;
+    chunkPosition = 0;
+    return chunk;
+  }
+
+  private int recordLength(T object) throws IllegalAccessException {
+    int length = 0;
+    for (FieldCodec codec : fields) {
+      switch (codec.kind) {
+        case LONG:
+        case DOUBLE:
+          length += 8;
+          break;
+        case INT:
+        case FLOAT:
+          length += 4;
+          break;
+        case SHORT:
+          length += 2;
+          break;
+        case BYTE:
+        case BOOLEAN:
+          length += 1;
+          break;
+        case STRING:
+          String s = (String) codec.field.get(object);
+          length += 4 + ((s == null) ? 0 : 2 * s.length());
+          break;
+        case BYTES:
+          byte[] b = (byte[]) codec.field.get(object);
+          length += 4 + ((b == null) ? 0 : b.length);
+          break;
+      }
+    }
+    return length;
+  }
+
+  private int write(FieldCodec codec, T object, ByteBuffer chunk, int position) throws IllegalAccessException {
+    Field f = codec.field;
+    switch (codec.kind) {
+      case LONG:
+        chunk.putLong(position, f.getLong(object));
+        return position + 8;
+      case DOUBLE:
+        chunk.putDouble(position, f.getDouble(object));
+        return position + 8;
+      case INT:
+        chunk.putInt(position, f.getInt(object));
+        return position + 4;
+      case FLOAT:
+        chunk.putFloat(position, f.getFloat(object));
+        return position + 4;
+      case SHORT:
+        chunk.putShort(position, f.getShort(object));
+        return position + 2;
+      case BYTE:
+        chunk.put(position, f.getByte(object));
+        return position + 1;
+      case BOOLEAN:
+        chunk.put(position, (byte) (f.getBoolean(object) ? 1 : 0));
+        return position + 1;
+      case STRING: {
+        String s = (String) f.get(object);
+        if (s == null) {
+          chunk.putInt(position, -1);
+          return position + 4;
+        }
+        chunk.putInt(position, s.length());
+        position += 4;
+        for (int i = 0; i < s.length(); i++) {
+          chunk.putChar(position, s.charAt(i));
+          position += 2;
+        }
+        return position;
+      }
+      case BYTES: {
+        byte[] b = (byte[]) f.get(object);
+        if (b == null) {
+          chunk.putInt(position, -1);
+          return position + 4;
+        }
+        chunk.putInt(position, b.length);
+        ByteBuffer view = views.get(currentChunk);
+        view.position(position + 4);
+        view.put(b);
+        return position + 4 + b.length;
+      }
+    }
+    throw new IllegalStateException("Unknown field kind: " + codec.kind);
+  }
+
+  private T read(int record) throws IllegalAccessException, InstantiationException {
+    T object = typeClass.newInstance();
+    long offset = offsets[record];
+    int chunkId = (int) (offset >>> 32);
+    ByteBuffer chunk = chunks.get(chunkId);
+    int position = (int) offset;
+
+    for (FieldCodec codec : fields) {
+      Field f = codec.field;
+      switch (codec.kind) {
+        case LONG:
+          f.setLong(object, chunk.getLong(position));
+          position += 8;
+          break;
+        case DOUBLE:
+          f.setDouble(object, chunk.getDouble(position));
+          position += 8;
+          break;
+        case INT:
+          f.setInt(object, chunk.getInt(position));
+          position += 4;
+          break;
+        case FLOAT:
+          f.setFloat(object, chunk.getFloat(position));
+          position += 4;
+          break;
+        case SHORT:
+          f.setShort(object, chunk.getShort(position));
+          position += 2;
+          break;
+        case BYTE:
+          f.setByte(object, chunk.get(position));
+          position += 1;
+          break;
+        case BOOLEAN:
+          f.setBoolean(object, chunk.get(position) != 0);
+          position += 1;
+          break;
+        case STRING: {
+          int length = chunk.getInt(position);
+          position += 4;
+          if (length >= 0) {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+              chars[i] = chunk.getChar(position);
+              position += 2;
+            }
+            f.set(object, new String(chars));
+          }
+          break;
+        }
+        case BYTES: {
+          int length = chunk.getInt(position);
+          position += 4;
+          if (length >= 0) {
+            byte[] b = new byte[length];
+            ByteBuffer view = views.get(chunkId);
+            view.position(position);
+            view.get(b);
+            position += length;
+            f.set(object, b);
+          }
+          break;
+        }
+      }
+    }
+    return object;
+  }
+
+  // normalized keys: unsigned comparison of prefixes agrees with the order
+  private static long prefix(FieldCodec codec, Object object) throws IllegalAccessException {
+    Field f = codec.field;
+    long key;
+    switch (codec.kind) {
+      case LONG:
+        key = f.getLong(object) ^ Long.MIN_VALUE;
+        break;
+      case INT:
+        key = ((long) f.getInt(object)) ^ Long.MIN_VALUE;
+        break;
+      case SHORT:
+        key = ((long) f.getShort(object)) ^ Long.MIN_VALUE;
+        break;
+      case BYTE:
+        key = ((long) f.getByte(object)) ^ Long.MIN_VALUE;
+        break;
+      case BOOLEAN:
+        key = f.getBoolean(object) ? 1 : 0;
+        break;
+      case FLOAT: {
+        int bits = Float.floatToIntBits(f.getFloat(object));
+        bits ^= (bits >> 31) & 0x7fffffff;
+        key = ((long) bits) ^ Long.MIN_VALUE;
+        break;
+      }
+      case DOUBLE: {
+        long bits = Double.doubleToLongBits(f.getDouble(object));
+        bits ^= (bits >> 63) & 0x7fffffffffffffffL;
+        key = bits ^ Long.MIN_VALUE;
+        break;
+      }
+      case STRING: {
+        String s = (String) f.get(object);
+        key = 0;
+        for (int i = 0; i < 4; i++) {
+          key = (key << 16) | ((s != null && i < s.length()) ? s.charAt(i) : 0);
+        }
+        break;
+      }
+      case BYTES: {
+        byte[] b = (byte[]) f.get(object);
+        key = 0;
+        for (int i = 0; i < 8; i++) {
+          key = (key << 8) | ((b != null && i < b.length) ? (b[i] & 0xFF) : 0);
+        }
+        break;
+      }
+      default:
+        key = 0;
+    }
+    return codec.descending ? ~key : key;
+  }
+
+  // comparison of two buffered records
+  private int compare(int one, int two) {
+    int result = Long.compareUnsigned(prefixes[one], prefixes[two]);
+    if (result != 0) {
+      return result;
+    }
+
+    long offsetOne = offsets[one];
+    long offsetTwo = offsets[two];
+    ByteBuffer a = chunks.get((int) (offsetOne >>> 32));
+    ByteBuffer b = chunks.get((int) (offsetTwo >>> 32));
+    int pa = (int) offsetOne;
+    int pb = (int) offsetTwo;
+
+    for (int i = 0; i < orderedFields; i++) {
+      FieldCodec codec = fields[i];
+      switch (codec.kind) {
+        case LONG:
+          result = Long.compare(a.getLong(pa), b.getLong(pb));
+          pa += 8;
+          pb += 8;
+          break;
+        case DOUBLE:
+          result = Double.compare(a.getDouble(pa), b.getDouble(pb));
+          pa += 8;
+          pb += 8;
+          break;
+        case INT:
+          result = Integer.compare(a.getInt(pa), b.getInt(pb));
+          pa += 4;
+          pb += 4;
+          break;
+        case FLOAT:
+          result = Float.compare(a.getFloat(pa), b.getFloat(pb));
+          pa += 4;
+          pb += 4;
+          break;
+        case SHORT:
+          result = Integer.compare(a.getShort(pa), b.getShort(pb));
+          pa += 2;
+          pb += 2;
+          break;
+        case BYTE:
+          result = Integer.compare(a.get(pa), b.get(pb));
+          pa += 1;
+          pb += 1;
+          break;
+        case BOOLEAN:
+          result = Integer.compare(a.get(pa), b.get(pb));
+          pa += 1;
+          pb += 1;
+          break;
+        case STRING: {
+          int la = a.getInt(pa);
+          int lb = b.getInt(pb);
+          pa += 4;
+          pb += 4;
+          int shared = Math.min(la, lb);
+          for (int j = 0; j < shared && result == 0; j++) {
+            result = Character.compare(a.getChar(pa + 2 * j), b.getChar(pb + 2 * j));
+          }
+          if (result == 0) {
+            result = Integer.compare(la, lb);
+          }
+          pa += 2 * Math.max(la, 0);
+          pb += 2 * Math.max(lb, 0);
+          break;
+        }
+        case BYTES: {
+          int la = a.getInt(pa);
+          int lb = b.getInt(pb);
+          pa += 4;
+          pb += 4;
+          int shared = Math.min(la, lb);
+          for (int j = 0; j < shared && result == 0; j++) {
+            result = Integer.compare(a.get(pa + j) & 0xFF, b.get(pb + j) & 0xFF);
+          }
+          if (result == 0) {
+            result = Integer.compare(la, lb);
+          }
+          pa += Math.max(la, 0);
+          pb += Math.max(lb, 0);
+          break;
+        }
+      }
+      if (result != 0) {
+        return codec.descending ? -result : result;
+      }
+    }
+    return 0;
+  }
+
+  // stable merge sort of permutation[lo, hi)
+  private void sort(int lo, int hi) {
+    if (hi - lo <= INSERTION_THRESHOLD) {
+      insertionSort(lo, hi);
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    sort(lo, mid);
+    sort(mid, hi);
+    merge(lo, mid, hi);
+  }
+
+  private void insertionSort(int lo, int hi) {
+    for (int i = lo + 1; i < hi; i++) {
+      int value = permutation[i];
+      int j = i - 1;
+      while (j >= lo && compare(permutation[j], value) > 0) {
+        permutation[j + 1] = permutation[j];
+        j--;
+      }
+      permutation[j + 1] = value;
+    }
+  }
+
+  private void merge(int lo, int mid, int hi) {
+    if (compare(permutation[mid - 1], permutation[mid]) <= 0) {
+      return;
+    }
+    System.arraycopy(permutation, lo, scratch, lo, hi - lo);
+    int i = lo;
+    int j = mid;
+    for (int k = lo; k < hi; k++) {
+      if (j >= hi || (i < mid && compare(scratch[i], scratch[j]) <= 0)) {
+        permutation[k] = scratch[i++];
+      } else {
+        permutation[k] = scratch[j++];
+      }
+    }
+  }
+
+  private class SortTask extends RecursiveAction {
+
+    private final int lo;
+    private final int hi;
+
+    SortTask(int lo, int hi) {
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (hi - lo <= PARALLEL_THRESHOLD) {
+        sort(lo, hi);
+        return;
+      }
+      int mid = (lo + hi) >>> 1;
+      invokeAll(new SortTask(lo, mid), new SortTask(mid, hi));
+      merge(lo, mid, hi);
+    }
+  }
+}
@@ -1130,6 +1130,9 @@ public class JobExecutor {
         String mode = p.get("mode", "local");
 
         String[] params = new String[]{};
+        if (mode.startsWith("thread") && p.containsKey("threads")) {
+            params = new String[]{"threads=" + p.getLong("threads")};
+        }
 
         String command;
         if (p.containsKey("command")) {
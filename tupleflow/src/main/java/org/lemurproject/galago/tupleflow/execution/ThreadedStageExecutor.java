@@ -0,0 +1,224 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow.execution;
+
+import org.lemurproject.galago.tupleflow.ExNihiloSource;
+import org.lemurproject.galago.tupleflow.GalagoConf;
+import org.lemurproject.galago.tupleflow.Sorter;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs stage instances concurrently, in this JVM, on a bounded pool of threads
+ * (default: the number of processors; "threads=N" argument).
+ *
+ * execute returns immediately, so independent stages also overlap; the
+ * JobExecutor polls the returned status. Since all sorters now share one heap,
+ * the total number of objects buffered by Sorters is bounded by the
+ * "shared-object-limit" sorter option (default: the per-sorter object-limit),
+ * and the bytes buffered by serialized Sorters by "shared-sort-buffer-bytes"
+ * (default: the per-sorter sort-buffer-bytes), while the executor runs;
+ * shutdown restores the previous limits.
+ *
+ * Once an instance of a stage fails, its queued instances are cancelled.
+ */
+public class ThreadedStageExecutor implements StageExecutor {
+
+  private static final Logger logger = Logger.getLogger(ThreadedStageExecutor.class.getName());
+  private final ExecutorService pool;
+  private final int threads;
+  private final long previousSharedObjectLimit;
+  private final long previousSharedByteLimit;
+
+  public ThreadedStageExecutor(String... args) {
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    for (String arg : args) {
+      if (arg.startsWith("threads=")) {
+        threadCount = Integer.parseInt(arg.substring("threads=".length()));
+      }
+    }
+    this.threads = Math.max(1, threadCount);
+
+    final AtomicInteger threadId = new AtomicInteger();
+    ThreadFactory factory = (Runnable r) -> {
+      Thread t = new Thread(r, "tupleflow-stage-" + threadId.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+    this.pool = Executors.newFixedThreadPool(threads, factory);
+
+    Parameters sorterOptions = GalagoConf.getSorterOptions();
+    previousSharedObjectLimit = Sorter.getSharedObjectLimit();
+    long objectLimit = sorterOptions.get("object-limit", Sorter.DEFAULT_OBJECT_LIMIT);
+    Sorter.setSharedObjectLimit(sorterOptions.get("shared-object-limit", objectLimit));
+    previousSharedByteLimit = Sorter.getSharedByteLimit();
+    long sortBufferBytes = sorterOptions.get("sort-buffer-bytes", Sorter.DEFAULT_SORT_BUFFER_BYTES);
+    Sorter.setSharedByteLimit(sorterOptions.get("shared-sort-buffer-bytes", sortBufferBytes));
+    logger.info("Running stage instances on " + threads + " threads.");
+  }
+
+  public static class ThreadedExecutionContext implements StageExecutionStatus {
+
+    String name;
+    List<StageInstanceDescription> instances;
+    NetworkedCounterManager manager;
+    StageInstanceFactory factory;
+    ArrayList<Exception> exceptions = new ArrayList<>();
+    ArrayList<Double> runTimes = new ArrayList<>();
+    // an instance runs, or is cancelled, once it is claimed
+    ArrayList<Future<?>> futures = new ArrayList<>();
+    ArrayList<AtomicBoolean> claims = new ArrayList<>();
+    int queuedInstances;
+    int runningInstances = 0;
+    int completedInstances = 0;
+    boolean done = false;
+
+    public ThreadedExecutionContext(String name, List<StageInstanceDescription> instances) {
+      this.name = name;
+      this.instances = instances;
+      this.queuedInstances = instances.size();
+      this.manager = new NetworkedCounterManager();
+      this.factory = new StageInstanceFactory(manager);
+    }
+
+    void start(ExecutorService pool) {
+      if (instances.isEmpty()) {
+        done = true;
+        return;
+      }
+      manager.start();
+      synchronized (this) {
+        for (final StageInstanceDescription instance : instances) {
+          final AtomicBoolean claim = new AtomicBoolean();
+          futures.add(pool.submit(() -> {
+            if (claim.compareAndSet(false, true)) {
+              runInstance(instance);
+            }
+          }));
+          claims.add(claim);
+        }
+        if (!exceptions.isEmpty()) {
+          cancelQueued();
+        }
+      }
+    }
+
+    private void runInstance(StageInstanceDescription instance) {
+      synchronized (this) {
+        queuedInstances -= 1;
+        // instances submitted after a failure are skipped
+        if (!exceptions.isEmpty()) {
+          finishInstance();
+          return;
+        }
+        runningInstances += 1;
+      }
+
+      long start = System.currentTimeMillis();
+      try {
+        ExNihiloSource source = factory.instantiate(instance);
+        source.run();
+      } catch (Throwable err) {
+        err.printStackTrace();
+        synchronized (this) {
+          exceptions.add(new Exception(err));
+          cancelQueued();
+        }
+      }
+
+      synchronized (this) {
+        runningInstances -= 1;
+        runTimes.add((System.currentTimeMillis() - start) / 1000.0);
+        finishInstance();
+      }
+    }
+
+    /**
+     * Cancels the instances that have not started; running instances finish.
+     */
+    private synchronized void cancelQueued() {
+      for (int i = 0; i < futures.size(); i++) {
+        if (claims.get(i).compareAndSet(false, true)) {
+          futures.get(i).cancel(false);
+          queuedInstances -= 1;
+          finishInstance();
+        }
+      }
+    }
+
+    private synchronized void finishInstance() {
+      completedInstances += 1;
+      if (completedInstances == instances.size()) {
+        manager.stop();
+        done = true;
+      }
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int getBlockedInstances() {
+      return 0;
+    }
+
+    @Override
+    public synchronized int getQueuedInstances() {
+      return queuedInstances;
+    }
+
+    @Override
+    public synchronized int getRunningInstances() {
+      return runningInstances;
+    }
+
+    @Override
+    public synchronized int getCompletedInstances() {
+      return completedInstances;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+      return done;
+    }
+
+    @Override
+    public synchronized List<Exception> getExceptions() {
+      return new ArrayList<>(exceptions);
+    }
+
+    @Override
+    public synchronized List<Double> getRunTimes() {
+      return new ArrayList<>(runTimes);
+    }
+  }
+
+  @Override
+  public ThreadedExecutionContext execute(StageGroupDescription stage, String temporary) {
+    ThreadedExecutionContext context = new ThreadedExecutionContext(stage.getName(), stage.getInstances());
+    context.start(pool);
+    return context;
+  }
+
+  @Override
+  public void shutdown() {
+    pool.shutdown();
+    Sorter.setSharedObjectLimit(previousSharedObjectLimit);
+    Sorter.setSharedByteLimit(previousSharedByteLimit);
+  }
+
+  @Override
+  public String toString() {
+    return "ThreadedStageExecutor(" + threads + " threads)";
+  }
+}
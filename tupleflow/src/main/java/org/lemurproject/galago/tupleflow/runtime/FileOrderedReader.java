@@ -5,6 +5,7 @@ import org.lemurproject.galago.tupleflow.*;
 import org.lemurproject.galago.tupleflow.error.IncompatibleProcessorException;
 import org.lemurproject.galago.utility.StreamCreator;
 import org.lemurproject.galago.utility.buffer.VByteInput;
+import org.xerial.snappy.SnappyInputStream;
 
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -44,6 +45,9 @@ public class FileOrderedReader<T> implements ReaderSource<T> {
       case GZIP:
         stream = new ArrayInput(new DataInputStream(new GZIPInputStream(dataStream)));
         break;
+      case SNAPPY:
+        stream = new ArrayInput(new VByteInput(new DataInputStream(new SnappyInputStream(dataStream))));
+        break;
       case UNSPECIFIED:
       case NONE:
       default:
@@ -7,6 +7,7 @@ import org.lemurproject.galago.tupleflow.Order;
 import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.utility.StreamCreator;
 import org.lemurproject.galago.utility.buffer.VByteOutput;
+import org.xerial.snappy.SnappyOutputStream;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -33,6 +34,7 @@ public class FileOrderedWriter<T> implements Processor<T> {
             case NONE:
             case VBYTE:
             case GZIP:
+            case SNAPPY:
                 break;
 
             case UNSPECIFIED:
@@ -51,6 +53,9 @@ public class FileOrderedWriter<T> implements Processor<T> {
             case GZIP:
                 stream = new ArrayOutput(new DataOutputStream(new GZIPOutputStream(dataStream)));
                 break;
+            case SNAPPY:
+                stream = new ArrayOutput(new VByteOutput(new DataOutputStream(new SnappyOutputStream(dataStream))));
+                break;
             case NONE:
                 stream = new ArrayOutput(dataStream);
                 break;
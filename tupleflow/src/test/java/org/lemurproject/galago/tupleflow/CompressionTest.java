@@ -10,6 +10,8 @@ import org.lemurproject.galago.tupleflow.types.TupleflowString;
 
 import java.io.File;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -22,6 +24,7 @@ public class CompressionTest {
     File f1 = FileUtility.createTemporary();
     File f2 = FileUtility.createTemporary();
     File f3 = FileUtility.createTemporary();
+    File f4 = FileUtility.createTemporary();
     try {
       // write a series of strings to these files.
       Order<TupleflowString> o = new TupleflowString.ValueOrder();
@@ -29,38 +32,47 @@ public class CompressionTest {
       FileOrderedWriter<TupleflowString> w1 = new FileOrderedWriter<>(f1.getAbsolutePath(), o, CompressionType.NONE);
       FileOrderedWriter<TupleflowString> w2 = new FileOrderedWriter<>(f2.getAbsolutePath(), o, CompressionType.VBYTE);
       FileOrderedWriter<TupleflowString> w3 = new FileOrderedWriter<>(f3.getAbsolutePath(), o, CompressionType.GZIP);
+      FileOrderedWriter<TupleflowString> w4 = new FileOrderedWriter<>(f4.getAbsolutePath(), o, CompressionType.SNAPPY);
       for (int i = 0; i < 100; i++) {
         String s = "i=" + i;
         w1.process(new TupleflowString(s));
         w2.process(new TupleflowString(s));
         w3.process(new TupleflowString(s));
+        w4.process(new TupleflowString(s));
       }
       w1.close();
       w2.close();
       w3.close();
+      w4.close();
 
       FileOrderedReader<TupleflowString> r1 = new FileOrderedReader<>(f1.getAbsolutePath());
       FileOrderedReader<TupleflowString> r2 = new FileOrderedReader<>(f2.getAbsolutePath());
       FileOrderedReader<TupleflowString> r3 = new FileOrderedReader<>(f3.getAbsolutePath());
+      FileOrderedReader<TupleflowString> r4 = new FileOrderedReader<>(f4.getAbsolutePath());
 
       assert (r1.getCompression().equals(CompressionType.NONE));
       assert (r2.getCompression().equals(CompressionType.VBYTE));
       assert (r3.getCompression().equals(CompressionType.GZIP));
+      assertEquals(CompressionType.SNAPPY, r4.getCompression());
 
       for (int i = 0; i < 100; i++) {
         String s = "i=" + i;
         assert(s.equals(r1.read().value));
         assert(s.equals(r2.read().value));
         assert(s.equals(r3.read().value));
+        assertEquals(s, r4.read().value);
       }
+      assertNull(r4.read());
       r1.close();
       r2.close();
       r3.close();
+      r4.close();
 
     } finally {
       assertTrue(f1.delete());
       assertTrue(f2.delete());
       assertTrue(f3.delete());
+      assertTrue(f4.delete());
     }
   }
 }
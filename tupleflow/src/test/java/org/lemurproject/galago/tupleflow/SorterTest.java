@@ -3,9 +3,18 @@ package org.lemurproject.galago.tupleflow;
 import org.junit.Test;
 import org.lemurproject.galago.tupleflow.error.IncompatibleProcessorException;
 import org.lemurproject.galago.tupleflow.runtime.NullProcessor;
+import org.lemurproject.galago.tupleflow.types.TupleflowLong;
+import org.lemurproject.galago.tupleflow.types.XMLFragment;
 import org.lemurproject.galago.utility.Parameters;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -52,4 +61,121 @@ public class SorterTest {
     Sorter<FakeType> instance = new Sorter<FakeType>(new FakeType().getOrder("+document", "+length"));
     instance.setProcessor(new NullProcessor<FakeType>(FakeType.class));
   }
+
+  @Test
+  public void testSerializedSpills() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("class", XMLFragment.class.getName());
+    p.set("order", "+nodePath");
+    p.set("serialized", true);
+    // small enough to write several temporary files
+    p.set("sort-buffer-bytes", 4096);
+    Sorter<XMLFragment> instance = new Sorter<>(new FakeParameters(p));
+
+    Random random = new Random(42);
+    List<XMLFragment> expected = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      // shared prefixes, so the normalized keys often tie
+      XMLFragment fragment = new XMLFragment("doc/node/" + random.nextInt(500), "text-" + i);
+      expected.add(fragment);
+      instance.process(fragment);
+    }
+
+    List<XMLFragment> actual = collect(instance);
+    Collections.sort(expected, new XMLFragment.NodePathOrder().lessThan());
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).nodePath, actual.get(i).nodePath);
+    }
+    // every payload is still there
+    List<String> expectedText = new ArrayList<>();
+    List<String> actualText = new ArrayList<>();
+    for (int i = 0; i < expected.size(); i++) {
+      expectedText.add(expected.get(i).nodePath + expected.get(i).innerText);
+      actualText.add(actual.get(i).nodePath + actual.get(i).innerText);
+    }
+    Collections.sort(expectedText);
+    Collections.sort(actualText);
+    assertEquals(expectedText, actualText);
+  }
+
+  @Test
+  public void testSerializedInMemory() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("class", TupleflowLong.class.getName());
+    p.set("order", "+value");
+    p.set("serialized", true);
+    p.set("off-heap", true);
+    Sorter<TupleflowLong> instance = new Sorter<>(new FakeParameters(p));
+
+    Random random = new Random(7);
+    List<Long> expected = new ArrayList<>();
+    for (int i = 0; i < 50000; i++) {
+      long value = random.nextLong();
+      expected.add(value);
+      instance.process(new TupleflowLong(value));
+    }
+
+    List<TupleflowLong> actual = collect(instance);
+    Collections.sort(expected);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).longValue(), actual.get(i).value);
+    }
+  }
+
+  @Test
+  public void testSerializedSharedByteLimit() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("class", TupleflowLong.class.getName());
+    p.set("order", "+value");
+    p.set("serialized", true);
+    long previous = Sorter.getSharedByteLimit();
+    Sorter.setSharedByteLimit(16 * 1024);
+    try {
+      // each sorter could buffer everything, the shared limit makes them spill
+      List<Sorter<TupleflowLong>> sorters = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        sorters.add(new Sorter<TupleflowLong>(new FakeParameters(p)));
+      }
+      Random random = new Random(3);
+      List<Long> expected = new ArrayList<>();
+      for (int i = 0; i < 30000; i++) {
+        // temporary files hold non-negative values
+        long value = random.nextInt(Integer.MAX_VALUE);
+        expected.add(value);
+        sorters.get(i % sorters.size()).process(new TupleflowLong(value));
+        assertTrue(Sorter.getSharedBytes() <= 2 * 16 * 1024);
+      }
+
+      List<Long> actual = new ArrayList<>();
+      for (Sorter<TupleflowLong> sorter : sorters) {
+        for (TupleflowLong value : collect(sorter)) {
+          actual.add(value.value);
+        }
+      }
+      assertEquals(0, Sorter.getSharedBytes());
+      Collections.sort(expected);
+      Collections.sort(actual);
+      assertEquals(expected, actual);
+    } finally {
+      Sorter.setSharedByteLimit(previous);
+    }
+  }
+
+  private static <T> List<T> collect(Sorter<T> sorter) throws IOException {
+    final List<T> output = new ArrayList<>();
+    sorter.processor = new Processor<T>() {
+      @Override
+      public void process(T object) {
+        output.add(object);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    sorter.close();
+    return output;
+  }
 }
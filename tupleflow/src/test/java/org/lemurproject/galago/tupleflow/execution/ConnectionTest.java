@@ -11,6 +11,11 @@ import org.lemurproject.galago.utility.Parameters;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests the connection of stages (single/distributed) using (combined/each)
@@ -191,6 +196,90 @@ public class ConnectionTest {
     }
   }
 
+  @Test
+  public void testMultiMultiEachThreaded() throws Exception {
+    Job job = new Job();
+
+    Stage one = new Stage("one");
+    one.add(new StageConnectionPoint(ConnectionPointType.Output,
+            "conn-1-2", new TupleflowString.ValueOrder()));
+    one.add(new StepInformation(NullSource.class));
+    job.add(one);
+
+    Stage two = new Stage("two");
+    two.add(new StageConnectionPoint(ConnectionPointType.Input,
+            "conn-1-2", new TupleflowString.ValueOrder()));
+    two.add(new StageConnectionPoint(ConnectionPointType.Output,
+            "conn-2-3", new TupleflowString.ValueOrder()));
+    two.add(new StepInformation(Generator.class, Parameters.parseString("{\"name\":\"two\", \"conn\":[\"conn-2-3\"]}")));
+    job.add(two);
+
+    Stage three = new Stage("three");
+    three.add(new StageConnectionPoint(ConnectionPointType.Input,
+            "conn-2-3", new TupleflowString.ValueOrder()));
+    three.add(new StageConnectionPoint(ConnectionPointType.Output,
+            "conn-3-4", new TupleflowString.ValueOrder()));
+    three.add(new StepInformation(PassThrough.class, Parameters.parseString("{\"name\":\"three\", \"connIn\" : [\"conn-2-3\"], \"connOut\" : [\"conn-3-4\"]}")));
+    job.add(three);
+
+    Stage four = new Stage("four");
+    four.add(new StageConnectionPoint(ConnectionPointType.Input,
+        "conn-3-4", new TupleflowString.ValueOrder()));
+    // should recieve 10 items from each create of two - they will be passed through three
+    four.add(new StepInformation(Receiver.class, Parameters.parseString("{\"expectedCount\":20, \"connIn\" : [\"conn-3-4\"]}")));
+    job.add(four);
+
+
+    job.connect("one", "two", ConnectionAssignmentType.Each);
+    job.connect("two", "three", ConnectionAssignmentType.Each);
+    job.connect("three", "four", ConnectionAssignmentType.Combined);
+
+    job.properties.put("hashCount", "2");
+    ErrorStore err = new ErrorStore();
+    Verification.verify(job, err);
+
+    long sharedObjectLimit = Sorter.getSharedObjectLimit();
+    JobExecutor.runLocally(job, err, Parameters.parseString("{\"server\":false, \"mode\":\"threaded\", \"threads\":2}"));
+    if (err.hasStatements()) {
+      throw new RuntimeException(err.toString());
+    }
+    // the executor restores the limit it set
+    assertEquals(sharedObjectLimit, Sorter.getSharedObjectLimit());
+  }
+
+  @Test
+  public void testThreadedFailureCancelsInstances() throws Exception {
+    Job job = new Job();
+
+    Stage one = new Stage("one");
+    one.add(new StageConnectionPoint(ConnectionPointType.Output,
+            "conn-1-2", new TupleflowString.ValueOrder()));
+    one.add(new StepInformation(NullSource.class));
+    job.add(one);
+
+    Stage two = new Stage("two");
+    two.add(new StageConnectionPoint(ConnectionPointType.Input,
+            "conn-1-2", new TupleflowString.ValueOrder()));
+    two.add(new StepInformation(Failure.class));
+    job.add(two);
+
+    job.connect("one", "two", ConnectionAssignmentType.Each);
+
+    job.properties.put("hashCount", "8");
+    ErrorStore err = new ErrorStore();
+    Verification.verify(job, err);
+
+    Failure.runs.set(0);
+    try {
+      JobExecutor.runLocally(job, err, Parameters.parseString("{\"server\":false, \"mode\":\"threaded\", \"threads\":1}"));
+      fail("expected the stage to fail");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause().getMessage().contains("failed instance"));
+    }
+    // one thread: the first failure cancels the other seven instances
+    assertEquals(1, Failure.runs.get());
+  }
+
   @Test
   public void testSingleSingleIntoMulti() throws Exception {
     Job job = new Job();
@@ -574,6 +663,40 @@ public class ConnectionTest {
     }
   }
 
+  @Test
+  public void testSingleMultiEachSnappy() throws Exception {
+    Job job = new Job();
+
+    Stage one = new Stage("one");
+
+    one.addOutput("conn-1-2", new TupleflowString.ValueOrder(), CompressionType.SNAPPY);
+    one.add(new StepInformation(NullSource.class));
+    job.add(one);
+
+    Stage two = new Stage("two");
+    two.addInput("conn-1-2", new TupleflowString.ValueOrder());
+    two.addOutput("conn-2-3", new TupleflowString.ValueOrder(), CompressionType.SNAPPY);
+    two.add(new StepInformation(Generator.class, Parameters.parseString("{\"name\":\"two\", \"conn\":[\"conn-2-3\"]}")));
+    job.add(two);
+
+    Stage three = new Stage("three");
+    three.addInput("conn-2-3", new TupleflowString.ValueOrder());
+    // should recieve 10 items from each create of two (20 total)
+    three.add(new StepInformation(Receiver.class, Parameters.parseString("{\"expectedCount\":20, \"connIn\" : [\"conn-2-3\"]}")));
+    job.add(three);
+
+    job.connect("one", "two", ConnectionAssignmentType.Each);
+    job.connect("two", "three", ConnectionAssignmentType.Combined);
+
+    job.properties.put("hashCount", "2");
+    ErrorStore err = new ErrorStore();
+    Verification.verify(job, err);
+    JobExecutor.runLocally(job, err, Parameters.parseString("{\"server\":false}"));
+    if (err.hasStatements()) {
+      throw new RuntimeException(err.toString());
+    }
+  }
+
   ///***** Classes used to generate/pass/merge/receive data ******///
   public static class NullSource implements ExNihiloSource {
 
@@ -590,6 +713,25 @@ public class ConnectionTest {
     }
   }
 
+  public static class Failure implements ExNihiloSource {
+
+    static final AtomicInteger runs = new AtomicInteger();
+
+    @Override
+    public void run() throws IOException {
+      runs.incrementAndGet();
+      throw new IOException("failed instance");
+    }
+
+    @Override
+    public void setProcessor(org.lemurproject.galago.tupleflow.Step processor) throws IncompatibleProcessorException {
+      Linkage.link(this, processor);
+    }
+
+    public static void verify(TupleFlowParameters parameters, ErrorStore store) throws IOException {
+    }
+  }
+
   public static class Generator implements ExNihiloSource {
 
     TupleFlowParameters params;
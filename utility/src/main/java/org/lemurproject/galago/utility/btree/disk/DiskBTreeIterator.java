@@ -2,7 +2,6 @@ package org.lemurproject.galago.utility.btree.disk;
 
 import org.lemurproject.galago.utility.CmpUtil;
 import org.lemurproject.galago.utility.btree.BTreeIterator;
-import org.lemurproject.galago.utility.buffer.CachedBufferDataStream;
 import org.lemurproject.galago.utility.buffer.DataStream;
 import org.lemurproject.galago.utility.buffer.ReadableBuffer;
 import org.lemurproject.galago.utility.compression.VByte;
@@ -15,6 +14,7 @@ import java.io.IOException;
 public class DiskBTreeIterator extends BTreeIterator {
 
   public final ReadableBuffer input;
+  private final DiskBTreeReader diskReader;
   private final VocabularyReader vocabulary;
   private final long fileLength;
   private final int cacheGroupSize;
@@ -33,6 +33,7 @@ public class DiskBTreeIterator extends BTreeIterator {
 
   public DiskBTreeIterator(DiskBTreeReader reader, VocabularyReader.IndexBlockInfo blockInfo) throws IOException {
     super(reader);
+    diskReader = reader;
     input = reader.input;
     vocabulary = reader.vocabulary;
     fileLength = reader.fileLength;
@@ -45,7 +46,7 @@ public class DiskBTreeIterator extends BTreeIterator {
     long startFileOffset = this.blockInfo.begin;
 
     // read in a block of data here
-    blockStream = new CachedBufferDataStream(input, startFileOffset, blockInfo.headerLength + startFileOffset);
+    blockStream = diskReader.getDataStream(startFileOffset, blockInfo.headerLength + startFileOffset);
 
     // now we decode everything from the stream
     this.endValueFileOffset = startFileOffset + blockInfo.length;
@@ -177,7 +178,7 @@ public class DiskBTreeIterator extends BTreeIterator {
 
   @Override
   public DataStream getValueStream() throws IOException {
-    return new CachedBufferDataStream(input, getValueStart(), getValueEnd());
+    return diskReader.getDataStream(getValueStart(), getValueEnd());
   }
 
   @Override
@@ -191,7 +192,7 @@ public class DiskBTreeIterator extends BTreeIterator {
     assert absoluteStart <= absoluteEnd;
 
     // the end of the sub value is the min of fileLength, valueEnd, or (offset+length);
-    return new CachedBufferDataStream(input, absoluteStart, absoluteEnd);
+    return diskReader.getDataStream(absoluteStart, absoluteEnd);
   }
 
   private void cacheKeys() throws IOException {
@@ -4,7 +4,10 @@ package org.lemurproject.galago.utility.btree.disk;
 import org.lemurproject.galago.utility.CmpUtil;
 import org.lemurproject.galago.utility.Parameters;
 import org.lemurproject.galago.utility.buffer.CachedBufferDataStream;
+import org.lemurproject.galago.utility.buffer.DataStream;
 import org.lemurproject.galago.utility.buffer.FileReadableBuffer;
+import org.lemurproject.galago.utility.buffer.MappedDataStream;
+import org.lemurproject.galago.utility.buffer.MappedReadableBuffer;
 import org.lemurproject.galago.utility.buffer.ReadableBuffer;
 
 import java.io.File;
@@ -44,7 +47,7 @@ import java.nio.ByteBuffer;
 public class DiskBTreeReader extends GalagoBTreeReader {
 
   // this input reader needs to be accesed in a synchronous manner.
-  final ReadableBuffer input;
+  ReadableBuffer input;
 
   // other variables do not
   VocabularyReader vocabulary;
@@ -86,12 +89,17 @@ public class DiskBTreeReader extends GalagoBTreeReader {
     long vocabularyLength = manifestOffset - vocabularyOffset;
 
     //input.seek(vocabularyOffset);
-    vocabulary = new VocabularyReader(new CachedBufferDataStream(input, vocabularyOffset, vocabularyOffset + vocabularyLength), vocabularyOffset);
-
     ByteBuffer manifestData = ByteBuffer.allocate((int) (footerOffset - manifestOffset));
     input.read(manifestData, manifestOffset);
     manifest = Parameters.parseBytes(manifestData.array());
 
+    // parts can request to be memory mapped through their manifest
+    if (manifest.get("mmap", false) && input instanceof FileReadableBuffer) {
+      input = ((FileReadableBuffer) input).map();
+    }
+
+    vocabulary = new VocabularyReader(getDataStream(vocabularyOffset, vocabularyOffset + vocabularyLength), vocabularyOffset);
+
     this.cacheGroupSize = (int) manifest.get("cacheGroupSize", 1);
   }
 
@@ -106,6 +114,18 @@ public class DiskBTreeReader extends GalagoBTreeReader {
     this(new FileReadableBuffer(pathname));
   }
 
+  /**
+   * Opens an index found at pathname. If mapped is true, the file is memory
+   * mapped, otherwise it is only mapped if the manifest requests it.
+   *
+   * @param pathname Filename of the index to open.
+   * @param mapped Whether to memory map the file.
+   * @throws IOException
+   */
+  public DiskBTreeReader(String pathname, boolean mapped) throws IOException {
+    this(mapped ? new MappedReadableBuffer(pathname) : new FileReadableBuffer(pathname));
+  }
+
   /**
    * Identical to the {@link #DiskBTreeReader(String) other constructor}, except
    * this one takes a File object instead of a string as the parameter.
@@ -116,6 +136,24 @@ public class DiskBTreeReader extends GalagoBTreeReader {
     this(pathname.toString());
   }
 
+  /**
+   * Returns true if this BTree is read from a memory mapped buffer.
+   */
+  public boolean isMapped() {
+    return input instanceof MappedReadableBuffer;
+  }
+
+  /**
+   * Returns a stream over the absolute range [start, end) of the underlying
+   * buffer. Mapped buffers are read directly, without copying.
+   */
+  DataStream getDataStream(long start, long end) {
+    if (input instanceof MappedReadableBuffer) {
+      return new MappedDataStream((MappedReadableBuffer) input, start, end);
+    }
+    return new CachedBufferDataStream(input, start, end);
+  }
+
   /**
    * Returns a Parameters object that contains metadata about the contents of
    * the index. This is the place to store important data about the index
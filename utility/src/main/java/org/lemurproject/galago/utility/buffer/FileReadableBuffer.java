@@ -32,6 +32,14 @@ public class FileReadableBuffer implements ReadableBuffer {
     return file.length();
   }
 
+  /**
+   * Maps this file into memory. The returned buffer takes ownership of the
+   * file; this buffer should not be used after calling map.
+   */
+  public MappedReadableBuffer map() throws IOException {
+    return new MappedReadableBuffer(file);
+  }
+
   @Override
   public void close() throws IOException {
     file.close();
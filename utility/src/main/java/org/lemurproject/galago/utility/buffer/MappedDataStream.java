@@ -0,0 +1,219 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.utility.buffer;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * A DataStream that reads directly from a MappedReadableBuffer.
+ *
+ * Unlike CachedBufferDataStream, no data is copied onto the heap; reads use the
+ * absolute get methods of the mapped chunks, so sub streams are cheap and
+ * many streams can share the same buffer. Reads that cross a chunk boundary
+ * fall back to reading single bytes.
+ */
+public class MappedDataStream extends DataStream {
+  final MappedReadableBuffer buffer;
+  final long startPosition;
+  final long stopPosition;
+  long position;
+
+  // the chunk containing the current position
+  MappedByteBuffer chunk;
+  long chunkStart;
+  long chunkEnd;
+
+  public MappedDataStream(MappedReadableBuffer buffer, long start, long end) {
+    assert start <= end;
+    this.buffer = buffer;
+    this.startPosition = start;
+    this.stopPosition = end;
+    this.position = start;
+    this.chunkStart = 0;
+    this.chunkEnd = 0;
+  }
+
+  public MappedDataStream(MappedReadableBuffer buffer) throws IOException {
+    this(buffer, 0, buffer.length());
+  }
+
+  @Override
+  public MappedDataStream subStream(long start, long length) throws IOException {
+    assert start < length();
+    assert start + length <= length();
+    return new MappedDataStream(buffer, startPosition + start, startPosition + start + length);
+  }
+
+  @Override
+  public long getPosition() {
+    return position - startPosition;
+  }
+
+  @Override
+  public boolean isDone() {
+    return position >= stopPosition;
+  }
+
+  @Override
+  public long length() {
+    return stopPosition - startPosition;
+  }
+
+  /**
+   * Seeks to a byte offset, relative to the start of this stream. Since the
+   * data is mapped, reverse seeks are also cheap.
+   */
+  @Override
+  public void seek(long offset) {
+    position = startPosition + offset;
+  }
+
+  /**
+   * Ensures that length bytes are available, and returns true if they can be
+   * read from the current chunk.
+   */
+  private boolean available(int length) throws EOFException {
+    if (position + length > stopPosition) {
+      throw new EOFException("Tried to read off the end of the stream.\n"
+              + "position: " + position + " length: " + length + " stopAt: " + stopPosition);
+    }
+    if (position < chunkStart || position >= chunkEnd) {
+      int id = (int) (position >>> buffer.chunkBits);
+      chunk = buffer.chunks[id];
+      chunkStart = ((long) id) << buffer.chunkBits;
+      chunkEnd = chunkStart + chunk.limit();
+    }
+    return position + length <= chunkEnd;
+  }
+
+  // inlining here for performance
+  @Override
+  public int readUnsignedByte() throws IOException {
+    if (position >= chunkStart && position < chunkEnd && position < stopPosition) {
+      return chunk.get((int) (position++ - chunkStart)) & 0xff;
+    }
+    available(1);
+    return chunk.get((int) (position++ - chunkStart)) & 0xff;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    return (byte) readUnsignedByte();
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readUnsignedByte() != 0;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    if (available(2)) {
+      short result = chunk.getShort((int) (position - chunkStart));
+      position += 2;
+      return result;
+    }
+    int a = readUnsignedByte();
+    int b = readUnsignedByte();
+    return (short) ((a << 8) | b);
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    return (char) readShort();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    if (available(4)) {
+      int result = chunk.getInt((int) (position - chunkStart));
+      position += 4;
+      return result;
+    }
+    int result = 0;
+    for (int i = 0; i < 4; i++) {
+      result = (result << 8) | readUnsignedByte();
+    }
+    return result;
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    if (available(8)) {
+      long result = chunk.getLong((int) (position - chunkStart));
+      position += 8;
+      return result;
+    }
+    long a = readInt();
+    long b = readInt();
+    return (a << 32) | (b & 0xFFFFFFFFL);
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return Float.intBitsToFloat(readInt());
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return Double.longBitsToDouble(readLong());
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return;
+    }
+    available(len);
+    while (len > 0) {
+      available(1);
+      int amount = (int) Math.min(len, chunkEnd - position);
+      // the duplicate keeps concurrent readers of the chunk independent
+      ByteBuffer src = chunk.duplicate();
+      src.position((int) (position - chunkStart));
+      src.get(b, off, amount);
+      position += amount;
+      off += amount;
+      len -= amount;
+    }
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int amount = (int) Math.min(len, stopPosition - position);
+    if (amount <= 0) {
+      return (len == 0) ? 0 : -1;
+    }
+    readFully(b, off, amount);
+    return amount;
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    position += n;
+    return n;
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    throw new IOException("readLine is unimplemented and deprecated");
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    return DataInputStream.readUTF(this);
+  }
+}
@@ -0,0 +1,91 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.utility.buffer;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only, memory-mapped view of a file.
+ *
+ * The file is mapped in fixed size chunks, so files larger than 2GB can be
+ * mapped. Use MappedDataStream to read from this buffer without copying.
+ *
+ * Note that the mapping is only released when the chunks are garbage collected,
+ * close() only releases the file handle.
+ */
+public class MappedReadableBuffer implements ReadableBuffer {
+  // 1GB chunks; must be a power of two.
+  static final int DEFAULT_CHUNK_BITS = 30;
+
+  private final RandomAccessFile file;
+  private final long length;
+  final int chunkBits;
+  final long chunkMask;
+  final MappedByteBuffer[] chunks;
+
+  public MappedReadableBuffer(RandomAccessFile raf) throws IOException {
+    this(raf, DEFAULT_CHUNK_BITS);
+  }
+
+  public MappedReadableBuffer(String path) throws IOException {
+    this(openFile(path), DEFAULT_CHUNK_BITS);
+  }
+
+  /**
+   * Chunk sizes other than the default are only useful for testing.
+   */
+  MappedReadableBuffer(RandomAccessFile raf, int chunkBits) throws IOException {
+    assert chunkBits > 0 && chunkBits < 31;
+    this.file = raf;
+    this.length = raf.length();
+    this.chunkBits = chunkBits;
+    this.chunkMask = (1L << chunkBits) - 1;
+
+    FileChannel channel = raf.getChannel();
+    long chunkSize = 1L << chunkBits;
+    int chunkCount = (int) ((length + chunkSize - 1) >>> chunkBits);
+    this.chunks = new MappedByteBuffer[chunkCount];
+    for (int i = 0; i < chunkCount; i++) {
+      long start = ((long) i) << chunkBits;
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, length - start));
+    }
+  }
+
+  private static RandomAccessFile openFile(String path) throws FileNotFoundException {
+    return new RandomAccessFile(path, "r");
+  }
+
+  @Override
+  public int read(ByteBuffer buf, long offset) throws IOException {
+    if (offset >= length) {
+      return -1;
+    }
+    int total = (int) Math.min(buf.remaining(), length - offset);
+    int remaining = total;
+    while (remaining > 0) {
+      ByteBuffer chunk = chunks[(int) (offset >>> chunkBits)].duplicate();
+      int position = (int) (offset & chunkMask);
+      int amount = Math.min(remaining, chunk.limit() - position);
+      chunk.position(position);
+      chunk.limit(position + amount);
+      buf.put(chunk);
+      offset += amount;
+      remaining -= amount;
+    }
+    return total;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
@@ -0,0 +1,161 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.utility.buffer;
+
+/**
+ * Packs blocks of non-negative integers using a fixed number of bits per
+ * value, with the values that do not fit stored as exceptions (PForDelta).
+ *
+ * A block is encoded as:
+ *
+ * [bits (1 byte)] [exception count (vbyte)] [packed low bits of each value]
+ * [exceptions: (index (vbyte), high bits (vbyte))*]
+ *
+ * The packed bits are little-endian, so each value is decoded with shifts and
+ * a mask, and no branches per value. The bit width is chosen to minimize the
+ * encoded size of each block. The number of values is not stored; callers
+ * know the size of their blocks. Vbytes are written as in CompressedByteBuffer.
+ */
+public class PForDelta {
+
+  /**
+   * An upper bound on the encoded size of count values.
+   */
+  public static int maxEncodedLength(int count) {
+    return 1 + 5 + (4 * count) + (count * (5 + 5));
+  }
+
+  /**
+   * Encodes values[offset, offset + count) into out, starting at outOffset.
+   *
+   * @return the offset after the encoded block
+   */
+  public static int encode(int[] values, int offset, int count, byte[] out, int outOffset) {
+    // histogram of the bit lengths of the values
+    int[] lengths = new int[33];
+    for (int i = offset; i < offset + count; i++) {
+      lengths[32 - Integer.numberOfLeadingZeros(values[i])]++;
+    }
+
+    int bits = 0;
+    long bestCost = Long.MAX_VALUE;
+    for (int b = 0; b <= 32; b++) {
+      long cost = (((long) count * b) + 7) / 8;
+      for (int length = b + 1; length <= 32; length++) {
+        cost += lengths[length] * (2L + (length - b + 6) / 7);
+      }
+      if (cost < bestCost) {
+        bestCost = cost;
+        bits = b;
+      }
+    }
+
+    int exceptions = 0;
+    for (int length = bits + 1; length <= 32; length++) {
+      exceptions += lengths[length];
+    }
+
+    int p = outOffset;
+    out[p++] = (byte) bits;
+    p = writeVByte(exceptions, out, p);
+
+    // packed low bits
+    final long mask = (bits == 32) ? 0xFFFFFFFFL : (1L << bits) - 1;
+    if (bits > 0) {
+      long accumulator = 0;
+      int accumulated = 0;
+      for (int i = offset; i < offset + count; i++) {
+        accumulator |= (values[i] & mask) << accumulated;
+        accumulated += bits;
+        while (accumulated >= 8) {
+          out[p++] = (byte) accumulator;
+          accumulator >>>= 8;
+          accumulated -= 8;
+        }
+      }
+      if (accumulated > 0) {
+        out[p++] = (byte) accumulator;
+      }
+    }
+
+    // high bits of exceptions
+    if (exceptions > 0) {
+      for (int i = offset; i < offset + count; i++) {
+        if ((values[i] & 0xFFFFFFFFL) > mask) {
+          p = writeVByte(i - offset, out, p);
+          p = writeVByte((values[i] & 0xFFFFFFFFL) >>> bits, out, p);
+        }
+      }
+    }
+    return p;
+  }
+
+  /**
+   * Decodes count values from in, starting at inOffset, into
+   * values[offset, offset + count).
+   *
+   * @return the offset after the encoded block
+   */
+  public static int decode(byte[] in, int inOffset, int[] values, int offset, int count) {
+    int p = inOffset;
+    final int bits = in[p++];
+
+    // exception count
+    int exceptions = 0;
+    for (int shift = 0;; shift += 7) {
+      int b = in[p++];
+      exceptions |= (b & 0x7f) << shift;
+      if ((b & 0x80) != 0) {
+        break;
+      }
+    }
+
+    if (bits == 0) {
+      for (int i = offset; i < offset + count; i++) {
+        values[i] = 0;
+      }
+    } else {
+      final long mask = (bits == 32) ? 0xFFFFFFFFL : (1L << bits) - 1;
+      long accumulator = 0;
+      int accumulated = 0;
+      for (int i = offset; i < offset + count; i++) {
+        while (accumulated < bits) {
+          accumulator |= (in[p++] & 0xFFL) << accumulated;
+          accumulated += 8;
+        }
+        values[i] = (int) (accumulator & mask);
+        accumulator >>>= bits;
+        accumulated -= bits;
+      }
+    }
+
+    for (int e = 0; e < exceptions; e++) {
+      int index = 0;
+      for (int shift = 0;; shift += 7) {
+        int b = in[p++];
+        index |= (b & 0x7f) << shift;
+        if ((b & 0x80) != 0) {
+          break;
+        }
+      }
+      long high = 0;
+      for (int shift = 0;; shift += 7) {
+        int b = in[p++];
+        high |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) != 0) {
+          break;
+        }
+      }
+      values[offset + index] |= (int) (high << bits);
+    }
+    return p;
+  }
+
+  private static int writeVByte(long value, byte[] out, int p) {
+    while (value >= 1 << 7) {
+      out[p++] = (byte) (value & 0x7f);
+      value >>>= 7;
+    }
+    out[p++] = (byte) (value | 0x80);
+    return p;
+  }
+}
@@ -0,0 +1,100 @@
+package org.lemurproject.galago.utility.buffer;
+
+import org.junit.Test;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedDataStreamTest {
+
+  @Test
+  public void testReadAcrossChunks() throws IOException {
+    File tmp = File.createTempFile("mapped", ".bin");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+        for (int i = 0; i < 100; i++) {
+          out.writeByte(i);
+          out.writeInt(i * 1000);
+          out.writeLong(-i * 100000L);
+          out.writeShort(i);
+        }
+      }
+
+      // 16 byte chunks: most values cross a chunk boundary at some point
+      MappedReadableBuffer buffer = new MappedReadableBuffer(new RandomAccessFile(tmp, "r"), 4);
+      assertEquals(100 * 15, buffer.length());
+      assertEquals((100 * 15 + 15) / 16, buffer.chunks.length);
+
+      MappedDataStream stream = new MappedDataStream(buffer);
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i, stream.readUnsignedByte());
+        assertEquals(i * 1000, stream.readInt());
+        assertEquals(-i * 100000L, stream.readLong());
+        assertEquals(i, stream.readShort());
+      }
+      assertTrue(stream.isDone());
+
+      // sub streams and seeks are relative
+      DataStream sub = stream.subStream(15 * 10, 15 * 5);
+      assertEquals(0, sub.getPosition());
+      assertEquals(75, sub.length());
+      sub.seek(15 * 2 + 1);
+      assertEquals(12000, sub.readInt());
+      sub.seek(0);
+      assertEquals(10, sub.readUnsignedByte());
+
+      // readFully across chunks matches a positional read
+      byte[] expected = new byte[100];
+      buffer.read(ByteBuffer.wrap(expected), 7);
+      byte[] actual = new byte[100];
+      stream.seek(7);
+      stream.readFully(actual);
+      assertEquals(ByteUtil.toString(expected), ByteUtil.toString(actual));
+
+      sub.seek(sub.length() - 2);
+      try {
+        sub.readInt();
+        fail("Expected an EOFException");
+      } catch (EOFException e) {
+        // expected
+      }
+      buffer.close();
+    } finally {
+      assertTrue(tmp.delete());
+    }
+  }
+
+  @Test
+  public void testReadUnsignedByte() throws IOException {
+    File tmp = File.createTempFile("foo", ".bin");
+    try {
+      StreamUtil.copyStringToFile("abcdefgh", tmp);
+      MappedReadableBuffer buffer = new MappedReadableBuffer(tmp.getAbsolutePath());
+      MappedDataStream stream = new MappedDataStream(buffer, 3, 8);
+      assertEquals(0, stream.getPosition());
+      assertEquals('d', stream.readUnsignedByte());
+      assertEquals('e', stream.readUnsignedByte());
+      assertFalse(stream.isDone());
+      byte[] rest = new byte[3];
+      assertEquals(3, stream.read(rest));
+      assertEquals("fgh", ByteUtil.toString(rest));
+      assertTrue(stream.isDone());
+      assertEquals(-1, stream.read());
+      buffer.close();
+    } finally {
+      tmp.delete();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.utility.buffer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PForDeltaTest {
+
+  private static void roundTrip(int[] values) {
+    byte[] encoded = new byte[PForDelta.maxEncodedLength(values.length) + 3];
+    // encode at an offset, to check that offsets are respected
+    int end = PForDelta.encode(values, 0, values.length, encoded, 3);
+    assertTrue(end <= encoded.length);
+
+    int[] decoded = new int[values.length + 2];
+    int decodedEnd = PForDelta.decode(encoded, 3, decoded, 2, values.length);
+    assertEquals(end, decodedEnd);
+
+    int[] result = new int[values.length];
+    System.arraycopy(decoded, 2, result, 0, values.length);
+    assertArrayEquals(values, result);
+  }
+
+  @Test
+  public void testSmallBlocks() {
+    roundTrip(new int[0]);
+    roundTrip(new int[]{0});
+    roundTrip(new int[]{7});
+    roundTrip(new int[]{0, 0, 0, 0});
+    roundTrip(new int[]{Integer.MAX_VALUE, 0, 1, Integer.MAX_VALUE});
+    roundTrip(new int[]{-1, 1, -1});
+  }
+
+  @Test
+  public void testExceptions() {
+    Random r = new Random(42);
+    for (int trial = 0; trial < 200; trial++) {
+      int[] values = new int[1 + r.nextInt(200)];
+      for (int i = 0; i < values.length; i++) {
+        // mostly small gaps, with a few large ones
+        values[i] = (r.nextInt(10) == 0) ? r.nextInt(1 << (1 + r.nextInt(30))) : r.nextInt(8);
+      }
+      roundTrip(values);
+    }
+  }
+
+  @Test
+  public void testCompression() {
+    int[] values = new int[128];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 4;
+    }
+    values[100] = 1000000;
+    byte[] encoded = new byte[PForDelta.maxEncodedLength(values.length)];
+    int length = PForDelta.encode(values, 0, values.length, encoded, 0);
+    // 2 bits per value, plus one exception
+    assertTrue(length < 32 + 10);
+    roundTrip(values);
+  }
+}